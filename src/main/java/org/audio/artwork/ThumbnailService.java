@@ -0,0 +1,239 @@
+package org.audio.artwork;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.audio.metadata.CoverArt;
+
+/**
+ * Produces downscaled versions of {@link CoverArt} for display.
+ * 
+ * <p>
+ * Images are decoded with {@link ImageReadParam#setSourceSubsampling} so that
+ * a multi-megapixel cover is never fully decoded for a small thumbnail.
+ * Results are cached on disk, keyed by {@link CoverArt#getContentHash()} and
+ * size, so the same artwork shared by every track of an album is decoded once.
+ * Concurrent requests for the same thumbnail wait for a single decode.
+ * </p>
+ */
+public class ThumbnailService {
+
+	/**
+	 * Folder holding cached thumbnails
+	 */
+	private final Path cacheDirectory;
+
+	/**
+	 * Thumbnails currently being generated, keyed by cache file name
+	 */
+	private final ConcurrentMap<String, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+
+	/**
+	 * Number of images decoded by this instance
+	 */
+	private final AtomicLong decodes = new AtomicLong();
+
+	/**
+	 * Number of thumbnails served from the disk cache
+	 */
+	private final AtomicLong cacheHits = new AtomicLong();
+
+	/**
+	 * Creates a new service caching thumbnails in {@code cacheDirectory}.
+	 * 
+	 * @param cacheDirectory folder for cached thumbnails, created if missing
+	 * @throws IOException if the folder cannot be created
+	 */
+	public ThumbnailService(Path cacheDirectory) throws IOException {
+		this.cacheDirectory = Files.createDirectories(cacheDirectory);
+	}
+
+	/**
+	 * Returns an encoded thumbnail of {@code art} fitting in a
+	 * {@code maxSize}x{@code maxSize} box. Images smaller than the box are not
+	 * enlarged. PNG and GIF sources produce PNG thumbnails to keep transparency,
+	 * everything else produces JPEG.
+	 * 
+	 * @param art     image to be downscaled
+	 * @param maxSize maximum width and height in pixels
+	 * @return encoded thumbnail
+	 * @throws IOException if the image cannot be decoded or the cache written
+	 */
+	public byte[] getThumbnail(CoverArt art, int maxSize) throws IOException {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Thumbnail size must be positive.");
+		}
+
+		String format = art.getMimeType().equals("image/png") || art.getMimeType().equals("image/gif") ? "png"
+				: "jpg";
+		String name = art.getContentHash() + "-" + maxSize + "." + format;
+		Path cached = cacheDirectory.resolve(name);
+
+		if (Files.exists(cached)) {
+			cacheHits.incrementAndGet();
+			return Files.readAllBytes(cached);
+		}
+
+		// only the first caller decodes, everyone else waits for its result
+		CompletableFuture<byte[]> task = new CompletableFuture<>();
+		CompletableFuture<byte[]> existing = pending.putIfAbsent(name, task);
+		if (existing != null) {
+			try {
+				return existing.join();
+			} catch (CompletionException e) {
+				throw new IOException("Thumbnail generation failed", e.getCause());
+			}
+		}
+
+		try {
+			byte[] thumbnail = encode(decode(art, maxSize), format);
+			decodes.incrementAndGet();
+
+			// write atomically so that readers never see a partial file
+			Path temporary = Files.createTempFile(cacheDirectory, name, ".tmp");
+			try {
+				Files.write(temporary, thumbnail);
+				Files.move(temporary, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (Throwable e) {
+				try {
+					Files.deleteIfExists(temporary);
+				} catch (IOException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+				throw e;
+			}
+
+			task.complete(thumbnail);
+			return thumbnail;
+		} catch (IOException | RuntimeException e) {
+			task.completeExceptionally(e);
+			throw e;
+		} finally {
+			pending.remove(name, task);
+		}
+	}
+
+	/**
+	 * Decodes {@code art} at reduced resolution and scales it to fit a
+	 * {@code maxSize}x{@code maxSize} box.
+	 * 
+	 * @param art     image to be decoded
+	 * @param maxSize maximum width and height in pixels
+	 * @return the downscaled image
+	 * @throws IOException if no ImageIO reader supports the image, or it is
+	 *                     corrupt
+	 */
+	public static BufferedImage decode(CoverArt art, int maxSize) throws IOException {
+		try (ImageInputStream stream = ImageIO.createImageInputStream(art.getInputStream())) {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+			if (!readers.hasNext()) {
+				throw new IOException("No ImageIO reader for " + art.getMimeType());
+			}
+
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(stream, true, true);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+
+				// skip pixels while decoding, but keep at least maxSize so the final
+				// scaling step has enough detail to work with
+				int subsampling = Math.max(1, Math.max(width, height) / maxSize);
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+				return scale(reader.read(0, param), maxSize);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Scales {@code image} to fit a {@code maxSize}x{@code maxSize} box,
+	 * keeping the aspect ratio.
+	 * 
+	 * @param image   decoded image
+	 * @param maxSize maximum width and height in pixels
+	 * @return {@code image} if it already fits, otherwise a scaled copy
+	 */
+	private static BufferedImage scale(BufferedImage image, int maxSize) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (width <= maxSize && height <= maxSize) {
+			return image;
+		}
+
+		double factor = (double) maxSize / Math.max(width, height);
+		int scaledWidth = Math.max(1, (int) Math.round(width * factor));
+		int scaledHeight = Math.max(1, (int) Math.round(height * factor));
+
+		int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		BufferedImage scaled = new BufferedImage(scaledWidth, scaledHeight, type);
+		Graphics2D graphics = scaled.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			graphics.drawImage(image, 0, 0, scaledWidth, scaledHeight, null);
+		} finally {
+			graphics.dispose();
+		}
+		return scaled;
+	}
+
+	/**
+	 * Encodes {@code image} in the given format.
+	 * 
+	 * @param image  image to be encoded
+	 * @param format ImageIO format name, "png" or "jpg"
+	 * @return encoded image
+	 * @throws IOException if the image cannot be encoded
+	 */
+	private static byte[] encode(BufferedImage image, String format) throws IOException {
+		if (format.equals("jpg") && image.getColorModel().hasAlpha()) {
+			// JPEG has no alpha channel
+			BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = opaque.createGraphics();
+			graphics.drawImage(image, 0, 0, null);
+			graphics.dispose();
+			image = opaque;
+		}
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		if (!ImageIO.write(image, format, output)) {
+			throw new IOException("No ImageIO writer for " + format);
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * @return number of images decoded by this instance
+	 */
+	public long getDecodeCount() {
+		return decodes.get();
+	}
+
+	/**
+	 * @return number of thumbnails served from the disk cache
+	 */
+	public long getCacheHitCount() {
+		return cacheHits.get();
+	}
+}
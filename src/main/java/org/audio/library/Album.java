@@ -0,0 +1,139 @@
+package org.audio.library;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.audio.metadata.CoverArt;
+
+/**
+ * Tracks sharing an album name and album artist, grouped into discs.
+ */
+public class Album {
+
+	/**
+	 * Album name as first seen
+	 */
+	private final String name;
+
+	/**
+	 * Album artist as first seen
+	 */
+	private final String artist;
+
+	/**
+	 * Discs by number
+	 */
+	private final TreeMap<Integer, Disc> discs = new TreeMap<>();
+
+	/**
+	 * Number of tracks on all discs
+	 */
+	private int size;
+
+	/**
+	 * Monitor of the owning {@link Library}, held while reading the discs
+	 */
+	private final Object lock;
+
+	/**
+	 * @param name   album name
+	 * @param artist album artist
+	 * @param lock   monitor guarding the library the album belongs to
+	 */
+	Album(String name, String artist, Object lock) {
+		this.name = name;
+		this.artist = artist;
+		this.lock = lock;
+	}
+
+	/**
+	 * @param track track to be added
+	 */
+	void add(Track track) {
+		discs.computeIfAbsent(track.getDiscNumber(), number -> new Disc(number, lock)).add(track);
+		++size;
+	}
+
+	/**
+	 * @param track track to be removed
+	 * @return true if the album is now empty
+	 */
+	boolean remove(Track track) {
+		Disc disc = discs.get(track.getDiscNumber());
+		if (disc.remove(track)) {
+			discs.remove(track.getDiscNumber());
+		}
+		--size;
+		return size == 0;
+	}
+
+	/**
+	 * @return album name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return album artist
+	 */
+	public String getArtist() {
+		return artist;
+	}
+
+	/**
+	 * @return snapshot of the discs in order
+	 */
+	public List<Disc> getDiscs() {
+		synchronized (lock) {
+			return List.copyOf(discs.values());
+		}
+	}
+
+	/**
+	 * @return snapshot of all tracks, disc by disc in play order
+	 */
+	public List<Track> getTracks() {
+		synchronized (lock) {
+			List<Track> tracks = new ArrayList<>(size);
+			for (Disc disc : discs.values()) {
+				tracks.addAll(disc.getTracks());
+			}
+			return tracks;
+		}
+	}
+
+	/**
+	 * @return number of tracks on all discs
+	 */
+	public int getTrackCount() {
+		synchronized (lock) {
+			return size;
+		}
+	}
+
+	/**
+	 * Returns the cover of the first track in play order that has one. Tracks
+	 * read with a shared {@link org.audio.metadata.ArtworkStore} all reference
+	 * the same instance.
+	 *
+	 * @return album cover, {@code null} if no track has one
+	 */
+	public CoverArt getArtwork() {
+		synchronized (lock) {
+			for (Disc disc : discs.values()) {
+				CoverArt artwork = disc.artwork();
+				if (artwork != null) {
+					return artwork;
+				}
+			}
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return artist + " - " + name;
+	}
+}
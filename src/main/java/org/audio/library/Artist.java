@@ -0,0 +1,72 @@
+package org.audio.library;
+
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Albums sharing an album artist, ordered by name.
+ */
+public class Artist {
+
+	/**
+	 * Name as first seen
+	 */
+	private final String name;
+
+	/**
+	 * Albums keyed by normalized name
+	 */
+	private final TreeMap<String, Album> albums = new TreeMap<>();
+
+	/**
+	 * Monitor of the owning {@link Library}, held while reading the albums
+	 */
+	private final Object lock;
+
+	/**
+	 * @param name artist name
+	 * @param lock monitor guarding the library the artist belongs to
+	 */
+	Artist(String name, Object lock) {
+		this.name = name;
+		this.lock = lock;
+	}
+
+	/**
+	 * @param key   normalized album name
+	 * @param album album to be added
+	 */
+	void add(String key, Album album) {
+		albums.put(key, album);
+	}
+
+	/**
+	 * @param key normalized album name
+	 * @return true if the artist has no albums left
+	 */
+	boolean remove(String key) {
+		albums.remove(key);
+		return albums.isEmpty();
+	}
+
+	/**
+	 * @return artist name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return snapshot of the albums ordered by name
+	 */
+	public List<Album> getAlbums() {
+		synchronized (lock) {
+			return List.copyOf(albums.values());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,83 @@
+package org.audio.library;
+
+import java.util.List;
+import java.util.TreeSet;
+
+import org.audio.metadata.CoverArt;
+
+/**
+ * Tracks of an {@link Album} sharing a disc number, kept in track order.
+ */
+public class Disc {
+
+	/**
+	 * Disc number, 0 if unknown
+	 */
+	private final int number;
+
+	/**
+	 * Tracks in play order
+	 */
+	private final TreeSet<Track> tracks = new TreeSet<>(Track.ORDER);
+
+	/**
+	 * Monitor of the owning {@link Library}, held while reading the tracks
+	 */
+	private final Object lock;
+
+	/**
+	 * @param number disc number, 0 if unknown
+	 * @param lock   monitor guarding the library the disc belongs to
+	 */
+	Disc(int number, Object lock) {
+		this.number = number;
+		this.lock = lock;
+	}
+
+	/**
+	 * @param track track to be added
+	 */
+	void add(Track track) {
+		tracks.add(track);
+	}
+
+	/**
+	 * @param track track to be removed
+	 * @return true if the disc is now empty
+	 */
+	boolean remove(Track track) {
+		tracks.remove(track);
+		return tracks.isEmpty();
+	}
+
+	/**
+	 * @return cover of the first track in play order that has one,
+	 *         {@code null} if none does
+	 */
+	CoverArt artwork() {
+		synchronized (lock) {
+			for (Track track : tracks) {
+				if (track.getArtwork() != null) {
+					return track.getArtwork();
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * @return disc number, 0 if unknown
+	 */
+	public int getNumber() {
+		return number;
+	}
+
+	/**
+	 * @return snapshot of the tracks in play order
+	 */
+	public List<Track> getTracks() {
+		synchronized (lock) {
+			return List.copyOf(tracks);
+		}
+	}
+}
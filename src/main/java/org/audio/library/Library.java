@@ -0,0 +1,210 @@
+package org.audio.library;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.audio.metadata.ArtworkStore;
+import org.audio.metadata.CoverArt;
+import org.audio.metadata.Metadata;
+
+/**
+ * Albums, discs and artists of a collection of files, maintained as files
+ * are added, changed and removed.
+ *
+ * <p>
+ * Tracks are grouped by album artist (falling back to the accompaniment,
+ * where ID3 keeps it, then to the artist) and album name, compared without
+ * case or diacritics, then by disc number, and sorted by track number within
+ * a disc. Each level is a sorted tree, so changing a single file costs
+ * O(log n) rather than regrouping the whole collection. Empty discs, albums
+ * and artists are dropped. Accessors return snapshots. Safe for use by
+ * concurrent threads.
+ * </p>
+ */
+public class Library {
+
+	/**
+	 * Tracks by normalized file location
+	 */
+	private final Map<Path, Track> tracks = new HashMap<>();
+
+	/**
+	 * Albums keyed by normalized album artist, then normalized album name
+	 */
+	private final TreeMap<String, TreeMap<String, Album>> albums = new TreeMap<>();
+
+	/**
+	 * Artists keyed by normalized name
+	 */
+	private final TreeMap<String, Artist> artists = new TreeMap<>();
+
+	/**
+	 * Store sharing identical covers between tracks, may be {@code null}
+	 */
+	private final ArtworkStore artworkStore;
+
+	/**
+	 * Creates an empty library that keeps covers as read
+	 */
+	public Library() {
+		this(null);
+	}
+
+	/**
+	 * Creates an empty library sharing identical covers through
+	 * {@code artworkStore}.
+	 *
+	 * @param artworkStore store used to intern covers, or {@code null}
+	 */
+	public Library(ArtworkStore artworkStore) {
+		this.artworkStore = artworkStore;
+	}
+
+	/**
+	 * Adds a file, or replaces it if it is already in the library. Only the
+	 * album, disc and artist the file leaves and joins are touched.
+	 *
+	 * @param file     location of the audio file
+	 * @param metadata metadata read from {@code file}
+	 * @return the new track
+	 */
+	public Track put(Path file, Metadata metadata) {
+		Path key = file.toAbsolutePath().normalize();
+		Track track = new Track(key, metadata, artwork(metadata));
+
+		synchronized (this) {
+			Track previous = tracks.put(key, track);
+			if (previous != null) {
+				detach(previous);
+			}
+			attach(track);
+		}
+		return track;
+	}
+
+	/**
+	 * Removes a file from the library
+	 *
+	 * @param file location of the audio file
+	 * @return the removed track, {@code null} if the file was not in the
+	 *         library
+	 */
+	public synchronized Track remove(Path file) {
+		Track track = tracks.remove(file.toAbsolutePath().normalize());
+		if (track != null) {
+			detach(track);
+		}
+		return track;
+	}
+
+	/**
+	 * @param file location of the audio file
+	 * @return the file's track, {@code null} if it is not in the library
+	 */
+	public synchronized Track getTrack(Path file) {
+		return tracks.get(file.toAbsolutePath().normalize());
+	}
+
+	/**
+	 * @param artist album artist
+	 * @param name   album name
+	 * @return the album, {@code null} if there is none
+	 */
+	public synchronized Album getAlbum(String artist, String name) {
+		TreeMap<String, Album> byName = albums.get(SearchIndex.normalize(artist.strip()));
+		return byName == null ? null : byName.get(SearchIndex.normalize(name.strip()));
+	}
+
+	/**
+	 * @param name album artist
+	 * @return the artist, {@code null} if there is none
+	 */
+	public synchronized Artist getArtist(String name) {
+		return artists.get(SearchIndex.normalize(name.strip()));
+	}
+
+	/**
+	 * @return snapshot of all artists ordered by name
+	 */
+	public synchronized List<Artist> getArtists() {
+		return List.copyOf(artists.values());
+	}
+
+	/**
+	 * @return snapshot of all albums ordered by artist, then name
+	 */
+	public synchronized List<Album> getAlbums() {
+		return albums.values().stream().flatMap(byName -> byName.values().stream()).toList();
+	}
+
+	/**
+	 * @return number of files in the library
+	 */
+	public synchronized int size() {
+		return tracks.size();
+	}
+
+	/**
+	 * Picks the cover shown for a track: the front cover, or else the first
+	 * image.
+	 *
+	 * @param metadata metadata read from a file
+	 * @return shared cover, {@code null} if the file has no images
+	 */
+	private CoverArt artwork(Metadata metadata) {
+		List<CoverArt> images = metadata.getImages();
+		if (images.isEmpty()) {
+			return null;
+		}
+
+		CoverArt artwork = images.get(0);
+		for (CoverArt image : images) {
+			if (image.getPictureType() == CoverArt.TYPE_FRONT_COVER) {
+				artwork = image;
+				break;
+			}
+		}
+		return artworkStore == null ? artwork : artworkStore.intern(artwork);
+	}
+
+	/**
+	 * Adds {@code track} to its artist, album and disc, creating them if
+	 * needed.
+	 *
+	 * @param track new track
+	 */
+	private void attach(Track track) {
+		String artistKey = SearchIndex.normalize(track.getAlbumArtist());
+		String albumKey = SearchIndex.normalize(track.getAlbum());
+
+		Album album = albums.computeIfAbsent(artistKey, key -> new TreeMap<>()).computeIfAbsent(albumKey,
+				key -> new Album(track.getAlbum(), track.getAlbumArtist(), this));
+		album.add(track);
+		artists.computeIfAbsent(artistKey, key -> new Artist(track.getAlbumArtist(), this)).add(albumKey, album);
+	}
+
+	/**
+	 * Removes {@code track} from its artist, album and disc, dropping them once
+	 * empty.
+	 *
+	 * @param track track leaving the library
+	 */
+	private void detach(Track track) {
+		String artistKey = SearchIndex.normalize(track.getAlbumArtist());
+		String albumKey = SearchIndex.normalize(track.getAlbum());
+
+		TreeMap<String, Album> byName = albums.get(artistKey);
+		if (byName.get(albumKey).remove(track)) {
+			byName.remove(albumKey);
+			if (byName.isEmpty()) {
+				albums.remove(artistKey);
+			}
+			if (artists.get(artistKey).remove(albumKey)) {
+				artists.remove(artistKey);
+			}
+		}
+	}
+}
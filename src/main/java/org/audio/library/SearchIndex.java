@@ -0,0 +1,598 @@
+package org.audio.library;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.Metadata;
+
+/**
+ * In-memory full text and faceted index over scanned {@link Metadata}.
+ *
+ * <p>
+ * Every added track receives a sequential id. Text fields are split into
+ * tokens folded to lower case without diacritics, and each token keeps a
+ * posting list of track ids, delta and variable length encoded, in a sorted
+ * map per field so that prefixes are a range lookup. Queries match tracks
+ * containing every query token, the last one as a prefix so results can be
+ * shown while typing. Facet fields additionally store the value ordinals of
+ * every track, so counting a result set costs one array lookup per hit.
+ * </p>
+ *
+ * <p>
+ * Tracks can be added while other threads query the index.
+ * </p>
+ */
+public class SearchIndex {
+
+	/**
+	 * Fields searched by default
+	 */
+	public static final Set<String> DEFAULT_FIELDS = Set.of(Constants.ARTIST_NAME, Constants.ALBUM_ARTIST_NAME,
+			Constants.ALBUM_NAME, Constants.TITLE, Constants.GENRE, Constants.COMPOSER);
+
+	/**
+	 * Fields counted by default
+	 */
+	public static final Set<String> DEFAULT_FACETS = Set.of(Constants.GENRE, Constants.YEAR,
+			Constants.ALBUM_ARTIST_NAME);
+
+	/**
+	 * Anything that is neither a letter nor a digit separates tokens
+	 */
+	private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+	/**
+	 * Combining marks left behind by canonical decomposition
+	 */
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+	/**
+	 * Sorted posting lists of each searchable field
+	 */
+	private final Map<String, TreeMap<String, Postings>> fields = new HashMap<>();
+
+	/**
+	 * Value ordinals of each facet field
+	 */
+	private final Map<String, Facet> facets = new HashMap<>();
+
+	/**
+	 * Number of tracks added so far, also the next track id
+	 */
+	private int size;
+
+	/**
+	 * Guards all of the above
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Creates an index over {@link #DEFAULT_FIELDS} and {@link #DEFAULT_FACETS}
+	 */
+	public SearchIndex() {
+		this(DEFAULT_FIELDS, DEFAULT_FACETS);
+	}
+
+	/**
+	 * Creates an index over the given fields
+	 *
+	 * @param searchable {@link Constants} names of fields to search
+	 * @param faceted    {@link Constants} names of fields to count
+	 */
+	public SearchIndex(Collection<String> searchable, Collection<String> faceted) {
+		for (String field : searchable) {
+			fields.put(field, new TreeMap<>());
+		}
+		for (String field : faceted) {
+			facets.put(field, new Facet());
+		}
+	}
+
+	/**
+	 * Adds a track to the index
+	 *
+	 * @param metadata text fields of the track
+	 * @return id of the track, assigned sequentially from 0
+	 */
+	public int add(Metadata metadata) {
+		lock.writeLock().lock();
+		try {
+			int id = size++;
+			for (Map.Entry<String, TreeMap<String, Postings>> field : fields.entrySet()) {
+				for (String value : metadata.getTextField(field.getKey())) {
+					for (String token : tokenize(value)) {
+						field.getValue().computeIfAbsent(token, key -> new Postings()).add(id);
+					}
+				}
+			}
+			for (Map.Entry<String, Facet> facet : facets.entrySet()) {
+				facet.getValue().add(id, metadata.getTextField(facet.getKey()));
+			}
+			return id;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return number of tracks in the index
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds tracks matching {@code query} in any searchable field
+	 *
+	 * @param query words to find, the last one may be incomplete
+	 * @return sorted ids of tracks containing every word
+	 */
+	public int[] search(String query) {
+		lock.readLock().lock();
+		try {
+			return search(fields.values(), query);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds tracks matching {@code query} in a single field
+	 *
+	 * @param field {@link Constants} name of a searchable field
+	 * @param query words to find, the last one may be incomplete
+	 * @return sorted ids of tracks containing every word in {@code field}
+	 * @throws IllegalArgumentException if {@code field} is not searchable
+	 */
+	public int[] search(String field, String query) {
+		lock.readLock().lock();
+		try {
+			return search(List.of(terms(field)), query);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Suggests completions for a partially typed word
+	 *
+	 * @param field  {@link Constants} name of a searchable field
+	 * @param prefix start of the word
+	 * @param limit  maximum number of suggestions
+	 * @return normalized words starting with {@code prefix}, most frequent
+	 *         first
+	 * @throws IllegalArgumentException if {@code field} is not searchable
+	 */
+	public List<String> complete(String field, String prefix, int limit) {
+		lock.readLock().lock();
+		try {
+			List<Map.Entry<String, Postings>> matches = new ArrayList<>(
+					withPrefix(terms(field), normalize(prefix).strip()).entrySet());
+			matches.sort(Comparator.comparingInt((Map.Entry<String, Postings> entry) -> entry.getValue().count)
+					.reversed());
+
+			List<String> words = new ArrayList<>();
+			for (int i = 0; i < matches.size() && i < limit; ++i) {
+				words.add(matches.get(i).getKey());
+			}
+			return words;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Counts the values of a facet field among {@code hits}
+	 *
+	 * @param field {@link Constants} name of a facet field
+	 * @param hits  track ids, e.g. from {@link #search(String)}
+	 * @return number of hits per value, most frequent first
+	 * @throws IllegalArgumentException if {@code field} is not a facet
+	 */
+	public Map<String, Integer> facetCounts(String field, int[] hits) {
+		lock.readLock().lock();
+		try {
+			Facet facet = facet(field);
+			int[] counts = new int[facet.values.size()];
+			int[] seen = new int[16];
+			int found = 0;
+			for (int hit : hits) {
+				for (int i = facet.offset(hit); i < facet.offset(hit + 1); ++i) {
+					int ordinal = facet.ordinals[i];
+					if (counts[ordinal]++ == 0) {
+						if (found == seen.length) {
+							seen = Arrays.copyOf(seen, found * 2);
+						}
+						seen[found++] = ordinal;
+					}
+				}
+			}
+
+			// only values among the hits are sorted, most frequent then lowest
+			// ordinal first, packed into primitives so nothing is boxed
+			long[] order = new long[found];
+			for (int i = 0; i < found; ++i) {
+				order[i] = (long) -counts[seen[i]] << 32 | seen[i];
+			}
+			Arrays.sort(order);
+
+			Map<String, Integer> result = new LinkedHashMap<>();
+			for (long key : order) {
+				int ordinal = (int) key;
+				result.put(facet.values.get(ordinal), counts[ordinal]);
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Narrows {@code hits} to tracks with a given facet value
+	 *
+	 * @param field {@link Constants} name of a facet field
+	 * @param value value as returned by {@link #facetCounts(String, int[])}
+	 * @param hits  sorted track ids
+	 * @return sorted ids of the hits having {@code value}
+	 * @throws IllegalArgumentException if {@code field} is not a facet
+	 */
+	public int[] filter(String field, String value, int[] hits) {
+		lock.readLock().lock();
+		try {
+			Facet facet = facet(field);
+			Integer ordinal = facet.lookup.get(normalize(value));
+			if (ordinal == null) {
+				return new int[0];
+			}
+
+			int[] result = new int[hits.length];
+			int count = 0;
+			for (int hit : hits) {
+				for (int i = facet.offset(hit); i < facet.offset(hit + 1); ++i) {
+					if (facet.ordinals[i] == ordinal) {
+						result[count++] = hit;
+						break;
+					}
+				}
+			}
+			return Arrays.copyOf(result, count);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Folds case and removes diacritics, so that "Beyoncé" matches "beyonce"
+	 *
+	 * @param text original text
+	 * @return lower case text without combining marks
+	 */
+	public static String normalize(String text) {
+		String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+		return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @param text original text
+	 * @return normalized words of {@code text}
+	 */
+	private static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<>();
+		for (String token : SEPARATOR.split(normalize(text))) {
+			if (!token.isEmpty()) {
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * @param field {@link Constants} name of a searchable field
+	 * @return posting lists of {@code field}
+	 */
+	private TreeMap<String, Postings> terms(String field) {
+		TreeMap<String, Postings> terms = fields.get(field);
+		if (terms == null) {
+			throw new IllegalArgumentException("Field is not searchable: " + field);
+		}
+		return terms;
+	}
+
+	/**
+	 * @param field {@link Constants} name of a facet field
+	 * @return value ordinals of {@code field}
+	 */
+	private Facet facet(String field) {
+		Facet facet = facets.get(field);
+		if (facet == null) {
+			throw new IllegalArgumentException("Field is not a facet: " + field);
+		}
+		return facet;
+	}
+
+	/**
+	 * @param terms  sorted posting lists
+	 * @param prefix normalized prefix
+	 * @return posting lists of all words starting with {@code prefix}
+	 */
+	private static NavigableMap<String, Postings> withPrefix(TreeMap<String, Postings> terms, String prefix) {
+		return terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+	}
+
+	/**
+	 * Intersects the tracks matching each query word in any of {@code searched}
+	 *
+	 * @param searched posting lists of the fields to search
+	 * @param query    words to find, the last one may be incomplete
+	 * @return sorted track ids
+	 */
+	private int[] search(Collection<TreeMap<String, Postings>> searched, String query) {
+		List<String> tokens = tokenize(query);
+		if (tokens.isEmpty()) {
+			return new int[0];
+		}
+
+		int[] result = null;
+		for (int t = 0; t < tokens.size(); ++t) {
+			boolean prefix = t == tokens.size() - 1;
+			List<Postings> matches = new ArrayList<>();
+			for (TreeMap<String, Postings> terms : searched) {
+				if (prefix) {
+					matches.addAll(withPrefix(terms, tokens.get(t)).values());
+				} else {
+					Postings postings = terms.get(tokens.get(t));
+					if (postings != null) {
+						matches.add(postings);
+					}
+				}
+			}
+
+			int[] ids = union(matches);
+			result = result == null ? ids : intersect(result, ids);
+			if (result.length == 0) {
+				break;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param matches posting lists
+	 * @return sorted ids contained in any of {@code matches}
+	 */
+	private int[] union(List<Postings> matches) {
+		if (matches.isEmpty()) {
+			return new int[0];
+		}
+		if (matches.size() == 1) {
+			return matches.get(0).decode();
+		}
+
+		BitSet union = new BitSet(size);
+		for (Postings postings : matches) {
+			postings.forEach(union::set);
+		}
+		return union.stream().toArray();
+	}
+
+	/**
+	 * @param a sorted ids
+	 * @param b sorted ids
+	 * @return sorted ids contained in both
+	 */
+	private static int[] intersect(int[] a, int[] b) {
+		int[] result = new int[Math.min(a.length, b.length)];
+		int count = 0;
+		for (int i = 0, j = 0; i < a.length && j < b.length;) {
+			if (a[i] < b[j]) {
+				++i;
+			} else if (a[i] > b[j]) {
+				++j;
+			} else {
+				result[count++] = a[i];
+				++i;
+				++j;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Receives decoded track ids
+	 */
+	@FunctionalInterface
+	private interface IdConsumer {
+
+		/**
+		 * @param id track id
+		 */
+		void accept(int id);
+	}
+
+	/**
+	 * Ascending track ids stored as variable length gaps
+	 */
+	private static final class Postings {
+
+		/**
+		 * Gaps between ids, seven bits per byte, high bit set on all but the
+		 * last byte of a gap
+		 */
+		private byte[] data = new byte[4];
+
+		/**
+		 * Number of bytes used in {@code data}
+		 */
+		private int length;
+
+		/**
+		 * Number of ids stored
+		 */
+		private int count;
+
+		/**
+		 * Last id stored
+		 */
+		private int last = -1;
+
+		/**
+		 * Appends {@code id}, ignoring repeats of the last id
+		 *
+		 * @param id track id, not less than the last one
+		 */
+		void add(int id) {
+			if (id == last) {
+				return;
+			}
+			if (length + 5 > data.length) {
+				data = Arrays.copyOf(data, data.length * 2);
+			}
+
+			int gap = id - last - 1;
+			while ((gap & ~0x7F) != 0) {
+				data[length++] = (byte) ((gap & 0x7F) | 0x80);
+				gap >>>= 7;
+			}
+			data[length++] = (byte) gap;
+			last = id;
+			++count;
+		}
+
+		/**
+		 * @param consumer receives every id in ascending order
+		 */
+		void forEach(IdConsumer consumer) {
+			int id = -1;
+			for (int position = 0; position < length;) {
+				int gap = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = data[position++];
+					gap |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+				id += gap + 1;
+				consumer.accept(id);
+			}
+		}
+
+		/**
+		 * @return all ids in ascending order
+		 */
+		int[] decode() {
+			int[] ids = new int[count];
+			int[] index = { 0 };
+			forEach(id -> ids[index[0]++] = id);
+			return ids;
+		}
+	}
+
+	/**
+	 * Values of a facet field per track, stored row by row like a sparse
+	 * matrix: the ordinals of track {@code id} are
+	 * {@code ordinals[starts[id]]} up to {@code ordinals[starts[id + 1]]}.
+	 */
+	private static final class Facet {
+
+		/**
+		 * Display value of each ordinal, the first spelling seen
+		 */
+		private final List<String> values = new ArrayList<>();
+
+		/**
+		 * Ordinal of each normalized value
+		 */
+		private final Map<String, Integer> lookup = new HashMap<>();
+
+		/**
+		 * Value ordinals of all tracks, in track order
+		 */
+		private int[] ordinals = new int[16];
+
+		/**
+		 * Number of entries used in {@code ordinals}
+		 */
+		private int used;
+
+		/**
+		 * Index into {@code ordinals} where each track starts
+		 */
+		private int[] starts = new int[16];
+
+		/**
+		 * Number of tracks recorded
+		 */
+		private int tracks;
+
+		/**
+		 * Records the values of the next track
+		 *
+		 * @param id     track id, one past the last one recorded
+		 * @param values original values of the field
+		 */
+		void add(int id, List<String> values) {
+			if (id + 2 > starts.length) {
+				starts = Arrays.copyOf(starts, starts.length * 2);
+			}
+			starts[id] = used;
+
+			for (String value : values) {
+				String display = value.strip();
+				if (display.isEmpty()) {
+					continue;
+				}
+				Integer ordinal = lookup.computeIfAbsent(normalize(display), key -> {
+					this.values.add(display);
+					return this.values.size() - 1;
+				});
+
+				// spellings that only differ in case count once
+				boolean repeated = false;
+				for (int i = starts[id]; i < used; ++i) {
+					repeated |= ordinals[i] == ordinal;
+				}
+				if (repeated) {
+					continue;
+				}
+
+				if (used == ordinals.length) {
+					ordinals = Arrays.copyOf(ordinals, ordinals.length * 2);
+				}
+				ordinals[used++] = ordinal;
+			}
+
+			tracks = id + 1;
+			starts[tracks] = used;
+		}
+
+		/**
+		 * @param id track id, or the number of tracks
+		 * @return index into {@code ordinals} where track {@code id} starts
+		 */
+		int offset(int id) {
+			return id < tracks ? starts[id] : used;
+		}
+	}
+}
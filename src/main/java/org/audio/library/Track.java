@@ -0,0 +1,183 @@
+package org.audio.library;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.CoverArt;
+import org.audio.metadata.Metadata;
+
+/**
+ * A single file of a {@link Library}, along with the fields used to group
+ * and order it.
+ */
+public class Track {
+
+	/**
+	 * Order within a disc: numbered tracks first, then by title and file
+	 */
+	static final Comparator<Track> ORDER = Comparator.comparingInt(Track::sortNumber)
+			.thenComparing(track -> track.sortTitle).thenComparing(Track::getFile);
+
+	/**
+	 * Location of the audio file
+	 */
+	private final Path file;
+
+	/**
+	 * Metadata read from the file
+	 */
+	private final Metadata metadata;
+
+	/**
+	 * Title, empty if unknown
+	 */
+	private final String title;
+
+	/**
+	 * Title folded for sorting
+	 */
+	private final String sortTitle;
+
+	/**
+	 * Album name, empty if unknown
+	 */
+	private final String album;
+
+	/**
+	 * Album artist, falling back to the track artist, empty if unknown
+	 */
+	private final String albumArtist;
+
+	/**
+	 * Disc number, 0 if unknown
+	 */
+	private final int discNumber;
+
+	/**
+	 * Track number, 0 if unknown
+	 */
+	private final int trackNumber;
+
+	/**
+	 * Cover shown for this track, {@code null} if there is none
+	 */
+	private final CoverArt artwork;
+
+	/**
+	 * @param file     location of the audio file
+	 * @param metadata metadata read from the file
+	 * @param artwork  cover shown for this track, {@code null} if there is none
+	 */
+	Track(Path file, Metadata metadata, CoverArt artwork) {
+		this.file = file;
+		this.metadata = metadata;
+		this.artwork = artwork;
+		this.title = first(metadata, Constants.TITLE);
+		this.sortTitle = SearchIndex.normalize(title);
+		this.album = first(metadata, Constants.ALBUM_NAME);
+
+		// ID3 keeps the album artist in TPE2, which is read as the accompaniment
+		String albumArtist = first(metadata, Constants.ALBUM_ARTIST_NAME);
+		if (albumArtist.isEmpty()) {
+			albumArtist = first(metadata, Constants.ACCOMPANIMENT);
+		}
+		this.albumArtist = albumArtist.isEmpty() ? first(metadata, Constants.ARTIST_NAME) : albumArtist;
+
+		this.discNumber = number(first(metadata, Constants.DISC_NUMBER));
+		this.trackNumber = number(first(metadata, Constants.TRACK_NUMBER));
+	}
+
+	/**
+	 * @param metadata metadata read from a file
+	 * @param tag      simple name of text field
+	 * @return first value of {@code tag} without surrounding white space, empty
+	 *         if there is none
+	 */
+	private static String first(Metadata metadata, String tag) {
+		List<String> values = metadata.getTextField(tag);
+		return values.isEmpty() ? "" : values.get(0).strip();
+	}
+
+	/**
+	 * @param value number as stored in tags, e.g. "3" or "3/12"
+	 * @return leading number, 0 if there is none
+	 */
+	private static int number(String value) {
+		int number = 0;
+		for (int i = 0; i < value.length() && Character.isDigit(value.charAt(i)) && number < 100_000; ++i) {
+			number = number * 10 + Character.digit(value.charAt(i), 10);
+		}
+		return number;
+	}
+
+	/**
+	 * @return track number, unnumbered tracks last
+	 */
+	private int sortNumber() {
+		return trackNumber == 0 ? Integer.MAX_VALUE : trackNumber;
+	}
+
+	/**
+	 * @return location of the audio file
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return metadata read from the file
+	 */
+	public Metadata getMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * @return title, empty if unknown
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * @return album name, empty if unknown
+	 */
+	public String getAlbum() {
+		return album;
+	}
+
+	/**
+	 * @return album artist, or the accompaniment or track artist if there is
+	 *         none
+	 */
+	public String getAlbumArtist() {
+		return albumArtist;
+	}
+
+	/**
+	 * @return disc number, 0 if unknown
+	 */
+	public int getDiscNumber() {
+		return discNumber;
+	}
+
+	/**
+	 * @return track number, 0 if unknown
+	 */
+	public int getTrackNumber() {
+		return trackNumber;
+	}
+
+	/**
+	 * @return cover shown for this track, {@code null} if there is none
+	 */
+	public CoverArt getArtwork() {
+		return artwork;
+	}
+
+	@Override
+	public String toString() {
+		return discNumber + "-" + trackNumber + " " + title + " (" + file + ")";
+	}
+}
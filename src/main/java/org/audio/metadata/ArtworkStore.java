@@ -0,0 +1,156 @@
+package org.audio.metadata;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed store that lets identical images embedded in many files
+ * share a single copy in memory.
+ * 
+ * <p>
+ * Every track of an album usually carries the same cover. When readers are
+ * given a store, each extracted image is hashed and replaced by the instance
+ * already in the store, so a library keeps one copy per distinct image rather
+ * than one per track. Entries are weakly referenced and disappear once no
+ * {@link Metadata} uses them. Safe for use by concurrent readers.
+ * </p>
+ */
+public class ArtworkStore {
+
+	/**
+	 * Weak reference remembering its key so stale entries can be removed
+	 */
+	private static final class Entry extends WeakReference<CoverArt> {
+
+		/**
+		 * content hash the image is stored under
+		 */
+		private final String hash;
+
+		/**
+		 * Creates a new entry registered with {@code queue}.
+		 * 
+		 * @param hash  content hash of {@code image}
+		 * @param image shared image
+		 * @param queue queue notified once {@code image} is collected
+		 */
+		private Entry(String hash, CoverArt image, ReferenceQueue<CoverArt> queue) {
+			super(image, queue);
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * Shared images keyed by content hash
+	 */
+	private final ConcurrentMap<String, Entry> images = new ConcurrentHashMap<>();
+
+	/**
+	 * Entries whose images have been garbage collected
+	 */
+	private final ReferenceQueue<CoverArt> collected = new ReferenceQueue<>();
+
+	/**
+	 * Number of images replaced by an existing copy
+	 */
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * Number of images added to the store
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Number of image bytes not kept in memory thanks to the store
+	 */
+	private final AtomicLong bytesSaved = new AtomicLong();
+
+	/**
+	 * Returns the shared instance for the content of {@code image}, adding
+	 * {@code image} to the store if its content has not been seen yet.
+	 * 
+	 * <p>
+	 * If an image with the same content but a different MIME type, picture type
+	 * or description is already stored, a new instance sharing the stored bytes
+	 * is returned.
+	 * </p>
+	 * 
+	 * @param image newly extracted image
+	 * @return an equivalent image backed by the shared copy of its bytes
+	 */
+	public CoverArt intern(CoverArt image) {
+		expungeCollected();
+
+		String hash = image.getContentHash();
+		while (true) {
+			Entry entry = images.get(hash);
+			CoverArt shared = entry == null ? null : entry.get();
+
+			if (shared != null && shared.getLength() == image.getLength()) {
+				hits.incrementAndGet();
+				bytesSaved.addAndGet(image.getLength());
+
+				if (shared.getMimeType().equals(image.getMimeType())
+						&& shared.getPictureType() == image.getPictureType()
+						&& shared.getDescription().equals(image.getDescription())) {
+					return shared;
+				}
+				return new CoverArt(image.getMimeType(), shared.getBinaryData(), 0, shared.getLength(),
+						image.getPictureType(), image.getDescription());
+			}
+
+			// compact slices so that the store never retains whole tag frames
+			image.getBinaryData();
+
+			Entry fresh = new Entry(hash, image, collected);
+			boolean stored = entry == null ? images.putIfAbsent(hash, fresh) == null
+					: images.replace(hash, entry, fresh);
+			if (stored) {
+				misses.incrementAndGet();
+				return image;
+			}
+		}
+	}
+
+	/**
+	 * Removes entries whose images are no longer used.
+	 */
+	private void expungeCollected() {
+		Entry entry;
+		while ((entry = (Entry) collected.poll()) != null) {
+			images.remove(entry.hash, entry);
+		}
+	}
+
+	/**
+	 * @return number of distinct images currently held
+	 */
+	public int size() {
+		expungeCollected();
+		return images.size();
+	}
+
+	/**
+	 * @return number of extracted images replaced by an existing copy
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of extracted images added to the store
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of image bytes not kept in memory thanks to the store
+	 */
+	public long getBytesSaved() {
+		return bytesSaved.get();
+	}
+}
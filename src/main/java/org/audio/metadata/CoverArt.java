@@ -1,20 +1,69 @@
 package org.audio.metadata;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
 /**
  * Data class for storing images
+ * 
+ * <p>
+ * The image may be a slice of a larger array, such as the tag frame it was
+ * found in, so that extracting it does not require a copy. The slice is only
+ * copied if {@link #getBinaryData()} is called.
+ * </p>
  */
 public class CoverArt {
 
+	/**
+	 * Picture type used when the format does not specify one (ID3 'Other')
+	 */
+	public static final int TYPE_OTHER = 0;
+
+	/**
+	 * Picture type for front covers, shared by ID3 and FLAC
+	 */
+	public static final int TYPE_FRONT_COVER = 3;
+
 	/**
 	 * MIME type + sub-type. ex. image/jpeg
 	 */
 	private String type;
 
 	/**
-	 * Image in byte format
+	 * Array containing the image
 	 */
 	private byte[] imageData;
 
+	/**
+	 * Start of the image within {@code imageData}
+	 */
+	private int offset;
+
+	/**
+	 * Number of bytes in the image
+	 */
+	private int length;
+
+	/**
+	 * ID3/FLAC picture type, e.g. {@link #TYPE_FRONT_COVER}
+	 */
+	private int pictureType;
+
+	/**
+	 * Optional description of the image, empty if none
+	 */
+	private String description;
+
+	/**
+	 * SHA-256 of the image, computed on first use
+	 */
+	private String contentHash;
+
 	/**
 	 * Creates a new CoverArt instance with given data.
 	 * 
@@ -22,19 +71,107 @@ public class CoverArt {
 	 * @param data image data
 	 */
 	public CoverArt(String type, byte[] data) {
+		this(type, data, 0, data.length, TYPE_OTHER, "");
+	}
+
+	/**
+	 * Creates a new CoverArt instance backed by a range of {@code data}, which
+	 * must not be modified afterwards.
+	 * 
+	 * @param type        MIME type
+	 * @param data        array containing the image
+	 * @param offset      start of the image within {@code data}
+	 * @param length      number of bytes in the image
+	 * @param pictureType ID3/FLAC picture type
+	 * @param description description of the image, empty if none
+	 * @throws IndexOutOfBoundsException if the range is outside of {@code data}
+	 */
+	public CoverArt(String type, byte[] data, int offset, int length, int pictureType, String description) {
+		if (offset < 0 || length < 0 || offset + length > data.length) {
+			throw new IndexOutOfBoundsException("Image range outside of data");
+		}
+
 		this.type = type;
 		this.imageData = data;
+		this.offset = offset;
+		this.length = length;
+		this.pictureType = pictureType;
+		this.description = description;
 	}
 
 	/**
 	 * Returns an array of bytes representing an image.
 	 * 
+	 * <p>
+	 * If this image is a slice of a larger array, the slice is copied on the
+	 * first call and the larger array is released.
+	 * </p>
+	 * 
 	 * @return the image in byte[] form.
 	 */
-	public byte[] getBinaryData() {
+	public synchronized byte[] getBinaryData() {
+		if (offset != 0 || length != imageData.length) {
+			imageData = Arrays.copyOfRange(imageData, offset, offset + length);
+			offset = 0;
+		}
 		return imageData;
 	}
 
+	/**
+	 * Passes this image to {@code visitor} without copying it.
+	 *
+	 * @param visitor receiver of the image
+	 */
+	synchronized void accept(MetadataVisitor visitor) {
+		visitor.onImage(imageData, offset, length, type, pictureType, description);
+	}
+
+	/**
+	 * Returns a read-only view of the image without copying it.
+	 * 
+	 * @return buffer positioned at the start of the image
+	 */
+	public synchronized ByteBuffer getData() {
+		return ByteBuffer.wrap(imageData, offset, length).slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns a stream over the image without copying it.
+	 * 
+	 * @return stream positioned at the start of the image
+	 */
+	public synchronized InputStream getInputStream() {
+		return new ByteArrayInputStream(imageData, offset, length);
+	}
+
+	/**
+	 * Returns a hash identifying the image by content, so that identical images
+	 * embedded in different files can be recognized. Computed once per
+	 * instance.
+	 * 
+	 * @return lower case hexadecimal SHA-256 of the image
+	 */
+	public synchronized String getContentHash() {
+		if (contentHash == null) {
+			try {
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				digest.update(imageData, offset, length);
+				contentHash = HexFormat.of().formatHex(digest.digest());
+			} catch (NoSuchAlgorithmException e) {
+				// every Java platform is required to support SHA-256
+				throw new IllegalStateException(e);
+			}
+		}
+		return contentHash;
+	}
+
+	/**
+	 * @return number of bytes in the image
+	 */
+	public int getLength() {
+		return length;
+	}
+
 	/**
 	 * Returns the MIME type, always starts with 'image/'
 	 * 
@@ -43,4 +180,21 @@ public class CoverArt {
 	public String getMimeType() {
 		return type;
 	}
+
+	/**
+	 * Returns the picture type as defined by ID3v2 APIC and FLAC PICTURE, e.g.
+	 * {@link #TYPE_FRONT_COVER}.
+	 * 
+	 * @return picture type, {@link #TYPE_OTHER} if unknown
+	 */
+	public int getPictureType() {
+		return pictureType;
+	}
+
+	/**
+	 * @return description of the image, empty if none
+	 */
+	public String getDescription() {
+		return description;
+	}
 }
@@ -0,0 +1,136 @@
+package org.audio.metadata;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Data class mapping playback time to the byte ranges of the fragments of a
+ * fragmented MP4 file, as listed by its {@code sidx} or {@code mfra} index.
+ *
+ * <p>
+ * Each fragment is a {@code moof} atom followed by its {@code mdat}, and
+ * fragments are stored one after the other, so a segment server can answer a
+ * request for a point in time with a single range read.
+ * </p>
+ */
+public class FragmentIndex {
+
+	/**
+	 * One fragment of the file
+	 *
+	 * @param offset   file position of the fragment's moof atom
+	 * @param size     number of bytes up to the next fragment
+	 * @param start    presentation time of the fragment's first sample
+	 * @param duration playback length of the fragment, null if the index does
+	 *                 not say, as for the last fragment of an mfra index
+	 */
+	public record Fragment(long offset, long size, Duration start, Duration duration) {
+	}
+
+	/**
+	 * End time of an index that does not give the duration of its last fragment
+	 */
+	public static final long OPEN_ENDED = Long.MAX_VALUE;
+
+	/**
+	 * Time units per second
+	 */
+	private final long timescale;
+
+	/**
+	 * Start time of each fragment followed by the end of the last one, in
+	 * {@code timescale} units
+	 */
+	private final long[] times;
+
+	/**
+	 * File position of each fragment
+	 */
+	private final long[] offsets;
+
+	/**
+	 * Size of each fragment
+	 */
+	private final long[] sizes;
+
+	/**
+	 * @param timescale time units per second
+	 * @param times     start time of each fragment in ascending order, followed
+	 *                  by the end of the last one or {@link #OPEN_ENDED}
+	 * @param offsets   file position of each fragment
+	 * @param sizes     size of each fragment
+	 * @throws IllegalArgumentException if the arrays do not match
+	 */
+	public FragmentIndex(long timescale, long[] times, long[] offsets, long[] sizes) {
+		if (timescale <= 0 || offsets.length != sizes.length || times.length != offsets.length + 1) {
+			throw new IllegalArgumentException("Inconsistent fragment index");
+		}
+		this.timescale = timescale;
+		this.times = times.clone();
+		this.offsets = offsets.clone();
+		this.sizes = sizes.clone();
+	}
+
+	/**
+	 * @return number of fragments
+	 */
+	public int size() {
+		return offsets.length;
+	}
+
+	/**
+	 * @param index position of the fragment in the file, from 0
+	 * @return the fragment
+	 * @throws IndexOutOfBoundsException if there is no such fragment
+	 */
+	public Fragment get(int index) {
+		Duration duration = times[index + 1] == OPEN_ENDED ? null : toDuration(times[index + 1] - times[index]);
+		return new Fragment(offsets[index], sizes[index], toDuration(times[index]), duration);
+	}
+
+	/**
+	 * Looks up the fragment playing at {@code time}.
+	 *
+	 * @param time presentation time
+	 * @return the fragment containing {@code time}, or {@code null} if
+	 *         {@code time} is outside of the indexed fragments
+	 */
+	public Fragment find(Duration time) {
+		if (offsets.length == 0 || time.isNegative()) {
+			return null;
+		}
+
+		// split to avoid overflowing for long durations
+		long ticks = time.getSeconds() * timescale + time.getNano() * timescale / 1_000_000_000L;
+		if (ticks < times[0] || ticks >= times[offsets.length]) {
+			return null;
+		}
+
+		int index = Arrays.binarySearch(times, 0, offsets.length, ticks);
+		if (index < 0) {
+			// insertion point follows the fragment starting before ticks
+			index = -index - 2;
+		}
+		return get(index);
+	}
+
+	/**
+	 * @return time units per second of the index
+	 */
+	public long getTimescale() {
+		return timescale;
+	}
+
+	/**
+	 * @param ticks time in {@code timescale} units
+	 * @return the same time as a duration
+	 */
+	private Duration toDuration(long ticks) {
+		return Duration.ofSeconds(ticks / timescale, (ticks % timescale) * 1_000_000_000L / timescale);
+	}
+
+	@Override
+	public String toString() {
+		return offsets.length + " fragments, timescale " + timescale;
+	}
+}
@@ -1,15 +1,25 @@
 package org.audio.metadata;
 
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Data class for storing and structuring extracted metadata.
+ * 
+ * <p>
+ * Also the {@link MetadataVisitor} that readers fill when
+ * {@link org.audio.metadata.reader.MetadataReader#getMetadata()} is called.
+ * </p>
  */
-public class Metadata {
+public class Metadata implements MetadataVisitor {
 
 	/*
 	 * TODO: This needs some work, most text fields cannot have multiple entries.
@@ -29,17 +39,100 @@ public class Metadata {
 	 */
 	private Map<String, List<String>> textFields;
 
+	/**
+	 * Text fields that have not been decoded yet, either because they are
+	 * expensive to decode (compressed or unsynchronised frames) or because they
+	 * were pushed as encoded bytes. Resolved the first time the tag is
+	 * requested.
+	 */
+	private Map<String, List<Supplier<String>>> deferredFields;
+
+	/**
+	 * Number of bytes besides its value that an encoded text field may keep
+	 * reachable before the value is copied out of the reader's array
+	 */
+	private static final int MAX_SHARED_SLACK = 4096;
+
+	/**
+	 * Encoded text field value, decoded when its tag is first requested
+	 *
+	 * @param data     array containing the encoded value
+	 * @param offset   start of the value within {@code data}
+	 * @param length   number of bytes in the value
+	 * @param encoding character set of the value
+	 */
+	private record EncodedText(byte[] data, int offset, int length, Charset encoding) implements Supplier<String> {
+
+		@Override
+		public String get() {
+			return new String(data, offset, length, encoding);
+		}
+	}
+
 	/**
 	 * List of all images embedded in audio file in order of occurrence.
 	 */
 	private List<CoverArt> images;
 
+	/**
+	 * Images that are expensive to decode, resolved the first time images are
+	 * requested.
+	 */
+	private List<Supplier<CoverArt>> deferredImages;
+
+	/**
+	 * Technical properties of the audio stream, null if not determined
+	 */
+	private StreamInfo streamInfo;
+
+	/**
+	 * Time to byte range lookup of a fragmented file, null if not fragmented
+	 */
+	private FragmentIndex fragmentIndex;
+
+	/**
+	 * Optional store through which all images are interned, may be null
+	 */
+	private ArtworkStore artworkStore;
+
+	/**
+	 * Optional interner through which repeated text values are shared, may be
+	 * null
+	 */
+	private StringInterner stringInterner;
+
 	/**
 	 * Initialize new instance with empty collections
 	 */
 	public Metadata() {
+		this(null);
+	}
+
+	/**
+	 * Initialize new instance with empty collections, sharing identical images
+	 * through {@code artworkStore}.
+	 * 
+	 * @param artworkStore store used to intern images, or {@code null}
+	 */
+	public Metadata(ArtworkStore artworkStore) {
+		this(artworkStore, null);
+	}
+
+	/**
+	 * Initialize new instance with empty collections, sharing identical images
+	 * through {@code artworkStore} and repeated text values through
+	 * {@code stringInterner}.
+	 * 
+	 * @param artworkStore   store used to intern images, or {@code null}
+	 * @param stringInterner interner used for text values, or {@code null}
+	 */
+	public Metadata(ArtworkStore artworkStore, StringInterner stringInterner) {
+		this.artworkStore = artworkStore;
+		this.stringInterner = stringInterner;
 		textFields = new HashMap<>();
+		deferredFields = new HashMap<>();
 		images = new ArrayList<>();
+		deferredImages = new ArrayList<>();
 	}
 
 	/**
@@ -50,6 +143,10 @@ public class Metadata {
 	 * @param value text field's value
 	 */
 	public void addTextField(String tag, String value) {
+		if (stringInterner != null) {
+			value = stringInterner.intern(tag, value);
+		}
+
 		// make sure that there are no duplicate entries
 		if (textFields.containsKey(tag)) {
 			if (textFields.get(tag).contains(value)) {
@@ -63,13 +160,182 @@ public class Metadata {
 		textFields.get(tag).add(value);
 	}
 
+	/**
+	 * Adds a text field to the {@code tag} metadata group whose value is only
+	 * decoded once the group is requested. A decoder returning {@code null}
+	 * contributes nothing.
+	 * 
+	 * @param tag     simple name of text field
+	 * @param decoder produces the text field's value
+	 */
+	public void addDeferredTextField(String tag, Supplier<String> decoder) {
+		deferredFields.computeIfAbsent(tag, key -> new ArrayList<>()).add(decoder);
+	}
+
 	/**
 	 * Adds {@code image} to associated images list
 	 * 
 	 * @param image instance of CoverArt created from the {@code AudioFile} header
 	 */
 	public void addImage(CoverArt image) {
-		images.add(image);
+		images.add(artworkStore == null ? image : artworkStore.intern(image));
+	}
+
+	/**
+	 * Adds an image whose data is only decoded once images are requested. A
+	 * decoder returning {@code null} contributes nothing.
+	 * 
+	 * @param decoder produces the image
+	 */
+	public void addDeferredImage(Supplier<CoverArt> decoder) {
+		deferredImages.add(decoder);
+	}
+
+	/**
+	 * Sets the technical properties of the audio stream.
+	 * 
+	 * @param streamInfo sample rate, duration and bitrate of the stream
+	 */
+	public void setStreamInfo(StreamInfo streamInfo) {
+		this.streamInfo = streamInfo;
+	}
+
+	/**
+	 * Sets the fragment index of a fragmented file.
+	 * 
+	 * @param fragmentIndex time to byte range lookup of the file's fragments
+	 */
+	public void setFragmentIndex(FragmentIndex fragmentIndex) {
+		this.fragmentIndex = fragmentIndex;
+	}
+
+	/**
+	 * Adds a text field pushed by a reader without decoding it. The value is
+	 * decoded, and {@code data} released, the first time {@code tag} is
+	 * requested, so fields that are never read are never decoded. Values taken
+	 * from a much larger array, such as a comment block holding a picture or a
+	 * whole ASF header, are copied out so the array can be collected.
+	 */
+	@Override
+	public void onTextField(String tag, byte[] data, int offset, int length, Charset encoding) {
+		if (data.length - length > MAX_SHARED_SLACK) {
+			data = Arrays.copyOfRange(data, offset, offset + length);
+			offset = 0;
+		}
+		addDeferredTextField(tag, new EncodedText(data, offset, length, encoding));
+	}
+
+	/**
+	 * Adds a text field pushed by a reader.
+	 */
+	@Override
+	public void onTextField(String tag, String value) {
+		addTextField(tag, value);
+	}
+
+	/**
+	 * Adds a text field pushed by a reader, keeping it deferred.
+	 */
+	@Override
+	public void onDeferredTextField(String tag, Supplier<String> decoder) {
+		addDeferredTextField(tag, decoder);
+	}
+
+	/**
+	 * Adds an image pushed by a reader, keeping a reference to {@code data}.
+	 */
+	@Override
+	public void onImage(byte[] data, int offset, int length, String mimeType, int pictureType, String description) {
+		addImage(new CoverArt(mimeType, data, offset, length, pictureType, description));
+	}
+
+	/**
+	 * Adds an image pushed by a reader.
+	 */
+	@Override
+	public void onImage(CoverArt image) {
+		addImage(image);
+	}
+
+	/**
+	 * Adds an image pushed by a reader, keeping it deferred.
+	 */
+	@Override
+	public void onDeferredImage(Supplier<CoverArt> decoder) {
+		addDeferredImage(decoder);
+	}
+
+	/**
+	 * Sets the stream information pushed by a reader.
+	 */
+	@Override
+	public void onStreamInfo(StreamInfo streamInfo) {
+		setStreamInfo(streamInfo);
+	}
+
+	/**
+	 * Sets the fragment index pushed by a reader.
+	 */
+	@Override
+	public void onFragmentIndex(FragmentIndex fragmentIndex) {
+		setFragmentIndex(fragmentIndex);
+	}
+
+	/**
+	 * Replays the contents of this instance to {@code visitor}. Deferred values
+	 * are passed on still deferred.
+	 * 
+	 * @param visitor receiver of the text fields, images, stream information and
+	 *                fragment index
+	 */
+	public void accept(MetadataVisitor visitor) {
+		for (Map.Entry<String, List<String>> field : textFields.entrySet()) {
+			for (String value : field.getValue()) {
+				visitor.onTextField(field.getKey(), value);
+			}
+		}
+		for (Map.Entry<String, List<Supplier<String>>> field : deferredFields.entrySet()) {
+			for (Supplier<String> decoder : field.getValue()) {
+				if (decoder instanceof EncodedText text) {
+					visitor.onTextField(field.getKey(), text.data(), text.offset(), text.length(), text.encoding());
+				} else {
+					visitor.onDeferredTextField(field.getKey(), decoder);
+				}
+			}
+		}
+
+		for (CoverArt image : images) {
+			visitor.onImage(image);
+		}
+		for (Supplier<CoverArt> decoder : deferredImages) {
+			visitor.onDeferredImage(decoder);
+		}
+
+		if (streamInfo != null) {
+			visitor.onStreamInfo(streamInfo);
+		}
+		if (fragmentIndex != null) {
+			visitor.onFragmentIndex(fragmentIndex);
+		}
+	}
+
+	/**
+	 * Returns the technical properties of the audio stream.
+	 * 
+	 * @return stream properties, or {@code null} if they were not determined
+	 */
+	public StreamInfo getStreamInfo() {
+		return streamInfo;
+	}
+
+	/**
+	 * Returns the time to byte range lookup of a fragmented MP4 file.
+	 * 
+	 * @return fragment index, or {@code null} if the file is not fragmented or
+	 *         has no index
+	 */
+	public FragmentIndex getFragmentIndex() {
+		return fragmentIndex;
 	}
 
 	/**
@@ -78,6 +344,16 @@ public class Metadata {
 	 * @return unmodifiable view of {@code images}.
 	 */
 	public List<CoverArt> getImages() {
+		if (!deferredImages.isEmpty()) {
+			for (Supplier<CoverArt> decoder : deferredImages) {
+				CoverArt image = decoder.get();
+				if (image != null) {
+					addImage(image);
+				}
+			}
+			deferredImages.clear();
+		}
+
 		// since CoverArt objects are immutable, we shouldn't need to
 		// worry about modifications.
 		return Collections.unmodifiableList(images);
@@ -89,10 +365,119 @@ public class Metadata {
 	 * @return unmodifiable view of {@code textFields}.
 	 */
 	public Map<String, List<String>> getTextFields() {
+		for (String tag : List.copyOf(deferredFields.keySet())) {
+			resolve(tag);
+		}
+
 		Map<String, List<String>> copy = new HashMap<>();
 		for (String key : textFields.keySet()) {
 			copy.put(key, Collections.unmodifiableList(textFields.get(key)));
 		}
 		return Collections.unmodifiableMap(copy);
 	}
+
+	/**
+	 * Merges {@code other} into this instance, where this instance takes
+	 * precedence. Text fields are only copied for tags not already present here,
+	 * while images and stream information are only copied if this instance has
+	 * none.
+	 * 
+	 * @param other metadata of lower precedence, e.g. from a secondary tag
+	 */
+	public void merge(Metadata other) {
+		Set<String> present = new HashSet<>(textFields.keySet());
+		present.addAll(deferredFields.keySet());
+
+		for (Map.Entry<String, List<String>> field : other.textFields.entrySet()) {
+			if (!present.contains(field.getKey())) {
+				textFields.put(field.getKey(), new ArrayList<>(field.getValue()));
+			}
+		}
+		for (Map.Entry<String, List<Supplier<String>>> field : other.deferredFields.entrySet()) {
+			if (!present.contains(field.getKey())) {
+				deferredFields.put(field.getKey(), new ArrayList<>(field.getValue()));
+			}
+		}
+
+		if (images.isEmpty() && deferredImages.isEmpty()) {
+			images.addAll(other.images);
+			deferredImages.addAll(other.deferredImages);
+		}
+
+		if (streamInfo == null) {
+			streamInfo = other.streamInfo;
+		}
+		if (fragmentIndex == null) {
+			fragmentIndex = other.fragmentIndex;
+		}
+	}
+
+	/**
+	 * Appends everything in {@code other} after the contents of this instance,
+	 * as if its fields and images had been added here directly. Used to combine
+	 * parts of a file that were parsed independently.
+	 *
+	 * @param other metadata read from a later part of the same file
+	 */
+	public void addAll(Metadata other) {
+		for (Map.Entry<String, List<String>> field : other.textFields.entrySet()) {
+			for (String value : field.getValue()) {
+				addTextField(field.getKey(), value);
+			}
+		}
+		for (Map.Entry<String, List<Supplier<String>>> field : other.deferredFields.entrySet()) {
+			deferredFields.computeIfAbsent(field.getKey(), key -> new ArrayList<>()).addAll(field.getValue());
+		}
+
+		images.addAll(other.images);
+		deferredImages.addAll(other.deferredImages);
+
+		if (other.streamInfo != null) {
+			streamInfo = other.streamInfo;
+		}
+		if (other.fragmentIndex != null) {
+			fragmentIndex = other.fragmentIndex;
+		}
+	}
+
+	/**
+	 * Returns whether any value, decoded or deferred, exists for {@code tag}.
+	 * 
+	 * @param tag simple name of text field
+	 * @return true if {@code tag} is present
+	 */
+	public boolean hasTextField(String tag) {
+		return textFields.containsKey(tag) || deferredFields.containsKey(tag);
+	}
+
+	/**
+	 * Returns the values of a single text field, decoding only that field if it
+	 * was deferred.
+	 * 
+	 * @param tag simple name of text field
+	 * @return unmodifiable list of values, empty if the tag is not present
+	 */
+	public List<String> getTextField(String tag) {
+		resolve(tag);
+
+		List<String> values = textFields.get(tag);
+		return values == null ? List.of() : Collections.unmodifiableList(values);
+	}
+
+	/**
+	 * Decodes any deferred values of {@code tag} into {@code textFields}.
+	 * 
+	 * @param tag simple name of text field
+	 */
+	private void resolve(String tag) {
+		List<Supplier<String>> decoders = deferredFields.remove(tag);
+		if (decoders != null) {
+			for (Supplier<String> decoder : decoders) {
+				String value = decoder.get();
+				if (value != null) {
+					addTextField(tag, value);
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,123 @@
+package org.audio.metadata;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * Receives metadata as it is parsed, without it first being collected into a
+ * {@link Metadata} instance.
+ *
+ * <p>
+ * Readers push text fields and images as ranges of the arrays they were read
+ * into, so a visitor interested in a few fields only pays for decoding those.
+ * Readers do not modify the arrays afterwards, so a visitor may keep a range
+ * without copying it, but must not modify it either. Values that
+ * are expensive to decode (compressed or unsynchronised frames, base64
+ * pictures) arrive through the deferred callbacks, which decode eagerly
+ * unless overridden. {@link Metadata} is itself a visitor that collects
+ * everything.
+ * </p>
+ */
+public interface MetadataVisitor {
+
+	/**
+	 * Called for each text field value found.
+	 *
+	 * @param tag      simple name of text field, using {@link Constants} wherever
+	 *                 possible
+	 * @param data     array containing the encoded value
+	 * @param offset   start of the value within {@code data}
+	 * @param length   number of bytes in the value, without any terminator
+	 * @param encoding character set of the value
+	 */
+	void onTextField(String tag, byte[] data, int offset, int length, Charset encoding);
+
+	/**
+	 * Called for text field values that are not stored as encoded text, such as
+	 * track numbers held in binary. Encodes {@code value} as UTF-8 unless
+	 * overridden.
+	 *
+	 * @param tag   simple name of text field
+	 * @param value text field's value
+	 */
+	default void onTextField(String tag, String value) {
+		byte[] data = value.getBytes(StandardCharsets.UTF_8);
+		onTextField(tag, data, 0, data.length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Called for text field values that are expensive to decode. Decodes the
+	 * value immediately unless overridden; a decoder returning {@code null}
+	 * contributes nothing.
+	 *
+	 * @param tag     simple name of text field
+	 * @param decoder produces the text field's value
+	 */
+	default void onDeferredTextField(String tag, Supplier<String> decoder) {
+		String value = decoder.get();
+		if (value != null) {
+			onTextField(tag, value);
+		}
+	}
+
+	/**
+	 * Called for each embedded image found.
+	 *
+	 * @param data        array containing the image
+	 * @param offset      start of the image within {@code data}
+	 * @param length      number of bytes in the image
+	 * @param mimeType    MIME type of the image
+	 * @param pictureType ID3/FLAC picture type, e.g.
+	 *                    {@link CoverArt#TYPE_FRONT_COVER}
+	 * @param description description of the image, empty if none
+	 */
+	void onImage(byte[] data, int offset, int length, String mimeType, int pictureType, String description);
+
+	/**
+	 * Called for images a reader has already wrapped in a {@link CoverArt}.
+	 * Passes the image's range on without copying unless overridden.
+	 *
+	 * @param image extracted image
+	 */
+	default void onImage(CoverArt image) {
+		image.accept(this);
+	}
+
+	/**
+	 * Called for images that are expensive to decode. Decodes the image
+	 * immediately unless overridden; a decoder returning {@code null}
+	 * contributes nothing.
+	 *
+	 * @param decoder produces the image
+	 */
+	default void onDeferredImage(Supplier<CoverArt> decoder) {
+		CoverArt image = decoder.get();
+		if (image != null) {
+			onImage(image);
+		}
+	}
+
+	/**
+	 * Called with the technical properties of the audio stream, if the reader
+	 * determines them.
+	 *
+	 * @param streamInfo sample rate, duration and bitrate of the stream
+	 */
+	default void onStreamInfo(StreamInfo streamInfo) {
+	}
+
+	/**
+	 * Called with the fragment index of fragmented MP4 files.
+	 *
+	 * @param index time to byte range lookup of the file's fragments
+	 */
+	default void onFragmentIndex(FragmentIndex index) {
+	}
+
+	/**
+	 * Called once after a reader has finished with its source.
+	 */
+	default void onEnd() {
+	}
+}
@@ -0,0 +1,102 @@
+package org.audio.metadata;
+
+import java.time.Duration;
+
+/**
+ * Data class for storing technical properties of the audio stream, as
+ * opposed to the descriptive text fields.
+ */
+public class StreamInfo {
+
+	/**
+	 * Samples per second of decoded audio
+	 */
+	private int sampleRate;
+
+	/**
+	 * Number of audio channels, 0 if unknown
+	 */
+	private int channels;
+
+	/**
+	 * Playback length
+	 */
+	private Duration duration;
+
+	/**
+	 * Average bits per second of the encoded audio, 0 if unknown
+	 */
+	private int bitrate;
+
+	/**
+	 * Codec identifier as stored in the file, null if unknown
+	 */
+	private String codec;
+
+	/**
+	 * @param sampleRate samples per second of decoded audio
+	 * @param channels   number of audio channels, 0 if unknown
+	 * @param duration   playback length
+	 * @param bitrate    average bits per second, 0 if unknown
+	 */
+	public StreamInfo(int sampleRate, int channels, Duration duration, int bitrate) {
+		this(sampleRate, channels, duration, bitrate, null);
+	}
+
+	/**
+	 * @param sampleRate samples per second of decoded audio
+	 * @param channels   number of audio channels, 0 if unknown
+	 * @param duration   playback length
+	 * @param bitrate    average bits per second, 0 if unknown
+	 * @param codec      codec identifier as stored in the file, null if unknown
+	 */
+	public StreamInfo(int sampleRate, int channels, Duration duration, int bitrate, String codec) {
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+		this.duration = duration;
+		this.bitrate = bitrate;
+		this.codec = codec;
+	}
+
+	/**
+	 * @return samples per second of decoded audio
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * @return number of audio channels, 0 if unknown
+	 */
+	public int getChannels() {
+		return channels;
+	}
+
+	/**
+	 * @return playback length
+	 */
+	public Duration getDuration() {
+		return duration;
+	}
+
+	/**
+	 * @return average bits per second of the encoded audio, 0 if unknown
+	 */
+	public int getBitrate() {
+		return bitrate;
+	}
+
+	/**
+	 * @return codec identifier as stored in the file, such as {@code A_OPUS} in
+	 *         Matroska, null if unknown
+	 */
+	public String getCodec() {
+		return codec;
+	}
+
+	@Override
+	public String toString() {
+		String text = sampleRate + " Hz, " + channels + " channels, " + duration + ", " + bitrate + " bps";
+		return codec == null ? text : codec + ", " + text;
+	}
+}
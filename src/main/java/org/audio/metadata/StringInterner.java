@@ -0,0 +1,204 @@
+package org.audio.metadata;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets identical text field values read from many files share a single
+ * {@code String} in memory.
+ *
+ * <p>
+ * Across a library, values such as artist, album artist, genre, encoder and
+ * publisher repeat on every track of an album and often across thousands of
+ * albums. When a {@link Metadata} is given an interner, each value of one of
+ * the interned tags is replaced by the instance already held here, so a
+ * library keeps one copy per distinct value rather than one per track. Only
+ * values of at most {@code maxLength} characters are interned, since long
+ * values rarely repeat.
+ * </p>
+ *
+ * <p>
+ * Values are weakly referenced and disappear once no {@code Metadata} uses
+ * them. The table is split into stripes, each guarded by its own lock, so
+ * concurrent readers seldom wait for each other.
+ * </p>
+ */
+public class StringInterner {
+
+	/**
+	 * Tags whose values typically repeat across tracks
+	 */
+	public static final Set<String> DEFAULT_TAGS = Set.of(Constants.ARTIST_NAME, Constants.ALBUM_ARTIST_NAME,
+			Constants.ALBUM_NAME, Constants.GENRE, Constants.YEAR, Constants.DATE, Constants.COMPOSER,
+			Constants.CONDUCTOR, Constants.ACCOMPANIMENT, Constants.PUBLISHER, Constants.COPYRIGHT,
+			Constants.ENCODING_INFO, Constants.DISC_NUMBER);
+
+	/**
+	 * Longest value interned by default
+	 */
+	public static final int DEFAULT_MAX_LENGTH = 64;
+
+	/**
+	 * Approximate size of a {@code String} and its array, excluding the
+	 * characters
+	 */
+	private static final int STRING_OVERHEAD = 40;
+
+	/**
+	 * Tags whose values are interned
+	 */
+	private final Set<String> tags;
+
+	/**
+	 * Longest value interned
+	 */
+	private final int maxLength;
+
+	/**
+	 * Independently locked parts of the table, a power of two
+	 */
+	private final Map<String, WeakReference<String>>[] stripes;
+
+	/**
+	 * Number of values replaced by an existing copy
+	 */
+	private final LongAdder hits = new LongAdder();
+
+	/**
+	 * Number of values added to the interner
+	 */
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Approximate number of bytes not kept in memory thanks to the interner
+	 */
+	private final LongAdder bytesSaved = new LongAdder();
+
+	/**
+	 * Creates an interner for the values of {@link #DEFAULT_TAGS} of at most
+	 * {@link #DEFAULT_MAX_LENGTH} characters.
+	 */
+	public StringInterner() {
+		this(DEFAULT_TAGS, DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * Creates an interner for the values of {@code tags} of at most
+	 * {@code maxLength} characters.
+	 *
+	 * @param tags      tags whose values are interned
+	 * @param maxLength longest value interned
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public StringInterner(Set<String> tags, int maxLength) {
+		this.tags = Set.copyOf(tags);
+		this.maxLength = maxLength;
+
+		// enough stripes that concurrent readers rarely share one
+		int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+		stripes = new Map[count];
+		for (int i = 0; i < count; ++i) {
+			stripes[i] = new WeakHashMap<>();
+		}
+	}
+
+	/**
+	 * Returns the shared instance equal to {@code value} if {@code tag} is one
+	 * of the interned tags, adding {@code value} to the interner if it has not
+	 * been seen yet.
+	 *
+	 * @param tag   simple name of text field
+	 * @param value text field's value
+	 * @return an equal string, shared if {@code value} is interned
+	 */
+	public String intern(String tag, String value) {
+		if (value.length() > maxLength || !tags.contains(tag)) {
+			return value;
+		}
+		return intern(value);
+	}
+
+	/**
+	 * Returns the shared instance equal to {@code value}, adding {@code value}
+	 * to the interner if it has not been seen yet. Applies to any value,
+	 * regardless of its length.
+	 *
+	 * @param value string to share
+	 * @return the shared instance equal to {@code value}
+	 */
+	public String intern(String value) {
+		int hash = value.hashCode();
+		Map<String, WeakReference<String>> stripe = stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+
+		synchronized (stripe) {
+			WeakReference<String> reference = stripe.get(value);
+			String shared = reference == null ? null : reference.get();
+			if (shared != null) {
+				hits.increment();
+				bytesSaved.add(sizeOf(value));
+				return shared;
+			}
+
+			// the value references its key weakly, so the entry is removed once unused
+			stripe.put(value, new WeakReference<>(value));
+			misses.increment();
+			return value;
+		}
+	}
+
+	/**
+	 * Estimates the memory held by {@code value}.
+	 *
+	 * @param value string to measure
+	 * @return approximate size in bytes
+	 */
+	private static long sizeOf(String value) {
+		// compact strings store one byte per character unless a character needs two
+		int bytesPerChar = 1;
+		for (int i = 0; i < value.length(); ++i) {
+			if (value.charAt(i) > 0xFF) {
+				bytesPerChar = 2;
+				break;
+			}
+		}
+		return STRING_OVERHEAD + (((long) value.length() * bytesPerChar + 7) & ~7L);
+	}
+
+	/**
+	 * @return number of distinct values currently held
+	 */
+	public int size() {
+		int size = 0;
+		for (Map<String, WeakReference<String>> stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return number of values replaced by an existing copy
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of values added to the interner
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return approximate number of bytes not kept in memory thanks to the
+	 *         interner
+	 */
+	public long getBytesSaved() {
+		return bytesSaved.sum();
+	}
+}
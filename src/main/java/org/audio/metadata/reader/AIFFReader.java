@@ -0,0 +1,292 @@
+package org.audio.metadata.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.audio.metadata.MetadataVisitor;
+import org.audio.metadata.StreamInfo;
+
+/**
+ * Read metadata from audio files according to the AIFF and AIFF-C
+ * specifications.
+ *
+ * <p>
+ * Like WAVE, an AIFF file is a list of chunks, but with big endian sizes. The
+ * chunks are walked with positioned reads and the sound data is skipped by
+ * its size without being read.
+ * </p>
+ */
+public class AIFFReader extends MetadataReader {
+
+	/**
+	 * Prevent instantiation from outside.
+	 * Use {@link MetadataReader#of(Path)} to create instances.
+	 */
+	protected AIFFReader() {
+	}
+
+	/**
+	 * FORM header: 4 byte 'FORM' marker, 4 byte form size and 4 byte form type
+	 */
+	private static final int FORM_HEADER_SIZE = 12;
+
+	/**
+	 * Each chunk contains a 4 byte ID followed by a 4 byte size
+	 */
+	private static final int CHUNK_HEADER_SIZE = 8;
+
+	/**
+	 * Four character code of the enclosing chunk
+	 */
+	private static final int FORM = 'F' << 24 | 'O' << 16 | 'R' << 8 | 'M';
+
+	/**
+	 * Form type of uncompressed files
+	 */
+	private static final int AIFF = 'A' << 24 | 'I' << 16 | 'F' << 8 | 'F';
+
+	/**
+	 * Form type of files that may be compressed
+	 */
+	private static final int AIFC = 'A' << 24 | 'I' << 16 | 'F' << 8 | 'C';
+
+	/**
+	 * Four character code of the common chunk describing the sound
+	 */
+	private static final int COMM = 'C' << 24 | 'O' << 16 | 'M' << 8 | 'M';
+
+	/**
+	 * Four character code of the sound data chunk
+	 */
+	private static final int SSND = 'S' << 24 | 'S' << 16 | 'N' << 8 | 'D';
+
+	/**
+	 * Four character code of the title chunk
+	 */
+	private static final int NAME = 'N' << 24 | 'A' << 16 | 'M' << 8 | 'E';
+
+	/**
+	 * Four character code of the author chunk
+	 */
+	private static final int AUTH = 'A' << 24 | 'U' << 16 | 'T' << 8 | 'H';
+
+	/**
+	 * Four character code of the copyright chunk
+	 */
+	private static final int COPYRIGHT = '(' << 24 | 'c' << 16 | ')' << 8 | ' ';
+
+	/**
+	 * Four character code of annotation chunks, which may be repeated
+	 */
+	private static final int ANNO = 'A' << 24 | 'N' << 16 | 'N' << 8 | 'O';
+
+	/**
+	 * Four character code of embedded ID3v2 chunks
+	 */
+	private static final int ID3 = 'I' << 24 | 'D' << 16 | '3' << 8 | ' ';
+
+	/**
+	 * Lower case spelling of {@link #ID3} used by some writers
+	 */
+	private static final int ID3_LOWER = 'i' << 24 | 'd' << 16 | '3' << 8 | ' ';
+
+	/**
+	 * Size of the common chunk of AIFF files: channels, sample frames, sample
+	 * size and 80 bit sample rate
+	 */
+	private static final int COMM_SIZE = 18;
+
+	/**
+	 * Size of the SSND fields preceding the samples: offset and block size
+	 */
+	private static final int SSND_HEADER_SIZE = 8;
+
+	/**
+	 * Exponent bias of IEEE 754 80 bit extended precision numbers
+	 */
+	private static final int EXTENDED_BIAS = 16383;
+
+	/**
+	 * Reads metadata from given AIFF files
+	 *
+	 * @param visitor receiver of the values found
+	 */
+	@Override
+	protected void readMetadata(MetadataVisitor visitor) {
+		try (FileChannel channel = openChannel()) {
+
+			/**
+			 * AIFF file header
+			 * 4-byte 'FORM' marker
+			 * 4-byte form size
+			 * 4-byte 'AIFF' or 'AIFC' marker
+			 * followed by chunks in any order, each padded to an even size
+			 */
+			ByteBuffer buffer = ByteBuffer.allocate(FORM_HEADER_SIZE);
+			if (readFully(channel, buffer, 0) != FORM_HEADER_SIZE) {
+				return;
+			}
+
+			int formType = TagRegistry.fourCC(buffer.array(), 8);
+			if (TagRegistry.fourCC(buffer.array(), 0) != FORM || (formType != AIFF && formType != AIFC)) {
+				return;
+			}
+
+			// the form size is not trusted, as tags are often appended without updating it
+			long fileSize = channel.size();
+			ByteBuffer common = null;
+			long soundSize = -1;
+
+			long position = FORM_HEADER_SIZE;
+			buffer = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+			int chunkCount = 0;
+			while (position + CHUNK_HEADER_SIZE <= fileSize) {
+				limits.checkAtomCount(++chunkCount);
+				buffer.clear();
+				if (readFully(channel, buffer, position) != CHUNK_HEADER_SIZE) {
+					break;
+				}
+
+				int fourCC = TagRegistry.fourCC(buffer.array(), 0);
+				// chunk sizes are unsigned 32 bit integers
+				long chunkSize = Integer.toUnsignedLong(buffer.getInt(4));
+				long chunkStart = position + CHUNK_HEADER_SIZE;
+
+				switch (fourCC) {
+					case COMM:
+						common = readChunk(channel, chunkStart, chunkSize);
+						break;
+					case SSND:
+						// skipped without being read, a truncated recording is cut at the end of file
+						soundSize = Math.max(0, Math.min(chunkSize, fileSize - chunkStart) - SSND_HEADER_SIZE);
+						break;
+					case NAME:
+					case AUTH:
+					case COPYRIGHT:
+					case ANNO: {
+						ByteBuffer chunk = readChunk(channel, chunkStart, chunkSize);
+						if (chunk != null) {
+							// read in place, the value is only decoded by the visitor
+							visitor.onTextField(TagRegistry.aiffTag(fourCC), chunk.array(), 0,
+									trimmedLength(chunk.array(), chunk.limit()), StandardCharsets.ISO_8859_1);
+						}
+						break;
+					}
+					case ID3:
+					case ID3_LOWER:
+						// the tag is read from the current position of the channel
+						channel.position(chunkStart);
+						if (!ID3TagReader.extractID3v2Data(channel, visitor, limits)) {
+							readFailed();
+						}
+						break;
+					default:
+						// FVER, MARK, INST, COMT, APPL and the like are skipped without being read
+						break;
+				}
+
+				// chunks are padded to an even size
+				position = chunkStart + chunkSize + (chunkSize & 1);
+			}
+
+			StreamInfo streamInfo = readStreamInfo(common, soundSize);
+			if (streamInfo != null) {
+				visitor.onStreamInfo(streamInfo);
+			}
+
+		} catch (IOException e) {
+			// corrupt or oversized files keep the values read so far
+			readFailed();
+		}
+	}
+
+	/**
+	 * Reads the body of a chunk.
+	 *
+	 * @param channel  input channel
+	 * @param position file position of the chunk's body
+	 * @param size     size of the chunk's body
+	 * @return big endian buffer holding the body, or {@code null} if the file
+	 *         ends first
+	 * @throws IOException if the channel cannot be read
+	 */
+	private ByteBuffer readChunk(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer chunk = ByteBuffer.allocate(limits.checkTagSize(size));
+		if (readFully(channel, chunk, position) != chunk.capacity()) {
+			return null;
+		}
+		chunk.flip();
+		return chunk;
+	}
+
+	/**
+	 * Derives the stream properties from the common chunk.
+	 *
+	 * @param common    body of the COMM chunk, {@code null} if absent
+	 * @param soundSize number of bytes of sound data, negative if unknown
+	 * @return stream properties, or {@code null} if they cannot be determined
+	 */
+	private static StreamInfo readStreamInfo(ByteBuffer common, long soundSize) {
+		if (common == null || common.limit() < COMM_SIZE) {
+			return null;
+		}
+
+		int channels = common.getShort(0) & 0xFFFF;
+		long frames = Integer.toUnsignedLong(common.getInt(2));
+		int sampleSize = common.getShort(6) & 0xFFFF;
+		double rate = extendedToDouble(common, 8);
+		int sampleRate = (int) Math.round(rate);
+		if (!(rate > 0) || sampleRate <= 0) {
+			return null;
+		}
+
+		long nanos = (long) (frames * 1_000_000_000.0 / rate);
+		Duration duration = Duration.ofNanos(nanos);
+
+		// AIFC compression type follows the sample rate, and changes the bitrate
+		int bitrate;
+		if (soundSize >= 0 && nanos > 0) {
+			bitrate = (int) Math.min(Integer.MAX_VALUE, soundSize * 8 * 1_000_000_000.0 / nanos);
+		} else {
+			bitrate = (int) Math.min(Integer.MAX_VALUE, (long) sampleRate * channels * sampleSize);
+		}
+		return new StreamInfo(sampleRate, channels, duration, bitrate);
+	}
+
+	/**
+	 * Converts an IEEE 754 80 bit extended precision number, which has an
+	 * explicit integer bit, to a double.
+	 *
+	 * @param buffer big endian buffer holding the number
+	 * @param offset position of the sign and exponent
+	 * @return the number, rounded to double precision
+	 */
+	private static double extendedToDouble(ByteBuffer buffer, int offset) {
+		int signAndExponent = buffer.getShort(offset) & 0xFFFF;
+		long mantissa = buffer.getLong(offset + 2);
+		if (mantissa == 0) {
+			return 0;
+		}
+
+		// keep the 53 most significant bits, which a double holds exactly
+		int exponent = (signAndExponent & 0x7FFF) - EXTENDED_BIAS;
+		double value = Math.scalb((double) (mantissa >>> 11), exponent - 52);
+		return (signAndExponent & 0x8000) != 0 ? -value : value;
+	}
+
+	/**
+	 * @param data   text chunk contents
+	 * @param length size of the contents
+	 * @return size of the text without its trailing zeros
+	 */
+	private static int trimmedLength(byte[] data, int length) {
+		while (length > 0 && data[length - 1] == 0) {
+			--length;
+		}
+		return length;
+	}
+}
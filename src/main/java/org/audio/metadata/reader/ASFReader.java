@@ -0,0 +1,593 @@
+package org.audio.metadata.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.audio.metadata.MetadataVisitor;
+import org.audio.metadata.StreamInfo;
+
+/**
+ * Read metadata from WMA files according to the Advanced Systems Format
+ * specification.
+ *
+ * <p>
+ * All metadata of an ASF file lives in the Header Object at its start, ahead
+ * of the Data Object holding the packets. The Header Object is read with a
+ * single bounded read and its objects are parsed from memory, so the data is
+ * never touched.
+ * </p>
+ */
+public class ASFReader extends MetadataReader {
+
+	/**
+	 * Prevent instantiation from outside.
+	 * Use {@link MetadataReader#of(Path)} to create instances.
+	 */
+	protected ASFReader() {
+	}
+
+	/**
+	 * Header Object: GUID, 8 byte size, 4 byte object count and 2 reserved
+	 * bytes
+	 */
+	private static final int HEADER_OBJECT_SIZE = 30;
+
+	/**
+	 * Each object starts with a 16 byte GUID followed by an 8 byte size
+	 */
+	private static final int OBJECT_HEADER_SIZE = 24;
+
+	/**
+	 * Header Extension Object fields preceding its objects: reserved GUID,
+	 * reserved 2 bytes and 4 byte data size
+	 */
+	private static final int HEADER_EXTENSION_SIZE = 22;
+
+	/**
+	 * Offset of the play duration within the File Properties Object body
+	 */
+	private static final int PLAY_DURATION = 40;
+
+	/**
+	 * Offset of the preroll within the File Properties Object body
+	 */
+	private static final int PREROLL = 56;
+
+	/**
+	 * Offset of the maximum bitrate, the last field of the File Properties
+	 * Object body
+	 */
+	private static final int MAX_BITRATE = 76;
+
+	/**
+	 * Offset of the type specific data within the Stream Properties Object body,
+	 * a WAVEFORMATEX for audio streams
+	 */
+	private static final int TYPE_SPECIFIC_DATA = 54;
+
+	/**
+	 * Size of the WAVEFORMATEX fields used: format tag, channels, sample rate
+	 * and average bytes per second
+	 */
+	private static final int WAVE_FORMAT_SIZE = 12;
+
+	/**
+	 * Attribute holding cover art
+	 */
+	private static final String PICTURE = "WM/Picture";
+
+	/**
+	 * Attribute data type of UTF-16LE strings
+	 */
+	private static final int TYPE_STRING = 0;
+
+	/**
+	 * Attribute data type of byte arrays
+	 */
+	private static final int TYPE_BYTES = 1;
+
+	/**
+	 * Attribute data type of booleans, 4 bytes in the Extended Content
+	 * Description Object and 2 bytes elsewhere
+	 */
+	private static final int TYPE_BOOL = 2;
+
+	/**
+	 * Attribute data type of 32 bit integers
+	 */
+	private static final int TYPE_DWORD = 3;
+
+	/**
+	 * Attribute data type of 64 bit integers
+	 */
+	private static final int TYPE_QWORD = 4;
+
+	/**
+	 * Attribute data type of 16 bit integers
+	 */
+	private static final int TYPE_WORD = 5;
+
+	/**
+	 * GUID of the Header Object
+	 */
+	private static final byte[] HEADER = guid("75B22630-668E-11CF-A6D9-00AA0062CE6C");
+
+	/**
+	 * GUID of the File Properties Object
+	 */
+	private static final byte[] FILE_PROPERTIES = guid("8CABDCA1-A947-11CF-8EE4-00C00C205365");
+
+	/**
+	 * GUID of the Stream Properties Object
+	 */
+	private static final byte[] STREAM_PROPERTIES = guid("B7DC0791-A9B7-11CF-8EE6-00C00C205365");
+
+	/**
+	 * Stream type of audio streams
+	 */
+	private static final byte[] AUDIO_MEDIA = guid("F8699E40-5B4D-11CF-A8FD-00805F5C442B");
+
+	/**
+	 * GUID of the Content Description Object
+	 */
+	private static final byte[] CONTENT_DESCRIPTION = guid("75B22633-668E-11CF-A6D9-00AA0062CE6C");
+
+	/**
+	 * GUID of the Extended Content Description Object
+	 */
+	private static final byte[] EXTENDED_CONTENT_DESCRIPTION = guid("D2D0A440-E307-11D2-97F0-00A0C95EA850");
+
+	/**
+	 * GUID of the Header Extension Object
+	 */
+	private static final byte[] HEADER_EXTENSION = guid("5FBF03B5-A92E-11CF-8EE3-00C00C205365");
+
+	/**
+	 * GUID of the Metadata Object, nested in the Header Extension Object
+	 */
+	private static final byte[] METADATA = guid("C5F8CBEA-5BAF-4877-8467-AA8C44FA4CCA");
+
+	/**
+	 * GUID of the Metadata Library Object, nested in the Header Extension Object
+	 */
+	private static final byte[] METADATA_LIBRARY = guid("44231C94-9498-49D1-A141-1D134E457054");
+
+	/**
+	 * Content Description Object fields, in the order of their lengths
+	 */
+	private static final String[] CONTENT_FIELDS = { "Title", "Author", "Copyright", "Description", "Rating" };
+
+	/**
+	 * Stream properties collected from the header objects
+	 */
+	private static final class Properties {
+
+		/**
+		 * Play duration in 100 ns units, including the preroll
+		 */
+		long playDuration = -1;
+
+		/**
+		 * Preroll in milliseconds
+		 */
+		long preroll;
+
+		/**
+		 * Maximum bitrate of the file
+		 */
+		int maxBitrate;
+
+		/**
+		 * Sample rate of the first audio stream, 0 if there is none
+		 */
+		int sampleRate;
+
+		/**
+		 * Channels of the first audio stream
+		 */
+		int channels;
+
+		/**
+		 * Average bits per second of the first audio stream
+		 */
+		int bitrate;
+	}
+
+	/**
+	 * Reads metadata from given ASF files
+	 *
+	 * @param visitor receiver of the values found
+	 */
+	@Override
+	protected void readMetadata(MetadataVisitor visitor) {
+		try (FileChannel channel = openChannel()) {
+
+			/**
+			 * ASF Header Object
+			 * 16-byte Header Object GUID
+			 * 8-byte object size, including the header objects
+			 * 4-byte number of header objects
+			 * 2-byte reserved
+			 * followed by the header objects, then the Data Object
+			 */
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_OBJECT_SIZE);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (readFully(channel, buffer, 0) != HEADER_OBJECT_SIZE || !isGUID(buffer, 0, HEADER)) {
+				return;
+			}
+
+			long headerSize = buffer.getLong(16);
+			if (headerSize < HEADER_OBJECT_SIZE) {
+				return;
+			}
+
+			// one read for every header object, a truncated file keeps what is there
+			ByteBuffer header = ByteBuffer.allocate(limits.checkTagSize(headerSize - HEADER_OBJECT_SIZE));
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header, HEADER_OBJECT_SIZE);
+			header.flip();
+
+			Properties properties = new Properties();
+			parseObjects(header, 0, header.limit(), 1, visitor, properties);
+
+			StreamInfo streamInfo = readStreamInfo(properties);
+			if (streamInfo != null) {
+				visitor.onStreamInfo(streamInfo);
+			}
+
+		} catch (IOException e) {
+			// corrupt or oversized files keep the values read so far
+			readFailed();
+		}
+	}
+
+	/**
+	 * Parses a list of objects
+	 *
+	 * @param header     buffer containing the header objects
+	 * @param start      position of the first object
+	 * @param end        end of the list
+	 * @param depth      nesting level, 1 for the objects of the Header Object
+	 * @param metadata   receiver of the values found
+	 * @param properties receiver of the stream properties found
+	 * @throws LimitExceededException if the objects exceed the reader's limits
+	 */
+	private void parseObjects(ByteBuffer header, int start, int end, int depth, MetadataVisitor metadata,
+			Properties properties) throws LimitExceededException {
+		limits.checkDepth(depth);
+
+		int position = start;
+		int objectCount = 0;
+		while (position + OBJECT_HEADER_SIZE <= end) {
+			limits.checkAtomCount(++objectCount);
+
+			long objectSize = header.getLong(position + 16);
+			if (objectSize < OBJECT_HEADER_SIZE || objectSize > end - position) {
+				// object runs past the end of its parent
+				break;
+			}
+			int body = position + OBJECT_HEADER_SIZE;
+			int objectEnd = position + (int) objectSize;
+
+			if (isGUID(header, position, FILE_PROPERTIES)) {
+				if (objectEnd - body >= MAX_BITRATE + 4) {
+					properties.playDuration = header.getLong(body + PLAY_DURATION);
+					properties.preroll = header.getLong(body + PREROLL);
+					properties.maxBitrate = header.getInt(body + MAX_BITRATE);
+				}
+			} else if (isGUID(header, position, STREAM_PROPERTIES)) {
+				// the first audio stream describes the file
+				if (properties.sampleRate == 0 && objectEnd - body >= TYPE_SPECIFIC_DATA + WAVE_FORMAT_SIZE
+						&& isGUID(header, body, AUDIO_MEDIA)) {
+					int format = body + TYPE_SPECIFIC_DATA;
+					properties.channels = header.getShort(format + 2) & 0xFFFF;
+					properties.sampleRate = header.getInt(format + 4);
+					properties.bitrate = (int) Math.min(Integer.MAX_VALUE,
+							Integer.toUnsignedLong(header.getInt(format + 8)) * 8);
+				}
+			} else if (isGUID(header, position, CONTENT_DESCRIPTION)) {
+				parseContentDescription(header, body, objectEnd, metadata);
+			} else if (isGUID(header, position, EXTENDED_CONTENT_DESCRIPTION)) {
+				parseExtendedContentDescription(header, body, objectEnd, metadata);
+			} else if (isGUID(header, position, HEADER_EXTENSION)) {
+				if (objectEnd - body >= HEADER_EXTENSION_SIZE) {
+					long dataSize = Integer.toUnsignedLong(header.getInt(body + 18));
+					int dataStart = body + HEADER_EXTENSION_SIZE;
+					parseObjects(header, dataStart, (int) Math.min(objectEnd, dataStart + dataSize), depth + 1,
+							metadata, properties);
+				}
+			} else if (isGUID(header, position, METADATA) || isGUID(header, position, METADATA_LIBRARY)) {
+				parseMetadataRecords(header, body, objectEnd, metadata);
+			}
+			// codec list, padding, stream bitrates and the like are skipped
+
+			position = objectEnd;
+		}
+	}
+
+	/**
+	 * Parse Content Description Object for metadata. Five lengths are followed
+	 * by the five UTF-16LE strings.
+	 *
+	 * @param header   buffer containing the object
+	 * @param start    start of the object's body
+	 * @param end      end of the object
+	 * @param metadata receiver of the values found
+	 */
+	private static void parseContentDescription(ByteBuffer header, int start, int end, MetadataVisitor metadata) {
+		int position = start + 2 * CONTENT_FIELDS.length;
+		if (position > end) {
+			return;
+		}
+
+		for (int i = 0; i < CONTENT_FIELDS.length; ++i) {
+			int length = header.getShort(start + 2 * i) & 0xFFFF;
+			if (length > end - position) {
+				break;
+			}
+			visitValue(TagRegistry.asfTag(CONTENT_FIELDS[i]), TYPE_STRING, header, position, length, metadata);
+			position += length;
+		}
+	}
+
+	/**
+	 * Parse Extended Content Description Object for metadata. Each descriptor
+	 * holds a name length, the name, a data type, a value length and the value.
+	 *
+	 * @param header   buffer containing the object
+	 * @param start    start of the object's body
+	 * @param end      end of the object
+	 * @param metadata receiver of the values found
+	 */
+	private static void parseExtendedContentDescription(ByteBuffer header, int start, int end,
+			MetadataVisitor metadata) {
+		if (start + 2 > end) {
+			return;
+		}
+		int count = header.getShort(start) & 0xFFFF;
+		int position = start + 2;
+
+		for (int i = 0; i < count && position + 2 <= end; ++i) {
+			int nameLength = header.getShort(position) & 0xFFFF;
+			int name = position + 2;
+			if (nameLength + 4 > end - name) {
+				break;
+			}
+			int type = header.getShort(name + nameLength) & 0xFFFF;
+			int valueLength = header.getShort(name + nameLength + 2) & 0xFFFF;
+			int value = name + nameLength + 4;
+			if (valueLength > end - value) {
+				break;
+			}
+
+			visitAttribute(decodeString(header, name, nameLength), type, header, value, valueLength, metadata);
+			position = value + valueLength;
+		}
+	}
+
+	/**
+	 * Parse Metadata Object or Metadata Library Object for metadata. Both hold
+	 * records with a language index or reserved field, a stream number, a name
+	 * length, a data type, a 32 bit value length, the name and the value.
+	 *
+	 * @param header   buffer containing the object
+	 * @param start    start of the object's body
+	 * @param end      end of the object
+	 * @param metadata receiver of the values found
+	 */
+	private static void parseMetadataRecords(ByteBuffer header, int start, int end, MetadataVisitor metadata) {
+		if (start + 2 > end) {
+			return;
+		}
+		int count = header.getShort(start) & 0xFFFF;
+		int position = start + 2;
+
+		for (int i = 0; i < count && position + 12 <= end; ++i) {
+			int nameLength = header.getShort(position + 4) & 0xFFFF;
+			int type = header.getShort(position + 6) & 0xFFFF;
+			long valueLength = Integer.toUnsignedLong(header.getInt(position + 8));
+			int name = position + 12;
+			if (nameLength + valueLength > end - name) {
+				break;
+			}
+			int value = name + nameLength;
+
+			visitAttribute(decodeString(header, name, nameLength), type, header, value, (int) valueLength, metadata);
+			position = value + (int) valueLength;
+		}
+	}
+
+	/**
+	 * Passes an attribute to the visitor, as a text field or, for pictures, as
+	 * an image.
+	 *
+	 * @param name     attribute name
+	 * @param type     attribute data type
+	 * @param header   buffer containing the value
+	 * @param offset   start of the value
+	 * @param length   size of the value
+	 * @param metadata receiver of the value
+	 */
+	private static void visitAttribute(String name, int type, ByteBuffer header, int offset, int length,
+			MetadataVisitor metadata) {
+		if (name.equals(PICTURE) && type == TYPE_BYTES) {
+			parsePicture(header, offset, length, metadata);
+		} else {
+			visitValue(TagRegistry.asfTag(name), type, header, offset, length, metadata);
+		}
+	}
+
+	/**
+	 * Passes a value to the visitor as a text field. Strings stay encoded until
+	 * requested, numbers and booleans are converted to their decimal form and
+	 * other types are ignored.
+	 *
+	 * @param key      simple name of the text field
+	 * @param type     attribute data type
+	 * @param header   buffer containing the value
+	 * @param offset   start of the value
+	 * @param length   size of the value
+	 * @param metadata receiver of the value
+	 */
+	private static void visitValue(String key, int type, ByteBuffer header, int offset, int length,
+			MetadataVisitor metadata) {
+		switch (type) {
+			case TYPE_STRING: {
+				int trimmed = trimmedLength(header.array(), offset, length);
+				if (trimmed > 0) {
+					metadata.onTextField(key, header.array(), offset, trimmed, StandardCharsets.UTF_16LE);
+				}
+				break;
+			}
+			case TYPE_BOOL: {
+				boolean value = false;
+				for (int i = offset; i < offset + length; ++i) {
+					value |= header.get(i) != 0;
+				}
+				metadata.onTextField(key, Boolean.toString(value));
+				break;
+			}
+			case TYPE_DWORD:
+				if (length >= 4) {
+					metadata.onTextField(key, Integer.toUnsignedString(header.getInt(offset)));
+				}
+				break;
+			case TYPE_QWORD:
+				if (length >= 8) {
+					metadata.onTextField(key, Long.toUnsignedString(header.getLong(offset)));
+				}
+				break;
+			case TYPE_WORD:
+				if (length >= 2) {
+					metadata.onTextField(key, Integer.toString(header.getShort(offset) & 0xFFFF));
+				}
+				break;
+			default:
+				// byte arrays other than pictures and GUIDs
+				break;
+		}
+	}
+
+	/**
+	 * Parse WM/Picture value: 1 byte picture type, 4 byte data length, null
+	 * terminated UTF-16LE MIME type and description, then the image data.
+	 *
+	 * @param header   buffer containing the value
+	 * @param offset   start of the value
+	 * @param length   size of the value
+	 * @param metadata receiver of the image
+	 */
+	private static void parsePicture(ByteBuffer header, int offset, int length, MetadataVisitor metadata) {
+		int end = offset + length;
+		if (length < 5) {
+			return;
+		}
+		int pictureType = header.get(offset) & 0xFF;
+		long dataLength = Integer.toUnsignedLong(header.getInt(offset + 1));
+
+		int mimeType = offset + 5;
+		int mimeTypeEnd = findTerminator(header.array(), mimeType, end);
+		int description = mimeTypeEnd + 2;
+		int descriptionEnd = findTerminator(header.array(), description, end);
+		int data = descriptionEnd + 2;
+		if (data > end || dataLength > end - data) {
+			return;
+		}
+
+		metadata.onImage(header.array(), data, (int) dataLength, decodeString(header, mimeType, mimeTypeEnd - mimeType),
+				pictureType, decodeString(header, description, descriptionEnd - description));
+	}
+
+	/**
+	 * Derives the stream properties from the File and Stream Properties Objects.
+	 *
+	 * @param properties values collected from the header objects
+	 * @return stream properties, or {@code null} if there is no audio stream
+	 */
+	private static StreamInfo readStreamInfo(Properties properties) {
+		if (properties.sampleRate <= 0 || properties.playDuration < 0) {
+			return null;
+		}
+
+		// the play duration includes the preroll, which is not played
+		long nanos = properties.playDuration * 100 - properties.preroll * 1_000_000;
+		Duration duration = Duration.ofNanos(nanos > 0 ? nanos : properties.playDuration * 100);
+		int bitrate = properties.bitrate > 0 ? properties.bitrate : properties.maxBitrate;
+		return new StreamInfo(properties.sampleRate, properties.channels, duration, bitrate);
+	}
+
+	/**
+	 * @param header buffer containing a UTF-16LE string
+	 * @param offset start of the string
+	 * @param length size of the string in bytes, including any terminator
+	 * @return the decoded string without its terminator
+	 */
+	private static String decodeString(ByteBuffer header, int offset, int length) {
+		return new String(header.array(), offset, trimmedLength(header.array(), offset, length),
+				StandardCharsets.UTF_16LE);
+	}
+
+	/**
+	 * @param data   bytes holding a UTF-16LE string
+	 * @param offset start of the string
+	 * @param length size of the string in bytes, including any terminator
+	 * @return size of the string without its trailing null characters
+	 */
+	private static int trimmedLength(byte[] data, int offset, int length) {
+		int end = offset + (length & ~1);
+		while (end > offset && data[end - 1] == 0 && data[end - 2] == 0) {
+			end -= 2;
+		}
+		return end - offset;
+	}
+
+	/**
+	 * @param data  bytes holding a null terminated UTF-16LE string
+	 * @param start start of the string
+	 * @param end   end of the enclosing value
+	 * @return position of the terminator, or {@code end} if there is none
+	 */
+	private static int findTerminator(byte[] data, int start, int end) {
+		for (int i = start; i + 1 < end; i += 2) {
+			if (data[i] == 0 && data[i + 1] == 0) {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * @param buffer buffer to compare
+	 * @param offset start of the GUID in {@code buffer}
+	 * @param guid   expected GUID, in file byte order
+	 * @return true if the 16 bytes at {@code offset} equal {@code guid}
+	 */
+	private static boolean isGUID(ByteBuffer buffer, int offset, byte[] guid) {
+		return offset + guid.length <= buffer.limit()
+				&& Arrays.equals(buffer.array(), offset, offset + guid.length, guid, 0, guid.length);
+	}
+
+	/**
+	 * Converts a GUID to the byte order of ASF files, where the first three
+	 * groups are little endian.
+	 *
+	 * @param text GUID in its usual textual form
+	 * @return the 16 bytes of the GUID as stored in files
+	 */
+	private static byte[] guid(String text) {
+		UUID uuid = UUID.fromString(text);
+		long high = uuid.getMostSignificantBits();
+
+		ByteBuffer guid = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+		guid.putInt((int) (high >>> 32)).putShort((short) (high >>> 16)).putShort((short) high);
+		guid.order(ByteOrder.BIG_ENDIAN).putLong(uuid.getLeastSignificantBits());
+		return guid.array();
+	}
+}
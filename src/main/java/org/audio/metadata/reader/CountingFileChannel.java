@@ -0,0 +1,133 @@
+package org.audio.metadata.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Read only view of a {@link FileChannel} that reports every read to a
+ * {@link ReadProbe}. Only handed out while statistics are being collected.
+ */
+class CountingFileChannel extends FileChannel {
+
+	/**
+	 * Channel actually read
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Receives the number of calls and bytes
+	 */
+	private final ReadProbe probe;
+
+	/**
+	 * @param channel channel actually read
+	 * @param probe   receives the number of calls and bytes
+	 */
+	CountingFileChannel(FileChannel channel, ReadProbe probe) {
+		this.channel = channel;
+		this.probe = probe;
+	}
+
+	/**
+	 * @param bytes result of a read call
+	 * @return {@code bytes}
+	 */
+	private long count(long bytes) {
+		probe.read(Math.max(0, bytes));
+		return bytes;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		return (int) count(channel.read(dst));
+	}
+
+	@Override
+	public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+		return count(channel.read(dsts, offset, length));
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException {
+		return (int) count(channel.read(dst, position));
+	}
+
+	@Override
+	public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+		return count(channel.transferTo(position, count, target));
+	}
+
+	@Override
+	public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+		// pages are read on access, count the mapping as a single read
+		count(size);
+		return channel.map(mode, position, size);
+	}
+
+	@Override
+	public long position() throws IOException {
+		return channel.position();
+	}
+
+	@Override
+	public FileChannel position(long newPosition) throws IOException {
+		channel.position(newPosition);
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		return channel.size();
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		return channel.write(src);
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+		return channel.write(srcs, offset, length);
+	}
+
+	@Override
+	public int write(ByteBuffer src, long position) throws IOException {
+		return channel.write(src, position);
+	}
+
+	@Override
+	public FileChannel truncate(long size) throws IOException {
+		channel.truncate(size);
+		return this;
+	}
+
+	@Override
+	public void force(boolean metaData) throws IOException {
+		channel.force(metaData);
+	}
+
+	@Override
+	public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+		return channel.transferFrom(src, position, count);
+	}
+
+	@Override
+	public FileLock lock(long position, long size, boolean shared) throws IOException {
+		return channel.lock(position, size, shared);
+	}
+
+	@Override
+	public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+		return channel.tryLock(position, size, shared);
+	}
+
+	@Override
+	protected void implCloseChannel() throws IOException {
+		channel.close();
+	}
+}
@@ -4,15 +4,22 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-import org.audio.metadata.Constants;
 import org.audio.metadata.CoverArt;
-import org.audio.metadata.Metadata;
+import org.audio.metadata.MetadataVisitor;
+import org.audio.utils.ImageExtractor;
 
 /**
  * Reads metadata from FLAC files.
@@ -37,82 +44,263 @@ public class FLACReader extends MetadataReader {
 	private static final int BLOCK_HEADER_SIZE = 4;
 
 	/**
-	 * Mapping from VORBIS tags to {@link Constants}.
+	 * Block type of VORBIS_COMMENT blocks
 	 */
-	private static final Map<String, String> VORBIS_TAGS;
-	static {
-		Map<String, String> tags = new HashMap<>();
+	private static final int VORBIS_COMMENT = 4;
 
-		// there is no official standard set of tags
-		// below are some of the proposed tags matched to the corresponding
-		// description used in ID3TagReader
-		tags.put("TITLE", Constants.TITLE);
-		tags.put("ALBUM", Constants.ALBUM_NAME);
-		tags.put("TRACKNUMBER", Constants.TRACK_NUMBER);
-		tags.put("ARTIST", Constants.ARTIST_NAME);
-		tags.put("COPYRIGHT", Constants.COPYRIGHT);
-		tags.put("GENRE", Constants.GENRE);
-		tags.put("DATE", Constants.DATE);
-		tags.put("ISRC", Constants.ISRC);
-		VORBIS_TAGS = Collections.unmodifiableMap(tags);
+	/**
+	 * Block type of PICTURE blocks
+	 */
+	private static final int PICTURE = 6;
+
+	/**
+	 * Vorbis comment holding a base64 encoded PICTURE block
+	 */
+	private static final String PICTURE_COMMENT = "METADATA_BLOCK_PICTURE";
+
+	/**
+	 * Shared pool decoding large metadata sections in parallel
+	 */
+	private static final ExecutorService BLOCK_DECODER = Executors
+			.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+				Thread thread = new Thread(runnable, "flac-block-decoder");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	/**
+	 * Location of a metadata block found during the header pass
+	 * 
+	 * @param type   block type
+	 * @param offset file position of the block contents, after the header
+	 * @param length number of bytes in the block contents
+	 */
+	private record Block(int type, long offset, int length) {
+	}
+
+	/**
+	 * Records the callbacks made while decoding a block on another thread, so
+	 * they can be replayed to the actual visitor in the order they were made
+	 */
+	private static final class RecordedBlock implements MetadataVisitor {
+
+		/**
+		 * Callbacks in the order they were made
+		 */
+		private final List<Consumer<MetadataVisitor>> events = new ArrayList<>();
+
+		@Override
+		public void onTextField(String tag, byte[] data, int offset, int length, Charset encoding) {
+			events.add(visitor -> visitor.onTextField(tag, data, offset, length, encoding));
+		}
+
+		@Override
+		public void onTextField(String tag, String value) {
+			events.add(visitor -> visitor.onTextField(tag, value));
+		}
+
+		@Override
+		public void onDeferredTextField(String tag, Supplier<String> decoder) {
+			events.add(visitor -> visitor.onDeferredTextField(tag, decoder));
+		}
+
+		@Override
+		public void onImage(byte[] data, int offset, int length, String mimeType, int pictureType,
+				String description) {
+			events.add(visitor -> visitor.onImage(data, offset, length, mimeType, pictureType, description));
+		}
+
+		@Override
+		public void onImage(CoverArt image) {
+			events.add(visitor -> visitor.onImage(image));
+		}
+
+		@Override
+		public void onDeferredImage(Supplier<CoverArt> decoder) {
+			events.add(visitor -> visitor.onDeferredImage(decoder));
+		}
+
+		/**
+		 * @param visitor receiver of the recorded callbacks
+		 */
+		private void replay(MetadataVisitor visitor) {
+			for (Consumer<MetadataVisitor> event : events) {
+				event.accept(visitor);
+			}
+		}
+	}
+
+	/**
+	 * Minimum number of bytes in VORBIS_COMMENT and PICTURE blocks before they
+	 * are decoded in parallel
+	 */
+	private long parallelThreshold = 1 << 20;
+
+	/**
+	 * Sets the minimum combined size of VORBIS_COMMENT and PICTURE blocks for
+	 * which blocks are decoded in parallel. Smaller metadata sections are not
+	 * worth the hand-off to another thread.
+	 * 
+	 * @param parallelThreshold number of bytes, {@link Long#MAX_VALUE} to always
+	 *                          decode on the calling thread
+	 */
+	public void setParallelThreshold(long parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
 	}
 
 	/**
 	 * Reads metadata from given flac files
 	 * 
-	 * @return metadata in key-value pairs
+	 * <p>
+	 * Works in two phases: a header pass records the type, position and length
+	 * of every metadata block using positioned reads, then the blocks of interest
+	 * are read and decoded. When they are large enough, the blocks are decoded
+	 * in parallel, each recording its callbacks, which are replayed to
+	 * {@code visitor} in block and field order, the same as when decoding on
+	 * the calling thread. A corrupt or oversized block is skipped without
+	 * affecting the others.
+	 * </p>
+	 * 
+	 * @param visitor receiver of the values found
 	 */
-	public Metadata getMetadata() {
-		Metadata metadata = new Metadata();
+	@Override
+	protected void readMetadata(MetadataVisitor visitor) {
+		try (FileChannel channel = openChannel()) {
+			List<Block> blocks = new ArrayList<>();
+			long selectedBytes = 0;
+			for (Block block : readBlockHeaders(channel)) {
+				if (block.type() == VORBIS_COMMENT || block.type() == PICTURE) {
+					blocks.add(block);
+					selectedBytes += block.length();
+				}
+			}
 
-		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+			if (blocks.size() > 1 && selectedBytes >= parallelThreshold) {
+				List<Future<RecordedBlock>> decoded = new ArrayList<>();
+				for (Block block : blocks) {
+					decoded.add(BLOCK_DECODER.submit(() -> {
+						RecordedBlock recorded = new RecordedBlock();
+						decodeBlock(channel, block, recorded);
+						return recorded;
+					}));
+				}
 
-			// 32-bit flaC stream marker
-			ByteBuffer buffer = ByteBuffer.allocate(FLAC_HEADER_SIZE);
-			int nRead = channel.read(buffer);
+				// replay in file order regardless of completion order
+				for (Future<RecordedBlock> recorded : decoded) {
+					try {
+						recorded.get().replay(visitor);
+					} catch (ExecutionException e) {
+						blockFailed(e.getCause());
+					}
+				}
+			} else {
+				for (Block block : blocks) {
+					try {
+						decodeBlock(channel, block, visitor);
+					} catch (IOException e) {
+						blockFailed(e);
+					}
+				}
+			}
+		} catch (IOException e) {
+			// corrupt or oversized files keep the values read so far
+			readFailed();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Skips a block that could not be decoded, counting the read as failed.
+	 * Anything but a corrupt or unreadable block is a bug and rethrown.
+	 * 
+	 * @param cause reason the block could not be decoded
+	 */
+	private void blockFailed(Throwable cause) {
+		if (cause instanceof RuntimeException runtime) {
+			throw runtime;
+		} else if (cause instanceof Error error) {
+			throw error;
+		}
+		readFailed();
+	}
+
+	/**
+	 * Header pass, records the location of every metadata block without reading
+	 * any block contents.
+	 * 
+	 * @param channel flac file channel
+	 * @return blocks in file order
+	 * @throws IOException if the channel cannot be read or limits are exceeded
+	 */
+	private List<Block> readBlockHeaders(FileChannel channel) throws IOException {
+		List<Block> blocks = new ArrayList<>();
+
+		// 32-bit flaC stream marker
+		long position = FLAC_HEADER_SIZE;
+		ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+
+		// stream info block
+		// optional metadata blocks
+		boolean lastBlock = false;
+		while (!lastBlock) {
+			limits.checkAtomCount(blocks.size() + 1);
+
+			buffer.clear();
+			if (readFully(channel, buffer, position) != BLOCK_HEADER_SIZE) {
+				// truncated file, return whatever has been found
+				break;
+			}
 			buffer.flip();
 
-			// stream info block
-			// optional metadata blocks
-			boolean lastBlock = true;
-			do {
-				buffer = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
-				nRead = channel.read(buffer);
-				buffer.flip();
-
-				int flags = buffer.get() & 0xFF;
-				int lastFlag = (flags & 0xFF) >> 7;
-				lastBlock = lastFlag == 1;
-
-				int blockType = flags & 0x7F;
-				int blockLength = buffer.getInt(0) & 0xFFFFFF;
-
-				/**
-				 * Block Types:
-				 * 0 - STREAMINFO
-				 * 1 - PADDING
-				 * 2 - APPLICATION
-				 * 3 - SEEKTABLE
-				 * 4 - VORBIS_COMMENT
-				 * 5 - CUESHEET
-				 * 6 - PICTURE
-				 */
-				if (blockType == 4) {
-					extractVORBISData(channel, blockLength, metadata);
-				} else if (blockType == 6) {
-					extractImage(channel, blockLength, metadata);
-				} else {
-					// skip over other blocks for now
-					channel.position(channel.position() + blockLength);
-				}
-			} while (!lastBlock);
+			int flags = buffer.get() & 0xFF;
+			int lastFlag = (flags & 0xFF) >> 7;
+			lastBlock = lastFlag == 1;
+
+			int blockType = flags & 0x7F;
+			int blockLength = buffer.getInt(0) & 0xFFFFFF;
+
+			/**
+			 * Block Types:
+			 * 0 - STREAMINFO
+			 * 1 - PADDING
+			 * 2 - APPLICATION
+			 * 3 - SEEKTABLE
+			 * 4 - VORBIS_COMMENT
+			 * 5 - CUESHEET
+			 * 6 - PICTURE
+			 */
+			blocks.add(new Block(blockType, position + BLOCK_HEADER_SIZE, blockLength));
+			position += BLOCK_HEADER_SIZE + blockLength;
+		}
 
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		return blocks;
+	}
+
+	/**
+	 * Reads a single block with a positioned read and passes its contents to
+	 * {@code metadata}. Safe to call from several threads at once.
+	 * 
+	 * @param channel  flac file channel
+	 * @param block    block to decode
+	 * @param metadata receiver of extracted data
+	 * @throws IOException if the channel cannot be read or limits are exceeded
+	 */
+	private void decodeBlock(FileChannel channel, Block block, MetadataVisitor metadata) throws IOException {
+		int size = block.type() == PICTURE ? limits.checkImageSize(block.length())
+				: limits.checkTagSize(block.length());
+
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		if (readFully(channel, buffer, block.offset()) != size) {
+			return;
 		}
+		buffer.flip();
 
-		return metadata;
+		if (block.type() == PICTURE) {
+			extractImage(buffer, metadata);
+		} else {
+			extractVORBISData(buffer, metadata);
+		}
 	}
 
 	/**
@@ -120,38 +308,112 @@ public class FLACReader extends MetadataReader {
 	 * 
 	 * @param channel     input channel
 	 * @param blockLength number of bytes to read
-	 * @param metadata    instance to be populated with extracted images
+	 * @param metadata    receiver of extracted images
+	 * @return false if the block could not be read or is too large
 	 */
-	public static void extractImage(FileChannel channel, int blockLength, Metadata metadata) {
+	public static boolean extractImage(FileChannel channel, int blockLength, MetadataVisitor metadata) {
+		return extractImage(channel, blockLength, metadata, ReaderLimits.DEFAULT);
+	}
+
+	/**
+	 * Util function for extracting images from a FLAC {@link FileChannel},
+	 * rejecting blocks whose size exceeds {@code limits}.
+	 * 
+	 * @param channel     input channel
+	 * @param blockLength number of bytes to read
+	 * @param metadata    receiver of extracted images
+	 * @param limits      resource limits enforced while parsing
+	 * @return false if the block could not be read or exceeds {@code limits}
+	 */
+	public static boolean extractImage(FileChannel channel, int blockLength, MetadataVisitor metadata,
+			ReaderLimits limits) {
 		try {
-			ByteBuffer buffer = ByteBuffer.allocate(blockLength);
+			ByteBuffer buffer = ByteBuffer.allocate(limits.checkImageSize(blockLength));
 			channel.read(buffer);
 			buffer.flip();
 
-			int pictureType = buffer.getInt();
-			int mimeLength = buffer.getInt();
-			byte[] mimeType = new byte[mimeLength];
-			buffer.get(mimeType);
+			extractImage(buffer, metadata);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Util function for extracting an image from a PICTURE block that has
+	 * already been read.
+	 * 
+	 * @param buffer   heap buffer containing the entire block
+	 * @param metadata receiver of extracted images
+	 */
+	public static void extractImage(ByteBuffer buffer, MetadataVisitor metadata) {
+		CoverArt cover = parsePicture(buffer);
+		if (cover != null) {
+			metadata.onImage(cover);
+		}
+	}
+
+	/**
+	 * Decodes a base64 encoded PICTURE block found in a METADATA_BLOCK_PICTURE
+	 * comment, without creating an intermediate {@code String}.
+	 * 
+	 * @param encoded base64 bytes of the block
+	 * @return the image, or {@code null} if the comment is malformed
+	 */
+	private static CoverArt decodePicture(ByteBuffer encoded) {
+		try {
+			return parsePicture(Base64.getDecoder().decode(encoded.duplicate()));
+		} catch (IllegalArgumentException e) {
+			// not valid base64
+			return null;
+		}
+	}
+
+	/**
+	 * Parses a PICTURE block. The image is a slice of the buffer's array.
+	 * 
+	 * @param buffer heap buffer containing the entire block
+	 * @return the image, or {@code null} if the block is malformed
+	 */
+	private static CoverArt parsePicture(ByteBuffer buffer) {
+		// picture type, mime length
+		if (buffer.remaining() < 8) {
+			return null;
+		}
+		int pictureType = buffer.getInt();
+		int mimeLength = buffer.getInt();
+		if (mimeLength < 0 || mimeLength > buffer.remaining() - 4) {
+			return null;
+		}
+		byte[] mimeType = new byte[mimeLength];
+		buffer.get(mimeType);
 
-			int descriptionLength = buffer.getInt();
-			byte[] description = new byte[descriptionLength];
-			buffer.get(description);
+		int descriptionLength = buffer.getInt();
+		// description followed by width, height, depth, colors, image length
+		if (descriptionLength < 0 || descriptionLength > buffer.remaining() - 20) {
+			return null;
+		}
+		byte[] description = new byte[descriptionLength];
+		buffer.get(description);
 
-			int imageWidth = buffer.getInt();
-			int imageHeight = buffer.getInt();
+		int imageWidth = buffer.getInt();
+		int imageHeight = buffer.getInt();
 
-			int colorDepth = buffer.getInt();
-			int numColors = buffer.getInt();
-			int imageLength = buffer.getInt();
-			byte[] image = new byte[imageLength];
-			buffer.get(image);
+		int colorDepth = buffer.getInt();
+		int numColors = buffer.getInt();
+		int imageLength = buffer.getInt();
+		if (imageLength < 0 || imageLength > buffer.remaining()) {
+			return null;
+		}
 
-			CoverArt cover = new CoverArt(new String(mimeType), image);
-			metadata.addImage(cover);
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		// the image is a slice of the block, no need to copy it
+		int imageStart = buffer.arrayOffset() + buffer.position();
+		String type = ImageExtractor.sniffMimeType(buffer.array(), imageStart, imageLength);
+		if (type == null) {
+			type = ImageExtractor.normalizeMimeType(new String(mimeType, StandardCharsets.ISO_8859_1));
 		}
+		return new CoverArt(type, buffer.array(), imageStart, imageLength, pictureType,
+				new String(description, StandardCharsets.UTF_8));
 	}
 
 	/**
@@ -159,67 +421,117 @@ public class FLACReader extends MetadataReader {
 	 * 
 	 * @param channel     input channel
 	 * @param blockLength number of bytes to read
-	 * @param metadata    instance to be populated with extracted data
+	 * @param metadata    receiver of extracted data
+	 * @return false if the block could not be read or is too large
 	 */
-	public static void extractVORBISData(FileChannel channel, int blockLength, Metadata metadata) {
+	public static boolean extractVORBISData(FileChannel channel, int blockLength, MetadataVisitor metadata) {
+		return extractVORBISData(channel, blockLength, metadata, ReaderLimits.DEFAULT);
+	}
+
+	/**
+	 * Util function for extracting VORBIS comments from a {@link FileChannel},
+	 * rejecting blocks whose size exceeds {@code limits}.
+	 * 
+	 * @param channel     input channel
+	 * @param blockLength number of bytes to read
+	 * @param metadata    receiver of extracted data
+	 * @param limits      resource limits enforced while parsing
+	 * @return false if the block could not be read or exceeds {@code limits}
+	 */
+	public static boolean extractVORBISData(FileChannel channel, int blockLength, MetadataVisitor metadata,
+			ReaderLimits limits) {
 		try {
-			ByteBuffer buffer = ByteBuffer.allocate(blockLength);
+			ByteBuffer buffer = ByteBuffer.allocate(limits.checkTagSize(blockLength));
 			channel.read(buffer);
 			buffer.flip();
 
-			// steps taken directly from https://xiph.org/vorbis/doc/v-comment.html
-
-			// vorbis uses little endian
-			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			extractVORBISData(buffer, metadata);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
 
-			// 1) [vendor_length] = read an unsigned integer of 32 bits
-			int vendor_length = buffer.getInt();
+	/**
+	 * Util function for extracting VORBIS comments that have already been read.
+	 * Pictures stored as METADATA_BLOCK_PICTURE comments are added as deferred
+	 * images that keep a reference to {@code buffer}'s array.
+	 * 
+	 * @param buffer   heap buffer positioned at the start of the comment structure
+	 * @param metadata receiver of extracted data
+	 */
+	public static void extractVORBISData(ByteBuffer buffer, MetadataVisitor metadata) {
+		// steps taken directly from https://xiph.org/vorbis/doc/v-comment.html
 
-			// 2) [vendor_string] = read a UTF-8 vector as [vendor_length] octets
-			// because vorbis uses utf-8, endianness shouldn't matter here
-			byte[] vendor_string = new byte[vendor_length];
-			buffer.get(vendor_string);
+		// vorbis uses little endian
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
 
-			// 3) [user_comment_list_length] = read an unsigned integer of 32 bits
-			int user_comment_list_length = buffer.getInt();
+		// 1) [vendor_length] = read an unsigned integer of 32 bits
+		if (buffer.remaining() < 4) {
+			return;
+		}
+		int vendor_length = buffer.getInt();
 
-			// 4) iterate [user_comment_list_length] times {
-			for (int c = 0; c < user_comment_list_length; ++c) {
-				// 5) [length] = read an unsigned integer of 32 bits
-				int length = buffer.getInt();
+		// vendor string is followed by the comment list length
+		if (vendor_length < 0 || vendor_length > buffer.remaining() - 4) {
+			return;
+		}
 
-				// 6) this iteration's user comment = read a UTF-8 vector as [length] octets
-				byte[] comment = new byte[length];
-				buffer.get(comment);
+		// 2) [vendor_string] = read a UTF-8 vector as [vendor_length] octets
+		// because vorbis uses utf-8, endianness shouldn't matter here
+		byte[] vendor_string = new byte[vendor_length];
+		buffer.get(vendor_string);
 
-				int equalSign = -1;
-				for (int i = 0; i < length; ++i) {
-					if (comment[i] == '=') {
-						equalSign = i;
-						break;
-					}
-				}
+		// 3) [user_comment_list_length] = read an unsigned integer of 32 bits
+		int user_comment_list_length = buffer.getInt();
 
-				if (equalSign != -1) {
-					String tag = new String(comment, 0, equalSign).toUpperCase();
-					String value = new String(comment, equalSign + 1, length - equalSign - 1);
+		// every comment needs at least a four byte length
+		if (user_comment_list_length < 0 || user_comment_list_length > buffer.remaining() / 4) {
+			return;
+		}
 
-					// convert vorbis tags to a descriptor common across all supported formats
-					if (VORBIS_TAGS.containsKey(tag)) {
-						tag = VORBIS_TAGS.get(tag);
-					}
+		// 4) iterate [user_comment_list_length] times {
+		for (int c = 0; c < user_comment_list_length; ++c) {
+			// 5) [length] = read an unsigned integer of 32 bits
+			if (buffer.remaining() < 4) {
+				break;
+			}
+			int length = buffer.getInt();
+			if (length < 0 || length > buffer.remaining()) {
+				break;
+			}
 
-					metadata.addTextField(tag, value);
+			// 6) this iteration's user comment = read a UTF-8 vector as [length] octets
+			// read in place, the value is not copied until it is known to be text
+			byte[] data = buffer.array();
+			int start = buffer.arrayOffset() + buffer.position();
+			buffer.position(buffer.position() + length);
+
+			int equalSign = -1;
+			for (int i = 0; i < length; ++i) {
+				if (data[start + i] == '=') {
+					equalSign = i;
+					break;
 				}
 			}
 
-			// steps 7-9 are not applicable to FLAC as framing_bit is not used
+			if (equalSign != -1) {
+				// convert vorbis tags to a descriptor common across all supported formats
+				String tag = TagRegistry.vorbisTag(data, start, equalSign);
+				if (tag.equals(PICTURE_COMMENT)) {
+					// base64 PICTURE block, decoded straight from the bytes when images are requested
+					ByteBuffer encoded = ByteBuffer.wrap(data, start + equalSign + 1, length - equalSign - 1).slice();
+					metadata.onDeferredImage(() -> decodePicture(encoded));
+					continue;
+				}
 
-			// explicit return to big endian even though buffer will be reassigned
-			buffer.order(ByteOrder.BIG_ENDIAN);
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+				metadata.onTextField(tag, data, start + equalSign + 1, length - equalSign - 1, StandardCharsets.UTF_8);
+			}
 		}
+
+		// steps 7-9 are not applicable to FLAC as framing_bit is not used
+
+		// return to big endian for any further use of the buffer
+		buffer.order(ByteOrder.BIG_ENDIAN);
 	}
 }
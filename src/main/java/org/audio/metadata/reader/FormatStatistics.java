@@ -0,0 +1,215 @@
+package org.audio.metadata.reader;
+
+/**
+ * Snapshot of the work done reading files of a single format, as collected
+ * by {@link ReaderStatistics}.
+ */
+public class FormatStatistics {
+
+	/**
+	 * Name of the {@link org.audio.utils.FileUtils.Format}
+	 */
+	private final String format;
+
+	/**
+	 * Number of files read
+	 */
+	private final long files;
+
+	/**
+	 * Number of reads that threw an exception or stopped on a corrupt file
+	 */
+	private final long failures;
+
+	/**
+	 * Nanoseconds spent determining the format in {@link MetadataReader#of}
+	 */
+	private final long detectNanos;
+
+	/**
+	 * Nanoseconds spent opening files
+	 */
+	private final long openNanos;
+
+	/**
+	 * Nanoseconds spent in {@link MetadataReader#accept}
+	 */
+	private final long readNanos;
+
+	/**
+	 * Number of read calls made on file channels
+	 */
+	private final long readCalls;
+
+	/**
+	 * Number of bytes read from file channels
+	 */
+	private final long bytesRead;
+
+	/**
+	 * Number of frames, blocks, atoms, chunks or pages visited
+	 */
+	private final long structures;
+
+	/**
+	 * Number of embedded images sized for extraction
+	 */
+	private final long images;
+
+	/**
+	 * Number of bytes allocated by the reading threads, 0 if unsupported
+	 */
+	private final long bytesAllocated;
+
+	/**
+	 * Number of reads taking between 2^(i-1) and 2^i nanoseconds
+	 */
+	private final long[] latencyHistogram;
+
+	/**
+	 * @param format           name of the format
+	 * @param files            number of files read
+	 * @param failures         number of reads that threw an exception or stopped
+	 *                         on a corrupt file
+	 * @param detectNanos      nanoseconds spent determining the format
+	 * @param openNanos        nanoseconds spent opening files
+	 * @param readNanos        nanoseconds spent reading metadata
+	 * @param readCalls        number of read calls
+	 * @param bytesRead        number of bytes read
+	 * @param structures       number of structures visited
+	 * @param images           number of images sized for extraction
+	 * @param bytesAllocated   number of bytes allocated
+	 * @param latencyHistogram reads per power of two nanoseconds
+	 */
+	FormatStatistics(String format, long files, long failures, long detectNanos, long openNanos, long readNanos,
+			long readCalls, long bytesRead, long structures, long images, long bytesAllocated,
+			long[] latencyHistogram) {
+		this.format = format;
+		this.files = files;
+		this.failures = failures;
+		this.detectNanos = detectNanos;
+		this.openNanos = openNanos;
+		this.readNanos = readNanos;
+		this.readCalls = readCalls;
+		this.bytesRead = bytesRead;
+		this.structures = structures;
+		this.images = images;
+		this.bytesAllocated = bytesAllocated;
+		this.latencyHistogram = latencyHistogram;
+	}
+
+	/**
+	 * @return name of the format
+	 */
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return number of files read
+	 */
+	public long getFiles() {
+		return files;
+	}
+
+	/**
+	 * @return number of reads that threw an exception or stopped on a corrupt
+	 *         file
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return nanoseconds spent determining the format
+	 */
+	public long getDetectNanos() {
+		return detectNanos;
+	}
+
+	/**
+	 * @return nanoseconds spent opening files
+	 */
+	public long getOpenNanos() {
+		return openNanos;
+	}
+
+	/**
+	 * @return nanoseconds spent reading metadata, including opening files
+	 */
+	public long getReadNanos() {
+		return readNanos;
+	}
+
+	/**
+	 * @return number of read calls made on file channels
+	 */
+	public long getReadCalls() {
+		return readCalls;
+	}
+
+	/**
+	 * @return number of bytes read from file channels
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return number of frames, blocks, atoms, chunks or pages visited
+	 */
+	public long getStructures() {
+		return structures;
+	}
+
+	/**
+	 * @return number of embedded images sized for extraction
+	 */
+	public long getImages() {
+		return images;
+	}
+
+	/**
+	 * @return number of bytes allocated by the reading threads, 0 if the JVM
+	 *         does not support measuring it
+	 */
+	public long getBytesAllocated() {
+		return bytesAllocated;
+	}
+
+	/**
+	 * @return copy of the latency histogram, where bucket {@code i} counts
+	 *         reads taking between 2^(i-1) and 2^i nanoseconds
+	 */
+	public long[] getLatencyHistogram() {
+		return latencyHistogram.clone();
+	}
+
+	/**
+	 * Estimates a latency percentile from the histogram. The result is the
+	 * upper bound of the bucket holding the percentile, so it is accurate to
+	 * within a factor of two.
+	 *
+	 * @param percentile value between 0 and 100
+	 * @return latency in nanoseconds, 0 if nothing was read
+	 */
+	public long latencyPercentile(double percentile) {
+		long rank = (long) Math.ceil(files * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < latencyHistogram.length; ++i) {
+			seen += latencyHistogram[i];
+			if (seen >= Math.max(1, rank)) {
+				return i >= 63 ? Long.MAX_VALUE : 1L << i;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d files, %d failed, %.2f ms/file, p99 %.2f ms, %d reads, %d bytes read, "
+				+ "%d structures, %d images, %d bytes allocated", format, files, failures,
+				files == 0 ? 0.0 : readNanos / 1e6 / files, latencyPercentile(99) / 1e6, readCalls, bytesRead,
+				structures, images, bytesAllocated);
+	}
+}
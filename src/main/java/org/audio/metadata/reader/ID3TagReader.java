@@ -1,19 +1,26 @@
 package org.audio.metadata.reader;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
-import org.audio.metadata.Constants;
 import org.audio.metadata.Metadata;
-import org.audio.utils.FileUtils;
-import org.audio.utils.FileUtils.Format;
+import org.audio.metadata.MetadataVisitor;
 import org.audio.utils.ImageExtractor;
 
 /**
@@ -29,87 +36,9 @@ public class ID3TagReader extends MetadataReader {
 	}
 
 	/**
-	 * Mapping from ID3 tags to {@link Constants}.
+	 * Frame ID of attached pictures
 	 */
-	private static final Map<String, String> ID3_TAGS;
-	static {
-		Map<String, String> tags = new HashMap<>();
-		tags.put("AENC", "Audio encryption");
-		tags.put("APIC", "Attached picture");
-		tags.put("COMM", "Comments");
-		tags.put("COMR", "Commercial frame");
-		tags.put("ENCR", "Encryption method registration");
-		tags.put("EQUA", "Equalization");
-		tags.put("ETCO", "Event timing codes");
-		tags.put("GEOB", "General encapsulated object");
-		tags.put("GRID", "Group identification registration");
-		tags.put("IPLS", "Involved people list");
-		tags.put("LINK", "Linked information");
-		tags.put("MCDI", "Music CD identifier");
-		tags.put("MLLT", "MPEG location lookup table");
-		tags.put("OWNE", "Ownership frame");
-		tags.put("PRIV", "Private frame");
-		tags.put("PCNT", "Play counter");
-		tags.put("POPM", "Popularimeter");
-		tags.put("POSS", "Position synchronisation frame");
-		tags.put("RBUF", "Recommended buffer size");
-		tags.put("RVAD", "Relative volume adjustment");
-		tags.put("RVRB", "Reverb");
-		tags.put("SYLT", "Synchronized lyric");
-		tags.put("SYTC", "Synchronized tempo codes");
-		tags.put("TALB", Constants.ALBUM_NAME);
-		tags.put("TBPM", "BPM");
-		tags.put("TCOM", Constants.COMPOSER);
-		tags.put("TCON", Constants.GENRE);
-		tags.put("TCOP", Constants.COPYRIGHT);
-		tags.put("TDAT", Constants.DATE);
-		tags.put("TDLY", "Playlist delay");
-		tags.put("TENC", "Encoded by");
-		tags.put("TEXT", Constants.LYRICIST);
-		tags.put("TFLT", "File type");
-		tags.put("TIME", "Time");
-		tags.put("TIT1", "Content group description");
-		tags.put("TIT2", Constants.TITLE);
-		tags.put("TIT3", Constants.SUBTITLE);
-		tags.put("TKEY", "Initial key");
-		tags.put("TLAN", "Language(s)");
-		tags.put("TLEN", "Length");
-		tags.put("TMED", "Media type");
-		tags.put("TOAL", "Original album");
-		tags.put("TOFN", "Original filename");
-		tags.put("TOLY", "Original lyricist(s)");
-		tags.put("TOPE", "Original artist(s)");
-		tags.put("TORY", "Original release year");
-		tags.put("TOWN", "File owner");
-		tags.put("TPE1", Constants.ARTIST_NAME);
-		tags.put("TPE2", Constants.ACCOMPANIMENT);
-		tags.put("TPE3", Constants.CONDUCTOR);
-		tags.put("TPE4", "Modified by");
-		tags.put("TPOS", "Part of a set");
-		tags.put("TPUB", Constants.PUBLISHER);
-		tags.put("TRCK", Constants.TRACK_NUMBER);
-		tags.put("TRDA", "Recording dates");
-		tags.put("TRSN", "Internet radio station name");
-		tags.put("TRSO", "Internet radio station owner");
-		tags.put("TSIZ", "Size");
-		tags.put("TSRC", Constants.ISRC);
-		tags.put("TSSE", Constants.ENCODING_INFO);
-		tags.put("TYER", Constants.YEAR);
-		tags.put("TXXX", "User defined text information frame");
-		tags.put("UFID", "Unique file identifier");
-		tags.put("USER", "Terms of use");
-		tags.put("USLT", "Unsychronized lyric");
-		tags.put("WCOM", "Commercial information");
-		tags.put("WCOP", Constants.COPYRIGHT_WEBPAGE);
-		tags.put("WOAF", Constants.FILE_WEBPAGE);
-		tags.put("WOAR", Constants.ARTIST_WEBPAGE);
-		tags.put("WOAS", "Official audio source webpage");
-		tags.put("WORS", "Official internet radio station homepage");
-		tags.put("WPAY", "Payment");
-		tags.put("WPUB", Constants.PUBLISHER_WEBPAGE);
-		tags.put("WXXX", "User defined URL link frame");
-		ID3_TAGS = Collections.unmodifiableMap(tags);
-	}
+	private static final int APIC = 'A' << 24 | 'P' << 16 | 'I' << 8 | 'C';
 
 	/**
 	 * Standard ID3v2 has a 10 byte header
@@ -118,146 +47,460 @@ public class ID3TagReader extends MetadataReader {
 	private static final int HEADER_SIZE = 10;
 
 	/**
-	 * Reads ID3 tags from given MP3 files
+	 * Tag formats that may be found in an MP3 file
+	 */
+	public enum TagType {
+		/**
+		 * ID3v2 tag at the start of the file
+		 */
+		ID3V2,
+
+		/**
+		 * APEv2 tag at the end of the file
+		 */
+		APEV2,
+
+		/**
+		 * ID3v1 tag in the last 128 bytes of the file
+		 */
+		ID3V1;
+	}
+
+	/**
+	 * Shared pool used to read file tails concurrently with the head
+	 */
+	private static final ExecutorService TAIL_READER = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "id3-tail-reader");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Order in which tags take precedence when the same field is present in
+	 * more than one tag. Tags not listed are ignored.
+	 */
+	private List<TagType> precedence = List.of(TagType.ID3V2, TagType.APEV2, TagType.ID3V1);
+
+	/**
+	 * Whether the file tail is read on a separate thread while the head is
+	 * parsed. Worthwhile when each read has high latency, e.g. network mounts.
+	 */
+	private boolean concurrentTailRead = false;
+
+	/**
+	 * Sets the order in which tags take precedence when the same field is found
+	 * in more than one tag. Tags not listed are not read at all.
 	 * 
-	 * @return metadata in key-value pairs
+	 * @param precedence tag types, highest precedence first
 	 */
-	public Metadata getMetadata() {
-		Metadata metadata = new Metadata();
+	public void setPrecedence(List<TagType> precedence) {
+		this.precedence = List.copyOf(precedence);
+	}
 
-		// determine ID3 version
-		if (checkHeader(source)) {
-			ID3v2(source, metadata);
+	/**
+	 * Enables reading the trailing ID3v1/APEv2 tags on a separate thread while
+	 * the ID3v2 tag is parsed, so that the latency of the two reads overlaps.
+	 * 
+	 * @param concurrentTailRead true to read the tail concurrently
+	 */
+	public void setConcurrentTailRead(boolean concurrentTailRead) {
+		this.concurrentTailRead = concurrentTailRead;
+	}
+
+	/**
+	 * Reads ID3v2, APEv2 and ID3v1 tags from given MP3 files and merges them
+	 * according to {@code precedence}.
+	 * 
+	 * <p>
+	 * Since a field may only be taken from the tag of highest precedence that
+	 * contains it, each tag is collected into a plain {@code Metadata} before
+	 * the merged result is passed to {@code visitor}, which alone interns any
+	 * images. Deferred frames stay deferred throughout.
+	 * </p>
+	 * 
+	 * @param visitor receiver of the merged values
+	 */
+	@Override
+	protected void readMetadata(MetadataVisitor visitor) {
+		Map<TagType, Metadata> tags = new EnumMap<>(TagType.class);
+
+		try (FileChannel channel = openChannel()) {
+			boolean readTail = precedence.contains(TagType.APEV2) || precedence.contains(TagType.ID3V1);
+
+			// positioned reads leave the channel position alone, so the tail can be read
+			// while the head is being parsed
+			CompletableFuture<Map<TagType, Metadata>> trailers = null;
+			if (readTail && concurrentTailRead) {
+				trailers = CompletableFuture.supplyAsync(() -> {
+					try {
+						return readTrailers(channel);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}, TAIL_READER);
+			}
+
+			try {
+				if (precedence.contains(TagType.ID3V2)) {
+					// kept even if the tag turns out to be corrupt part way through
+					Metadata id3v2 = new Metadata();
+					tags.put(TagType.ID3V2, id3v2);
+					if (!extractID3v2Data(channel, id3v2, limits)) {
+						readFailed();
+					}
+				}
+			} finally {
+				// the tail is read from this channel, so it must be done before the channel closes
+				if (trailers != null) {
+					tags.putAll(trailers.join());
+				}
+			}
+
+			if (trailers == null && readTail) {
+				tags.putAll(readTrailers(channel));
+			}
+		} catch (IOException | CompletionException e) {
+			// corrupt or oversized files keep the values read so far
+			readFailed();
+		}
+
+		Metadata metadata = new Metadata();
+		for (TagType type : precedence) {
+			if (tags.containsKey(type)) {
+				metadata.merge(tags.get(type));
+			}
 		}
 
-		return metadata;
+		metadata.accept(visitor);
 	}
 
 	/**
-	 * Loads {@code metadata} with tags found in {@code source} based on ID3v2
-	 * specifications
+	 * Reads the APEv2 and ID3v1 tags from the end of {@code channel}.
 	 * 
-	 * @param source   path to audio file
-	 * @param metadata map to be populated with any found metadata
+	 * @param channel mp3 file channel
+	 * @return tags that were found
+	 * @throws IOException if the channel cannot be read
 	 */
-	private void ID3v2(Path source, Metadata metadata) {
-		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
-			extractID3v2Data(channel, metadata);
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+	private Map<TagType, Metadata> readTrailers(FileChannel channel) throws IOException {
+		Map<TagType, Metadata> tags = new EnumMap<>(TagType.class);
+		ByteBuffer tail = TrailerTagReader.readTail(channel);
+
+		Metadata id3v1 = new Metadata();
+		boolean hasID3v1 = TrailerTagReader.extractID3v1Data(tail, id3v1);
+		if (hasID3v1) {
+			tags.put(TagType.ID3V1, id3v1);
+		}
+
+		Metadata ape = new Metadata();
+		if (precedence.contains(TagType.APEV2)
+				&& TrailerTagReader.extractAPEData(channel, tail, hasID3v1, ape, limits)) {
+			tags.put(TagType.APEV2, ape);
 		}
+
+		return tags;
 	}
 
 	/**
 	 * Loads {@code metadata} with tags found in {@code source} based on ID3v2.
-	 * Logic extracted from above ID3v2
+	 * Shared with readers of formats that embed ID3v2 chunks.
 	 * 
 	 * @param channel mp3 file channel
-	 * @param metadata    instance to be populated with data
+	 * @param metadata    receiver of the values found
 	 */
-	public static void extractID3v2Data(FileChannel channel, Metadata metadata) {
+	public static void extractID3v2Data(FileChannel channel, MetadataVisitor metadata) {
+		extractID3v2Data(channel, metadata, ReaderLimits.DEFAULT);
+	}
+
+	/**
+	 * Loads {@code metadata} with tags found in {@code source} based on ID3v2,
+	 * rejecting any tag or frame whose size exceeds {@code limits}.
+	 * 
+	 * <p>
+	 * Handles versions 2.2, 2.3 and 2.4. The tag is read with a single call and
+	 * plain frames are decoded as they are encountered. Frames that are
+	 * compressed or individually unsynchronised are only decoded once their
+	 * field is requested from {@code metadata}; encrypted frames are skipped.
+	 * On return {@code channel} is positioned after the tag and its footer.
+	 * </p>
+	 * 
+	 * @param channel  mp3 file channel positioned at the start of the tag
+	 * @param metadata receiver of the values found
+	 * @param limits   resource limits enforced while parsing
+	 * @return false if the tag is corrupt or exceeds {@code limits}, true if it
+	 *         was read or there is none
+	 */
+	public static boolean extractID3v2Data(FileChannel channel, MetadataVisitor metadata, ReaderLimits limits) {
 		try {
-			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
-			int nRead = channel.read(buffer);
-			buffer.flip();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			int nRead = channel.read(header);
+			if (nRead != HEADER_SIZE || header.get(0) != 'I' || header.get(1) != 'D' || header.get(2) != '3') {
+				return true;
+			}
 
-			int id3_version = buffer.get(3);
-			int id3_revision = buffer.get(4);
-			int id3_flags = buffer.get(5);
-			int id3_length = getSizeFromHeader(buffer);
+			int id3_version = header.get(3);
+			int id3_revision = header.get(4);
+			int id3_flags = header.get(5);
+			int id3_length = limits.checkTagSize(getSizeFromHeader(header));
+
+			boolean unsynchronised = (id3_flags & 0x80) != 0;
+			boolean extendedHeader = id3_version > 2 && (id3_flags & 0x40) != 0;
+			boolean footer = id3_version == 4 && (id3_flags & 0x10) != 0;
+
+			// read the entire tag at once, frames are parsed from memory
+			ByteBuffer tag = ByteBuffer.allocate(id3_length);
+			nRead = channel.read(tag);
+			tag.flip();
+			if (footer) {
+				channel.position(channel.position() + HEADER_SIZE);
+			}
 
-			boolean extendedHeader = (id3_flags & (1 << 6)) != 0;
-			if (extendedHeader) {
+			if (id3_version < 2 || id3_version > 4) {
+				// future versions are not backwards compatible
+				return true;
+			}
+			if (id3_version == 2 && (id3_flags & 0x40) != 0) {
+				// ID3v2.2 never defined a compression scheme, the tag should be ignored
+				return true;
+			}
+
+			// prior to 2.4 unsynchronisation applies to the tag as a whole and frame
+			// sizes describe the re-synchronised data
+			if (unsynchronised && id3_version < 4) {
+				byte[] raw = new byte[tag.remaining()];
+				tag.get(raw);
+				tag = ByteBuffer.wrap(resynchronise(raw, 0, raw.length));
+			}
+
+			if (extendedHeader && tag.remaining() >= 4) {
 				// the extended header does not provide much useful information
-				nRead = channel.read(buffer);
-				buffer.flip();
+				byte[] extSize = new byte[4];
+				tag.get(extSize);
 
-				int ext_size = buffer.getInt();
-				int ext_flags = buffer.getChar();
-				int ext_padding = buffer.getInt();
+				// 2.3 excludes the size field itself, 2.4 is synchsafe and includes it
+				int skip = id3_version == 3 ? convertBytesToInt(extSize, false) : convertBytesToInt(extSize, true) - 4;
+				if (skip < 0 || skip > tag.remaining()) {
+					return false;
+				}
+				tag.position(tag.position() + skip);
 			}
 
-			int bytesRead = 0;
-			int bytesToRead = id3_length;
+			int frameHeaderSize = id3_version == 2 ? 6 : HEADER_SIZE;
+			int frameCount = 0;
 
 			// iterate through all frames
-			// 4 byte frame ID
-			// 4 byte frame size
-			// 2 byte frame flags
-			while (bytesRead < bytesToRead) {
-				// re-allocate buffer for header only
-				buffer = ByteBuffer.allocate(HEADER_SIZE);
-				nRead = channel.read(buffer);
-				if (nRead != HEADER_SIZE) {
-					// break out and return metadata if any issues occur
+			// 2.2: 3 byte frame ID, 3 byte frame size
+			// 2.3+: 4 byte frame ID, 4 byte frame size, 2 byte frame flags
+			while (tag.remaining() >= frameHeaderSize) {
+				limits.checkAtomCount(++frameCount);
+
+				int frameID = readFrameID(tag, id3_version == 2 ? 3 : 4);
+				if (frameID < 0) {
+					// stop reading once we reach the padding, or anything else that is not a frame
 					break;
 				}
-				buffer.flip();
-				bytesRead += nRead;
-
-				byte[] frameID = new byte[4];
-				buffer.get(frameID);
 
-				// make sure to get size according to ID3 version
-				byte[] frameSize = new byte[4];
-				buffer.get(frameSize);
-				int size = convertBytesToInt(frameSize, id3_version == 4);
+				int size;
+				int statusFlags = 0;
+				int formatFlags = 0;
+				if (id3_version == 2) {
+					size = ((tag.get() & 0xFF) << 16) | ((tag.get() & 0xFF) << 8) | (tag.get() & 0xFF);
+				} else {
+					// make sure to get size according to ID3 version
+					byte[] frameSize = new byte[4];
+					tag.get(frameSize);
+					size = convertBytesToInt(frameSize, id3_version == 4);
 
-				short flags = buffer.getShort();
+					statusFlags = tag.get() & 0xFF;
+					formatFlags = tag.get() & 0xFF;
+				}
 
-				// re-allocate buffer for full frame
-				buffer = ByteBuffer.allocate(size);
-				nRead = channel.read(buffer);
-				if (nRead != size) {
-					// break out and return metadata if any issues occur
+				// frames may not extend past the end of the tag
+				if (size < 0 || size > tag.remaining()) {
 					break;
 				}
-				buffer.flip();
-				bytesRead += nRead;
+				int frameEnd = tag.position() + size;
 
-				byte[] frameData = new byte[size];
-				buffer.get(frameData);
+				// in the event of unrecognized frame IDs, I want to present the data as-is
+				// otherwise, I want to convert the frame ID to a common name, so that metadata
+				// for different file types matches
+				if (id3_version == 2) {
+					frameID = TagRegistry.id3v22Frame(frameID);
+				}
+				String key = TagRegistry.id3Tag(frameID);
 
-				// stop reading once we reach the void
-				if (frameID[0] == 0 && frameID[1] == 0 && frameID[2] == 0 && frameID[3] == 0) {
-					break;
+				// TODO: COMR commercial frame allows image/png and image/jpeg
+				boolean isImage = frameID == APIC;
+				if (isImage) {
+					limits.checkImageSize(size);
 				} else {
-					// in the event of unrecognized frame IDs, I want to present the data as-is
-					// otherwise, I want to convert the frame ID to a common name, so that metadata
-					// for different file types matches
-					String tag = new String(frameID);
-					if (ID3_TAGS.containsKey(tag)) {
-						tag = ID3_TAGS.get(tag);
+					limits.checkTagSize(size);
+				}
+
+				// frame format flags differ between 2.3 and 2.4
+				boolean compressed;
+				boolean encrypted;
+				boolean frameUnsynchronised = false;
+				int decodedSize = -1;
+				if (id3_version == 3) {
+					compressed = (formatFlags & 0x80) != 0;
+					encrypted = (formatFlags & 0x40) != 0;
+					boolean grouped = (formatFlags & 0x20) != 0;
+
+					// decompressed size, encryption method, group ID
+					int extra = (compressed ? 4 : 0) + (encrypted ? 1 : 0) + (grouped ? 1 : 0);
+					if (extra > size) {
+						break;
+					}
+					if (compressed) {
+						decodedSize = tag.getInt();
+					}
+					tag.position(tag.position() + extra - (compressed ? 4 : 0));
+				} else if (id3_version == 4) {
+					boolean grouped = (formatFlags & 0x40) != 0;
+					compressed = (formatFlags & 0x08) != 0;
+					encrypted = (formatFlags & 0x04) != 0;
+					frameUnsynchronised = unsynchronised || (formatFlags & 0x02) != 0;
+					boolean dataLength = (formatFlags & 0x01) != 0;
+
+					// group ID, encryption method, data length indicator
+					int extra = (grouped ? 1 : 0) + (encrypted ? 1 : 0) + (dataLength ? 4 : 0);
+					if (extra > size) {
+						break;
+					}
+					tag.position(tag.position() + extra - (dataLength ? 4 : 0));
+					if (dataLength) {
+						byte[] length = new byte[4];
+						tag.get(length);
+						decodedSize = convertBytesToInt(length, true);
 					}
+				} else {
+					compressed = false;
+					encrypted = false;
+				}
+
+				if (encrypted) {
+					// encryption methods are registered by the tagging software, nothing to do
+					tag.position(frameEnd);
+					continue;
+				}
 
-					// TODO: COMR commercial frame allows image/png and image/jpeg
-					if (tag.equals(ID3_TAGS.get("APIC"))) {
-						metadata.addImage(ImageExtractor.extractImage(frameData));
+				byte[] frameData = new byte[frameEnd - tag.position()];
+				tag.get(frameData);
+
+				if (!compressed && !frameUnsynchronised) {
+					// fast path, plain frame
+					if (isImage) {
+						metadata.onImage(ImageExtractor.extractAPIC(frameData, id3_version));
+					} else {
+						visitString(key, frameData, metadata);
+					}
+				} else {
+					// defer the expensive work until the field is requested
+					int version = id3_version;
+					int expectedSize = decodedSize;
+					boolean unsync = frameUnsynchronised;
+					if (isImage) {
+						metadata.onDeferredImage(() -> {
+							byte[] decoded = decodeFrame(frameData, unsync, compressed, expectedSize, limits);
+							return decoded == null ? null : ImageExtractor.extractAPIC(decoded, version);
+						});
 					} else {
-						metadata.addTextField(tag, encodeString(frameData));
+						metadata.onDeferredTextField(key, () -> {
+							byte[] decoded = decodeFrame(frameData, unsync, compressed, expectedSize, limits);
+							return decoded == null ? null : encodeString(decoded);
+						});
 					}
 				}
 			}
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			// corrupt or oversized, the frames read so far are kept
+			return false;
 		}
+		return true;
 	}
 
 	/**
-	 * Determine if {@code path} matches ID3 format
+	 * Reads a frame identifier of {@code length} characters from {@code tag}.
 	 * 
-	 * @param src path to audio file
-	 * @return true if the audio file matches ID3v2 specifications
+	 * @param tag    buffer positioned at the start of a frame
+	 * @param length 3 for ID3v2.2, otherwise 4
+	 * @return the frame ID as a big endian integer, or -1 if the bytes are not
+	 *         a valid ID (padding or junk following the last frame)
 	 */
-	private boolean checkHeader(Path src) {
-		byte[] header = FileUtils.getHeader(src);
-		if (header != null) {
-			return FileUtils.determineFormatByHeader(src) == Format.MP3; // check ID3 tag version
+	private static int readFrameID(ByteBuffer tag, int length) {
+		int id = 0;
+		for (int i = 0; i < length; ++i) {
+			byte b = tag.get();
+
+			// frame IDs are made out of the characters capital A-Z and 0-9
+			if ((b < 'A' || b > 'Z') && (b < '0' || b > '9')) {
+				return -1;
+			}
+			id = (id << 8) | b;
+		}
+		return id;
+	}
+
+	/**
+	 * Reverses the unsynchronisation scheme by dropping every 0x00 that follows
+	 * an 0xFF.
+	 * 
+	 * @param data   unsynchronised bytes
+	 * @param offset start of the range to decode
+	 * @param length number of bytes to decode
+	 * @return the original bytes
+	 */
+	public static byte[] resynchronise(byte[] data, int offset, int length) {
+		byte[] output = new byte[length];
+		int count = 0;
+		for (int i = offset; i < offset + length; ++i) {
+			output[count++] = data[i];
+			if ((data[i] & 0xFF) == 0xFF && i + 1 < offset + length && data[i + 1] == 0) {
+				++i;
+			}
+		}
+		return count == length ? output : Arrays.copyOf(output, count);
+	}
+
+	/**
+	 * Undoes frame level unsynchronisation and compression.
+	 * 
+	 * @param data           frame contents following the frame header
+	 * @param unsynchronised true if the frame was unsynchronised
+	 * @param compressed     true if the frame was compressed with zlib
+	 * @param decodedSize    decompressed size if known, otherwise -1
+	 * @param limits         resource limits enforced while decoding
+	 * @return decoded frame contents, or {@code null} if the frame is corrupt
+	 */
+	private static byte[] decodeFrame(byte[] data, boolean unsynchronised, boolean compressed, int decodedSize,
+			ReaderLimits limits) {
+		if (unsynchronised) {
+			data = resynchronise(data, 0, data.length);
+		}
+		if (!compressed) {
+			return data;
 		}
 
-		return false;
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream(decodedSize > 0 ? decodedSize : data.length * 2);
+			byte[] chunk = new byte[8192];
+			while (!inflater.finished()) {
+				int n = inflater.inflate(chunk);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				output.write(chunk, 0, n);
+				limits.checkTagSize(output.size());
+			}
+			return output.toByteArray();
+		} catch (DataFormatException | LimitExceededException e) {
+			return null;
+		} finally {
+			inflater.end();
+		}
 	}
 
 	/**
@@ -314,7 +557,7 @@ public class ID3TagReader extends MetadataReader {
 	 * Prefix Guide
 	 * </p>
 	 * <ul>
-	 * <li>0 = ASCII</li>
+	 * <li>0 = ISO-8859-1</li>
 	 * <li>1 = UTF-16 with BOM</li>
 	 * <li>2 = UTF-16 without BOM</li>
 	 * </ul>
@@ -323,37 +566,81 @@ public class ID3TagReader extends MetadataReader {
 	 * @return a string representation of {@code bytes}.
 	 */
 	private static String encodeString(byte[] bytes) {
+		Charset encoding = textEncoding(bytes);
+		if (encoding == null) {
+			return new String();
+		}
+		return new String(bytes, textOffset(bytes), textLength(bytes), encoding);
+	}
+
+	/**
+	 * Passes the text of a frame to {@code visitor} without decoding it.
+	 * 
+	 * @param key     simple name of text field
+	 * @param bytes   frame data starting with the encoding byte
+	 * @param visitor receiver of the value
+	 */
+	private static void visitString(String key, byte[] bytes, MetadataVisitor visitor) {
+		Charset encoding = textEncoding(bytes);
+		if (encoding == null) {
+			visitor.onTextField(key, bytes, 0, 0, StandardCharsets.ISO_8859_1);
+		} else {
+			visitor.onTextField(key, bytes, textOffset(bytes), textLength(bytes), encoding);
+		}
+	}
+
+	/**
+	 * Determines the character set of a text frame from its first byte.
+	 * 
+	 * @param bytes frame data starting with the encoding byte
+	 * @return character set, or {@code null} if the frame holds no text
+	 */
+	private static Charset textEncoding(byte[] bytes) {
 		// attempt to determine proper encoding based on first byte
 		if (bytes.length > 0) {
 			switch (bytes[0]) {
 				case 0:
-					// ISO 8859 1
-					return new String(bytes, 1, bytes.length - 2);
+					// ISO 8859 1, regardless of the platform charset
+					return StandardCharsets.ISO_8859_1;
 				case 1:
 					// UTF 16 BOM
 					// 0xFFFE = little endian
 					// 0xFEFF = big endian
-					boolean bigEndian = (bytes[1] & 0xFF) == 0xFE && (bytes[2] & 0xFF) == 0xFF;
-					if (bigEndian) {
-						// skip encoding flag and two byte BOM, cut off null terminator
-						return new String(bytes, 3, bytes.length - 5, StandardCharsets.UTF_16BE);
-					} else {
-						// skip encoding flag and two byte BOM, cut off null terminator
-						return new String(bytes, 3, bytes.length - 5, StandardCharsets.UTF_16LE);
+					if (bytes.length < 5) {
+						break;
 					}
+					boolean bigEndian = (bytes[1] & 0xFF) == 0xFE && (bytes[2] & 0xFF) == 0xFF;
+					return bigEndian ? StandardCharsets.UTF_16BE : StandardCharsets.UTF_16LE;
 				case 2:
 					// UTF 16 without BOM
 					// given StandardCharsets.UTF_16's behavior, I could just combine cases 1 & 2
 					// for now I will leave them separate for clarity
-
-					// skip encoding flag, cut off null terminator
-					return new String(bytes, 1, bytes.length - 3, StandardCharsets.UTF_16);
+					return StandardCharsets.UTF_16;
 				case 3:
 					// UTF 8
-					return new String(bytes, 1, bytes.length - 2, StandardCharsets.UTF_8);
+					return StandardCharsets.UTF_8;
 			}
 		}
 
-		return new String();
+		return null;
+	}
+
+	/**
+	 * @param bytes frame data starting with a valid encoding byte
+	 * @return start of the text, after the encoding flag and any BOM
+	 */
+	private static int textOffset(byte[] bytes) {
+		// skip encoding flag, and the two byte BOM of UTF 16
+		return bytes[0] == 1 ? 3 : 1;
+	}
+
+	/**
+	 * @param bytes frame data starting with a valid encoding byte
+	 * @return length of the text without its null terminator
+	 */
+	private static int textLength(byte[] bytes) {
+		// cut off the null terminator, two bytes wide in UTF 16
+		int terminator = bytes[0] == 1 || bytes[0] == 2 ? 2 : 1;
+		return Math.max(0, bytes.length - textOffset(bytes) - terminator);
 	}
 }
@@ -0,0 +1,22 @@
+package org.audio.metadata.reader;
+
+import java.io.IOException;
+
+/**
+ * Signals that a size, count or nesting level read from an audio file exceeds
+ * the configured {@link ReaderLimits}. The file is treated as corrupt and
+ * parsing stops before any oversized buffer is allocated.
+ */
+public class LimitExceededException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Creates a new exception with the given detail message.
+	 * 
+	 * @param message description of the violated limit
+	 */
+	public LimitExceededException(String message) {
+		super(message);
+	}
+}
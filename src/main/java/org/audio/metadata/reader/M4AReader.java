@@ -5,17 +5,29 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
-import org.audio.metadata.Constants;
-import org.audio.metadata.Metadata;
+import org.audio.metadata.FragmentIndex;
+import org.audio.metadata.MetadataVisitor;
 import org.audio.utils.ImageExtractor;
 
 /**
  * Reads metadata from M4A files marked with ftypM4A
+ *
+ * <p>
+ * Atoms are walked with positioned reads, descending only into
+ * moov/udta/meta/ilst and moov/meta. Everything else, including the sample
+ * tables in trak and the media data in mdat, is skipped by size without being
+ * read. Only one ilst item is held in memory at a time.
+ * </p>
+ *
+ * <p>
+ * Fragmented files, such as DASH segments, follow moov with thousands of
+ * moof/mdat pairs. The walk stops at the first moof, and the fragments are
+ * listed from the sidx atom ahead of them or the mfra atom at the end of the
+ * file instead, without visiting them.
+ * </p>
  */
 public class M4AReader extends MetadataReader{
 
@@ -27,105 +39,602 @@ public class M4AReader extends MetadataReader{
 	}
 
 	/**
-	 * Mappings from M4A four character code tags to {@link Constants}.
-	 */
-	private static final Map<String, String> M4A_TAGS;
-	static {
-		Map<String, String> tags = new HashMap<>();
-		tags.put("\u00A9ART", Constants.ARTIST_NAME);
-		tags.put("aART", Constants.ALBUM_ARTIST_NAME);
-		tags.put("\u00A9alb", Constants.ALBUM_NAME);
-		tags.put("\u00A9wrt", Constants.COMPOSER);
-		tags.put("\u00A9nam", Constants.TITLE);
-		tags.put("trck", Constants.TRACK_NUMBER);
-		tags.put("disk", Constants.DISC_NUMBER);
-		tags.put("cprt", Constants.COPYRIGHT);
-		tags.put("\u00A9too", Constants.ENCODING_INFO);
-		tags.put("\u00A9day", Constants.YEAR);
-		tags.put("gnre", Constants.GENRE);
-		tags.put("\u00A9gen", Constants.GENRE);
-		M4A_TAGS = Collections.unmodifiableMap(tags);
-	}
+	 * File type header, atom types are compared as big endian integers
+	 */
+	private static final int FTYP = 'f' << 24 | 't' << 16 | 'y' << 8 | 'p';
+
+	/**
+	 * Movie container
+	 */
+	private static final int MOOV = 'm' << 24 | 'o' << 16 | 'o' << 8 | 'v';
+
+	/**
+	 * User data container
+	 */
+	private static final int UDTA = 'u' << 24 | 'd' << 16 | 't' << 8 | 'a';
+
+	/**
+	 * Metadata container
+	 */
+	private static final int META = 'm' << 24 | 'e' << 16 | 't' << 8 | 'a';
+
+	/**
+	 * Handler reference, first child of QuickTime meta atoms
+	 */
+	private static final int HDLR = 'h' << 24 | 'd' << 16 | 'l' << 8 | 'r';
+
+	/**
+	 * Item list
+	 */
+	private static final int ILST = 'i' << 24 | 'l' << 16 | 's' << 8 | 't';
+
+	/**
+	 * Cover art item
+	 */
+	private static final int COVR = 'c' << 24 | 'o' << 16 | 'v' << 8 | 'r';
+
+	/**
+	 * Freeform item, named by its mean and name atoms
+	 */
+	private static final int FREEFORM = '-' << 24 | '-' << 16 | '-' << 8 | '-';
+
+	/**
+	 * Reverse domain name of a freeform item
+	 */
+	private static final int MEAN = 'm' << 24 | 'e' << 16 | 'a' << 8 | 'n';
+
+	/**
+	 * Name of a freeform item
+	 */
+	private static final int NAME = 'n' << 24 | 'a' << 16 | 'm' << 8 | 'e';
+
+	/**
+	 * Value of an item
+	 */
+	private static final int DATA = 'd' << 24 | 'a' << 16 | 't' << 8 | 'a';
+
+	/**
+	 * Track number item
+	 */
+	private static final int TRKN = 't' << 24 | 'r' << 16 | 'k' << 8 | 'n';
+
+	/**
+	 * Disc number item
+	 */
+	private static final int DISK = 'd' << 24 | 'i' << 16 | 's' << 8 | 'k';
+
+	/**
+	 * ID3v1 genre index item
+	 */
+	private static final int GNRE = 'g' << 24 | 'n' << 16 | 'r' << 8 | 'e';
+
+	/**
+	 * Track container
+	 */
+	private static final int TRAK = 't' << 24 | 'r' << 16 | 'a' << 8 | 'k';
+
+	/**
+	 * Track header, holding the track ID
+	 */
+	private static final int TKHD = 't' << 24 | 'k' << 16 | 'h' << 8 | 'd';
+
+	/**
+	 * Media container of a track
+	 */
+	private static final int MDIA = 'm' << 24 | 'd' << 16 | 'i' << 8 | 'a';
+
+	/**
+	 * Media header, holding the timescale of a track
+	 */
+	private static final int MDHD = 'm' << 24 | 'd' << 16 | 'h' << 8 | 'd';
+
+	/**
+	 * Movie header, holding the timescale of the movie
+	 */
+	private static final int MVHD = 'm' << 24 | 'v' << 16 | 'h' << 8 | 'd';
+
+	/**
+	 * Movie fragment, the first one ends the walk
+	 */
+	private static final int MOOF = 'm' << 24 | 'o' << 16 | 'o' << 8 | 'f';
+
+	/**
+	 * Segment index, listing the size and duration of the fragments following it
+	 */
+	private static final int SIDX = 's' << 24 | 'i' << 16 | 'd' << 8 | 'x';
+
+	/**
+	 * Movie fragment random access container, at the end of the file
+	 */
+	private static final int MFRA = 'm' << 24 | 'f' << 16 | 'r' << 8 | 'a';
+
+	/**
+	 * Last atom of mfra, giving the size of mfra
+	 */
+	private static final int MFRO = 'm' << 24 | 'f' << 16 | 'r' << 8 | 'o';
+
+	/**
+	 * Track fragment random access, listing the time and position of fragments
+	 */
+	private static final int TFRA = 't' << 24 | 'f' << 16 | 'r' << 8 | 'a';
+
+	/**
+	 * Size of the mfro atom: header, version and flags, size of mfra
+	 */
+	private static final int MFRO_SIZE = 16;
 
 	/**
 	 * Chunk headers are a four byte character code followed by four byte chunk size
 	 */
 	private static final int CHUNK_HEADER_SIZE = 8;
 
+	/**
+	 * Chunks with a size of 1 are followed by an eight byte size
+	 */
+	private static final int LARGE_HEADER_SIZE = 16;
+
+	/**
+	 * Data type whose layout is implied by the item, e.g. trkn and gnre
+	 */
+	private static final int TYPE_IMPLICIT = 0;
+
+	/**
+	 * Data type of UTF-8 text
+	 */
+	private static final int TYPE_UTF8 = 1;
+
+	/**
+	 * Data type of UTF-16 (big endian) text
+	 */
+	private static final int TYPE_UTF16 = 2;
+
+	/**
+	 * Data type of JPEG images
+	 */
+	private static final int TYPE_JPEG = 13;
+
+	/**
+	 * Data type of PNG images
+	 */
+	private static final int TYPE_PNG = 14;
+
+	/**
+	 * Data type of big endian signed integers
+	 */
+	private static final int TYPE_INTEGER = 21;
+
+	/**
+	 * Data type of BMP images
+	 */
+	private static final int TYPE_BMP = 27;
+
+	/**
+	 * Location of an atom within the file
+	 *
+	 * @param type  four character code as a big endian integer
+	 * @param start position of the atom header
+	 * @param body  position of the atom contents
+	 * @param end   position just past the atom
+	 */
+	private record Atom(int type, long start, long body, long end) {
+	}
+
+	/**
+	 * Number of atoms visited while reading the current file
+	 */
+	private int atomCount;
+
 	/**
 	 * Reads tags from given M4A files
-	 * 
-	 * @return metadata in key-value pairs
+	 *
+	 * @param visitor receiver of the values found
 	 */
-	public Metadata getMetadata() {
-		Metadata metadata = new Metadata();
+	@Override
+	protected void readMetadata(MetadataVisitor visitor) {
+		atomCount = 0;
 
-		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+		try (FileChannel channel = openChannel()) {
+			long fileSize = channel.size();
+			long position = 0;
+			Atom moov = null;
+			FragmentIndex fragmentIndex = null;
 
 			// read until end of file
-			ByteBuffer buffer = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
-			while (channel.read(buffer) == CHUNK_HEADER_SIZE) {
-				// switch buffer to read mode
-				buffer.flip();
-
-				// parse header
-				int chunkSize = buffer.getInt();
-				byte[] fourCC = new byte[4];
-				buffer.get(fourCC);
-
-				if ((fourCC[0] & 0xFF) == 0x66 && (fourCC[1] & 0xFF) == 0x74 && (fourCC[2] & 0xFF) == 0x79
-						&& (fourCC[3] & 0xFF) == 0x70) {
-					// ftyp
-					parseHeader(channel, chunkSize);
-				} else if ((fourCC[0] & 0xFF) == 0x66 && (fourCC[1] & 0xFF) == 0x72 && (fourCC[2] & 0xFF) == 0x65
-						&& (fourCC[3] & 0xFF) == 0x65) {
-					// free
-					// skip contents and move to next chunk
-					channel.position(channel.position() + chunkSize - CHUNK_HEADER_SIZE);
-				} else if ((fourCC[0] & 0xFF) == 0x6D && (fourCC[1] & 0xFF) == 0x64 && (fourCC[2] & 0xFF) == 0x61
-						&& (fourCC[3] & 0xFF) == 0x74) {
-					// mdat
-					// skip contents and move to next chunk
-					channel.position(channel.position() + chunkSize - CHUNK_HEADER_SIZE);
-				} else if ((fourCC[0] & 0xFF) == 0x6D && (fourCC[1] & 0xFF) == 0x6F && (fourCC[2] & 0xFF) == 0x6F
-						&& (fourCC[3] & 0xFF) == 0x76) {
-					// moov
-					parseMOOV(channel, chunkSize, metadata);
+			Atom atom;
+			while ((atom = readAtom(channel, position, fileSize)) != null) {
+				limits.checkAtomCount(++atomCount);
+
+				if (atom.type() == FTYP) {
+					parseHeader(channel, atom);
+				} else if (atom.type() == MOOV) {
+					moov = atom;
+					parseContainer(channel, atom, 1, visitor);
+				} else if (atom.type() == SIDX && fragmentIndex == null) {
+					fragmentIndex = parseSegmentIndex(channel, atom, fileSize);
+				} else if (atom.type() == MOOF) {
+					// only fragments follow, listed by sidx or by mfra at the end of the file
+					if (fragmentIndex == null) {
+						fragmentIndex = parseRandomAccessIndex(channel, moov, fileSize);
+					}
+					break;
 				}
 
-				buffer.clear();
+				// mdat, free and anything else are skipped without being read
+				position = atom.end();
+			}
+
+			if (fragmentIndex != null) {
+				visitor.onFragmentIndex(fragmentIndex);
 			}
 
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			// corrupt or oversized files keep the values read so far
+			readFailed();
+		}
+	}
+
+	/**
+	 * Reads the header of the atom at {@code position} with a positioned read.
+	 *
+	 * @param channel   channel to audio file in read mode
+	 * @param position  file position of the atom header
+	 * @param parentEnd end of the enclosing atom, or the file size
+	 * @return the atom, or {@code null} if there is no valid atom at
+	 *         {@code position}
+	 * @throws IOException if channel is inaccessible
+	 */
+	private static Atom readAtom(FileChannel channel, long position, long parentEnd) throws IOException {
+		if (parentEnd - position < CHUNK_HEADER_SIZE) {
+			return null;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(LARGE_HEADER_SIZE);
+		int nRead = readFully(channel, header, position);
+		if (nRead < CHUNK_HEADER_SIZE) {
+			return null;
 		}
 
-		return metadata;
+		long size = header.getInt(0) & 0xFFFFFFFFL;
+		int type = header.getInt(4);
+		long body = position + CHUNK_HEADER_SIZE;
+
+		if (size == 1) {
+			// 64-bit size follows the four-cc
+			if (nRead < LARGE_HEADER_SIZE) {
+				return null;
+			}
+			size = header.getLong(CHUNK_HEADER_SIZE);
+			body += Long.BYTES;
+		} else if (size == 0) {
+			// atom extends to the end of its parent
+			size = parentEnd - position;
+		}
+
+		// an atom can never be smaller than its own header or leave its parent
+		if (size < body - position || size > parentEnd - position) {
+			return null;
+		}
+		return new Atom(type, position, body, position + size);
+	}
+
+	/**
+	 * Reads the contents of an atom.
+	 *
+	 * @param channel channel to audio file in read mode
+	 * @param atom    atom to read
+	 * @return buffer holding the contents, or {@code null} if the file ends
+	 *         first
+	 * @throws IOException if channel is inaccessible or the atom exceeds limits
+	 */
+	private ByteBuffer readContents(FileChannel channel, Atom atom) throws IOException {
+		int bytesToRead = limits.checkTagSize(atom.end() - atom.body());
+		ByteBuffer contents = ByteBuffer.allocate(bytesToRead);
+		if (readFully(channel, contents, atom.body()) != bytesToRead) {
+			return null;
+		}
+		contents.flip();
+		return contents;
+	}
+
+	/**
+	 * Builds the fragment index from a sidx atom and any sidx atoms it refers
+	 * to.
+	 *
+	 * @param channel  channel to audio file in read mode
+	 * @param sidx     first segment index of the file
+	 * @param fileSize size of the file
+	 * @return fragment index, or {@code null} if the atom is invalid
+	 * @throws IOException if channel is inaccessible or limits are exceeded
+	 */
+	private FragmentIndex parseSegmentIndex(FileChannel channel, Atom sidx, long fileSize) throws IOException {
+		List<Long> times = new ArrayList<>();
+		List<Long> offsets = new ArrayList<>();
+		List<Long> sizes = new ArrayList<>();
+
+		long[] timescale = new long[1];
+		long end = collectSegmentIndex(channel, sidx, fileSize, 1, timescale, times, offsets, sizes);
+		if (end < 0 || offsets.isEmpty()) {
+			return null;
+		}
+		times.add(end);
+		return new FragmentIndex(timescale[0], toArray(times), toArray(offsets), toArray(sizes));
+	}
+
+	/**
+	 * Adds the fragments referenced by a sidx atom to the index, descending
+	 * into the sidx atoms of hierarchical indexes.
+	 *
+	 * <pre>
+	 * 1-byte version, 3-byte flags
+	 * 4-byte reference ID
+	 * 4-byte timescale
+	 * 4 or 8-byte earliest presentation time, by version
+	 * 4 or 8-byte offset of the first fragment from the end of sidx
+	 * 2-byte reserved, 2-byte reference count
+	 * per reference: 1-bit type and 31-bit size, 4-byte duration, 4-byte SAP info
+	 * </pre>
+	 *
+	 * @param channel   channel to audio file in read mode
+	 * @param sidx      segment index atom
+	 * @param fileSize  size of the file
+	 * @param depth     nesting level of {@code sidx}
+	 * @param timescale time units per second, set by the first sidx
+	 * @param times     receiver of the start time of each fragment
+	 * @param offsets   receiver of the position of each fragment
+	 * @param sizes     receiver of the size of each fragment
+	 * @return end time of the referenced fragments, or -1 if the atom is invalid
+	 * @throws IOException if channel is inaccessible or limits are exceeded
+	 */
+	private long collectSegmentIndex(FileChannel channel, Atom sidx, long fileSize, int depth, long[] timescale,
+			List<Long> times, List<Long> offsets, List<Long> sizes) throws IOException {
+		limits.checkDepth(depth);
+
+		ByteBuffer contents = readContents(channel, sidx);
+		if (contents == null || contents.limit() < 12) {
+			return -1;
+		}
+		int version = contents.get(0) & 0xFF;
+		if (timescale[0] == 0) {
+			timescale[0] = contents.getInt(8) & 0xFFFFFFFFL;
+		}
+		if (timescale[0] == 0) {
+			return -1;
+		}
+
+		int position = 12;
+		long time;
+		long offset;
+		if (version == 0 && contents.limit() >= position + 12) {
+			time = contents.getInt(position) & 0xFFFFFFFFL;
+			offset = contents.getInt(position + 4) & 0xFFFFFFFFL;
+			position += 8;
+		} else if (version != 0 && contents.limit() >= position + 20) {
+			time = contents.getLong(position);
+			offset = contents.getLong(position + 8);
+			position += 16;
+		} else {
+			return -1;
+		}
+		int count = contents.getShort(position + 2) & 0xFFFF;
+		position += 4;
+
+		// offsets are relative to the first byte after sidx
+		offset += sidx.end();
+		for (int i = 0; i < count && position + 12 <= contents.limit(); ++i, position += 12) {
+			limits.checkAtomCount(++atomCount);
+
+			int reference = contents.getInt(position);
+			long size = reference & 0x7FFFFFFFL;
+			long duration = contents.getInt(position + 4) & 0xFFFFFFFFL;
+
+			if (reference < 0) {
+				// refers to another sidx, which lists the fragments
+				Atom child = readAtom(channel, offset, fileSize);
+				if (child != null && child.type() == SIDX) {
+					collectSegmentIndex(channel, child, fileSize, depth + 1, timescale, times, offsets, sizes);
+				}
+			} else {
+				times.add(time);
+				offsets.add(offset);
+				sizes.add(size);
+			}
+			offset += size;
+			time += duration;
+		}
+		return time;
+	}
+
+	/**
+	 * Builds the fragment index from the first tfra atom of the mfra atom at
+	 * the end of the file. tfra does not give the duration of the last
+	 * fragment, so the index is open ended.
+	 *
+	 * <pre>
+	 * 1-byte version, 3-byte flags
+	 * 4-byte track ID
+	 * 4-byte field sizes: 26 reserved bits, then 2 bits each for the sizes
+	 *        of traf number, trun number and sample number, minus one
+	 * 4-byte entry count
+	 * per entry: 4 or 8-byte time and moof offset by version, then the
+	 *        traf, trun and sample numbers
+	 * </pre>
+	 *
+	 * @param channel  channel to audio file in read mode
+	 * @param moov     movie atom, holding the timescale of the indexed track
+	 * @param fileSize size of the file
+	 * @return fragment index, or {@code null} if the file has no valid mfra
+	 * @throws IOException if channel is inaccessible or limits are exceeded
+	 */
+	private FragmentIndex parseRandomAccessIndex(FileChannel channel, Atom moov, long fileSize) throws IOException {
+		if (moov == null || fileSize < MFRO_SIZE) {
+			return null;
+		}
+		ByteBuffer mfro = ByteBuffer.allocate(MFRO_SIZE);
+		if (readFully(channel, mfro, fileSize - MFRO_SIZE) != MFRO_SIZE || mfro.getInt(4) != MFRO) {
+			return null;
+		}
+		long mfraSize = mfro.getInt(12) & 0xFFFFFFFFL;
+		if (mfraSize < CHUNK_HEADER_SIZE || mfraSize > fileSize) {
+			return null;
+		}
+		Atom mfra = readAtom(channel, fileSize - mfraSize, fileSize);
+		if (mfra == null || mfra.type() != MFRA) {
+			return null;
+		}
+
+		Atom tfra;
+		long position = mfra.body();
+		while ((tfra = readAtom(channel, position, mfra.end())) != null && tfra.type() != TFRA) {
+			limits.checkAtomCount(++atomCount);
+			position = tfra.end();
+		}
+		ByteBuffer contents = tfra == null ? null : readContents(channel, tfra);
+		if (contents == null || contents.limit() < 16) {
+			return null;
+		}
+
+		int version = contents.get(0) & 0xFF;
+		int trackId = contents.getInt(4);
+		int fieldSizes = contents.getInt(8);
+		int numberSizes = ((fieldSizes >> 4) & 3) + ((fieldSizes >> 2) & 3) + (fieldSizes & 3) + 3;
+		int entrySize = (version == 0 ? 8 : 16) + numberSizes;
+		long count = contents.getInt(12) & 0xFFFFFFFFL;
+
+		List<Long> times = new ArrayList<>();
+		List<Long> offsets = new ArrayList<>();
+		int entry = 16;
+		for (long i = 0; i < count && entry + entrySize <= contents.limit(); ++i, entry += entrySize) {
+			limits.checkAtomCount(++atomCount);
+
+			long time = version == 0 ? contents.getInt(entry) & 0xFFFFFFFFL : contents.getLong(entry);
+			long offset = version == 0 ? contents.getInt(entry + 4) & 0xFFFFFFFFL : contents.getLong(entry + 8);
+			// entries for later samples of the same fragment share its offset
+			if (offsets.isEmpty() || offset > offsets.get(offsets.size() - 1)) {
+				times.add(time);
+				offsets.add(offset);
+			}
+		}
+		long timescale = readTimescale(channel, moov, trackId);
+		if (offsets.isEmpty() || timescale <= 0) {
+			return null;
+		}
+
+		// fragments run up to the next one, the last up to mfra
+		List<Long> sizes = new ArrayList<>();
+		for (int i = 0; i < offsets.size(); ++i) {
+			long next = i + 1 < offsets.size() ? offsets.get(i + 1) : mfra.start();
+			sizes.add(Math.max(0, next - offsets.get(i)));
+		}
+		times.add(FragmentIndex.OPEN_ENDED);
+		return new FragmentIndex(timescale, toArray(times), toArray(offsets), toArray(sizes));
+	}
+
+	/**
+	 * Finds the timescale of a track from its mdhd atom, or of the movie from
+	 * mvhd if the track is not found.
+	 *
+	 * @param channel channel to audio file in read mode
+	 * @param moov    movie atom
+	 * @param trackId ID of the track
+	 * @return time units per second, 0 if not found
+	 * @throws IOException if channel is inaccessible or limits are exceeded
+	 */
+	private long readTimescale(FileChannel channel, Atom moov, int trackId) throws IOException {
+		long movieTimescale = 0;
+
+		Atom atom;
+		long position = moov.body();
+		while ((atom = readAtom(channel, position, moov.end())) != null) {
+			limits.checkAtomCount(++atomCount);
+
+			if (atom.type() == MVHD) {
+				movieTimescale = readHeaderField(channel, atom, 12, 20);
+			} else if (atom.type() == TRAK) {
+				Atom tkhd = findChild(channel, atom, TKHD);
+				Atom mdia = findChild(channel, atom, MDIA);
+				Atom mdhd = mdia == null ? null : findChild(channel, mdia, MDHD);
+				if (tkhd != null && mdhd != null && readHeaderField(channel, tkhd, 12, 20) == trackId) {
+					return readHeaderField(channel, mdhd, 12, 20);
+				}
+			}
+			position = atom.end();
+		}
+		return movieTimescale;
+	}
+
+	/**
+	 * @param channel channel to audio file in read mode
+	 * @param parent  container atom
+	 * @param type    four character code of the child
+	 * @return the first child of {@code parent} of type {@code type}, or
+	 *         {@code null} if there is none
+	 * @throws IOException if channel is inaccessible or limits are exceeded
+	 */
+	private Atom findChild(FileChannel channel, Atom parent, int type) throws IOException {
+		Atom atom;
+		long position = parent.body();
+		while ((atom = readAtom(channel, position, parent.end())) != null) {
+			limits.checkAtomCount(++atomCount);
+			if (atom.type() == type) {
+				return atom;
+			}
+			position = atom.end();
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a 32-bit field of a full box header atom whose position depends on
+	 * the version, such as the timescale of mvhd and mdhd or the track ID of
+	 * tkhd.
+	 *
+	 * @param channel  channel to audio file in read mode
+	 * @param atom     mvhd, mdhd or tkhd atom
+	 * @param offset0  offset of the field in version 0
+	 * @param offset1  offset of the field in version 1, with 64-bit times
+	 * @return unsigned value of the field, 0 if the atom is too short
+	 * @throws IOException if channel is inaccessible
+	 */
+	private static long readHeaderField(FileChannel channel, Atom atom, int offset0, int offset1) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(offset1 + 4);
+		int nRead = readFully(channel, header, atom.body());
+		int offset = nRead > 0 && header.get(0) == 1 ? offset1 : offset0;
+		if (nRead < offset + 4 || atom.end() - atom.body() < offset + 4) {
+			return 0;
+		}
+		return header.getInt(offset) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * @param values boxed values
+	 * @return the values as an array
+	 */
+	private static long[] toArray(List<Long> values) {
+		long[] array = new long[values.size()];
+		for (int i = 0; i < array.length; ++i) {
+			array[i] = values.get(i);
+		}
+		return array;
 	}
 
 	/**
 	 * Parse 'ftyp' chunk at start of m4a file.
-	 * 
+	 *
 	 * <p>
 	 * Currently the data parsed by this function is not used or stored anywhere.
-	 * This function mainly serves to reposition {@code channel} without totally
-	 * disregarding the encountered structure. By implementing this I hope to
-	 * ensure that everything is being read properly, rather than just jumping to
-	 * the next expected position. Additionally, I might want to use this data at
-	 * some future point.
+	 * This function mainly serves to make sure the structure is what is expected
+	 * rather than totally disregarding it. Additionally, I might want to use
+	 * this data at some future point.
 	 * </p>
-	 * 
-	 * @param channel   channel to audio file in read mode
-	 * @param chunkSize number of bytes in the ftyp header including four-cc and
-	 *                  chunk size
-	 * @throws IOException if channel is inaccessible or buffer runs out of data
-	 *                     unexpectedly
+	 *
+	 * @param channel channel to audio file in read mode
+	 * @param atom    ftyp atom
+	 * @throws IOException if channel is inaccessible or the atom exceeds limits
 	 */
-	private void parseHeader(FileChannel channel, int chunkSize) throws IOException {
-		int bytesToRead = chunkSize - CHUNK_HEADER_SIZE;
+	private void parseHeader(FileChannel channel, Atom atom) throws IOException {
+		int bytesToRead = limits.checkTagSize(atom.end() - atom.body());
 		ByteBuffer chunkBuffer = ByteBuffer.allocate(bytesToRead);
-		if (channel.read(chunkBuffer) == bytesToRead) {
+		if (readFully(channel, chunkBuffer, atom.body()) == bytesToRead && bytesToRead >= 8) {
 			chunkBuffer.flip();
 
 			// four byte string representing the format
@@ -137,133 +646,240 @@ public class M4AReader extends MetadataReader{
 			chunkBuffer.get(minorVersion);
 
 			// discard compatible types for now
-			chunkBuffer.position(chunkBuffer.position() + bytesToRead - 8);
+			chunkBuffer.position(chunkBuffer.limit());
 		}
 	}
 
 	/**
-	 * Helper function for parsing Movie (moov) chunk. This chunk contains player
-	 * information (duration, time scale, volume, rate, etc) and display
-	 * information (artist, title, etc).
-	 * 
-	 * @param channel   channel to audio file in read mode
-	 * @param chunkSize number of bytes in the moov block including the header
-	 * @param metadata  instance to be populated with extracted data
-	 * @throws IOException if channel is inaccessible or buffer runs out of data
+	 * Walks the children of a moov, udta or meta atom, descending into the
+	 * containers that lead to the item list and skipping all others.
+	 *
+	 * @param channel  channel to audio file in read mode
+	 * @param parent   container atom
+	 * @param depth    nesting level of {@code parent}
+	 * @param metadata receiver of extracted data
+	 * @throws IOException if channel is inaccessible or limits are exceeded
 	 */
-	private void parseMOOV(FileChannel channel, int chunkSize, Metadata metadata) throws IOException {
-		int bytesToRead = chunkSize - CHUNK_HEADER_SIZE;
-		ByteBuffer chunkBuffer = ByteBuffer.allocate(bytesToRead);
-		if (channel.read(chunkBuffer) == bytesToRead) {
-			chunkBuffer.flip();
+	private void parseContainer(FileChannel channel, Atom parent, int depth, MetadataVisitor metadata)
+			throws IOException {
+		limits.checkDepth(depth);
+
+		long position = parent.body();
+		if (parent.type() == META && isFullBox(channel, parent)) {
+			// version and flags
+			position += 4;
+		}
 
-			// read unknown number of sub-chunks
-			while (chunkBuffer.remaining() >= CHUNK_HEADER_SIZE) {
-				int size = chunkBuffer.getInt();
-				byte[] fourCC = new byte[4];
-				chunkBuffer.get(fourCC);
+		Atom atom;
+		while ((atom = readAtom(channel, position, parent.end())) != null) {
+			limits.checkAtomCount(++atomCount);
 
-				// look for user-data block
-				if ((fourCC[0] & 0xFF) == 0x75 && (fourCC[1] & 0xFF) == 0x64 && (fourCC[2] & 0xFF) == 0x74
-						&& (fourCC[3] & 0xFF) == 0x61) {
-					parseUserData(chunkBuffer, metadata);
-				} else {
-					chunkBuffer.position(chunkBuffer.position() + size - CHUNK_HEADER_SIZE);
-				}
+			if (atom.type() == UDTA || atom.type() == META) {
+				parseContainer(channel, atom, depth + 1, metadata);
+			} else if (atom.type() == ILST && parent.type() == META) {
+				parseItemList(channel, atom, depth + 1, metadata);
 			}
+			// trak, mvhd, hdlr, etc. are never read
+
+			position = atom.end();
 		}
 	}
 
 	/**
-	 * Helper function for parsing user data (udta) chunk and extracting data to
-	 * populate {@code metadata} instance.
-	 * 
-	 * @param buffer   buffer containing entire chunk
-	 * @param metadata instance to be populated with metadata
+	 * Determine if a meta atom starts with version and flags. ISO files use a
+	 * full box, while QuickTime files place the hdlr atom immediately.
+	 *
+	 * @param channel channel to audio file in read mode
+	 * @param meta    meta atom
+	 * @return true if the first four bytes of {@code meta} are version and flags
+	 * @throws IOException if channel is inaccessible
 	 */
-	private void parseUserData(ByteBuffer buffer, Metadata metadata) {
-		// size of metadata block
-		int size;
-
-		// meta type
-		byte[] type = new byte[4];
-
-		// files may contain other types of chunks that are not currently supported
-		// read until we find the start of the meta chunk
-		do {
-			size = buffer.getInt();
-			buffer.get(type);
+	private static boolean isFullBox(FileChannel channel, Atom meta) throws IOException {
+		ByteBuffer start = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+		if (readFully(channel, start, meta.body()) < CHUNK_HEADER_SIZE) {
+			return true;
+		}
+		return start.getInt(4) != HDLR;
+	}
 
-			// skip chunk if Xtra or some other unsupported type
-			if (!isMetaHeader(type)) {
-				buffer.position(buffer.position() + size - CHUNK_HEADER_SIZE);
+	/**
+	 * Reads the items of an ilst atom one at a time.
+	 *
+	 * @param channel  channel to audio file in read mode
+	 * @param ilst     item list atom
+	 * @param depth    nesting level of {@code ilst}
+	 * @param metadata receiver of extracted data
+	 * @throws IOException if channel is inaccessible or limits are exceeded
+	 */
+	private void parseItemList(FileChannel channel, Atom ilst, int depth, MetadataVisitor metadata) throws IOException {
+		limits.checkDepth(depth);
+
+		long position = ilst.body();
+		Atom item;
+		while ((item = readAtom(channel, position, ilst.end())) != null) {
+			limits.checkAtomCount(++atomCount);
+
+			long length = item.end() - item.body();
+			int bytesToRead = item.type() == COVR ? limits.checkImageSize(length)
+					: limits.checkTagSize(length);
+			ByteBuffer buffer = ByteBuffer.allocate(bytesToRead);
+			if (readFully(channel, buffer, item.body()) != bytesToRead) {
+				return;
 			}
-		} while (!isMetaHeader(type));
+			buffer.flip();
 
-		// sample offset table version
-		int version = buffer.get();
+			parseItem(item.type(), buffer, depth + 1, metadata);
+			position = item.end();
+		}
+	}
 
-		// offset table flags
-		int flags = buffer.get();
-		flags = (flags << 8) | buffer.get();
-		flags = (flags << 8) | buffer.get();
+	/**
+	 * Helper function for parsing a single ilst item. Items hold one or more
+	 * 'data' atoms, and freeform '----' items are named by the 'mean' and 'name'
+	 * atoms preceding their data.
+	 *
+	 * @param type     four character code of the item
+	 * @param buffer   buffer containing the item contents
+	 * @param depth    nesting level of the item
+	 * @param metadata receiver of extracted data
+	 * @throws IOException if limits are exceeded
+	 */
+	private void parseItem(int type, ByteBuffer buffer, int depth, MetadataVisitor metadata) throws IOException {
+		limits.checkDepth(depth);
 
-		// parse unknown number of user data entries
+		String mean = null;
+		String name = null;
 		while (buffer.remaining() >= CHUNK_HEADER_SIZE) {
-			size = buffer.getInt();
-			buffer.get(type);
-
-			// look for ilst block
-			if ((type[0] & 0xFF) == 0x69 && (type[1] & 0xFF) == 0x6C && (type[2] & 0xFF) == 0x73
-					&& (type[3] & 0xFF) == 0x74) {
-				int bytesToRead = size;
-				int bytesRead = CHUNK_HEADER_SIZE;
-				while (bytesRead < bytesToRead) {
-					size = buffer.getInt();
-					buffer.get(type);
-
-					int length = buffer.getInt();
-					int dataMarker = buffer.getInt();
-
-					// skipping next 64 bits for now
-					buffer.getLong();
-
-					byte[] data = new byte[length - 16];
-					buffer.get(data);
-
-					// save user data to our metadata instance
-					// because many of the tags begin with 0xA9, we need to make sure to
-					// use a character encoding that will support this.
-					String key = new String(type, StandardCharsets.ISO_8859_1);
-					if (key.equals("covr")) {
-						metadata.addImage(ImageExtractor.extractImage(data));
-					} else {
-						// convert four-cc to constant name
-						if (M4A_TAGS.containsKey(key)) {
-							key = M4A_TAGS.get(key);
-						}
-						metadata.addTextField(key, new String(data));
+			limits.checkAtomCount(++atomCount);
+
+			int start = buffer.position();
+			long size = buffer.getInt() & 0xFFFFFFFFL;
+			int fourCC = buffer.getInt();
+
+			int headerSize = CHUNK_HEADER_SIZE;
+			if (size == 1) {
+				if (buffer.remaining() < Long.BYTES) {
+					return;
+				}
+				size = buffer.getLong();
+				headerSize = LARGE_HEADER_SIZE;
+			} else if (size == 0) {
+				size = buffer.limit() - start;
+			}
+
+			// sub-atoms must fit inside of the item
+			if (size < headerSize || size > buffer.limit() - start) {
+				return;
+			}
+			ByteBuffer contents = buffer.slice(start + headerSize, (int) size - headerSize);
+			buffer.position(start + (int) size);
+
+			if (fourCC == MEAN) {
+				mean = fullBoxString(contents);
+			} else if (fourCC == NAME) {
+				name = fullBoxString(contents);
+			} else if (fourCC == DATA) {
+				if (type == FREEFORM) {
+					if (mean != null && name != null) {
+						addData("----:" + mean + ":" + name, type, contents, metadata);
 					}
+				} else {
+					// convert four-cc to constant name
+					addData(TagRegistry.m4aTag(type), type, contents, metadata);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decodes the contents of a 'data' atom according to its well-known type.
+	 *
+	 * @param key      name under which text is stored
+	 * @param type     four character code of the enclosing item
+	 * @param contents data atom contents: type, locale and value
+	 * @param metadata receiver of extracted data
+	 */
+	private static void addData(String key, int type, ByteBuffer contents, MetadataVisitor metadata) {
+		if (contents.remaining() < 8) {
+			return;
+		}
+
+		// one byte version, three byte type, then four byte locale
+		int dataType = contents.getInt() & 0xFFFFFF;
+		contents.getInt();
+
+		byte[] array = contents.array();
+		int offset = contents.arrayOffset() + contents.position();
+		int length = contents.remaining();
 
-					// move to the next entry
-					bytesRead += size;
+		if (type == COVR || dataType == TYPE_JPEG || dataType == TYPE_PNG || dataType == TYPE_BMP) {
+			metadata.onImage(ImageExtractor.extractImage(array, offset, length));
+			return;
+		}
+
+		switch (dataType) {
+			case TYPE_UTF8:
+				metadata.onTextField(key, array, offset, length, StandardCharsets.UTF_8);
+				break;
+			case TYPE_UTF16:
+				metadata.onTextField(key, array, offset, length, StandardCharsets.UTF_16BE);
+				break;
+			case TYPE_INTEGER:
+				// big endian signed integer of 1 to 8 bytes
+				if (length > 0 && length <= Long.BYTES) {
+					long value = array[offset];
+					for (int i = 1; i < length; ++i) {
+						value = (value << 8) | (array[offset + i] & 0xFF);
+					}
+					metadata.onTextField(key, Long.toString(value));
 				}
-			} else {
-				// TODO: handle other chunk types
-				buffer.position(buffer.position() + size - CHUNK_HEADER_SIZE);
+				break;
+			case TYPE_IMPLICIT:
+				addImplicitData(key, type, contents, metadata);
+				break;
+			default:
+				metadata.onTextField(key, array, offset, length, StandardCharsets.UTF_8);
+				break;
+		}
+	}
+
+	/**
+	 * Decodes binary item values whose layout is implied by the item type.
+	 *
+	 * @param key      name under which text is stored
+	 * @param type     four character code of the enclosing item
+	 * @param value    item value
+	 * @param metadata receiver of extracted data
+	 */
+	private static void addImplicitData(String key, int type, ByteBuffer value, MetadataVisitor metadata) {
+		if ((type == TRKN || type == DISK) && value.remaining() >= 6) {
+			// two bytes padding, two byte number, two byte total
+			int number = value.getShort(value.position() + 2) & 0xFFFF;
+			int total = value.getShort(value.position() + 4) & 0xFFFF;
+			metadata.onTextField(key, total == 0 ? Integer.toString(number) : number + "/" + total);
+		} else if (type == GNRE && value.remaining() >= 2) {
+			// ID3v1 genre index plus one
+			String genre = TrailerTagReader.genreName((value.getShort(value.position()) & 0xFFFF) - 1);
+			if (genre != null) {
+				metadata.onTextField(key, genre);
 			}
+		} else {
+			metadata.onTextField(key, value.array(), value.arrayOffset() + value.position(), value.remaining(),
+					StandardCharsets.UTF_8);
 		}
 	}
 
 	/**
-	 * Return whether or not an array represents the header of the meta-data
-	 * section.
-	 * 
-	 * @param header four byte character code
-	 * @return true if {@code header} equals 'meta'
+	 * Reads the string stored in a freeform 'mean' or 'name' atom.
+	 *
+	 * @param contents atom contents: version, flags and string
+	 * @return the string, or {@code null} if the atom is too short
 	 */
-	private static boolean isMetaHeader(byte[] header) {
-		return (header[0] & 0xFF) == 0x6D && (header[1] & 0xFF) == 0x65 && (header[2] & 0xFF) == 0x74
-				&& (header[3] & 0xFF) == 0x61;
+	private static String fullBoxString(ByteBuffer contents) {
+		if (contents.remaining() < 4) {
+			return null;
+		}
+		return new String(contents.array(), contents.arrayOffset() + contents.position() + 4, contents.remaining() - 4,
+				StandardCharsets.UTF_8);
 	}
 }
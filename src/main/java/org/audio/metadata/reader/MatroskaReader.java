@@ -0,0 +1,830 @@
+package org.audio.metadata.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.MetadataVisitor;
+import org.audio.metadata.StreamInfo;
+
+/**
+ * Read metadata from Matroska and WebM files according to the EBML and
+ * Matroska specifications.
+ *
+ * <p>
+ * The top-level elements of the Segment are walked with positioned reads up
+ * to the first Cluster. Elements stored after the Clusters, typically Tags
+ * and Attachments, are reached through the SeekHead index, so the audio is
+ * never read. Only the bodies of Info, Tracks, Tags and image attachments are
+ * read.
+ * </p>
+ */
+public class MatroskaReader extends MetadataReader {
+
+	/**
+	 * Prevent instantiation from outside.
+	 * Use {@link MetadataReader#of(Path)} to create instances.
+	 */
+	protected MatroskaReader() {
+	}
+
+	/**
+	 * Longest element header: 4 byte ID and 8 byte size
+	 */
+	private static final int MAX_HEADER_SIZE = 12;
+
+	/**
+	 * EBML header, first element of the file
+	 */
+	private static final int EBML = 0x1A45DFA3;
+
+	/**
+	 * Segment, holding every other top-level element
+	 */
+	private static final int SEGMENT = 0x18538067;
+
+	/**
+	 * Index of the top-level elements
+	 */
+	private static final int SEEK_HEAD = 0x114D9B74;
+
+	/**
+	 * Entry of the SeekHead
+	 */
+	private static final int SEEK = 0x4DBB;
+
+	/**
+	 * ID of the element an entry refers to
+	 */
+	private static final int SEEK_ID = 0x53AB;
+
+	/**
+	 * Position of the element an entry refers to, relative to the Segment body
+	 */
+	private static final int SEEK_POSITION = 0x53AC;
+
+	/**
+	 * Segment information
+	 */
+	private static final int INFO = 0x1549A966;
+
+	/**
+	 * Nanoseconds per timestamp unit
+	 */
+	private static final int TIMESTAMP_SCALE = 0x2AD7B1;
+
+	/**
+	 * Segment duration in timestamp units, as a float
+	 */
+	private static final int DURATION = 0x4489;
+
+	/**
+	 * Name of the application that wrote the file
+	 */
+	private static final int WRITING_APP = 0x5741;
+
+	/**
+	 * Track descriptions
+	 */
+	private static final int TRACKS = 0x1654AE6B;
+
+	/**
+	 * Description of one track
+	 */
+	private static final int TRACK_ENTRY = 0xAE;
+
+	/**
+	 * Kind of a track, {@link #TRACK_TYPE_AUDIO} for audio
+	 */
+	private static final int TRACK_TYPE = 0x83;
+
+	/**
+	 * Codec of a track, such as A_OPUS
+	 */
+	private static final int CODEC_ID = 0x86;
+
+	/**
+	 * Audio properties of a track
+	 */
+	private static final int AUDIO = 0xE1;
+
+	/**
+	 * Samples per second, as a float
+	 */
+	private static final int SAMPLING_FREQUENCY = 0xB5;
+
+	/**
+	 * Number of channels
+	 */
+	private static final int CHANNELS = 0x9F;
+
+	/**
+	 * Audio data, skipped
+	 */
+	private static final int CLUSTER = 0x1F43B675;
+
+	/**
+	 * Descriptive tags
+	 */
+	private static final int TAGS = 0x1254C367;
+
+	/**
+	 * Group of tags sharing a target
+	 */
+	private static final int TAG = 0x7373;
+
+	/**
+	 * What the tags of a Tag apply to
+	 */
+	private static final int TARGETS = 0x63C0;
+
+	/**
+	 * Level of the target, {@link #ALBUM_LEVEL} for albums
+	 */
+	private static final int TARGET_TYPE_VALUE = 0x68CA;
+
+	/**
+	 * Name and value of one tag
+	 */
+	private static final int SIMPLE_TAG = 0x67C8;
+
+	/**
+	 * Name of a tag
+	 */
+	private static final int TAG_NAME = 0x45A3;
+
+	/**
+	 * UTF-8 value of a tag
+	 */
+	private static final int TAG_STRING = 0x4487;
+
+	/**
+	 * Attached files, including cover art
+	 */
+	private static final int ATTACHMENTS = 0x1941A469;
+
+	/**
+	 * One attached file
+	 */
+	private static final int ATTACHED_FILE = 0x61A7;
+
+	/**
+	 * Description of an attached file
+	 */
+	private static final int FILE_DESCRIPTION = 0x467E;
+
+	/**
+	 * Name of an attached file
+	 */
+	private static final int FILE_NAME = 0x466E;
+
+	/**
+	 * MIME type of an attached file
+	 */
+	private static final int FILE_MIME_TYPE = 0x4660;
+
+	/**
+	 * Contents of an attached file
+	 */
+	private static final int FILE_DATA = 0x465C;
+
+	/**
+	 * Track type of audio tracks
+	 */
+	private static final int TRACK_TYPE_AUDIO = 2;
+
+	/**
+	 * Target type value of albums
+	 */
+	private static final int ALBUM_LEVEL = 50;
+
+	/**
+	 * Default number of nanoseconds per timestamp unit
+	 */
+	private static final long DEFAULT_TIMESTAMP_SCALE = 1_000_000;
+
+	/**
+	 * Picture type of front covers, as in ID3 and FLAC
+	 */
+	private static final int FRONT_COVER = 3;
+
+	/**
+	 * An element header
+	 *
+	 * @param id    element ID, including its length marker
+	 * @param start position of the element
+	 * @param body  position of the element's data
+	 * @param size  size of the element's data, negative if unknown
+	 */
+	private record Element(int id, long start, long body, long size) {
+
+		/**
+		 * @return position following the element
+		 */
+		long end() {
+			return body + size;
+		}
+	}
+
+	/**
+	 * Stream properties collected from Info and Tracks
+	 */
+	private static final class Properties {
+
+		/**
+		 * Nanoseconds per timestamp unit
+		 */
+		long timestampScale = DEFAULT_TIMESTAMP_SCALE;
+
+		/**
+		 * Segment duration in timestamp units, negative if unknown
+		 */
+		double duration = -1;
+
+		/**
+		 * Sample rate of the first audio track, 0 if there is none
+		 */
+		int sampleRate;
+
+		/**
+		 * Channels of the first audio track
+		 */
+		int channels;
+
+		/**
+		 * Codec of the first audio track
+		 */
+		String codec;
+	}
+
+	/**
+	 * Number of elements visited in the current file
+	 */
+	private int elementCount;
+
+	/**
+	 * Reads metadata from given Matroska files
+	 *
+	 * @param visitor receiver of the values found
+	 */
+	@Override
+	protected void readMetadata(MetadataVisitor visitor) {
+		elementCount = 0;
+		try (FileChannel channel = openChannel()) {
+			long fileSize = channel.size();
+
+			Element ebml = readElement(channel, 0);
+			if (ebml == null || ebml.id() != EBML || ebml.size() < 0) {
+				return;
+			}
+			Element segment = readElement(channel, ebml.end());
+			if (segment == null || segment.id() != SEGMENT) {
+				return;
+			}
+			// live recordings may leave the size of the segment unknown
+			long segmentEnd = segment.size() < 0 ? fileSize : Math.min(fileSize, segment.end());
+
+			Set<Long> visited = new HashSet<>();
+			List<Long> seekPositions = new ArrayList<>();
+			Properties properties = new Properties();
+
+			// elements ahead of the audio
+			long position = segment.body();
+			while (position < segmentEnd) {
+				Element element = readElement(channel, position);
+				if (element == null || element.id() == CLUSTER || element.size() < 0) {
+					// the remaining elements are found through the SeekHead
+					break;
+				}
+				visitElement(channel, element, visited, seekPositions, visitor, properties);
+				position = element.end();
+			}
+
+			// elements after the audio, the list grows if a SeekHead refers to another one
+			for (int i = 0; i < seekPositions.size(); ++i) {
+				long target = segment.body() + seekPositions.get(i);
+				if (target < segment.body() || target >= segmentEnd || visited.contains(target)) {
+					continue;
+				}
+				Element element = readElement(channel, target);
+				if (element != null && element.size() >= 0) {
+					visitElement(channel, element, visited, seekPositions, visitor, properties);
+				}
+			}
+
+			StreamInfo streamInfo = readStreamInfo(properties);
+			if (streamInfo != null) {
+				visitor.onStreamInfo(streamInfo);
+			}
+
+		} catch (IOException e) {
+			// corrupt or oversized files keep the values read so far
+			readFailed();
+		}
+	}
+
+	/**
+	 * Parses a top-level element of the Segment, unless it was already visited.
+	 *
+	 * @param channel       input channel
+	 * @param element       element to parse
+	 * @param visited       positions of the elements already visited
+	 * @param seekPositions receiver of the positions listed by a SeekHead
+	 * @param metadata      receiver of the values found
+	 * @param properties    receiver of the stream properties found
+	 * @throws IOException if the channel cannot be read or limits are exceeded
+	 */
+	private void visitElement(FileChannel channel, Element element, Set<Long> visited, List<Long> seekPositions,
+			MetadataVisitor metadata, Properties properties) throws IOException {
+		if (!visited.add(element.start())) {
+			return;
+		}
+		limits.checkAtomCount(++elementCount);
+
+		switch (element.id()) {
+			case SEEK_HEAD: {
+				ByteBuffer body = readBody(channel, element);
+				if (body != null) {
+					parseSeekHead(body, seekPositions);
+				}
+				break;
+			}
+			case INFO: {
+				ByteBuffer body = readBody(channel, element);
+				if (body != null) {
+					parseInfo(body, metadata, properties);
+				}
+				break;
+			}
+			case TRACKS: {
+				ByteBuffer body = readBody(channel, element);
+				if (body != null) {
+					parseTracks(body, properties);
+				}
+				break;
+			}
+			case TAGS: {
+				ByteBuffer body = readBody(channel, element);
+				if (body != null) {
+					parseTags(body, metadata);
+				}
+				break;
+			}
+			case ATTACHMENTS:
+				parseAttachments(channel, element, metadata);
+				break;
+			default:
+				// Cues, Chapters, Void and the like are skipped without being read
+				break;
+		}
+	}
+
+	/**
+	 * Parse SeekHead for the positions of the elements holding metadata
+	 *
+	 * @param body          SeekHead data
+	 * @param seekPositions receiver of the positions, relative to the Segment
+	 *                      body
+	 * @throws LimitExceededException if there are too many elements
+	 */
+	private void parseSeekHead(ByteBuffer body, List<Long> seekPositions) throws LimitExceededException {
+		for (Element seek : children(body, 0, body.limit())) {
+			if (seek.id() != SEEK) {
+				continue;
+			}
+			int id = 0;
+			long position = -1;
+			for (Element field : children(body, seek.body(), seek.end())) {
+				if (field.id() == SEEK_ID) {
+					id = (int) readUnsigned(body, field);
+				} else if (field.id() == SEEK_POSITION) {
+					position = readUnsigned(body, field);
+				}
+			}
+			if (position >= 0 && (id == INFO || id == TRACKS || id == TAGS || id == ATTACHMENTS || id == SEEK_HEAD)) {
+				seekPositions.add(position);
+			}
+		}
+	}
+
+	/**
+	 * Parse Info for the duration and the writing application
+	 *
+	 * @param body       Info data
+	 * @param metadata   receiver of the values found
+	 * @param properties receiver of the duration
+	 * @throws LimitExceededException if there are too many elements
+	 */
+	private void parseInfo(ByteBuffer body, MetadataVisitor metadata, Properties properties)
+			throws LimitExceededException {
+		for (Element field : children(body, 0, body.limit())) {
+			switch (field.id()) {
+				case TIMESTAMP_SCALE:
+					properties.timestampScale = readUnsigned(body, field);
+					break;
+				case DURATION:
+					properties.duration = readFloat(body, field);
+					break;
+				case WRITING_APP:
+					visitString(Constants.ENCODING_INFO, body, field, metadata);
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Parse Tracks for the properties of the first audio track
+	 *
+	 * @param body       Tracks data
+	 * @param properties receiver of the track properties
+	 * @throws LimitExceededException if there are too many elements
+	 */
+	private void parseTracks(ByteBuffer body, Properties properties) throws LimitExceededException {
+		for (Element entry : children(body, 0, body.limit())) {
+			if (entry.id() != TRACK_ENTRY) {
+				continue;
+			}
+
+			long type = 0;
+			String codec = null;
+			double sampleRate = 8000;
+			long channels = 1;
+			for (Element field : children(body, entry.body(), entry.end())) {
+				if (field.id() == TRACK_TYPE) {
+					type = readUnsigned(body, field);
+				} else if (field.id() == CODEC_ID) {
+					codec = decodeString(body, field);
+				} else if (field.id() == AUDIO) {
+					for (Element audio : children(body, field.body(), field.end())) {
+						if (audio.id() == SAMPLING_FREQUENCY) {
+							sampleRate = readFloat(body, audio);
+						} else if (audio.id() == CHANNELS) {
+							channels = readUnsigned(body, audio);
+						}
+					}
+				}
+			}
+
+			if (type == TRACK_TYPE_AUDIO) {
+				properties.sampleRate = (int) Math.round(sampleRate);
+				properties.channels = (int) Math.min(channels, Integer.MAX_VALUE);
+				properties.codec = codec;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Parse Tags for metadata. Album level titles and artists are reported as
+	 * album name and album artist, nested tags qualifying another tag are
+	 * ignored.
+	 *
+	 * @param body     Tags data
+	 * @param metadata receiver of the values found
+	 * @throws LimitExceededException if there are too many elements
+	 */
+	private void parseTags(ByteBuffer body, MetadataVisitor metadata) throws LimitExceededException {
+		for (Element tag : children(body, 0, body.limit())) {
+			if (tag.id() != TAG) {
+				continue;
+			}
+			List<Element> fields = children(body, tag.body(), tag.end());
+
+			// the specification defaults to album level, but muxers write file level tags without a target
+			long level = 0;
+			for (Element field : fields) {
+				if (field.id() == TARGETS) {
+					for (Element target : children(body, field.body(), field.end())) {
+						if (target.id() == TARGET_TYPE_VALUE) {
+							level = readUnsigned(body, target);
+						}
+					}
+				}
+			}
+
+			for (Element field : fields) {
+				if (field.id() == SIMPLE_TAG) {
+					parseSimpleTag(body, field, level >= ALBUM_LEVEL, metadata);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Passes the name and value of a SimpleTag to the visitor.
+	 *
+	 * @param body      Tags data
+	 * @param simpleTag element to parse
+	 * @param album     true if the tag applies to an album
+	 * @param metadata  receiver of the value
+	 * @throws LimitExceededException if there are too many elements
+	 */
+	private void parseSimpleTag(ByteBuffer body, Element simpleTag, boolean album, MetadataVisitor metadata)
+			throws LimitExceededException {
+		Element name = null;
+		Element value = null;
+		for (Element field : children(body, simpleTag.body(), simpleTag.end())) {
+			if (field.id() == TAG_NAME) {
+				name = field;
+			} else if (field.id() == TAG_STRING) {
+				value = field;
+			}
+		}
+		if (name == null || value == null) {
+			return;
+		}
+
+		String key = TagRegistry.matroskaTag(body.array(), (int) name.body(), (int) name.size());
+		if (album && key.equals(Constants.TITLE)) {
+			key = Constants.ALBUM_NAME;
+		} else if (album && key.equals(Constants.ARTIST_NAME)) {
+			key = Constants.ALBUM_ARTIST_NAME;
+		}
+		visitString(key, body, value, metadata);
+	}
+
+	/**
+	 * Parse Attachments for cover art. The attached files are walked with
+	 * positioned reads, so that fonts and other large attachments are not read.
+	 *
+	 * @param channel     input channel
+	 * @param attachments element to parse
+	 * @param metadata    receiver of the images found
+	 * @throws IOException if the channel cannot be read or limits are exceeded
+	 */
+	private void parseAttachments(FileChannel channel, Element attachments, MetadataVisitor metadata)
+			throws IOException {
+		long position = attachments.body();
+		while (position < attachments.end()) {
+			limits.checkAtomCount(++elementCount);
+			Element file = readElement(channel, position);
+			if (file == null || file.size() < 0 || file.end() > attachments.end()) {
+				break;
+			}
+			if (file.id() == ATTACHED_FILE) {
+				parseAttachedFile(channel, file, metadata);
+			}
+			position = file.end();
+		}
+	}
+
+	/**
+	 * Passes an attached file to the visitor if it is an image.
+	 *
+	 * @param channel  input channel
+	 * @param file     AttachedFile element
+	 * @param metadata receiver of the image
+	 * @throws IOException if the channel cannot be read or limits are exceeded
+	 */
+	private void parseAttachedFile(FileChannel channel, Element file, MetadataVisitor metadata) throws IOException {
+		String name = "";
+		String mimeType = "";
+		String description = "";
+		Element data = null;
+
+		long position = file.body();
+		while (position < file.end()) {
+			limits.checkAtomCount(++elementCount);
+			Element field = readElement(channel, position);
+			if (field == null || field.size() < 0 || field.end() > file.end()) {
+				break;
+			}
+			if (field.id() == FILE_DATA) {
+				// only read once known to be an image
+				data = field;
+			} else if (field.id() == FILE_NAME || field.id() == FILE_MIME_TYPE || field.id() == FILE_DESCRIPTION) {
+				ByteBuffer body = readBody(channel, field);
+				if (body != null) {
+					String value = decodeString(body, new Element(field.id(), 0, 0, body.limit()));
+					if (field.id() == FILE_NAME) {
+						name = value;
+					} else if (field.id() == FILE_MIME_TYPE) {
+						mimeType = value;
+					} else {
+						description = value;
+					}
+				}
+			}
+			position = field.end();
+		}
+
+		if (data == null || !mimeType.startsWith("image/")) {
+			return;
+		}
+		ByteBuffer image = ByteBuffer.allocate(limits.checkImageSize(data.size()));
+		if (readFully(channel, image, data.body()) != image.capacity()) {
+			return;
+		}
+
+		// by convention cover.jpg, small_cover.png, cover_land.jpg and so on
+		int pictureType = name.toLowerCase(Locale.ROOT).contains("cover") ? FRONT_COVER : 0;
+		metadata.onImage(image.array(), 0, image.capacity(), mimeType, pictureType, description);
+	}
+
+	/**
+	 * Derives the stream properties from Info and the first audio track.
+	 *
+	 * @param properties values collected from Info and Tracks
+	 * @return stream properties, or {@code null} if there is no audio track
+	 */
+	private static StreamInfo readStreamInfo(Properties properties) {
+		if (properties.sampleRate <= 0) {
+			return null;
+		}
+		Duration duration = properties.duration >= 0
+				? Duration.ofNanos((long) (properties.duration * properties.timestampScale))
+				: Duration.ZERO;
+		return new StreamInfo(properties.sampleRate, properties.channels, duration, 0, properties.codec);
+	}
+
+	/**
+	 * Reads the body of an element.
+	 *
+	 * @param channel input channel
+	 * @param element element to read
+	 * @return buffer holding the body, or {@code null} if the file ends first
+	 * @throws IOException if the channel cannot be read or limits are exceeded
+	 */
+	private ByteBuffer readBody(FileChannel channel, Element element) throws IOException {
+		ByteBuffer body = ByteBuffer.allocate(limits.checkTagSize(element.size()));
+		if (readFully(channel, body, element.body()) != body.capacity()) {
+			return null;
+		}
+		body.flip();
+		return body;
+	}
+
+	/**
+	 * Reads an element header from the file.
+	 *
+	 * @param channel  input channel
+	 * @param position position of the element
+	 * @return the element, or {@code null} if the header is invalid or the file
+	 *         ends first
+	 * @throws IOException if the channel cannot be read
+	 */
+	private static Element readElement(FileChannel channel, long position) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(MAX_HEADER_SIZE);
+		int nRead = readFully(channel, header, position);
+		header.limit(nRead);
+		return parseElement(header, 0, nRead, position);
+	}
+
+	/**
+	 * Lists the elements between {@code start} and {@code end} of a buffer.
+	 * Parsing stops at the first element that is invalid or runs past
+	 * {@code end}.
+	 *
+	 * @param buffer buffer holding the elements
+	 * @param start  position of the first element
+	 * @param end    end of the parent element
+	 * @return the elements found
+	 * @throws LimitExceededException if there are too many elements
+	 */
+	private List<Element> children(ByteBuffer buffer, long start, long end) throws LimitExceededException {
+		List<Element> children = new ArrayList<>();
+		long position = start;
+		while (position < end) {
+			limits.checkAtomCount(++elementCount);
+			Element child = parseElement(buffer, (int) position, (int) end, 0);
+			if (child == null || child.size() < 0 || child.end() > end) {
+				break;
+			}
+			children.add(child);
+			position = child.end();
+		}
+		return children;
+	}
+
+	/**
+	 * Parses an element header: a variable length ID keeping its length marker,
+	 * followed by a variable length size without it.
+	 *
+	 * @param buffer buffer holding the header
+	 * @param offset position of the header in {@code buffer}
+	 * @param end    end of the readable bytes
+	 * @param base   file position of the start of {@code buffer}
+	 * @return the element, or {@code null} if the header is invalid or
+	 *         incomplete
+	 */
+	private static Element parseElement(ByteBuffer buffer, int offset, int end, long base) {
+		if (offset >= end) {
+			return null;
+		}
+		int idLength = vintLength(buffer.get(offset));
+		if (idLength == 0 || idLength > 4 || offset + idLength >= end) {
+			return null;
+		}
+		int id = 0;
+		for (int i = 0; i < idLength; ++i) {
+			id = id << 8 | (buffer.get(offset + i) & 0xFF);
+		}
+
+		int sizeOffset = offset + idLength;
+		int sizeLength = vintLength(buffer.get(sizeOffset));
+		if (sizeLength == 0 || sizeOffset + sizeLength > end) {
+			return null;
+		}
+		// the length marker is removed, leaving 7 value bits per byte
+		long size = buffer.get(sizeOffset) & (0xFF >> sizeLength);
+		boolean unknown = size == (0xFF >> sizeLength);
+		for (int i = 1; i < sizeLength; ++i) {
+			int b = buffer.get(sizeOffset + i) & 0xFF;
+			size = size << 8 | b;
+			unknown &= b == 0xFF;
+		}
+
+		int body = sizeOffset + sizeLength;
+		return new Element(id, base + offset, base + body, unknown ? -1 : size);
+	}
+
+	/**
+	 * @param first first byte of a variable length integer
+	 * @return number of bytes in the integer, 0 if invalid
+	 */
+	private static int vintLength(byte first) {
+		return first == 0 ? 0 : Integer.numberOfLeadingZeros(first & 0xFF) - 23;
+	}
+
+	/**
+	 * @param buffer  buffer holding the element
+	 * @param element unsigned integer element of up to 8 bytes
+	 * @return the value, 0 if the element is empty or too long
+	 */
+	private static long readUnsigned(ByteBuffer buffer, Element element) {
+		if (element.size() > 8) {
+			return 0;
+		}
+		long value = 0;
+		for (int i = 0; i < element.size(); ++i) {
+			value = value << 8 | (buffer.get((int) element.body() + i) & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * @param buffer  buffer holding the element
+	 * @param element float element of 4 or 8 bytes
+	 * @return the value, 0 if the element has another size
+	 */
+	private static double readFloat(ByteBuffer buffer, Element element) {
+		if (element.size() == 4) {
+			return buffer.getFloat((int) element.body());
+		} else if (element.size() == 8) {
+			return buffer.getDouble((int) element.body());
+		}
+		return 0;
+	}
+
+	/**
+	 * Passes a UTF-8 element to the visitor, unless it is empty.
+	 *
+	 * @param key      simple name of the text field
+	 * @param buffer   buffer holding the element
+	 * @param element  string element
+	 * @param metadata receiver of the value
+	 */
+	private static void visitString(String key, ByteBuffer buffer, Element element, MetadataVisitor metadata) {
+		int length = trimmedLength(buffer.array(), (int) element.body(), (int) element.size());
+		if (length > 0) {
+			// read in place, the value is only decoded by the visitor
+			metadata.onTextField(key, buffer.array(), (int) element.body(), length, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * @param buffer  buffer holding the element
+	 * @param element string element
+	 * @return the decoded string without its trailing zeros
+	 */
+	private static String decodeString(ByteBuffer buffer, Element element) {
+		int offset = (int) element.body();
+		return new String(buffer.array(), offset, trimmedLength(buffer.array(), offset, (int) element.size()),
+				StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param data   bytes holding a string
+	 * @param offset start of the string
+	 * @param length size of the string, including any padding
+	 * @return size of the string without its trailing zeros
+	 */
+	private static int trimmedLength(byte[] data, int offset, int length) {
+		int end = offset + length;
+		while (end > offset && data[end - 1] == 0) {
+			--end;
+		}
+		return end - offset;
+	}
+}
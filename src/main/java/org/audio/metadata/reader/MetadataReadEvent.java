@@ -0,0 +1,85 @@
+package org.audio.metadata.reader;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event covering a single
+ * {@link MetadataReader#accept} call. Disabled unless a recording
+ * enables {@value #NAME}.
+ */
+@Name(MetadataReadEvent.NAME)
+@Label("Metadata Read")
+@Category({ "Audio", "Metadata" })
+@Description("Metadata read from a single audio file")
+@StackTrace(false)
+class MetadataReadEvent extends Event {
+
+	/**
+	 * Event type name used in recording settings
+	 */
+	static final String NAME = "org.audio.MetadataRead";
+
+	/**
+	 * Location of the audio file
+	 */
+	@Label("File")
+	String file;
+
+	/**
+	 * Name of the detected format
+	 */
+	@Label("Format")
+	String format;
+
+	/**
+	 * Nanoseconds spent opening the file
+	 */
+	@Label("Open Time")
+	@Timespan
+	long openTime;
+
+	/**
+	 * Number of read calls made on the file
+	 */
+	@Label("Read Calls")
+	long readCalls;
+
+	/**
+	 * Number of bytes read from the file
+	 */
+	@Label("Bytes Read")
+	@DataAmount
+	long bytesRead;
+
+	/**
+	 * Number of frames, blocks, atoms, chunks or pages visited
+	 */
+	@Label("Structures Visited")
+	long structures;
+
+	/**
+	 * Number of embedded images sized for extraction
+	 */
+	@Label("Images")
+	long images;
+
+	/**
+	 * Number of bytes allocated by the reading thread
+	 */
+	@Label("Bytes Allocated")
+	@DataAmount
+	long bytesAllocated;
+
+	/**
+	 * Whether the read threw an exception or stopped on a corrupt file
+	 */
+	@Label("Failed")
+	boolean failed;
+}
@@ -1,9 +1,17 @@
 package org.audio.metadata.reader;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
+import org.audio.metadata.ArtworkStore;
 import org.audio.metadata.Metadata;
+import org.audio.metadata.MetadataVisitor;
+import org.audio.metadata.StringInterner;
 import org.audio.utils.FileUtils;
+import org.audio.utils.FileUtils.Format;
 
 /**
  * Abstract class representing generic metadata reader.
@@ -15,12 +23,110 @@ public abstract class MetadataReader {
 	 */
 	protected Path source;
 
+	/**
+	 * Resource limits enforced while parsing {@code source}
+	 */
+	protected ReaderLimits limits = ReaderLimits.DEFAULT;
+
+	/**
+	 * Store used to share identical images across files, may be null
+	 */
+	protected ArtworkStore artworkStore;
+
+	/**
+	 * Interner used to share repeated text values across files, may be null
+	 */
+	protected StringInterner stringInterner;
+
+	/**
+	 * Format detected by {@link #of(Path, ReaderLimits)}, may be null
+	 */
+	protected Format format;
+
+	/**
+	 * Counters of the current {@link #accept(MetadataVisitor)} call, null
+	 * unless statistics or flight recorder events are enabled
+	 */
+	private ReadProbe probe;
+
 	/**
 	 * Reads and returns metadata from {@code source}.
 	 * 
 	 * @return {@code Metadata} instance populated with found values
 	 */
-	public abstract Metadata getMetadata();
+	public final Metadata getMetadata() {
+		Metadata metadata = createMetadata();
+		accept(metadata);
+		return metadata;
+	}
+
+	/**
+	 * Reads metadata from {@code source}, pushing each value to
+	 * {@code visitor} as it is parsed, followed by
+	 * {@link MetadataVisitor#onEnd()} once the read completes.
+	 * 
+	 * <p>
+	 * When {@link ReaderStatistics} or {@link MetadataReadEvent} are enabled,
+	 * the call is timed and the reads, structures and images it involves are
+	 * counted. Otherwise this costs two flag checks.
+	 * </p>
+	 * 
+	 * @param visitor receiver of the text fields, images and stream information
+	 */
+	public final void accept(MetadataVisitor visitor) {
+		MetadataReadEvent event = new MetadataReadEvent();
+		boolean statistics = ReaderStatistics.enabled();
+		if (!statistics && !event.isEnabled()) {
+			readMetadata(visitor);
+			visitor.onEnd();
+			return;
+		}
+
+		ReaderLimits configured = limits;
+		ReadProbe current = new ReadProbe(configured);
+		probe = current;
+		limits = current.getLimits();
+
+		boolean failed = true;
+		long allocated = ReaderStatistics.allocatedBytes();
+		event.begin();
+		long start = System.nanoTime();
+		try {
+			readMetadata(visitor);
+			failed = current.failed;
+		} finally {
+			long nanos = System.nanoTime() - start;
+			event.end();
+			allocated = ReaderStatistics.allocatedBytes() - allocated;
+			limits = configured;
+			probe = null;
+
+			if (statistics) {
+				ReaderStatistics.record(format, current, nanos, allocated, failed);
+			}
+			if (event.shouldCommit()) {
+				event.file = String.valueOf(source);
+				event.format = format == null ? Format.UNKNOWN.name() : format.name();
+				event.openTime = current.openNanos.sum();
+				event.readCalls = current.readCalls.sum();
+				event.bytesRead = current.bytesRead.sum();
+				event.structures = current.structures.sum();
+				event.images = current.images.sum();
+				event.bytesAllocated = allocated;
+				event.failed = failed;
+				event.commit();
+			}
+		}
+		visitor.onEnd();
+	}
+
+	/**
+	 * Reads metadata from {@code source}, called by
+	 * {@link #accept(MetadataVisitor)}.
+	 * 
+	 * @param visitor receiver of the values found
+	 */
+	protected abstract void readMetadata(MetadataVisitor visitor);
 
 	/**
 	 * Sets the source for this reader
@@ -31,6 +137,99 @@ public abstract class MetadataReader {
 		this.source = source;
 	}
 
+	/**
+	 * Sets the resource limits for this reader
+	 * 
+	 * @param limits caps on sizes, counts and nesting read from {@code source}
+	 */
+	public void setLimits(ReaderLimits limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * Sets the store through which images returned by {@link #getMetadata()}
+	 * are interned, so that the same cover found in many files is only kept in
+	 * memory once.
+	 * 
+	 * @param artworkStore shared image store, or {@code null} to disable
+	 */
+	public void setArtworkStore(ArtworkStore artworkStore) {
+		this.artworkStore = artworkStore;
+	}
+
+	/**
+	 * Sets the interner through which text values returned by
+	 * {@link #getMetadata()} are shared, so that an artist or genre found in
+	 * many files is only kept in memory once.
+	 * 
+	 * @param stringInterner shared text interner, or {@code null} to disable
+	 */
+	public void setStringInterner(StringInterner stringInterner) {
+		this.stringInterner = stringInterner;
+	}
+
+	/**
+	 * Creates an empty {@code Metadata} instance configured for this reader.
+	 * 
+	 * @return new metadata instance
+	 */
+	protected Metadata createMetadata() {
+		return new Metadata(artworkStore, stringInterner);
+	}
+
+	/**
+	 * Records that the file could not be read completely, for readers that stop
+	 * quietly on corrupt or oversized input and keep the values read so far. The
+	 * read then counts as failed in {@link ReaderStatistics} and
+	 * {@link MetadataReadEvent}, when enabled.
+	 */
+	protected void readFailed() {
+		ReadProbe current = probe;
+		if (current != null) {
+			current.failed = true;
+		}
+	}
+
+	/**
+	 * Opens {@code source} for reading. While a read is being counted, the
+	 * channel reports its reads to the current probe.
+	 * 
+	 * @return channel to {@code source}
+	 * @throws IOException if the file cannot be opened
+	 */
+	protected FileChannel openChannel() throws IOException {
+		ReadProbe current = probe;
+		if (current == null) {
+			return FileChannel.open(source, StandardOpenOption.READ);
+		}
+
+		long start = System.nanoTime();
+		FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+		current.openNanos.add(System.nanoTime() - start);
+		return new CountingFileChannel(channel, current);
+	}
+
+	/**
+	 * Fills {@code buffer} from {@code position} without moving the channel.
+	 * 
+	 * @param channel  input channel
+	 * @param buffer   destination
+	 * @param position file position to start reading from
+	 * @return number of bytes read, less than requested only at end of file
+	 * @throws IOException if the channel cannot be read
+	 */
+	protected static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		int total = 0;
+		while (buffer.hasRemaining()) {
+			int nRead = channel.read(buffer, position + total);
+			if (nRead < 0) {
+				break;
+			}
+			total += nRead;
+		}
+		return total;
+	}
+
 	/**
 	 * Creates a MetadataReader of the appropriate type based on the file header.
 	 * 
@@ -39,9 +238,28 @@ public abstract class MetadataReader {
 	 * @throws IllegalArgumentException if audio file is not recognized
 	 */
 	public static MetadataReader of(Path source) {
+		return of(source, ReaderLimits.DEFAULT);
+	}
+
+	/**
+	 * Creates a MetadataReader of the appropriate type based on the file header.
+	 * 
+	 * @param source file to read metadata from
+	 * @param limits resource limits enforced while parsing {@code source}
+	 * @return instance of a MetadataReader subclass
+	 * @throws IllegalArgumentException if audio file is not recognized
+	 */
+	public static MetadataReader of(Path source, ReaderLimits limits) {
 		MetadataReader reader;
 
-		switch (FileUtils.determineFormatByHeader(source)) {
+		boolean statistics = ReaderStatistics.enabled();
+		long start = statistics ? System.nanoTime() : 0;
+		Format format = FileUtils.determineFormatByHeader(source);
+		if (statistics) {
+			ReaderStatistics.recordDetection(format, System.nanoTime() - start);
+		}
+
+		switch (format) {
 			case MP3:
 				reader = new ID3TagReader();
 				break;
@@ -51,6 +269,15 @@ public abstract class MetadataReader {
 			case WAV:
 				reader = new WAVEReader();
 				break;
+			case AIFF:
+				reader = new AIFFReader();
+				break;
+			case WMA:
+				reader = new ASFReader();
+				break;
+			case MKA:
+				reader = new MatroskaReader();
+				break;
 			case DASH:
 			case MP4:
 			case M4A:
@@ -64,6 +291,8 @@ public abstract class MetadataReader {
 		}
 
 		reader.setSource(source);
+		reader.setLimits(limits);
+		reader.format = format;
 		return reader;
 	}
 }
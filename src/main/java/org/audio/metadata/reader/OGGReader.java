@@ -1,24 +1,28 @@
 package org.audio.metadata.reader;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
 
-import org.audio.metadata.Constants;
-import org.audio.metadata.Metadata;
+import org.audio.metadata.MetadataVisitor;
+import org.audio.metadata.StreamInfo;
+import org.audio.utils.ByteSearch;
 
 /**
  * Reads metadata from OGG files.
- * 
+ *
  * <p>
- * Notes: OGG could be used with Opus, Vorbis, Theora, or Speex.
+ * Notes: OGG could be used with Opus, Vorbis, Theora, or Speex. Vorbis, Opus
+ * and FLAC streams are supported. Pages are read only until the header
+ * packets carrying the comments have been reassembled, so the audio data is
+ * never visited. The duration comes from the granule position of the last
+ * page, found with one read from the end of the file.
  * </p>
  */
 public class OGGReader extends MetadataReader {
@@ -30,120 +34,367 @@ public class OGGReader extends MetadataReader {
 	protected OGGReader() {
 	}
 
-	/**
-	 * Mapping from VORBIS tags to {@link Constants}.
-	 */
-	private static final Map<String, String> VORBIS_TAGS;
-	static {
-		Map<String, String> tags = new HashMap<>();
-		tags.put("TITLE", Constants.TITLE);
-		tags.put("ALBUM", Constants.ALBUM_NAME);
-		tags.put("TRACKNUMBER", Constants.TRACK_NUMBER);
-		tags.put("ARTIST", Constants.ARTIST_NAME);
-		tags.put("COPYRIGHT", Constants.COPYRIGHT);
-		tags.put("GENRE", Constants.GENRE);
-		tags.put("DATE", Constants.DATE);
-		tags.put("ISRC", Constants.ISRC);
-		VORBIS_TAGS = Collections.unmodifiableMap(tags);
-	}
-
 	/**
 	 * OGG headers are 27 bytes long.
 	 */
 	private static final int PAGE_HEADER_SIZE = 27;
-	
+
+	/**
+	 * Largest possible segment table
+	 */
+	private static final int MAX_SEGMENTS = 255;
+
+	/**
+	 * Largest possible page: header, full segment table and 255 full segments
+	 */
+	private static final int MAX_PAGE_SIZE = PAGE_HEADER_SIZE + MAX_SEGMENTS + MAX_SEGMENTS * 255;
+
+	/**
+	 * Page capture pattern
+	 */
+	private static final byte[] CAPTURE_PATTERN = { 'O', 'g', 'g', 'S' };
+
+	/**
+	 * Header type flag marking a page that continues the previous packet
+	 */
+	private static final int CONTINUED_PACKET = 0x01;
+
+	/**
+	 * Vorbis identification header packet
+	 */
+	private static final byte[] VORBIS_IDENTIFICATION = { 0x01, 'v', 'o', 'r', 'b', 'i', 's' };
+
+	/**
+	 * Vorbis identification header up to and including the sample rate
+	 */
+	private static final int VORBIS_IDENTIFICATION_SIZE = 16;
+
+	/**
+	 * Vorbis comment header packet
+	 */
+	private static final byte[] VORBIS_COMMENT = { 0x03, 'v', 'o', 'r', 'b', 'i', 's' };
+
+	/**
+	 * Opus identification header packet
+	 */
+	private static final byte[] OPUS_HEAD = { 'O', 'p', 'u', 's', 'H', 'e', 'a', 'd' };
+
 	/**
-	 * VORBIS segment header
+	 * Opus identification header with channel mapping family 0
 	 */
-	private static final byte[] VORBIS_HEADER = {0x76, 0x6F, 0x72, 0x62, 0x69, 0x73 };
+	private static final int OPUS_HEAD_SIZE = 19;
+
+	/**
+	 * Opus granule positions always count samples at 48 kHz
+	 */
+	private static final int OPUS_SAMPLE_RATE = 48000;
+
+	/**
+	 * Opus comment header packet
+	 */
+	private static final byte[] OPUS_TAGS = { 'O', 'p', 'u', 's', 'T', 'a', 'g', 's' };
+
+	/**
+	 * FLAC-in-Ogg identification header packet
+	 */
+	private static final byte[] FLAC_IDENTIFICATION = { 0x7F, 'F', 'L', 'A', 'C' };
+
+	/**
+	 * FLAC-in-Ogg identification header: signature, version, header count,
+	 * fLaC marker, STREAMINFO block header and STREAMINFO
+	 */
+	private static final int FLAC_IDENTIFICATION_SIZE = 51;
+
+	/**
+	 * Metadata block header size for FLAC-in-Ogg header packets
+	 */
+	private static final int FLAC_BLOCK_HEADER_SIZE = 4;
 
 	/**
 	 * Reads metadata from given OGG files
-	 * 
-	 * @return metadata in key-value pairs
-	 */
-	public Metadata getMetadata() {
-		Metadata metadata = new Metadata();
-
-		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
-			// tracking file position
-			long fileSize = channel.size();
-			long position = 0;
-
-			// reading pages
-			while (position < fileSize) {
-				ByteBuffer buffer = ByteBuffer.allocate(PAGE_HEADER_SIZE);
-				channel.read(buffer);
-				buffer.flip();
-
-				if (buffer.remaining() < PAGE_HEADER_SIZE) {
-					// error
-					break;
+	 *
+	 * @param visitor receiver of the values found
+	 */
+	@Override
+	protected void readMetadata(MetadataVisitor visitor) {
+		try (FileChannel channel = openChannel()) {
+			PacketReader packets = new PacketReader(channel);
+
+			// the first packet identifies the codec of the logical stream
+			byte[] identification = packets.next();
+			if (identification == null) {
+				return;
+			}
+
+			// granule positions count samples at granuleRate, less preSkip
+			ByteBuffer header = ByteBuffer.wrap(identification).order(ByteOrder.LITTLE_ENDIAN);
+			int granuleRate = 0;
+			int channels = 0;
+			int preSkip = 0;
+
+			if (ByteSearch.matchesAt(identification, 0, VORBIS_IDENTIFICATION)) {
+				if (identification.length >= VORBIS_IDENTIFICATION_SIZE) {
+					// version, channels, sample rate
+					channels = header.get(11) & 0xFF;
+					granuleRate = header.getInt(12);
+				}
+
+				// vorbis comments, followed by a framing bit which is ignored
+				byte[] comment = packets.next();
+				if (comment != null && ByteSearch.matchesAt(comment, 0, VORBIS_COMMENT)) {
+					FLACReader.extractVORBISData(ByteBuffer.wrap(comment, VORBIS_COMMENT.length,
+							comment.length - VORBIS_COMMENT.length), visitor);
+				}
+			} else if (ByteSearch.matchesAt(identification, 0, OPUS_HEAD)) {
+				if (identification.length >= OPUS_HEAD_SIZE) {
+					// version, channels, pre-skip, then the informational input
+					// sample rate; opus always decodes at 48 kHz
+					channels = header.get(9) & 0xFF;
+					preSkip = header.getShort(10) & 0xFFFF;
+					granuleRate = OPUS_SAMPLE_RATE;
 				}
 
-				// OggS
-				byte[] capture = new byte[4];
-				buffer.get(capture);
-				
-				// header information
-				byte version = buffer.get();
-				byte type = buffer.get();
-
-				if (type == 1) {
-					// continuation of previous page
-				} else if (type == 2) {
-					// first page
-				} else if (type == 3) {
-					// last page
+				// vorbis comments without framing bit
+				byte[] comment = packets.next();
+				if (comment != null && ByteSearch.matchesAt(comment, 0, OPUS_TAGS)) {
+					FLACReader.extractVORBISData(
+							ByteBuffer.wrap(comment, OPUS_TAGS.length, comment.length - OPUS_TAGS.length), visitor);
 				}
+			} else if (ByteSearch.matchesAt(identification, 0, FLAC_IDENTIFICATION)
+					&& identification.length >= FLAC_IDENTIFICATION_SIZE) {
+				// 20 bit sample rate, 3 bit channels - 1 inside STREAMINFO
+				int packed = ((identification[27] & 0xFF) << 16) | ((identification[28] & 0xFF) << 8)
+						| (identification[29] & 0xFF);
+				granuleRate = packed >>> 4;
+				channels = ((packed >>> 1) & 0x07) + 1;
+
+				extractFLACData(packets, identification, visitor);
+			}
 
-				long granule = buffer.getLong();
-				int serialNumber = buffer.getInt();
-				int sequenceNumber = buffer.getInt();
-				int checkSum = buffer.getInt();
-				int segments = buffer.get() & 0xFF;
-				
-				position += PAGE_HEADER_SIZE;
-
-				// read in table of segment sizes
-				ByteBuffer table = ByteBuffer.allocate(segments);
-				channel.read(table);
-				table.flip();
-				byte[] segmentTable = new byte[segments];
-				table.get(segmentTable);
-
-				// read all segments
-				for (byte segmentSize : segmentTable) {
-					// ignore empty segments when entry is a multiple of 255
-					if (segmentSize == 0) {
-						continue;
-					}
-					
-					int length = segmentSize & 0xFF;
-					try {
-						if (length > 7) {
-							ByteBuffer segmentBuffer = ByteBuffer.allocate(7);
-							channel.read(segmentBuffer);
-							segmentBuffer.flip();
-
-							byte[] marker = new byte[7];
-							segmentBuffer.get(marker);
-							if (Arrays.equals(marker, 1, 7, VORBIS_HEADER, 0, 6)) {
-								FLACReader.extractVORBISData(channel, length - 7, metadata);
-							}
-						}
-					} catch (BufferUnderflowException | NegativeArraySizeException e) {
-						// TODO: first block is inconsistently sized and causes errors
-					}
-	
-					position += length;
+			if (granuleRate > 0) {
+				long granule = findLastGranule(channel, packets.serialNumber);
+				if (granule >= 0) {
+					long samples = Math.max(0, granule - preSkip);
+					Duration duration = Duration.ofSeconds(samples / granuleRate,
+							(samples % granuleRate) * 1_000_000_000L / granuleRate);
+
+					// average over everything after the header pages
+					long audioBytes = channel.size() - packets.position;
+					int bitrate = samples == 0 ? 0 : (int) (audioBytes * 8 * granuleRate / samples);
+					visitor.onStreamInfo(new StreamInfo(granuleRate, channels, duration, bitrate));
 				}
 			}
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			// corrupt or oversized files keep the values read so far
+			readFailed();
+		}
+	}
+
+	/**
+	 * Finds the granule position of the last page of the logical stream with a
+	 * single bounded read from the end of the file, searching backwards for the
+	 * capture pattern rather than walking every page from the start.
+	 *
+	 * @param channel      source file
+	 * @param serialNumber logical stream whose pages are considered
+	 * @return the last granule position, or -1 if none was found
+	 * @throws IOException if the channel cannot be read
+	 */
+	private static long findLastGranule(FileChannel channel, int serialNumber) throws IOException {
+		// the last page starts within the largest possible page of the end
+		long fileSize = channel.size();
+		int tailSize = (int) Math.min(fileSize, MAX_PAGE_SIZE);
+		ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+		int nRead = readFully(channel, tail, fileSize - tailSize);
+		byte[] data = tail.array();
+
+		int end = nRead;
+		int index;
+		while ((index = ByteSearch.lastIndexOf(data, 0, end, CAPTURE_PATTERN)) >= 0) {
+			// stream structure version 0, matching stream, a packet finishes here
+			if (index + PAGE_HEADER_SIZE <= nRead && data[index + 4] == 0
+					&& tail.getInt(index + 14) == serialNumber) {
+				long granule = tail.getLong(index + 6);
+				if (granule != -1) {
+					return granule;
+				}
+			}
+
+			// keep searching before this match
+			end = index + CAPTURE_PATTERN.length - 1;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Reads the header packets of a FLAC-in-Ogg stream, each of which holds a
+	 * single FLAC metadata block.
+	 *
+	 * @param packets        packet source positioned after the identification
+	 * @param identification identification header packet
+	 * @param metadata       receiver of extracted data
+	 * @throws IOException if the channel cannot be read or limits are exceeded
+	 */
+	private void extractFLACData(PacketReader packets, byte[] identification, MetadataVisitor metadata)
+			throws IOException {
+		// number of header packets after the identification, 0 if unknown
+		int headerPackets = ((identification[7] & 0xFF) << 8) | (identification[8] & 0xFF);
+
+		for (int count = 1; headerPackets == 0 || count <= headerPackets; ++count) {
+			limits.checkAtomCount(count);
+
+			byte[] packet = packets.next();
+			if (packet == null || packet.length < FLAC_BLOCK_HEADER_SIZE) {
+				break;
+			}
+
+			boolean lastBlock = (packet[0] & 0x80) != 0;
+			int blockType = packet[0] & 0x7F;
+			ByteBuffer block = ByteBuffer
+					.wrap(packet, FLAC_BLOCK_HEADER_SIZE, packet.length - FLAC_BLOCK_HEADER_SIZE).slice();
+
+			// 4 - VORBIS_COMMENT, 6 - PICTURE
+			if (blockType == 4) {
+				FLACReader.extractVORBISData(block, metadata);
+			} else if (blockType == 6) {
+				FLACReader.extractImage(block, metadata);
+			}
+
+			if (lastBlock) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reassembles the packets of the first logical stream in a file, reading
+	 * one page at a time with positioned reads. Pages of other logical streams
+	 * are skipped.
+	 */
+	private final class PacketReader {
+
+		/**
+		 * Source file
+		 */
+		private final FileChannel channel;
+
+		/**
+		 * Packets completed on pages read so far
+		 */
+		private final Queue<byte[]> completed = new ArrayDeque<>();
+
+		/**
+		 * Packet continuing onto the next page
+		 */
+		private final ByteArrayOutputStream partial = new ByteArrayOutputStream();
+
+		/**
+		 * Reused buffer for the page header and segment table
+		 */
+		private final ByteBuffer header = ByteBuffer.allocate(PAGE_HEADER_SIZE + MAX_SEGMENTS)
+				.order(ByteOrder.LITTLE_ENDIAN);
+
+		/**
+		 * File position of the next page
+		 */
+		private long position;
+
+		/**
+		 * Number of pages read
+		 */
+		private int pageCount;
+
+		/**
+		 * Serial number of the logical stream being read
+		 */
+		private int serialNumber;
+
+		/**
+		 * @param channel source file
+		 */
+		private PacketReader(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Returns the next complete packet, reading further pages as needed.
+		 *
+		 * @return packet contents, or null if the stream ends first
+		 * @throws IOException if the channel cannot be read or limits are exceeded
+		 */
+		private byte[] next() throws IOException {
+			while (completed.isEmpty()) {
+				if (!readPage()) {
+					return null;
+				}
+			}
+			return completed.poll();
 		}
 
-		return metadata;
+		/**
+		 * Reads a single page, splitting its body into packets.
+		 *
+		 * @return false if no further page could be read
+		 * @throws IOException if the channel cannot be read or limits are exceeded
+		 */
+		private boolean readPage() throws IOException {
+			limits.checkAtomCount(++pageCount);
+
+			// header and segment table in one read, which may run into the body
+			header.clear();
+			int nRead = readFully(channel, header, position);
+			if (nRead < PAGE_HEADER_SIZE || !ByteSearch.matchesAt(header.array(), 0, CAPTURE_PATTERN)) {
+				return false;
+			}
+
+			int type = header.get(5) & 0xFF;
+			int serial = header.getInt(14);
+			int segments = header.get(26) & 0xFF;
+			if (nRead < PAGE_HEADER_SIZE + segments) {
+				// truncated page
+				return false;
+			}
+
+			int bodyLength = 0;
+			for (int s = 0; s < segments; ++s) {
+				bodyLength += header.get(PAGE_HEADER_SIZE + s) & 0xFF;
+			}
+
+			long bodyPosition = position + PAGE_HEADER_SIZE + segments;
+			position = bodyPosition + bodyLength;
+
+			if (pageCount == 1) {
+				serialNumber = serial;
+			} else if (serial != serialNumber) {
+				// page of another multiplexed stream
+				return true;
+			}
+
+			ByteBuffer body = ByteBuffer.allocate(bodyLength);
+			if (readFully(channel, body, bodyPosition) != bodyLength) {
+				return false;
+			}
+
+			// a packet left open without a continuation page was lost
+			if ((type & CONTINUED_PACKET) == 0) {
+				partial.reset();
+			}
+
+			// lacing values below 255 end a packet
+			int offset = 0;
+			for (int s = 0; s < segments; ++s) {
+				int length = header.get(PAGE_HEADER_SIZE + s) & 0xFF;
+				limits.checkTagSize((long) partial.size() + length);
+				partial.write(body.array(), offset, length);
+				offset += length;
+
+				if (length < 255) {
+					completed.add(partial.toByteArray());
+					partial.reset();
+				}
+			}
+			return true;
+		}
 	}
-}
\ No newline at end of file
+}
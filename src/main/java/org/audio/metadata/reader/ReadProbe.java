@@ -0,0 +1,110 @@
+package org.audio.metadata.reader;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a single {@link MetadataReader#accept} call. Only
+ * created while statistics or flight recorder events are enabled.
+ *
+ * <p>
+ * Readers are not changed to report their work: they already open files
+ * through {@link MetadataReader#openChannel()} and validate every structure
+ * they visit and every image they size against their {@link ReaderLimits},
+ * so the probe wraps both. Counters may be updated by decoder threads.
+ * </p>
+ */
+class ReadProbe {
+
+	/**
+	 * Limits that count the structures and images they validate
+	 */
+	private static final class CountingLimits extends ReaderLimits {
+
+		/**
+		 * Probe receiving the counts
+		 */
+		private final ReadProbe probe;
+
+		/**
+		 * @param limits limits actually enforced
+		 * @param probe  probe receiving the counts
+		 */
+		private CountingLimits(ReaderLimits limits, ReadProbe probe) {
+			super(limits.getMaxTagSize(), limits.getMaxImageSize(), limits.getMaxAtoms(), limits.getMaxDepth());
+			this.probe = probe;
+		}
+
+		@Override
+		public int checkImageSize(long size) throws LimitExceededException {
+			int checked = super.checkImageSize(size);
+			probe.images.increment();
+			return checked;
+		}
+
+		@Override
+		public void checkAtomCount(int count) throws LimitExceededException {
+			super.checkAtomCount(count);
+			probe.structures.increment();
+		}
+	}
+
+	/**
+	 * Limits handed to the reader for the duration of the call
+	 */
+	private final ReaderLimits limits;
+
+	/**
+	 * Nanoseconds spent opening channels
+	 */
+	final LongAdder openNanos = new LongAdder();
+
+	/**
+	 * Number of read calls made on the channels
+	 */
+	final LongAdder readCalls = new LongAdder();
+
+	/**
+	 * Number of bytes returned by those calls
+	 */
+	final LongAdder bytesRead = new LongAdder();
+
+	/**
+	 * Number of frames, blocks, atoms, chunks or pages visited
+	 */
+	final LongAdder structures = new LongAdder();
+
+	/**
+	 * Number of embedded images sized for extraction
+	 */
+	final LongAdder images = new LongAdder();
+
+	/**
+	 * Set when the reader gave up on a corrupt or oversized file without
+	 * throwing
+	 */
+	volatile boolean failed;
+
+	/**
+	 * @param limits limits actually enforced
+	 */
+	ReadProbe(ReaderLimits limits) {
+		this.limits = new CountingLimits(limits, this);
+	}
+
+	/**
+	 * @return limits to be used by the reader while probed
+	 */
+	ReaderLimits getLimits() {
+		return limits;
+	}
+
+	/**
+	 * Records a single read call
+	 *
+	 * @param bytes number of bytes returned
+	 */
+	void read(long bytes) {
+		readCalls.increment();
+		bytesRead.add(bytes);
+	}
+}
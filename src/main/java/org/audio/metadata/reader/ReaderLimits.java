@@ -0,0 +1,140 @@
+package org.audio.metadata.reader;
+
+/**
+ * Resource limits applied while parsing audio files.
+ * 
+ * <p>
+ * Sizes read from a file cannot be trusted. Every length is checked against
+ * these limits before a buffer is allocated for it, and every loop over
+ * frames, blocks, atoms or pages is bounded, so a single corrupt file can
+ * neither allocate gigabytes nor keep a reader spinning.
+ * </p>
+ */
+public class ReaderLimits {
+
+	/**
+	 * Limits used when none are specified. Generous enough for any well-formed
+	 * file encountered so far.
+	 */
+	public static final ReaderLimits DEFAULT = new ReaderLimits(32 << 20, 16 << 20, 65536, 16);
+
+	/**
+	 * Maximum number of bytes allocated for a single tag, frame, block or chunk
+	 */
+	private final int maxTagSize;
+
+	/**
+	 * Maximum number of bytes allocated for a single embedded image
+	 */
+	private final int maxImageSize;
+
+	/**
+	 * Maximum number of frames, blocks, atoms, chunks or pages visited per file
+	 */
+	private final int maxAtoms;
+
+	/**
+	 * Maximum nesting level of container structures (M4A atoms)
+	 */
+	private final int maxDepth;
+
+	/**
+	 * Creates a new set of limits.
+	 * 
+	 * @param maxTagSize   maximum size in bytes of any single tag structure
+	 * @param maxImageSize maximum size in bytes of any embedded image
+	 * @param maxAtoms     maximum number of structures visited per file
+	 * @param maxDepth     maximum nesting level of container structures
+	 * @throws IllegalArgumentException if any limit is not positive
+	 */
+	public ReaderLimits(int maxTagSize, int maxImageSize, int maxAtoms, int maxDepth) {
+		if (maxTagSize <= 0 || maxImageSize <= 0 || maxAtoms <= 0 || maxDepth <= 0) {
+			throw new IllegalArgumentException("Limits must be positive.");
+		}
+
+		this.maxTagSize = maxTagSize;
+		this.maxImageSize = maxImageSize;
+		this.maxAtoms = maxAtoms;
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * @return maximum size in bytes of any single tag structure
+	 */
+	public int getMaxTagSize() {
+		return maxTagSize;
+	}
+
+	/**
+	 * @return maximum size in bytes of any embedded image
+	 */
+	public int getMaxImageSize() {
+		return maxImageSize;
+	}
+
+	/**
+	 * @return maximum number of structures visited per file
+	 */
+	public int getMaxAtoms() {
+		return maxAtoms;
+	}
+
+	/**
+	 * @return maximum nesting level of container structures
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Validates a tag, frame, block or chunk size read from a file.
+	 * 
+	 * @param size number of bytes about to be allocated
+	 * @return {@code size} as an int, safe to allocate
+	 * @throws LimitExceededException if {@code size} is negative or too large
+	 */
+	public int checkTagSize(long size) throws LimitExceededException {
+		if (size < 0 || size > maxTagSize) {
+			throw new LimitExceededException("Tag size " + size + " outside of [0, " + maxTagSize + "]");
+		}
+		return (int) size;
+	}
+
+	/**
+	 * Validates an embedded image size read from a file.
+	 * 
+	 * @param size number of bytes about to be allocated
+	 * @return {@code size} as an int, safe to allocate
+	 * @throws LimitExceededException if {@code size} is negative or too large
+	 */
+	public int checkImageSize(long size) throws LimitExceededException {
+		if (size < 0 || size > maxImageSize) {
+			throw new LimitExceededException("Image size " + size + " outside of [0, " + maxImageSize + "]");
+		}
+		return (int) size;
+	}
+
+	/**
+	 * Validates the number of structures visited so far.
+	 * 
+	 * @param count number of frames, blocks, atoms, chunks or pages visited
+	 * @throws LimitExceededException if {@code count} exceeds {@code maxAtoms}
+	 */
+	public void checkAtomCount(int count) throws LimitExceededException {
+		if (count > maxAtoms) {
+			throw new LimitExceededException("More than " + maxAtoms + " structures visited");
+		}
+	}
+
+	/**
+	 * Validates the current nesting level.
+	 * 
+	 * @param depth current nesting level, where top-level structures are 1
+	 * @throws LimitExceededException if {@code depth} exceeds {@code maxDepth}
+	 */
+	public void checkDepth(int depth) throws LimitExceededException {
+		if (depth > maxDepth) {
+			throw new LimitExceededException("Nesting deeper than " + maxDepth + " levels");
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package org.audio.metadata.reader;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.audio.utils.FileUtils.Format;
+
+/**
+ * Counters and latency histograms of metadata reads, per file format.
+ *
+ * <p>
+ * Disabled by default, in which case {@link MetadataReader} only checks a
+ * volatile flag and whether {@link MetadataReadEvent} is enabled before
+ * reading as usual. Enable with {@link #setEnabled(boolean)}, through JMX
+ * after {@link #register()}, or by starting the JVM with
+ * {@code -Dorg.audio.statistics=true}. Flight recorder events are emitted
+ * independently whenever a recording enables {@value MetadataReadEvent#NAME}.
+ * </p>
+ */
+public final class ReaderStatistics implements ReaderStatisticsMXBean {
+
+	/**
+	 * Name under which the statistics are registered with JMX
+	 */
+	public static final String OBJECT_NAME = "org.audio:type=ReaderStatistics";
+
+	/**
+	 * Number of latency buckets, one per power of two nanoseconds
+	 */
+	private static final int BUCKETS = 64;
+
+	/**
+	 * The only instance
+	 */
+	private static final ReaderStatistics INSTANCE = new ReaderStatistics();
+
+	/**
+	 * Whether reads are being counted
+	 */
+	private static volatile boolean enabled = Boolean.getBoolean("org.audio.statistics");
+
+	/**
+	 * Source of per thread allocation counts, {@code null} if unsupported
+	 */
+	private static final com.sun.management.ThreadMXBean THREADS;
+	static {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean allocation
+				&& allocation.isThreadAllocatedMemorySupported() && allocation.isThreadAllocatedMemoryEnabled()) {
+			THREADS = allocation;
+		} else {
+			THREADS = null;
+		}
+	}
+
+	/**
+	 * Running totals of a single format
+	 */
+	private static final class Totals {
+
+		/**
+		 * Number of files read
+		 */
+		private final LongAdder files = new LongAdder();
+
+		/**
+		 * Number of reads that threw an exception or stopped on a corrupt file
+		 */
+		private final LongAdder failures = new LongAdder();
+
+		/**
+		 * Nanoseconds spent determining the format
+		 */
+		private final LongAdder detectNanos = new LongAdder();
+
+		/**
+		 * Nanoseconds spent opening files
+		 */
+		private final LongAdder openNanos = new LongAdder();
+
+		/**
+		 * Nanoseconds spent reading metadata
+		 */
+		private final LongAdder readNanos = new LongAdder();
+
+		/**
+		 * Number of read calls
+		 */
+		private final LongAdder readCalls = new LongAdder();
+
+		/**
+		 * Number of bytes read
+		 */
+		private final LongAdder bytesRead = new LongAdder();
+
+		/**
+		 * Number of structures visited
+		 */
+		private final LongAdder structures = new LongAdder();
+
+		/**
+		 * Number of images sized for extraction
+		 */
+		private final LongAdder images = new LongAdder();
+
+		/**
+		 * Number of bytes allocated
+		 */
+		private final LongAdder bytesAllocated = new LongAdder();
+
+		/**
+		 * Reads per power of two nanoseconds
+		 */
+		private final AtomicLongArray latency = new AtomicLongArray(BUCKETS);
+
+		/**
+		 * @param format name of the format
+		 * @return current values
+		 */
+		private FormatStatistics snapshot(String format) {
+			long[] histogram = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; ++i) {
+				histogram[i] = latency.get(i);
+			}
+			return new FormatStatistics(format, files.sum(), failures.sum(), detectNanos.sum(), openNanos.sum(),
+					readNanos.sum(), readCalls.sum(), bytesRead.sum(), structures.sum(), images.sum(),
+					bytesAllocated.sum(), histogram);
+		}
+	}
+
+	/**
+	 * Totals of every format, replaced as a whole on reset
+	 */
+	private volatile Map<Format, Totals> totals = createTotals();
+
+	/**
+	 * Use {@link #getInstance()}
+	 */
+	private ReaderStatistics() {
+	}
+
+	/**
+	 * @return the statistics shared by all readers
+	 */
+	public static ReaderStatistics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Registers the statistics with the platform MBean server as
+	 * {@value #OBJECT_NAME}. Registering more than once has no effect.
+	 *
+	 * @throws JMException if registration fails
+	 */
+	public static void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+		} catch (InstanceAlreadyExistsException e) {
+			// already registered
+		}
+	}
+
+	/**
+	 * @return true if reads are being counted
+	 */
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts or stops counting reads. Counts collected so far are kept.
+	 *
+	 * @param enabled true to count reads
+	 */
+	@Override
+	public void setEnabled(boolean enabled) {
+		ReaderStatistics.enabled = enabled;
+	}
+
+	/**
+	 * @return statistics of every format read so far, keyed by format name
+	 */
+	@Override
+	public Map<String, FormatStatistics> getFormats() {
+		Map<String, FormatStatistics> formats = new TreeMap<>();
+		for (Map.Entry<Format, Totals> entry : totals.entrySet()) {
+			FormatStatistics statistics = entry.getValue().snapshot(entry.getKey().name());
+			if (statistics.getFiles() > 0 || statistics.getDetectNanos() > 0) {
+				formats.put(entry.getKey().name(), statistics);
+			}
+		}
+		return formats;
+	}
+
+	/**
+	 * @param format file format
+	 * @return statistics of {@code format}
+	 */
+	public FormatStatistics getFormat(Format format) {
+		return totals.get(format).snapshot(format.name());
+	}
+
+	/**
+	 * Discards all counts collected so far
+	 */
+	@Override
+	public void reset() {
+		totals = createTotals();
+	}
+
+	/**
+	 * @return empty totals for every format
+	 */
+	private static Map<Format, Totals> createTotals() {
+		Map<Format, Totals> totals = new EnumMap<>(Format.class);
+		for (Format format : Format.values()) {
+			totals.put(format, new Totals());
+		}
+		return totals;
+	}
+
+	/**
+	 * Fast check made before every read
+	 *
+	 * @return true if reads are being counted
+	 */
+	static boolean enabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return bytes allocated so far by the current thread, 0 if unsupported
+	 */
+	static long allocatedBytes() {
+		return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+	}
+
+	/**
+	 * Records the time taken to determine the format of a file
+	 *
+	 * @param format detected format
+	 * @param nanos  time taken
+	 */
+	static void recordDetection(Format format, long nanos) {
+		INSTANCE.totals.get(format).detectNanos.add(nanos);
+	}
+
+	/**
+	 * Records a completed {@link MetadataReader#accept} call
+	 *
+	 * @param format         format of the file, {@code null} if unknown
+	 * @param probe          counters of the call
+	 * @param nanos          time taken
+	 * @param bytesAllocated bytes allocated by the calling thread
+	 * @param failed         true if the call threw an exception or stopped on a
+	 *                       corrupt file
+	 */
+	static void record(Format format, ReadProbe probe, long nanos, long bytesAllocated, boolean failed) {
+		Totals counts = INSTANCE.totals.get(format == null ? Format.UNKNOWN : format);
+		counts.files.increment();
+		if (failed) {
+			counts.failures.increment();
+		}
+		counts.openNanos.add(probe.openNanos.sum());
+		counts.readNanos.add(nanos);
+		counts.readCalls.add(probe.readCalls.sum());
+		counts.bytesRead.add(probe.bytesRead.sum());
+		counts.structures.add(probe.structures.sum());
+		counts.images.add(probe.images.sum());
+		counts.bytesAllocated.add(bytesAllocated);
+		counts.latency.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos)));
+	}
+}
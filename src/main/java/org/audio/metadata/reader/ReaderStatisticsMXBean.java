@@ -0,0 +1,32 @@
+package org.audio.metadata.reader;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link ReaderStatistics}, registered as
+ * {@value ReaderStatistics#OBJECT_NAME}.
+ */
+public interface ReaderStatisticsMXBean {
+
+	/**
+	 * @return true if reads are being counted
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Starts or stops counting reads. Counts collected so far are kept.
+	 *
+	 * @param enabled true to count reads
+	 */
+	void setEnabled(boolean enabled);
+
+	/**
+	 * @return statistics of every format read so far, keyed by format name
+	 */
+	Map<String, FormatStatistics> getFormats();
+
+	/**
+	 * Discards all counts collected so far
+	 */
+	void reset();
+}
@@ -0,0 +1,661 @@
+package org.audio.metadata.reader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.audio.metadata.Constants;
+
+/**
+ * Maps the tag identifiers of every supported format to {@link Constants}.
+ *
+ * <p>
+ * Four character codes are handled as big endian {@code int}s taken straight
+ * from the file and looked up in tables built once, at class initialisation,
+ * with a perfect hash of the mappings below. Recognised tags are therefore
+ * normalised without creating a {@code String}; one is only created for tags
+ * that are not in a table. Vorbis field names vary in length and are
+ * case-insensitive, so they are hashed from their bytes in the same way and
+ * compared against the registered name.
+ * </p>
+ */
+final class TagRegistry {
+
+	/**
+	 * Static utility class
+	 */
+	private TagRegistry() {
+	}
+
+	/**
+	 * Mapping from ID3 frame IDs to {@link Constants}.
+	 */
+	private static final Table<String> ID3_TAGS;
+	static {
+		Map<String, String> tags = new HashMap<>();
+		tags.put("AENC", "Audio encryption");
+		tags.put("APIC", "Attached picture");
+		tags.put("COMM", "Comments");
+		tags.put("COMR", "Commercial frame");
+		tags.put("ENCR", "Encryption method registration");
+		tags.put("EQUA", "Equalization");
+		tags.put("ETCO", "Event timing codes");
+		tags.put("GEOB", "General encapsulated object");
+		tags.put("GRID", "Group identification registration");
+		tags.put("IPLS", "Involved people list");
+		tags.put("LINK", "Linked information");
+		tags.put("MCDI", "Music CD identifier");
+		tags.put("MLLT", "MPEG location lookup table");
+		tags.put("OWNE", "Ownership frame");
+		tags.put("PRIV", "Private frame");
+		tags.put("PCNT", "Play counter");
+		tags.put("POPM", "Popularimeter");
+		tags.put("POSS", "Position synchronisation frame");
+		tags.put("RBUF", "Recommended buffer size");
+		tags.put("RVAD", "Relative volume adjustment");
+		tags.put("RVRB", "Reverb");
+		tags.put("SYLT", "Synchronized lyric");
+		tags.put("SYTC", "Synchronized tempo codes");
+		tags.put("TALB", Constants.ALBUM_NAME);
+		tags.put("TBPM", "BPM");
+		tags.put("TCOM", Constants.COMPOSER);
+		tags.put("TCON", Constants.GENRE);
+		tags.put("TCOP", Constants.COPYRIGHT);
+		tags.put("TDAT", Constants.DATE);
+		tags.put("TDEN", "Encoding time");
+		tags.put("TDLY", "Playlist delay");
+		tags.put("TDOR", "Original release time");
+		tags.put("TDRC", Constants.DATE);
+		tags.put("TDRL", "Release time");
+		tags.put("TDTG", "Tagging time");
+		tags.put("TENC", "Encoded by");
+		tags.put("TEXT", Constants.LYRICIST);
+		tags.put("TFLT", "File type");
+		tags.put("TIME", "Time");
+		tags.put("TIPL", "Involved people list");
+		tags.put("TIT1", "Content group description");
+		tags.put("TIT2", Constants.TITLE);
+		tags.put("TIT3", Constants.SUBTITLE);
+		tags.put("TKEY", "Initial key");
+		tags.put("TLAN", "Language(s)");
+		tags.put("TLEN", "Length");
+		tags.put("TMCL", "Musician credits list");
+		tags.put("TMED", "Media type");
+		tags.put("TMOO", "Mood");
+		tags.put("TOAL", "Original album");
+		tags.put("TOFN", "Original filename");
+		tags.put("TOLY", "Original lyricist(s)");
+		tags.put("TOPE", "Original artist(s)");
+		tags.put("TORY", "Original release year");
+		tags.put("TOWN", "File owner");
+		tags.put("TPE1", Constants.ARTIST_NAME);
+		tags.put("TPE2", Constants.ACCOMPANIMENT);
+		tags.put("TPE3", Constants.CONDUCTOR);
+		tags.put("TPE4", "Modified by");
+		tags.put("TPRO", "Produced notice");
+		tags.put("TPOS", Constants.DISC_NUMBER);
+		tags.put("TPUB", Constants.PUBLISHER);
+		tags.put("TRCK", Constants.TRACK_NUMBER);
+		tags.put("TRDA", "Recording dates");
+		tags.put("TRSN", "Internet radio station name");
+		tags.put("TRSO", "Internet radio station owner");
+		tags.put("TSIZ", "Size");
+		tags.put("TSOA", "Album sort order");
+		tags.put("TSOP", "Performer sort order");
+		tags.put("TSOT", "Title sort order");
+		tags.put("TSRC", Constants.ISRC);
+		tags.put("TSSE", Constants.ENCODING_INFO);
+		tags.put("TSST", "Set subtitle");
+		tags.put("TYER", Constants.YEAR);
+		tags.put("TXXX", "User defined text information frame");
+		tags.put("UFID", "Unique file identifier");
+		tags.put("USER", "Terms of use");
+		tags.put("USLT", "Unsychronized lyric");
+		tags.put("WCOM", "Commercial information");
+		tags.put("WCOP", Constants.COPYRIGHT_WEBPAGE);
+		tags.put("WOAF", Constants.FILE_WEBPAGE);
+		tags.put("WOAR", Constants.ARTIST_WEBPAGE);
+		tags.put("WOAS", "Official audio source webpage");
+		tags.put("WORS", "Official internet radio station homepage");
+		tags.put("WPAY", "Payment");
+		tags.put("WPUB", Constants.PUBLISHER_WEBPAGE);
+		tags.put("WXXX", "User defined URL link frame");
+		ID3_TAGS = Table.ofFourCCs(tags);
+	}
+
+	/**
+	 * Mapping from three character ID3v2.2 frame IDs to their ID3v2.3
+	 * equivalents, so that both versions share {@code ID3_TAGS}.
+	 */
+	private static final Table<Integer> ID3V22_FRAMES;
+	static {
+		Map<String, String> frames = new HashMap<>();
+		frames.put("BUF", "RBUF");
+		frames.put("CNT", "PCNT");
+		frames.put("COM", "COMM");
+		frames.put("CRA", "AENC");
+		frames.put("EQU", "EQUA");
+		frames.put("ETC", "ETCO");
+		frames.put("GEO", "GEOB");
+		frames.put("IPL", "IPLS");
+		frames.put("LNK", "LINK");
+		frames.put("MCI", "MCDI");
+		frames.put("MLL", "MLLT");
+		frames.put("PIC", "APIC");
+		frames.put("POP", "POPM");
+		frames.put("REV", "RVRB");
+		frames.put("RVA", "RVAD");
+		frames.put("SLT", "SYLT");
+		frames.put("STC", "SYTC");
+		frames.put("TAL", "TALB");
+		frames.put("TBP", "TBPM");
+		frames.put("TCM", "TCOM");
+		frames.put("TCO", "TCON");
+		frames.put("TCR", "TCOP");
+		frames.put("TDA", "TDAT");
+		frames.put("TDY", "TDLY");
+		frames.put("TEN", "TENC");
+		frames.put("TFT", "TFLT");
+		frames.put("TIM", "TIME");
+		frames.put("TKE", "TKEY");
+		frames.put("TLA", "TLAN");
+		frames.put("TLE", "TLEN");
+		frames.put("TMT", "TMED");
+		frames.put("TOA", "TOPE");
+		frames.put("TOF", "TOFN");
+		frames.put("TOL", "TOLY");
+		frames.put("TOR", "TORY");
+		frames.put("TOT", "TOAL");
+		frames.put("TP1", "TPE1");
+		frames.put("TP2", "TPE2");
+		frames.put("TP3", "TPE3");
+		frames.put("TP4", "TPE4");
+		frames.put("TPA", "TPOS");
+		frames.put("TPB", "TPUB");
+		frames.put("TRC", "TSRC");
+		frames.put("TRD", "TRDA");
+		frames.put("TRK", "TRCK");
+		frames.put("TSI", "TSIZ");
+		frames.put("TSS", "TSSE");
+		frames.put("TT1", "TIT1");
+		frames.put("TT2", "TIT2");
+		frames.put("TT3", "TIT3");
+		frames.put("TXT", "TEXT");
+		frames.put("TXX", "TXXX");
+		frames.put("TYE", "TYER");
+		frames.put("UFI", "UFID");
+		frames.put("ULT", "USLT");
+		frames.put("WAF", "WOAF");
+		frames.put("WAR", "WOAR");
+		frames.put("WAS", "WOAS");
+		frames.put("WCM", "WCOM");
+		frames.put("WCP", "WCOP");
+		frames.put("WPB", "WPUB");
+		frames.put("WXX", "WXXX");
+		Map<String, Integer> codes = new HashMap<>();
+		for (Map.Entry<String, String> frame : frames.entrySet()) {
+			codes.put(frame.getKey(), fourCC(frame.getValue()));
+		}
+		ID3V22_FRAMES = Table.ofFourCCs(codes);
+	}
+
+	/**
+	 * Mappings from M4A four character code tags to {@link Constants}.
+	 */
+	private static final Table<String> M4A_TAGS;
+	static {
+		Map<String, String> tags = new HashMap<>();
+		tags.put("\u00A9ART", Constants.ARTIST_NAME);
+		tags.put("aART", Constants.ALBUM_ARTIST_NAME);
+		tags.put("\u00A9alb", Constants.ALBUM_NAME);
+		tags.put("\u00A9wrt", Constants.COMPOSER);
+		tags.put("\u00A9nam", Constants.TITLE);
+		tags.put("trck", Constants.TRACK_NUMBER);
+		tags.put("trkn", Constants.TRACK_NUMBER);
+		tags.put("disk", Constants.DISC_NUMBER);
+		tags.put("cprt", Constants.COPYRIGHT);
+		tags.put("\u00A9too", Constants.ENCODING_INFO);
+		tags.put("\u00A9day", Constants.YEAR);
+		tags.put("gnre", Constants.GENRE);
+		tags.put("\u00A9gen", Constants.GENRE);
+		M4A_TAGS = Table.ofFourCCs(tags);
+	}
+
+	/**
+	 * Mapping from WAV four character codes to {@link Constants}.
+	 */
+	private static final Table<String> WAV_TAGS;
+	static {
+		Map<String, String> tags = new HashMap<>();
+		tags.put("IARL", Constants.FILE_WEBPAGE);
+		tags.put("IART", Constants.ARTIST_NAME);
+		tags.put("ICOP", Constants.COPYRIGHT);
+		tags.put("ICRD", Constants.YEAR);
+		tags.put("IGNR", Constants.GENRE);
+		tags.put("INAM", Constants.TITLE);
+		tags.put("IPRD", Constants.ALBUM_NAME);
+		tags.put("ISFT", Constants.ENCODING_INFO);
+
+		WAV_TAGS = Table.ofFourCCs(tags);
+	}
+
+	/**
+	 * Mapping from AIFF text chunk IDs to {@link Constants}.
+	 */
+	private static final Table<String> AIFF_TAGS;
+	static {
+		Map<String, String> tags = new HashMap<>();
+		tags.put("NAME", Constants.TITLE);
+		tags.put("AUTH", Constants.ARTIST_NAME);
+		tags.put("(c) ", Constants.COPYRIGHT);
+		tags.put("ANNO", "Comments");
+
+		AIFF_TAGS = Table.ofFourCCs(tags);
+	}
+
+	/**
+	 * Mapping from ASF attribute names to {@link Constants}, including the
+	 * fields of the Content Description Object.
+	 */
+	private static final Table<AsfField> ASF_TAGS;
+	static {
+		Map<String, String> tags = new HashMap<>();
+		tags.put("Title", Constants.TITLE);
+		tags.put("Author", Constants.ARTIST_NAME);
+		tags.put("Copyright", Constants.COPYRIGHT);
+		tags.put("Description", "Comments");
+		tags.put("WM/AlbumTitle", Constants.ALBUM_NAME);
+		tags.put("WM/AlbumArtist", Constants.ALBUM_ARTIST_NAME);
+		tags.put("WM/SubTitle", Constants.SUBTITLE);
+		tags.put("WM/Composer", Constants.COMPOSER);
+		tags.put("WM/Conductor", Constants.CONDUCTOR);
+		tags.put("WM/Writer", Constants.LYRICIST);
+		tags.put("WM/Genre", Constants.GENRE);
+		tags.put("WM/Year", Constants.YEAR);
+		tags.put("WM/PartOfSet", Constants.DISC_NUMBER);
+		tags.put("WM/TrackNumber", Constants.TRACK_NUMBER);
+		tags.put("WM/ISRC", Constants.ISRC);
+		tags.put("WM/ToolName", Constants.ENCODING_INFO);
+		tags.put("WM/Publisher", Constants.PUBLISHER);
+		tags.put("WM/AuthorURL", Constants.ARTIST_WEBPAGE);
+
+		// attribute names are decoded from UTF-16, so their string hash is used
+		Map<Integer, AsfField> fields = new HashMap<>();
+		for (Map.Entry<String, String> tag : tags.entrySet()) {
+			if (fields.put(tag.getKey().hashCode(), new AsfField(tag.getKey(), tag.getValue())) != null) {
+				throw new IllegalStateException("ASF attribute names with equal hashes: " + tag.getKey());
+			}
+		}
+		ASF_TAGS = Table.of(fields);
+	}
+
+	/**
+	 * A registered ASF attribute
+	 *
+	 * @param name attribute name
+	 * @param tag  simple name of the text field
+	 */
+	private record AsfField(String name, String tag) {
+	}
+
+	/**
+	 * Mapping from VORBIS comment field names to {@link Constants}, shared by
+	 * FLAC and Ogg.
+	 */
+	private static final Table<VorbisField> VORBIS_TAGS;
+	static {
+		Map<String, String> tags = new HashMap<>();
+
+		// there is no official standard set of tags
+		// below are some of the proposed tags matched to the corresponding
+		// description used in ID3TagReader
+		tags.put("TITLE", Constants.TITLE);
+		tags.put("ALBUM", Constants.ALBUM_NAME);
+		tags.put("TRACKNUMBER", Constants.TRACK_NUMBER);
+		tags.put("DISCNUMBER", Constants.DISC_NUMBER);
+		tags.put("ALBUMARTIST", Constants.ALBUM_ARTIST_NAME);
+		tags.put("ARTIST", Constants.ARTIST_NAME);
+		tags.put("COPYRIGHT", Constants.COPYRIGHT);
+		tags.put("GENRE", Constants.GENRE);
+		tags.put("DATE", Constants.DATE);
+		tags.put("ISRC", Constants.ISRC);
+
+		Map<Integer, VorbisField> fields = new HashMap<>();
+		for (Map.Entry<String, String> tag : tags.entrySet()) {
+			byte[] name = tag.getKey().getBytes(StandardCharsets.ISO_8859_1);
+			if (fields.put(vorbisHash(name, 0, name.length), new VorbisField(name, tag.getValue())) != null) {
+				throw new IllegalStateException("Vorbis field names with equal hashes: " + tag.getKey());
+			}
+		}
+		VORBIS_TAGS = Table.of(fields);
+	}
+
+	/**
+	 * Mapping from Matroska tag names to {@link Constants}, for the names that
+	 * differ from VORBIS comments.
+	 */
+	private static final Table<VorbisField> MATROSKA_TAGS;
+	static {
+		Map<String, String> tags = new HashMap<>();
+		tags.put("PART_NUMBER", Constants.TRACK_NUMBER);
+		tags.put("DATE_RELEASED", Constants.DATE);
+		tags.put("SUBTITLE", Constants.SUBTITLE);
+		tags.put("COMPOSER", Constants.COMPOSER);
+		tags.put("CONDUCTOR", Constants.CONDUCTOR);
+		tags.put("LYRICIST", Constants.LYRICIST);
+		tags.put("ACCOMPANIMENT", Constants.ACCOMPANIMENT);
+		tags.put("PUBLISHER", Constants.PUBLISHER);
+		tags.put("ENCODER", Constants.ENCODING_INFO);
+		tags.put("COMMENT", "Comments");
+
+		Map<Integer, VorbisField> fields = new HashMap<>();
+		for (Map.Entry<String, String> tag : tags.entrySet()) {
+			byte[] name = tag.getKey().getBytes(StandardCharsets.ISO_8859_1);
+			if (fields.put(vorbisHash(name, 0, name.length), new VorbisField(name, tag.getValue())) != null) {
+				throw new IllegalStateException("Matroska tag names with equal hashes: " + tag.getKey());
+			}
+		}
+		MATROSKA_TAGS = Table.of(fields);
+	}
+
+	/**
+	 * A registered VORBIS comment field
+	 *
+	 * @param name upper case field name
+	 * @param tag  simple name of the text field
+	 */
+	private record VorbisField(byte[] name, String tag) {
+
+		/**
+		 * @param data   array containing a field name
+		 * @param offset start of the name
+		 * @param length number of bytes in the name
+		 * @return true if the name equals this field's name, ignoring case
+		 */
+		boolean matches(byte[] data, int offset, int length) {
+			if (length != name.length) {
+				return false;
+			}
+			for (int i = 0; i < length; ++i) {
+				if (upperCase(data[offset + i]) != name[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Reads a four character code as a big endian integer.
+	 *
+	 * @param data   array containing the code
+	 * @param offset start of the code
+	 * @return the code
+	 */
+	static int fourCC(byte[] data, int offset) {
+		return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8)
+				| (data[offset + 3] & 0xFF);
+	}
+
+	/**
+	 * Converts a code of up to four ISO-8859-1 characters to an integer. Shorter
+	 * codes, like ID3v2.2 frame IDs, occupy the low bytes.
+	 *
+	 * @param code character code
+	 * @return the code as an integer
+	 */
+	static int fourCC(String code) {
+		int value = 0;
+		for (int i = 0; i < code.length(); ++i) {
+			value = (value << 8) | (code.charAt(i) & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * Creates the string form of a character code, for tags that are not
+	 * registered.
+	 *
+	 * @param code   character code as an integer
+	 * @param length number of characters in the code
+	 * @return the code as a string
+	 */
+	static String name(int code, int length) {
+		byte[] characters = new byte[length];
+		for (int i = 0; i < length; ++i) {
+			characters[i] = (byte) (code >>> (8 * (length - 1 - i)));
+		}
+		return new String(characters, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @param frameID three or four character ID3v2 frame ID
+	 * @return the matching constant, or the frame ID itself if unknown
+	 */
+	static String id3Tag(int frameID) {
+		String tag = ID3_TAGS.get(frameID);
+		// three character IDs leave the top byte empty, frame IDs never contain 0
+		return tag != null ? tag : name(frameID, (frameID >>> 24) == 0 ? 3 : 4);
+	}
+
+	/**
+	 * @param frameID three character ID3v2.2 frame ID
+	 * @return the equivalent ID3v2.3 frame ID, or {@code frameID} if there is
+	 *         none
+	 */
+	static int id3v22Frame(int frameID) {
+		Integer frame = ID3V22_FRAMES.get(frameID);
+		return frame != null ? frame : frameID;
+	}
+
+	/**
+	 * @param type four character code of an ilst item
+	 * @return the matching constant, or the code itself if unknown
+	 */
+	static String m4aTag(int type) {
+		String tag = M4A_TAGS.get(type);
+		return tag != null ? tag : name(type, 4);
+	}
+
+	/**
+	 * @param id four character code of a RIFF INFO entry
+	 * @return the matching constant, or the code itself if unknown
+	 */
+	static String wavTag(int id) {
+		String tag = WAV_TAGS.get(id);
+		return tag != null ? tag : name(id, 4);
+	}
+
+	/**
+	 * @param id four character code of an AIFF text chunk
+	 * @return the matching constant, or the code itself if unknown
+	 */
+	static String aiffTag(int id) {
+		String tag = AIFF_TAGS.get(id);
+		return tag != null ? tag : name(id, 4);
+	}
+
+	/**
+	 * @param name ASF attribute name
+	 * @return the matching constant, or the name itself if unknown
+	 */
+	static String asfTag(String name) {
+		AsfField field = ASF_TAGS.get(name.hashCode());
+		return field != null && field.name().equals(name) ? field.tag() : name;
+	}
+
+	/**
+	 * @param data   array containing a Matroska tag name
+	 * @param offset start of the name
+	 * @param length number of bytes in the name
+	 * @return the matching constant, or the upper case tag name if unknown
+	 */
+	static String matroskaTag(byte[] data, int offset, int length) {
+		VorbisField field = MATROSKA_TAGS.get(vorbisHash(data, offset, length));
+		if (field != null && field.matches(data, offset, length)) {
+			return field.tag();
+		}
+		// most names are shared with VORBIS comments
+		return vorbisTag(data, offset, length);
+	}
+
+	/**
+	 * @param data   array containing a VORBIS comment field name
+	 * @param offset start of the name
+	 * @param length number of bytes in the name
+	 * @return the matching constant, or the upper case field name if unknown
+	 */
+	static String vorbisTag(byte[] data, int offset, int length) {
+		VorbisField field = VORBIS_TAGS.get(vorbisHash(data, offset, length));
+		if (field != null && field.matches(data, offset, length)) {
+			return field.tag();
+		}
+		return new String(data, offset, length, StandardCharsets.ISO_8859_1).toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Hashes a field name as if it were upper case.
+	 *
+	 * @param data   array containing the name
+	 * @param offset start of the name
+	 * @param length number of bytes in the name
+	 * @return case-insensitive hash of the name
+	 */
+	private static int vorbisHash(byte[] data, int offset, int length) {
+		int hash = 0;
+		for (int i = 0; i < length; ++i) {
+			hash = 31 * hash + upperCase(data[offset + i]);
+		}
+		return hash;
+	}
+
+	/**
+	 * @param b character of a field name, field names are ASCII
+	 * @return {@code b} in upper case
+	 */
+	private static byte upperCase(byte b) {
+		return b >= 'a' && b <= 'z' ? (byte) (b - ('a' - 'A')) : b;
+	}
+
+	/**
+	 * Read-only table of integer keys, placed with a multiplicative hash whose
+	 * multiplier is chosen so that no two keys share a slot. A lookup is one
+	 * multiplication, one shift and one comparison.
+	 *
+	 * @param <V> type of the values
+	 */
+	private static final class Table<V> {
+
+		/**
+		 * Initial multiplier, the 32-bit golden ratio
+		 */
+		private static final int SEED = 0x9E3779B9;
+
+		/**
+		 * Number of multipliers tried before the table is doubled
+		 */
+		private static final int ATTEMPTS = 1024;
+
+		/**
+		 * Key held in each slot, 0 if empty
+		 */
+		private final int[] keys;
+
+		/**
+		 * Value held in each slot, null if empty
+		 */
+		private final Object[] values;
+
+		/**
+		 * Odd multiplier mapping every key to its own slot
+		 */
+		private final int multiplier;
+
+		/**
+		 * 32 minus the number of bits in a slot index
+		 */
+		private final int shift;
+
+		/**
+		 * @param keys       key held in each slot
+		 * @param values     value held in each slot
+		 * @param multiplier odd multiplier mapping every key to its own slot
+		 * @param shift      32 minus the number of bits in a slot index
+		 */
+		private Table(int[] keys, Object[] values, int multiplier, int shift) {
+			this.keys = keys;
+			this.values = values;
+			this.multiplier = multiplier;
+			this.shift = shift;
+		}
+
+		/**
+		 * @param <V>     type of the values
+		 * @param entries mappings keyed by character codes
+		 * @return table of the mappings keyed by {@link TagRegistry#fourCC(String)}
+		 */
+		static <V> Table<V> ofFourCCs(Map<String, V> entries) {
+			Map<Integer, V> codes = new HashMap<>();
+			for (Map.Entry<String, V> entry : entries.entrySet()) {
+				codes.put(fourCC(entry.getKey()), entry.getValue());
+			}
+			return of(codes);
+		}
+
+		/**
+		 * Searches for a multiplier that places every key in its own slot,
+		 * starting with a table of at least twice as many slots as keys.
+		 *
+		 * @param <V>     type of the values
+		 * @param entries mappings to place
+		 * @return table of the mappings
+		 */
+		static <V> Table<V> of(Map<Integer, V> entries) {
+			int bits = 33 - Integer.numberOfLeadingZeros(Math.max(4, entries.size()) - 1);
+			for (;; ++bits) {
+				int shift = 32 - bits;
+				int multiplier = SEED;
+				for (int attempt = 0; attempt < ATTEMPTS; ++attempt, multiplier += 2 * SEED) {
+					int[] keys = new int[1 << bits];
+					Object[] values = new Object[1 << bits];
+					if (place(entries, keys, values, multiplier, shift)) {
+						return new Table<>(keys, values, multiplier, shift);
+					}
+				}
+			}
+		}
+
+		/**
+		 * @param entries    mappings to place
+		 * @param keys       slots to fill with keys
+		 * @param values     slots to fill with values
+		 * @param multiplier odd multiplier
+		 * @param shift      32 minus the number of bits in a slot index
+		 * @return false if two keys share a slot
+		 */
+		private static boolean place(Map<Integer, ?> entries, int[] keys, Object[] values, int multiplier,
+				int shift) {
+			for (Map.Entry<Integer, ?> entry : entries.entrySet()) {
+				int slot = (entry.getKey() * multiplier) >>> shift;
+				if (values[slot] != null) {
+					return false;
+				}
+				keys[slot] = entry.getKey();
+				values[slot] = entry.getValue();
+			}
+			return true;
+		}
+
+		/**
+		 * @param key code to look up
+		 * @return the mapped value, or {@code null} if {@code key} is not in the
+		 *         table
+		 */
+		@SuppressWarnings("unchecked")
+		V get(int key) {
+			int slot = (key * multiplier) >>> shift;
+			return keys[slot] == key ? (V) values[slot] : null;
+		}
+	}
+}
@@ -0,0 +1,317 @@
+package org.audio.metadata.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.MetadataVisitor;
+import org.audio.utils.ImageExtractor;
+
+/**
+ * Reads tags stored at the end of a file: ID3v1 (last 128 bytes) and APEv2
+ * (ending either at the end of the file or right before ID3v1).
+ * 
+ * <p>
+ * Both tags are located from a single positioned read of the file tail. Only
+ * APEv2 tags larger than {@link #TAIL_SIZE} need a second read.
+ * </p>
+ */
+public final class TrailerTagReader {
+
+	/**
+	 * This class is for static helpers and need not be instantiated
+	 */
+	private TrailerTagReader() {
+	}
+
+	/**
+	 * Number of bytes read from the end of the file. Covers ID3v1 and the vast
+	 * majority of APEv2 tags that do not carry cover art.
+	 */
+	public static final int TAIL_SIZE = 8192;
+
+	/**
+	 * ID3v1 tags are always 128 bytes
+	 */
+	private static final int ID3V1_SIZE = 128;
+
+	/**
+	 * APEv2 header and footer are both 32 bytes
+	 */
+	private static final int APE_FOOTER_SIZE = 32;
+
+	/**
+	 * APEv2 preamble found at the start of both header and footer
+	 */
+	private static final byte[] APE_PREAMBLE = "APETAGEX".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Genres referenced by the ID3v1 genre byte, including Winamp extensions.
+	 */
+	private static final String[] ID3V1_GENRES = { "Blues", "Classic Rock", "Country", "Dance", "Disco", "Funk",
+			"Grunge", "Hip-Hop", "Jazz", "Metal", "New Age", "Oldies", "Other", "Pop", "R&B", "Rap", "Reggae", "Rock",
+			"Techno", "Industrial", "Alternative", "Ska", "Death Metal", "Pranks", "Soundtrack", "Euro-Techno",
+			"Ambient", "Trip-Hop", "Vocal", "Jazz+Funk", "Fusion", "Trance", "Classical", "Instrumental", "Acid",
+			"House", "Game", "Sound Clip", "Gospel", "Noise", "AlternRock", "Bass", "Soul", "Punk", "Space",
+			"Meditative", "Instrumental Pop", "Instrumental Rock", "Ethnic", "Gothic", "Darkwave", "Techno-Industrial",
+			"Electronic", "Pop-Folk", "Eurodance", "Dream", "Southern Rock", "Comedy", "Cult", "Gangsta", "Top 40",
+			"Christian Rap", "Pop/Funk", "Jungle", "Native American", "Cabaret", "New Wave", "Psychadelic", "Rave",
+			"Showtunes", "Trailer", "Lo-Fi", "Tribal", "Acid Punk", "Acid Jazz", "Polka", "Retro", "Musical",
+			"Rock & Roll", "Hard Rock", "Folk", "Folk-Rock", "National Folk", "Swing", "Fast Fusion", "Bebob", "Latin",
+			"Revival", "Celtic", "Bluegrass", "Avantgarde", "Gothic Rock", "Progressive Rock", "Psychedelic Rock",
+			"Symphonic Rock", "Slow Rock", "Big Band", "Chorus", "Easy Listening", "Acoustic", "Humour", "Speech",
+			"Chanson", "Opera", "Chamber Music", "Sonata", "Symphony", "Booty Bass", "Primus", "Porn Groove", "Satire",
+			"Slow Jam", "Club", "Tango", "Samba", "Folklore", "Ballad", "Power Ballad", "Rhythmic Soul", "Freestyle",
+			"Duet", "Punk Rock", "Drum Solo", "A capella", "Euro-House", "Dance Hall", "Goa", "Drum & Bass",
+			"Club-House", "Hardcore", "Terror", "Indie", "BritPop", "Negerpunk", "Polsk Punk", "Beat",
+			"Christian Gangsta Rap", "Heavy Metal", "Black Metal", "Crossover", "Contemporary Christian",
+			"Christian Rock", "Merengue", "Salsa", "Thrash Metal", "Anime", "JPop", "Synthpop", "Abstract",
+			"Art Rock", "Baroque", "Bhangra", "Big Beat", "Breakbeat", "Chillout", "Downtempo", "Dub", "EBM",
+			"Eclectic", "Electro", "Electroclash", "Emo", "Experimental", "Garage", "Global", "IDM", "Illbient",
+			"Industro-Goth", "Jam Band", "Krautrock", "Leftfield", "Lounge", "Math Rock", "New Romantic", "Nu-Breakz",
+			"Post-Punk", "Post-Rock", "Psytrance", "Shoegaze", "Space Rock", "Trop Rock", "World Music", "Neoclassical",
+			"Audiobook", "Audio Theatre", "Neue Deutsche Welle", "Podcast", "Indie Rock", "G-Funk", "Dubstep",
+			"Garage Rock", "Psybient" };
+
+	/**
+	 * Mapping from APEv2 item keys (case-insensitive) to {@link Constants}.
+	 */
+	private static final Map<String, String> APE_TAGS;
+	static {
+		Map<String, String> tags = new HashMap<>();
+		tags.put("TITLE", Constants.TITLE);
+		tags.put("SUBTITLE", Constants.SUBTITLE);
+		tags.put("ARTIST", Constants.ARTIST_NAME);
+		tags.put("ALBUM ARTIST", Constants.ALBUM_ARTIST_NAME);
+		tags.put("ALBUMARTIST", Constants.ALBUM_ARTIST_NAME);
+		tags.put("ALBUM", Constants.ALBUM_NAME);
+		tags.put("COMPOSER", Constants.COMPOSER);
+		tags.put("CONDUCTOR", Constants.CONDUCTOR);
+		tags.put("GENRE", Constants.GENRE);
+		tags.put("YEAR", Constants.YEAR);
+		tags.put("TRACK", Constants.TRACK_NUMBER);
+		tags.put("DISC", Constants.DISC_NUMBER);
+		tags.put("COPYRIGHT", Constants.COPYRIGHT);
+		tags.put("ISRC", Constants.ISRC);
+		tags.put("PUBLISHER", Constants.PUBLISHER);
+		tags.put("LABEL", Constants.PUBLISHER);
+		APE_TAGS = Collections.unmodifiableMap(tags);
+	}
+
+	/**
+	 * Reads the last {@code TAIL_SIZE} bytes of {@code channel} with a single
+	 * positioned read, leaving the channel position untouched. This makes it
+	 * safe to call while another thread reads the head of the same channel.
+	 * 
+	 * @param channel audio file channel
+	 * @return buffer holding the tail of the file
+	 * @throws IOException if the channel cannot be read
+	 */
+	public static ByteBuffer readTail(FileChannel channel) throws IOException {
+		long size = channel.size();
+		int length = (int) Math.min(size, TAIL_SIZE);
+
+		ByteBuffer tail = ByteBuffer.allocate(length);
+		MetadataReader.readFully(channel, tail, size - length);
+		tail.flip();
+		return tail;
+	}
+
+	/**
+	 * Loads {@code metadata} with an ID3v1 or ID3v1.1 tag found at the end of
+	 * {@code tail}.
+	 * 
+	 * @param tail     last bytes of the file, as returned by {@link #readTail}
+	 * @param metadata receiver of the values found
+	 * @return true if an ID3v1 tag was found
+	 */
+	public static boolean extractID3v1Data(ByteBuffer tail, MetadataVisitor metadata) {
+		int start = tail.limit() - ID3V1_SIZE;
+		if (start < 0 || tail.get(start) != 'T' || tail.get(start + 1) != 'A' || tail.get(start + 2) != 'G') {
+			return false;
+		}
+
+		addID3v1Field(tail, start + 3, 30, Constants.TITLE, metadata);
+		addID3v1Field(tail, start + 33, 30, Constants.ARTIST_NAME, metadata);
+		addID3v1Field(tail, start + 63, 30, Constants.ALBUM_NAME, metadata);
+		addID3v1Field(tail, start + 93, 4, Constants.YEAR, metadata);
+
+		// ID3v1.1 uses the last two bytes of the comment for a zero byte and track
+		int track = tail.get(start + 126) & 0xFF;
+		if (tail.get(start + 125) == 0 && track != 0) {
+			addID3v1Field(tail, start + 97, 28, "Comments", metadata);
+			metadata.onTextField(Constants.TRACK_NUMBER, Integer.toString(track));
+		} else {
+			addID3v1Field(tail, start + 97, 30, "Comments", metadata);
+		}
+
+		String genre = genreName(tail.get(start + 127) & 0xFF);
+		if (genre != null) {
+			metadata.onTextField(Constants.GENRE, genre);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Looks up a genre from the ID3v1 genre table, which other formats such as
+	 * the M4A 'gnre' atom reuse.
+	 * 
+	 * @param index position in the ID3v1 genre table
+	 * @return genre name, or {@code null} if {@code index} is not in the table
+	 */
+	static String genreName(int index) {
+		return index >= 0 && index < ID3V1_GENRES.length ? ID3V1_GENRES[index] : null;
+	}
+
+	/**
+	 * Adds a fixed width, zero or space padded ISO-8859-1 field to
+	 * {@code metadata} unless it is empty.
+	 * 
+	 * @param tail     buffer containing the ID3v1 tag
+	 * @param offset   start of the field
+	 * @param length   width of the field
+	 * @param tag      simple name of text field
+	 * @param metadata receiver of the values found
+	 */
+	private static void addID3v1Field(ByteBuffer tail, int offset, int length, String tag, MetadataVisitor metadata) {
+		int end = offset;
+		while (end < offset + length && tail.get(end) != 0) {
+			++end;
+		}
+
+		byte[] bytes = new byte[end - offset];
+		tail.get(offset, bytes);
+		String value = new String(bytes, StandardCharsets.ISO_8859_1).trim();
+		if (!value.isEmpty()) {
+			metadata.onTextField(tag, value);
+		}
+	}
+
+	/**
+	 * Loads {@code metadata} with an APEv2 (or APEv1) tag ending right before
+	 * any ID3v1 tag at the end of the file.
+	 * 
+	 * @param channel  audio file channel, used only if the tag is larger than
+	 *                 {@code tail}
+	 * @param tail     last bytes of the file, as returned by {@link #readTail}
+	 * @param id3v1    true if {@code tail} ends with an ID3v1 tag
+	 * @param metadata receiver of the values found
+	 * @param limits   resource limits enforced while parsing
+	 * @return true if an APE tag was found
+	 * @throws IOException if the channel cannot be read or limits are exceeded
+	 */
+	public static boolean extractAPEData(FileChannel channel, ByteBuffer tail, boolean id3v1, MetadataVisitor metadata,
+			ReaderLimits limits) throws IOException {
+		int footer = tail.limit() - (id3v1 ? ID3V1_SIZE : 0) - APE_FOOTER_SIZE;
+		if (footer < 0 || !tail.slice(footer, APE_PREAMBLE.length).equals(ByteBuffer.wrap(APE_PREAMBLE))) {
+			return false;
+		}
+
+		ByteBuffer header = tail.slice(footer, APE_FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		int version = header.getInt(8);
+
+		// size of items plus footer, excluding the optional header
+		int tagSize = limits.checkTagSize(Integer.toUnsignedLong(header.getInt(12)));
+		int itemCount = header.getInt(16);
+		if (tagSize < APE_FOOTER_SIZE) {
+			return false;
+		}
+		limits.checkAtomCount(itemCount);
+
+		int itemsSize = tagSize - APE_FOOTER_SIZE;
+		ByteBuffer items;
+		if (itemsSize <= footer) {
+			// common case, the whole tag is already in memory
+			items = tail.slice(footer - itemsSize, itemsSize);
+		} else {
+			long end = channel.size() - tail.limit() + footer;
+			if (end - itemsSize < 0) {
+				return false;
+			}
+
+			items = ByteBuffer.allocate(itemsSize);
+			if (MetadataReader.readFully(channel, items, end - itemsSize) < itemsSize) {
+				return false;
+			}
+			items.flip();
+		}
+		items.order(ByteOrder.LITTLE_ENDIAN);
+
+		for (int i = 0; i < itemCount && items.remaining() >= 9; ++i) {
+			int valueSize = items.getInt();
+			int itemFlags = items.getInt();
+
+			// key is ASCII terminated by a zero byte
+			int keyStart = items.position();
+			int keyEnd = keyStart;
+			while (keyEnd < items.limit() && items.get(keyEnd) != 0) {
+				++keyEnd;
+			}
+			if (keyEnd == items.limit()) {
+				break;
+			}
+			String key = new String(bytes(items, keyStart, keyEnd - keyStart), StandardCharsets.US_ASCII);
+			items.position(keyEnd + 1);
+			if (valueSize < 0 || valueSize > items.remaining()) {
+				break;
+			}
+
+			int itemType = version >= 2000 ? (itemFlags >> 1) & 0x3 : 0;
+			byte[] value = new byte[itemType == 1 ? limits.checkImageSize(valueSize) : valueSize];
+			items.get(value);
+
+			// bits 1-2: 0 = UTF-8 text, 1 = binary, 2 = external locator
+			if (itemType == 1) {
+				if (key.toUpperCase(Locale.ROOT).startsWith("COVER ART")) {
+					// zero terminated description followed by the image
+					int image = 0;
+					while (image < value.length && value[image] != 0) {
+						++image;
+					}
+					if (image < value.length) {
+						metadata.onImage(ImageExtractor.extractImage(value, image + 1, value.length - image - 1));
+					}
+				}
+				continue;
+			}
+
+			String tag = APE_TAGS.getOrDefault(key.toUpperCase(Locale.ROOT), key);
+
+			// multiple values are separated by zero bytes
+			int start = 0;
+			for (int end = 0; end <= value.length; ++end) {
+				if (end == value.length || value[end] == 0) {
+					if (end > start) {
+						metadata.onTextField(tag, value, start, end - start, StandardCharsets.UTF_8);
+					}
+					start = end + 1;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Copies {@code length} bytes starting at {@code offset} out of
+	 * {@code buffer}.
+	 * 
+	 * @param buffer source
+	 * @param offset absolute start index
+	 * @param length number of bytes
+	 * @return copy of the range
+	 */
+	private static byte[] bytes(ByteBuffer buffer, int offset, int length) {
+		byte[] copy = new byte[length];
+		buffer.get(offset, copy);
+		return copy;
+	}
+}
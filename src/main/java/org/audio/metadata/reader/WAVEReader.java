@@ -4,17 +4,25 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.util.Collections;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.audio.metadata.Constants;
-import org.audio.metadata.Metadata;
+import org.audio.metadata.MetadataVisitor;
+import org.audio.metadata.StreamInfo;
 
 /**
  * Read metadata from audio files according to wave specifications.
+ *
+ * <p>
+ * The file is walked chunk by chunk with positioned reads, so chunks may come
+ * in any order and the audio in the {@code data} chunk is skipped by its size
+ * without being read. RF64 and BW64 files, whose sizes exceed 32 bits, are
+ * supported through their {@code ds64} chunk.
+ * </p>
  */
 public class WAVEReader extends MetadataReader {
 
@@ -26,9 +34,9 @@ public class WAVEReader extends MetadataReader {
 	}
 
 	/**
-	 * WAVE format specifies 44 byte file header
+	 * RIFF header: 4 byte form marker, 4 byte form size and 4 byte 'WAVE' marker
 	 */
-	private static final int WAVE_HEADER_SIZE = 44;
+	private static final int RIFF_HEADER_SIZE = 12;
 
 	/**
 	 * Each RIFF chunk contains a 4 byte tag followed by a 4 byte size
@@ -36,152 +44,467 @@ public class WAVEReader extends MetadataReader {
 	private static final int CHUNK_HEADER_SIZE = 8;
 
 	/**
-	 * Mapping from WAV four character codes to {@link Constants}.
+	 * Four character code of 32 bit RIFF files
 	 */
-	private static final Map<String, String> WAV_TAGS;
-	static {
-		Map<String, String> tags = new HashMap<>();
-		tags.put("IARL", Constants.FILE_WEBPAGE);
-		tags.put("IART", Constants.ARTIST_NAME);
-		tags.put("ICOP", Constants.COPYRIGHT);
-		tags.put("ICRD", Constants.YEAR);
-		tags.put("IGNR", Constants.GENRE);
-		tags.put("INAM", Constants.TITLE);
-		tags.put("IPRD", Constants.ALBUM_NAME);
-		tags.put("ISFT", Constants.ENCODING_INFO);
+	private static final int RIFF = 'R' << 24 | 'I' << 16 | 'F' << 8 | 'F';
 
-		WAV_TAGS = Collections.unmodifiableMap(tags);
-	}
+	/**
+	 * Four character code of 64 bit RF64 files
+	 */
+	private static final int RF64 = 'R' << 24 | 'F' << 16 | '6' << 8 | '4';
 
 	/**
-	 * Reads metadata from given wave files
-	 * 
-	 * @return metadata in key-value pairs
+	 * Four character code of 64 bit BW64 files
+	 */
+	private static final int BW64 = 'B' << 24 | 'W' << 16 | '6' << 8 | '4';
+
+	/**
+	 * Form type of wave files
+	 */
+	private static final int WAVE = 'W' << 24 | 'A' << 16 | 'V' << 8 | 'E';
+
+	/**
+	 * Four character code of the chunk holding the 64 bit sizes of RF64 files
+	 */
+	private static final int DS64 = 'd' << 24 | 's' << 16 | '6' << 8 | '4';
+
+	/**
+	 * Four character code of the audio format chunk
+	 */
+	private static final int FMT = 'f' << 24 | 'm' << 16 | 't' << 8 | ' ';
+
+	/**
+	 * Four character code of the sample count chunk of compressed formats
+	 */
+	private static final int FACT = 'f' << 24 | 'a' << 16 | 'c' << 8 | 't';
+
+	/**
+	 * Four character code of the audio data chunk
+	 */
+	private static final int DATA = 'd' << 24 | 'a' << 16 | 't' << 8 | 'a';
+
+	/**
+	 * Four character code of LIST chunks
+	 */
+	private static final int LIST = 'L' << 24 | 'I' << 16 | 'S' << 8 | 'T';
+
+	/**
+	 * List type of LIST chunks holding text fields
+	 */
+	private static final int INFO = 'I' << 24 | 'N' << 16 | 'F' << 8 | 'O';
+
+	/**
+	 * Four character code of embedded ID3v2 chunks
+	 */
+	private static final int ID3 = 'i' << 24 | 'd' << 16 | '3' << 8 | ' ';
+
+	/**
+	 * Upper case spelling of {@link #ID3} used by some writers
+	 */
+	private static final int ID3_UPPER = 'I' << 24 | 'D' << 16 | '3' << 8 | ' ';
+
+	/**
+	 * Four character code of the Broadcast Wave extension chunk (EBU Tech 3285)
+	 */
+	private static final int BEXT = 'b' << 24 | 'e' << 16 | 'x' << 8 | 't';
+
+	/**
+	 * Four character code of the iXML production metadata chunk
+	 */
+	private static final int IXML = 'i' << 24 | 'X' << 16 | 'M' << 8 | 'L';
+
+	/**
+	 * 32 bit chunk size meaning that the actual size is held by the ds64 chunk
+	 */
+	private static final long DS64_SIZE = 0xFFFFFFFFL;
+
+	/**
+	 * Size of the fixed part of the ds64 chunk: RIFF size, data size, sample
+	 * count and table length
+	 */
+	private static final int DS64_HEADER_SIZE = 28;
+
+	/**
+	 * Size of a ds64 table entry: chunk ID and 64 bit size
+	 */
+	private static final int DS64_ENTRY_SIZE = 12;
+
+	/**
+	 * Smallest fmt chunk: format tag, channels, sample rate, byte rate, block
+	 * alignment and bits per sample
+	 */
+	private static final int FMT_SIZE = 16;
+
+	/**
+	 * Format tag of uncompressed PCM
+	 */
+	private static final int WAVE_FORMAT_PCM = 1;
+
+	/**
+	 * Format tag of uncompressed IEEE floating point samples
+	 */
+	private static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+
+	/**
+	 * Format tag whose actual format is given by a GUID in the fmt chunk
+	 */
+	private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+	/**
+	 * Offset of the time reference within the bext chunk
+	 */
+	private static final int BEXT_TIME_REFERENCE = 338;
+
+	/**
+	 * Offset of the coding history, which fills the rest of the bext chunk
 	 */
-	public Metadata getMetadata() {
-		Metadata metadata = new Metadata();
+	private static final int BEXT_CODING_HISTORY = 602;
 
-		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+	/**
+	 * Simple name of the bext description field, as for ID3 comments
+	 */
+	private static final String DESCRIPTION = "Comments";
+
+	/**
+	 * Simple name of the bext originator field
+	 */
+	private static final String ORIGINATOR = "Originator";
+
+	/**
+	 * Simple name of the bext originator reference field
+	 */
+	private static final String ORIGINATOR_REFERENCE = "Originator Reference";
+
+	/**
+	 * Simple name of the bext origination time field
+	 */
+	private static final String ORIGINATION_TIME = "Origination Time";
+
+	/**
+	 * Simple name of the bext time reference field, in samples since midnight
+	 */
+	private static final String TIME_REFERENCE = "Time Reference";
+
+	/**
+	 * Simple name of the bext coding history field
+	 */
+	private static final String CODING_HISTORY = "Coding History";
+
+	/**
+	 * Simple name of the text field holding the iXML document
+	 */
+	private static final String IXML_DOCUMENT = "iXML";
+
+	/**
+	 * Reads metadata from given wave files
+	 *
+	 * @param visitor receiver of the values found
+	 */
+	@Override
+	protected void readMetadata(MetadataVisitor visitor) {
+		try (FileChannel channel = openChannel()) {
 
 			/**
 			 * RIFF-WAVE file header
-			 * 4-byte 'RIFF' marker
-			 * 4-byte file size
+			 * 4-byte 'RIFF', 'RF64' or 'BW64' marker
+			 * 4-byte form size, 0xFFFFFFFF if held by the ds64 chunk
 			 * 4-byte 'WAVE' marker
-			 * 3-byte 'fmt' marker
-			 * 4-byte format length
-			 * 2-byte format type
-			 * 2-byte number of channels
-			 * 4-byte sample rate
-			 * 4-byte sample data
-			 * 2-byte sample data
-			 * 4-byte data chunk header
-			 * 4-byte length of data chunk
+			 * followed by chunks in any order, each padded to an even size
 			 */
-			ByteBuffer buffer = ByteBuffer.allocate(WAVE_HEADER_SIZE);
+			ByteBuffer buffer = ByteBuffer.allocate(RIFF_HEADER_SIZE);
 			buffer.order(ByteOrder.LITTLE_ENDIAN);
-			int nRead = channel.read(buffer);
-			buffer.flip();
-
-			byte[] riffMarker = new byte[4];
-			buffer.get(riffMarker);
-
-			int fileSize = buffer.getInt();
+			if (readFully(channel, buffer, 0) != RIFF_HEADER_SIZE) {
+				return;
+			}
 
-			byte[] waveMarker = new byte[4];
-			buffer.get(waveMarker);
+			int form = TagRegistry.fourCC(buffer.array(), 0);
+			if ((form != RIFF && form != RF64 && form != BW64) || TagRegistry.fourCC(buffer.array(), 8) != WAVE) {
+				return;
+			}
 
-			byte[] fmtMarker = new byte[4];
-			buffer.get(fmtMarker);
+			// the form size is not trusted, as tags are often appended without updating it
+			long fileSize = channel.size();
 
-			int fmtLength = buffer.getInt();
-			short fmtType = buffer.getShort();
-			short numChannels = buffer.getShort();
-			int sampleRate = buffer.getInt();
-			int sampleData = buffer.getInt();
-			short monoStereoFlag = buffer.getShort();
-			short bitsPerSample = buffer.getShort();
+			// 64 bit sizes of the chunks too large for their header, from ds64
+			Map<Integer, Long> largeSizes = new HashMap<>();
+			ByteBuffer format = null;
+			long dataSize = -1;
+			long sampleCount = -1;
 
-			byte[] dataMarker = new byte[4];
-			buffer.get(dataMarker);
+			long position = RIFF_HEADER_SIZE;
+			buffer = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			int chunkCount = 0;
+			while (position + CHUNK_HEADER_SIZE <= fileSize) {
+				limits.checkAtomCount(++chunkCount);
+				buffer.clear();
+				if (readFully(channel, buffer, position) != CHUNK_HEADER_SIZE) {
+					break;
+				}
 
-			int dataSize = buffer.getInt();
+				int fourCC = TagRegistry.fourCC(buffer.array(), 0);
+				// chunk sizes are unsigned 32 bit integers
+				long chunkSize = Integer.toUnsignedLong(buffer.getInt(4));
+				long chunkStart = position + CHUNK_HEADER_SIZE;
+				if (chunkSize == DS64_SIZE && largeSizes.containsKey(fourCC)) {
+					// a size beyond the end of file is no better than the 32 bit one
+					long largeSize = largeSizes.get(fourCC);
+					if (largeSize >= 0 && largeSize <= fileSize - chunkStart) {
+						chunkSize = largeSize;
+					}
+				}
 
-			// skip over data portion
-			long position = channel.position();
-			channel.position(position + dataSize);
+				switch (fourCC) {
+					case DS64: {
+						ByteBuffer chunk = readChunk(channel, chunkStart, chunkSize);
+						if (chunk == null || chunk.remaining() < DS64_HEADER_SIZE) {
+							break;
+						}
+						// the RIFF size at offset 0 is ignored like its 32 bit counterpart
+						largeSizes.put(DATA, chunk.getLong(8));
+						sampleCount = chunk.getLong(16);
+
+						// sizes of any other chunk larger than 4 GB
+						long tableLength = Integer.toUnsignedLong(chunk.getInt(24));
+						for (int i = 0; i < tableLength
+								&& DS64_HEADER_SIZE + (i + 1) * DS64_ENTRY_SIZE <= chunk.limit(); ++i) {
+							int offset = DS64_HEADER_SIZE + i * DS64_ENTRY_SIZE;
+							largeSizes.put(TagRegistry.fourCC(chunk.array(), offset), chunk.getLong(offset + 4));
+						}
+						break;
+					}
+					case FMT:
+						format = readChunk(channel, chunkStart, chunkSize);
+						break;
+					case FACT:
+						if (sampleCount < 0 && chunkSize >= 4) {
+							ByteBuffer chunk = readChunk(channel, chunkStart, 4);
+							if (chunk != null) {
+								sampleCount = Integer.toUnsignedLong(chunk.getInt(0));
+							}
+						}
+						break;
+					case DATA:
+						// skipped without being read, a truncated recording is cut at the end of file
+						dataSize = Math.min(chunkSize, fileSize - chunkStart);
+						break;
+					case LIST: {
+						ByteBuffer chunk = readChunk(channel, chunkStart, chunkSize);
+						if (chunk != null) {
+							parseListChunk(chunk, visitor);
+						}
+						break;
+					}
+					case ID3:
+					case ID3_UPPER:
+						// the tag is read from the current position of the channel
+						channel.position(chunkStart);
+						if (!ID3TagReader.extractID3v2Data(channel, visitor, limits)) {
+							readFailed();
+						}
+						break;
+					case BEXT: {
+						ByteBuffer chunk = readChunk(channel, chunkStart, chunkSize);
+						if (chunk != null) {
+							parseBroadcastExtension(chunk, visitor);
+						}
+						break;
+					}
+					case IXML: {
+						ByteBuffer chunk = readChunk(channel, chunkStart, chunkSize);
+						if (chunk != null) {
+							// kept as a document, only decoded once requested
+							visitor.onTextField(IXML_DOCUMENT, chunk.array(), 0, trimmedLength(chunk.array(), 0,
+									chunk.limit()), StandardCharsets.UTF_8);
+						}
+						break;
+					}
+					default:
+						// JUNK, PAD, cue and the like are skipped without being read
+						break;
+				}
 
-			// read optional chunks
-			buffer = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
-			buffer.order(ByteOrder.LITTLE_ENDIAN);
-			while (channel.read(buffer) == CHUNK_HEADER_SIZE) {
-				buffer.flip();
-
-				byte[] fourCC = new byte[4];
-				buffer.get(fourCC);
-				int chunkSize = buffer.getInt();
-
-				if ((fourCC[0] & 0xFF) == 0x4C && (fourCC[1] & 0xFF) == 0x49 && (fourCC[2] & 0xFF) == 0x53
-						&& (fourCC[3] & 0xFF) == 0x54) {
-					// LIST block
-
-					ByteBuffer chunkBuffer = ByteBuffer.allocate(chunkSize);
-					chunkBuffer.order(ByteOrder.LITTLE_ENDIAN);
-					nRead = channel.read(chunkBuffer);
-					chunkBuffer.flip();
-
-					parseListChunk(chunkBuffer, metadata);
-				} else if ((fourCC[0] & 0xFF) == 0x69 && (fourCC[1] & 0xFF) == 0x64 && (fourCC[2] & 0xFF) == 0x33
-						&& (fourCC[3] & 0xFF) == 0x20) {
-					// id3 block
-					ID3TagReader.extractID3v2Data(channel, metadata);
-				} else {
-					// unsupported block
-					System.err.printf("Unsupported block type: %s%n", new String(fourCC));
+				// chunks are padded to an even size
+				long next = chunkStart + chunkSize + (chunkSize & 1);
+				if (next <= position) {
+					break;
 				}
+				position = next;
+			}
 
-				buffer.clear();
+			StreamInfo streamInfo = readStreamInfo(format, dataSize, sampleCount);
+			if (streamInfo != null) {
+				visitor.onStreamInfo(streamInfo);
 			}
 
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			// corrupt or oversized files keep the values read so far
+			readFailed();
 		}
+	}
 
-		return metadata;
+	/**
+	 * Reads the body of a chunk.
+	 *
+	 * @param channel  input channel
+	 * @param position file position of the chunk's body
+	 * @param size     size of the chunk's body
+	 * @return little endian buffer holding the body, or {@code null} if the file
+	 *         ends first
+	 * @throws IOException if the channel cannot be read
+	 */
+	private ByteBuffer readChunk(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer chunk = ByteBuffer.allocate(limits.checkTagSize(size));
+		chunk.order(ByteOrder.LITTLE_ENDIAN);
+		if (readFully(channel, chunk, position) != chunk.capacity()) {
+			return null;
+		}
+		chunk.flip();
+		return chunk;
+	}
+
+	/**
+	 * Derives the stream properties from the fmt chunk and the size of the
+	 * audio data.
+	 *
+	 * @param format      body of the fmt chunk, {@code null} if absent
+	 * @param dataSize    size of the data chunk, negative if absent
+	 * @param sampleCount samples per channel from ds64 or fact, negative if
+	 *                    absent
+	 * @return stream properties, or {@code null} if they cannot be determined
+	 */
+	private static StreamInfo readStreamInfo(ByteBuffer format, long dataSize, long sampleCount) {
+		if (format == null || format.limit() < FMT_SIZE || dataSize < 0) {
+			return null;
+		}
+
+		int formatTag = format.getShort(0) & 0xFFFF;
+		int channels = format.getShort(2) & 0xFFFF;
+		int sampleRate = format.getInt(4);
+		long byteRate = Integer.toUnsignedLong(format.getInt(8));
+		int blockAlign = format.getShort(12) & 0xFFFF;
+		if (sampleRate <= 0) {
+			return null;
+		}
+
+		// uncompressed audio has a fixed number of bytes per sample
+		long samples;
+		boolean uncompressed = formatTag == WAVE_FORMAT_PCM || formatTag == WAVE_FORMAT_IEEE_FLOAT
+				|| formatTag == WAVE_FORMAT_EXTENSIBLE;
+		if (uncompressed && blockAlign > 0) {
+			samples = dataSize / blockAlign;
+		} else if (sampleCount >= 0) {
+			samples = sampleCount;
+		} else if (byteRate > 0) {
+			samples = dataSize * sampleRate / byteRate;
+		} else {
+			return null;
+		}
+
+		Duration duration = Duration.ofSeconds(samples / sampleRate,
+				(samples % sampleRate) * 1_000_000_000L / sampleRate);
+		return new StreamInfo(sampleRate, channels, duration, (int) Math.min(Integer.MAX_VALUE, byteRate * 8));
+	}
+
+	/**
+	 * Parse bext chunk for metadata. The fixed size fields are ASCII and padded
+	 * with zeros, the coding history fills the rest of the chunk.
+	 *
+	 * @param chunkBuffer byte buffer containing bext chunk
+	 * @param metadata    receiver of the values found
+	 */
+	private void parseBroadcastExtension(ByteBuffer chunkBuffer, MetadataVisitor metadata) {
+		byte[] data = chunkBuffer.array();
+		int limit = chunkBuffer.limit();
+
+		visitFixedText(DESCRIPTION, data, 0, 256, limit, metadata);
+		visitFixedText(ORIGINATOR, data, 256, 32, limit, metadata);
+		visitFixedText(ORIGINATOR_REFERENCE, data, 288, 32, limit, metadata);
+		visitFixedText(Constants.DATE, data, 320, 10, limit, metadata);
+		visitFixedText(ORIGINATION_TIME, data, 330, 8, limit, metadata);
+
+		if (limit >= BEXT_TIME_REFERENCE + 8) {
+			metadata.onTextField(TIME_REFERENCE,
+					Long.toUnsignedString(chunkBuffer.getLong(BEXT_TIME_REFERENCE)));
+		}
+		if (limit > BEXT_CODING_HISTORY) {
+			visitFixedText(CODING_HISTORY, data, BEXT_CODING_HISTORY, limit - BEXT_CODING_HISTORY, limit,
+					metadata);
+		}
+	}
+
+	/**
+	 * Passes a zero padded ASCII field to the visitor, unless it is empty.
+	 *
+	 * @param key      simple name of the field
+	 * @param data     chunk contents
+	 * @param offset   start of the field
+	 * @param length   size of the field
+	 * @param limit    end of the chunk contents
+	 * @param metadata receiver of the value
+	 */
+	private static void visitFixedText(String key, byte[] data, int offset, int length, int limit,
+			MetadataVisitor metadata) {
+		if (offset + length > limit) {
+			return;
+		}
+		int trimmed = trimmedLength(data, offset, length);
+		if (trimmed > 0) {
+			metadata.onTextField(key, data, offset, trimmed, StandardCharsets.ISO_8859_1);
+		}
+	}
+
+	/**
+	 * @param data   bytes holding a value
+	 * @param offset start of the value
+	 * @param length size of the value, including any padding
+	 * @return size of the value without its trailing zeros
+	 */
+	private static int trimmedLength(byte[] data, int offset, int length) {
+		int end = offset + length;
+		while (end > offset && data[end - 1] == 0) {
+			--end;
+		}
+		return end - offset;
 	}
 
 	/**
 	 * Parse LIST chunk for metadata
 	 *
 	 * @param chunkBuffer byte buffer containing list chunk
-	 * @param metadata    instance to be populated
+	 * @param metadata    receiver of the values found
 	 */
-	private void parseListChunk(ByteBuffer chunkBuffer, Metadata metadata) {
-		if (chunkBuffer.remaining() > 4) {
-			byte[] listType = new byte[4];
-			chunkBuffer.get(listType);
-
-			// check for INFO chunk
+	private void parseListChunk(ByteBuffer chunkBuffer, MetadataVisitor metadata) {
+		// only INFO lists hold text fields, adtl and others refer to cue points
+		if (chunkBuffer.remaining() < 4
+				|| TagRegistry.fourCC(chunkBuffer.array(), chunkBuffer.arrayOffset() + chunkBuffer.position()) != INFO) {
+			return;
 		}
+		chunkBuffer.position(chunkBuffer.position() + 4);
 
 		while (chunkBuffer.remaining() > 8) {
-			byte[] fourCC = new byte[4];
-			chunkBuffer.get(fourCC);
+			int fourCC = TagRegistry.fourCC(chunkBuffer.array(), chunkBuffer.arrayOffset() + chunkBuffer.position());
+			chunkBuffer.position(chunkBuffer.position() + 4);
 
 			int size = chunkBuffer.getInt();
-			byte[] data = new byte[size];
-			chunkBuffer.get(data);
+			if (size < 0 || size > chunkBuffer.remaining()) {
+				// entry runs past the end of the LIST chunk
+				break;
+			}
+			// read in place, the value is only decoded by the visitor
+			byte[] data = chunkBuffer.array();
+			int start = chunkBuffer.arrayOffset() + chunkBuffer.position();
+			chunkBuffer.position(chunkBuffer.position() + size);
+
+			// values are null terminated, but not always
+			int length = trimmedLength(data, start, size);
 
 			// convert from four byte character code to standard name, if possible
-			String key = new String(fourCC);
-			if (WAV_TAGS.containsKey(key)) {
-				key = WAV_TAGS.get(key);
-			}
-			metadata.addTextField(key, new String(data, 0, size - 1));
+			String key = TagRegistry.wavTag(fourCC);
+			metadata.onTextField(key, data, start, length, StandardCharsets.UTF_8);
 
 			if (chunkBuffer.hasRemaining()) {
-				// TODO: figure out why some list elements have an extra 0
+				// entries are padded to an even size, though not by every writer
 				byte next = chunkBuffer.get();
 				if (next == 0x00) {
 					// Skip a byte
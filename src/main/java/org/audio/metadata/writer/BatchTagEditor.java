@@ -0,0 +1,281 @@
+package org.audio.metadata.writer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.audio.metadata.writer.MetadataWriter.WriteMode;
+
+/**
+ * Applies tag changes to many files on a bounded pool of threads.
+ *
+ * <p>
+ * Changes are queued with {@link #add(Path, Map)} and grouped per file, so a
+ * file edited several times is opened and written once with the combined
+ * changes; for a field changed more than once the last value wins. Each file
+ * goes through {@link MetadataWriter#of(Path)}, which updates tags in the
+ * existing padding whenever they fit and only rewrites the file otherwise.
+ * A failure affects only its own file and is reported in its
+ * {@link Outcome}.
+ * </p>
+ */
+public class BatchTagEditor implements AutoCloseable {
+
+	/**
+	 * Result of editing a single file
+	 */
+	public static class Outcome {
+
+		/**
+		 * Edited file
+		 */
+		private final Path file;
+
+		/**
+		 * How the file was updated, {@code null} on failure
+		 */
+		private final WriteMode mode;
+
+		/**
+		 * Reason the file could not be updated, {@code null} on success
+		 */
+		private final Exception error;
+
+		/**
+		 * @param file  edited file
+		 * @param mode  how the file was updated, {@code null} on failure
+		 * @param error reason for failure, {@code null} on success
+		 */
+		Outcome(Path file, WriteMode mode, Exception error) {
+			this.file = file;
+			this.mode = mode;
+			this.error = error;
+		}
+
+		/**
+		 * @return edited file
+		 */
+		public Path getFile() {
+			return file;
+		}
+
+		/**
+		 * @return how the file was updated, {@code null} if it failed
+		 */
+		public WriteMode getMode() {
+			return mode;
+		}
+
+		/**
+		 * @return reason the file could not be updated, {@code null} if it
+		 *         succeeded
+		 */
+		public Exception getError() {
+			return error;
+		}
+
+		/**
+		 * @return true if the changes were written
+		 */
+		public boolean isSuccess() {
+			return error == null;
+		}
+
+		@Override
+		public String toString() {
+			return file + ": " + (error == null ? mode : error);
+		}
+	}
+
+	/**
+	 * Outcomes and timing of one {@link #execute()} call
+	 */
+	public static class Report {
+
+		/**
+		 * Per file results, in the order files were first added
+		 */
+		private final List<Outcome> outcomes;
+
+		/**
+		 * Wall clock time taken by the batch
+		 */
+		private final Duration elapsed;
+
+		/**
+		 * @param outcomes per file results
+		 * @param elapsed  wall clock time taken by the batch
+		 */
+		Report(List<Outcome> outcomes, Duration elapsed) {
+			this.outcomes = Collections.unmodifiableList(outcomes);
+			this.elapsed = elapsed;
+		}
+
+		/**
+		 * @return per file results, in the order files were first added
+		 */
+		public List<Outcome> getOutcomes() {
+			return outcomes;
+		}
+
+		/**
+		 * @return wall clock time taken by the batch
+		 */
+		public Duration getElapsed() {
+			return elapsed;
+		}
+
+		/**
+		 * @param mode how a file was updated
+		 * @return number of files updated that way
+		 */
+		public int count(WriteMode mode) {
+			return (int) outcomes.stream().filter(outcome -> outcome.getMode() == mode).count();
+		}
+
+		/**
+		 * @return number of files that could not be updated
+		 */
+		public int getFailureCount() {
+			return (int) outcomes.stream().filter(outcome -> !outcome.isSuccess()).count();
+		}
+
+		/**
+		 * @return files processed per second, successful or not
+		 */
+		public double getFilesPerSecond() {
+			long nanos = Math.max(1, elapsed.toNanos());
+			return outcomes.size() * 1_000_000_000.0 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d files in %d ms (%.1f files/s): %d in place, %d rewritten, %d failed",
+					outcomes.size(), elapsed.toMillis(), getFilesPerSecond(), count(WriteMode.IN_PLACE),
+					count(WriteMode.REWRITTEN), getFailureCount());
+		}
+	}
+
+	/**
+	 * Threads writing files
+	 */
+	private final ExecutorService pool;
+
+	/**
+	 * Queued changes per file, in the order files were first added
+	 */
+	private final Map<Path, Map<String, String>> pending = new LinkedHashMap<>();
+
+	/**
+	 * Padding reserved in files that have to be rewritten
+	 */
+	private int padding = MetadataWriter.DEFAULT_PADDING;
+
+	/**
+	 * Creates an editor writing up to {@code threads} files at a time.
+	 *
+	 * @param threads number of files written concurrently
+	 */
+	public BatchTagEditor(int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Thread count must be positive.");
+		}
+		this.pool = Executors.newFixedThreadPool(threads, task -> {
+			Thread thread = new Thread(task, "batch-tag-editor");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Sets the padding reserved in files that have to be rewritten
+	 *
+	 * @param padding number of bytes, 0 for none
+	 * @see MetadataWriter#setPadding(int)
+	 */
+	public void setPadding(int padding) {
+		if (padding < 0) {
+			throw new IllegalArgumentException("Padding must not be negative.");
+		}
+		this.padding = padding;
+	}
+
+	/**
+	 * Queues changes to the tags of {@code file}, merging them with changes
+	 * already queued for the same file.
+	 *
+	 * @param file    file to be edited
+	 * @param changes new tag values, {@code null} to remove a tag
+	 * @see MetadataWriter#write(Map)
+	 */
+	public synchronized void add(Path file, Map<String, String> changes) {
+		pending.computeIfAbsent(file.toAbsolutePath().normalize(), key -> new LinkedHashMap<>()).putAll(changes);
+	}
+
+	/**
+	 * Writes all queued changes and clears the queue. Blocks until every file
+	 * has been processed.
+	 *
+	 * @return outcome of each file along with the time taken
+	 * @throws InterruptedException if interrupted while waiting for the writes
+	 */
+	public Report execute() throws InterruptedException {
+		Map<Path, Map<String, String>> batch;
+		synchronized (this) {
+			batch = new LinkedHashMap<>(pending);
+			pending.clear();
+		}
+
+		long start = System.nanoTime();
+		List<Future<Outcome>> futures = new ArrayList<>(batch.size());
+		for (Map.Entry<Path, Map<String, String>> edit : batch.entrySet()) {
+			futures.add(pool.submit(() -> edit(edit.getKey(), edit.getValue())));
+		}
+
+		List<Outcome> outcomes = new ArrayList<>(futures.size());
+		for (Future<Outcome> future : futures) {
+			try {
+				outcomes.add(future.get());
+			} catch (ExecutionException e) {
+				// edit catches every exception, only errors get here
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return new Report(outcomes, Duration.ofNanos(System.nanoTime() - start));
+	}
+
+	/**
+	 * Writes the combined changes of a single file
+	 *
+	 * @param file    file to be edited
+	 * @param changes new tag values
+	 * @return how the file was updated, or why it was not
+	 */
+	private Outcome edit(Path file, Map<String, String> changes) {
+		try {
+			MetadataWriter writer = MetadataWriter.of(file);
+			writer.setPadding(padding);
+			return new Outcome(file, writer.write(changes), null);
+		} catch (IOException | RuntimeException e) {
+			// a writer bug on one file must not lose the outcomes of the others
+			return new Outcome(file, null, e);
+		}
+	}
+
+	/**
+	 * Stops the writing threads once queued work is done
+	 */
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,336 @@
+package org.audio.metadata.writer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.audio.metadata.Constants;
+
+/**
+ * Writes VORBIS comments to FLAC files.
+ *
+ * <p>
+ * The metadata from the VORBIS_COMMENT block (or the first PADDING block, if
+ * there are no comments yet) to the start of the audio is laid out again:
+ * other blocks keep their order and contents, the new comments take the place
+ * of the old ones, and whatever space remains becomes a single PADDING block.
+ * </p>
+ */
+public class FLACWriter extends MetadataWriter {
+
+	/**
+	 * Prevent instantiation from outside.
+	 * Use {@link MetadataWriter#of(Path)} to create instances.
+	 */
+	protected FLACWriter() {
+	}
+
+	/**
+	 * Mapping from {@link Constants} to the VORBIS tags read into them.
+	 */
+	private static final Map<String, String> VORBIS_FIELDS;
+	static {
+		Map<String, String> fields = new HashMap<>();
+		fields.put(Constants.TITLE, "TITLE");
+		fields.put(Constants.ALBUM_NAME, "ALBUM");
+		fields.put(Constants.TRACK_NUMBER, "TRACKNUMBER");
+		fields.put(Constants.DISC_NUMBER, "DISCNUMBER");
+		fields.put(Constants.ALBUM_ARTIST_NAME, "ALBUMARTIST");
+		fields.put(Constants.ARTIST_NAME, "ARTIST");
+		fields.put(Constants.COPYRIGHT, "COPYRIGHT");
+		fields.put(Constants.GENRE, "GENRE");
+		fields.put(Constants.DATE, "DATE");
+		fields.put(Constants.ISRC, "ISRC");
+		VORBIS_FIELDS = Collections.unmodifiableMap(fields);
+	}
+
+	/**
+	 * FLAC files begin with a 4 byte stream marker
+	 */
+	private static final int FLAC_HEADER_SIZE = 4;
+
+	/**
+	 * FLAC metadata blocks begin with a 4 byte header
+	 */
+	private static final int BLOCK_HEADER_SIZE = 4;
+
+	/**
+	 * Largest length that fits the 24 bit block length field
+	 */
+	private static final int MAX_BLOCK_LENGTH = 0xFFFFFF;
+
+	/**
+	 * Block type of PADDING blocks
+	 */
+	private static final int PADDING = 1;
+
+	/**
+	 * Block type of VORBIS_COMMENT blocks
+	 */
+	private static final int VORBIS_COMMENT = 4;
+
+	/**
+	 * Location of a metadata block
+	 *
+	 * @param type   block type
+	 * @param offset file position of the block header
+	 * @param length number of bytes in the block contents
+	 */
+	private record Block(int type, long offset, int length) {
+	}
+
+	/**
+	 * Writes {@code changes} into the VORBIS_COMMENT block
+	 *
+	 * @return whether the metadata was updated in place or the file rewritten
+	 */
+	public WriteMode write(Map<String, String> changes) throws IOException {
+		List<Block> region = new ArrayList<>();
+		long regionStart;
+		long audioStart;
+		byte[] comments;
+
+		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			List<Block> blocks = readBlockHeaders(channel);
+			Block last = blocks.get(blocks.size() - 1);
+			audioStart = last.offset() + BLOCK_HEADER_SIZE + last.length();
+
+			// the laid out region starts at the comments, or the first padding
+			Block start = null;
+			Block vorbis = null;
+			for (Block block : blocks) {
+				if (block.type() == VORBIS_COMMENT && vorbis == null) {
+					vorbis = block;
+				}
+				if ((block.type() == VORBIS_COMMENT || block.type() == PADDING) && start == null) {
+					start = block;
+				}
+			}
+			if (start == null) {
+				// neither exists, append after the last block
+				start = last;
+			}
+			regionStart = start.offset();
+
+			String vendor = "";
+			List<String> fields = new ArrayList<>();
+			if (vorbis != null) {
+				vendor = readComments(channel, vorbis, fields);
+			}
+			applyChanges(changes, fields);
+			comments = encodeComments(vendor, fields);
+			if (comments.length > MAX_BLOCK_LENGTH) {
+				throw new IOException("VORBIS_COMMENT block too large");
+			}
+
+			// blocks in the region other than padding keep their order
+			int contentLength = 0;
+			boolean placed = false;
+			for (Block block : blocks) {
+				if (block.offset() < regionStart || block.type() == PADDING) {
+					continue;
+				}
+				if (block.type() == VORBIS_COMMENT) {
+					if (!placed) {
+						region.add(new Block(VORBIS_COMMENT, -1, comments.length));
+						contentLength += BLOCK_HEADER_SIZE + comments.length;
+						placed = true;
+					}
+				} else {
+					region.add(block);
+					contentLength += BLOCK_HEADER_SIZE + block.length();
+				}
+			}
+			if (!placed) {
+				region.add(new Block(VORBIS_COMMENT, -1, comments.length));
+				contentLength += BLOCK_HEADER_SIZE + comments.length;
+			}
+
+			long regionLength = audioStart - regionStart;
+			long remaining = regionLength - contentLength;
+			if (remaining == 0
+					|| (remaining >= BLOCK_HEADER_SIZE && remaining - BLOCK_HEADER_SIZE <= MAX_BLOCK_LENGTH)) {
+				ByteBuffer buffer = layout(channel, region, comments, remaining == 0 ? -1 : remaining - BLOCK_HEADER_SIZE);
+				writeFully(channel, buffer, regionStart);
+				return WriteMode.IN_PLACE;
+			}
+		}
+
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+			buffer = layout(channel, region, comments, Math.min(padding, MAX_BLOCK_LENGTH));
+		}
+		rewrite(regionStart, buffer, audioStart);
+		return WriteMode.REWRITTEN;
+	}
+
+	/**
+	 * Header pass recording the location of every metadata block
+	 *
+	 * @param channel flac file channel
+	 * @return blocks in file order, starting with STREAMINFO
+	 * @throws IOException if the file is not a well formed FLAC file
+	 */
+	private static List<Block> readBlockHeaders(FileChannel channel) throws IOException {
+		ByteBuffer marker = ByteBuffer.allocate(FLAC_HEADER_SIZE);
+		readFully(channel, marker, 0);
+		if (marker.get(0) != 'f' || marker.get(1) != 'L' || marker.get(2) != 'a' || marker.get(3) != 'C') {
+			throw new IOException("Missing fLaC stream marker");
+		}
+
+		List<Block> blocks = new ArrayList<>();
+		long position = FLAC_HEADER_SIZE;
+		boolean lastBlock = false;
+		while (!lastBlock) {
+			ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+			readFully(channel, header, position);
+
+			int flags = header.get(0) & 0xFF;
+			lastBlock = (flags & 0x80) != 0;
+			int length = header.getInt(0) & 0xFFFFFF;
+			blocks.add(new Block(flags & 0x7F, position, length));
+			position += BLOCK_HEADER_SIZE + length;
+		}
+
+		if (position > channel.size()) {
+			throw new IOException("Truncated metadata block");
+		}
+		return blocks;
+	}
+
+	/**
+	 * Reads the comments of a VORBIS_COMMENT block as raw "NAME=value" strings.
+	 *
+	 * @param channel flac file channel
+	 * @param block   VORBIS_COMMENT block
+	 * @param fields  list receiving the comments
+	 * @return vendor string
+	 * @throws IOException if the block cannot be read or is malformed
+	 */
+	private static String readComments(FileChannel channel, Block block, List<String> fields) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(block.length()).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, buffer, block.offset() + BLOCK_HEADER_SIZE);
+
+		String vendor = readString(buffer);
+		int count = buffer.remaining() >= 4 ? buffer.getInt() : 0;
+		if (count < 0 || count > buffer.remaining() / 4) {
+			throw new IOException("Malformed VORBIS_COMMENT block");
+		}
+		for (int c = 0; c < count; ++c) {
+			fields.add(readString(buffer));
+		}
+		return vendor;
+	}
+
+	/**
+	 * @param buffer little endian buffer positioned at a length prefixed string
+	 * @return the UTF-8 string
+	 * @throws IOException if the length exceeds the buffer
+	 */
+	private static String readString(ByteBuffer buffer) throws IOException {
+		int length = buffer.remaining() >= 4 ? buffer.getInt() : -1;
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IOException("Malformed VORBIS_COMMENT block");
+		}
+		String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return value;
+	}
+
+	/**
+	 * Replaces all comments named by each change with its new value.
+	 *
+	 * @param changes new tag values, {@code null} to remove
+	 * @param fields  raw comments
+	 */
+	private static void applyChanges(Map<String, String> changes, List<String> fields) {
+		for (Map.Entry<String, String> change : changes.entrySet()) {
+			String name = VORBIS_FIELDS.getOrDefault(change.getKey(), change.getKey().toUpperCase(Locale.ROOT));
+			fields.removeIf(field -> {
+				int equalSign = field.indexOf('=');
+				return equalSign != -1 && field.substring(0, equalSign).equalsIgnoreCase(name);
+			});
+			if (change.getValue() != null) {
+				fields.add(name + "=" + change.getValue());
+			}
+		}
+	}
+
+	/**
+	 * @param vendor vendor string
+	 * @param fields raw comments
+	 * @return VORBIS_COMMENT block contents
+	 */
+	private static byte[] encodeComments(String vendor, List<String> fields) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeString(out, vendor);
+		out.writeBytes(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(fields.size()).array());
+		for (String field : fields) {
+			writeString(out, field);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param out   destination
+	 * @param value string written with a little endian length prefix
+	 */
+	private static void writeString(ByteArrayOutputStream out, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeBytes(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.length).array());
+		out.writeBytes(bytes);
+	}
+
+	/**
+	 * Lays out the blocks of the region, followed by a PADDING block.
+	 *
+	 * @param channel  flac file channel, source of the blocks that are kept
+	 * @param region   blocks in their new order, comments have no offset
+	 * @param comments VORBIS_COMMENT block contents
+	 * @param padding  contents length of the PADDING block, -1 for none
+	 * @return the region, ready to be written
+	 * @throws IOException if a kept block cannot be read
+	 */
+	private static ByteBuffer layout(FileChannel channel, List<Block> region, byte[] comments, long padding)
+			throws IOException {
+		long length = padding < 0 ? 0 : BLOCK_HEADER_SIZE + padding;
+		for (Block block : region) {
+			length += BLOCK_HEADER_SIZE + block.length();
+		}
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Metadata too large");
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) length);
+		for (int i = 0; i < region.size(); ++i) {
+			Block block = region.get(i);
+			boolean last = padding < 0 && i == region.size() - 1;
+			buffer.putInt((last ? 0x80000000 : 0) | (block.type() << 24) | block.length());
+
+			if (block.offset() < 0) {
+				buffer.put(comments);
+			} else {
+				ByteBuffer contents = buffer.slice(buffer.position(), block.length());
+				readFully(channel, contents, block.offset() + BLOCK_HEADER_SIZE);
+				buffer.position(buffer.position() + block.length());
+			}
+		}
+		if (padding >= 0) {
+			buffer.putInt(0x80000000 | (PADDING << 24) | (int) padding);
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+}
@@ -0,0 +1,264 @@
+package org.audio.metadata.writer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.reader.ID3TagReader;
+
+/**
+ * Writes text frames to the ID3v2 tag at the start of MP3 files.
+ *
+ * <p>
+ * ID3v2.3 and ID3v2.4 tags are updated in their own version; frames that are
+ * not changed are copied as they are. Files without a tag receive an ID3v2.4
+ * tag. Tag level unsynchronisation and extended headers are dropped.
+ * </p>
+ */
+public class ID3TagWriter extends MetadataWriter {
+
+	/**
+	 * Prevent instantiation from outside.
+	 * Use {@link MetadataWriter#of(Path)} to create instances.
+	 */
+	protected ID3TagWriter() {
+	}
+
+	/**
+	 * Mapping from {@link Constants} to the frames read into them.
+	 */
+	private static final Map<String, String> ID3_FRAMES;
+	static {
+		Map<String, String> frames = new HashMap<>();
+		frames.put(Constants.ALBUM_NAME, "TALB");
+		frames.put(Constants.COMPOSER, "TCOM");
+		frames.put(Constants.GENRE, "TCON");
+		frames.put(Constants.COPYRIGHT, "TCOP");
+		frames.put(Constants.DATE, "TDRC");
+		frames.put(Constants.LYRICIST, "TEXT");
+		frames.put(Constants.TITLE, "TIT2");
+		frames.put(Constants.SUBTITLE, "TIT3");
+		frames.put(Constants.ARTIST_NAME, "TPE1");
+		frames.put(Constants.ACCOMPANIMENT, "TPE2");
+		frames.put(Constants.CONDUCTOR, "TPE3");
+		frames.put(Constants.DISC_NUMBER, "TPOS");
+		frames.put(Constants.PUBLISHER, "TPUB");
+		frames.put(Constants.TRACK_NUMBER, "TRCK");
+		frames.put(Constants.ISRC, "TSRC");
+		frames.put(Constants.ENCODING_INFO, "TSSE");
+		frames.put(Constants.YEAR, "TYER");
+		ID3_FRAMES = Collections.unmodifiableMap(frames);
+	}
+
+	/**
+	 * ID3v2 headers and footers are 10 bytes long
+	 */
+	private static final int HEADER_SIZE = 10;
+
+	/**
+	 * Version written to files that do not have a tag yet
+	 */
+	private static final int DEFAULT_VERSION = 4;
+
+	/**
+	 * A single frame, including its header
+	 *
+	 * @param id   four character frame ID
+	 * @param data frame header and contents
+	 */
+	private record Frame(String id, byte[] data) {
+	}
+
+	/**
+	 * Writes {@code changes} into the ID3v2 tag
+	 *
+	 * @return whether the tag was updated in place or the file rewritten
+	 */
+	public WriteMode write(Map<String, String> changes) throws IOException {
+		int version = DEFAULT_VERSION;
+		List<Frame> frames = new ArrayList<>();
+
+		// bytes after the tag header that belong to the existing tag
+		long available = -1;
+		byte[] tag;
+
+		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			if (channel.size() >= HEADER_SIZE) {
+				readFully(channel, header, 0);
+			}
+
+			if (header.limit() == HEADER_SIZE && header.get(0) == 'I' && header.get(1) == 'D' && header.get(2) == '3') {
+				version = header.get(3);
+				if (version != 3 && version != 4) {
+					throw new IOException("Only ID3v2.3 and ID3v2.4 tags can be written");
+				}
+				int flags = header.get(5) & 0xFF;
+				int size = synchsafe(header, 6);
+				boolean footer = version == 4 && (flags & 0x10) != 0;
+				available = size + (footer ? HEADER_SIZE : 0);
+
+				ByteBuffer body = ByteBuffer.allocate(size);
+				readFully(channel, body, HEADER_SIZE);
+				byte[] data = body.array();
+				if ((flags & 0x80) != 0 && version == 3) {
+					data = ID3TagReader.resynchronise(data, 0, data.length);
+				}
+				parseFrames(data, (flags & 0x40) != 0, version, frames);
+			}
+
+			for (Map.Entry<String, String> change : changes.entrySet()) {
+				String id = frameID(change.getKey());
+				frames.removeIf(frame -> frame.id().equals(id));
+				if (change.getValue() != null) {
+					frames.add(textFrame(id, change.getValue(), version));
+				}
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			for (Frame frame : frames) {
+				out.writeBytes(frame.data());
+			}
+
+			if (out.size() <= available) {
+				// reuse the existing padding, the footer becomes padding as well
+				writeFully(channel, ByteBuffer.wrap(buildTag(out, version, (int) available)), 0);
+				return WriteMode.IN_PLACE;
+			}
+			tag = buildTag(out, version, out.size() + padding);
+		}
+
+		rewrite(0, ByteBuffer.wrap(tag), available < 0 ? 0 : HEADER_SIZE + available);
+		return WriteMode.REWRITTEN;
+	}
+
+	/**
+	 * Splits the tag body into frames, stopping at the padding.
+	 *
+	 * @param data           tag contents following the header
+	 * @param extendedHeader true if an extended header precedes the frames
+	 * @param version        ID3v2 major version
+	 * @param frames         list receiving the frames
+	 */
+	private static void parseFrames(byte[] data, boolean extendedHeader, int version, List<Frame> frames) {
+		ByteBuffer tag = ByteBuffer.wrap(data);
+		if (extendedHeader && tag.remaining() >= 4) {
+			// 2.3 excludes the size field itself, 2.4 is synchsafe and includes it
+			int skip = version == 3 ? tag.getInt(0) + 4 : synchsafe(tag, 0);
+			if (skip < 0 || skip > tag.remaining()) {
+				return;
+			}
+			tag.position(skip);
+		}
+
+		while (tag.remaining() >= HEADER_SIZE) {
+			int start = tag.position();
+			String id = new String(data, start, 4, StandardCharsets.ISO_8859_1);
+			if (!id.chars().allMatch(c -> (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))) {
+				// padding, or anything else that is not a frame
+				return;
+			}
+
+			int size = version == 4 ? synchsafe(tag, start + 4) : tag.getInt(start + 4);
+			if (size < 0 || size > tag.remaining() - HEADER_SIZE) {
+				return;
+			}
+
+			byte[] frame = new byte[HEADER_SIZE + size];
+			tag.get(frame);
+			frames.add(new Frame(id, frame));
+		}
+	}
+
+	/**
+	 * Builds a null terminated text frame. ASCII text is stored as ISO-8859-1,
+	 * anything else as UTF-8 in ID3v2.4 and UTF-16 in ID3v2.3.
+	 *
+	 * @param id      four character frame ID
+	 * @param value   frame text
+	 * @param version ID3v2 major version
+	 * @return the encoded frame
+	 */
+	private static Frame textFrame(String id, String value, int version) {
+		boolean ascii = value.chars().allMatch(c -> c < 0x80);
+		byte encoding = ascii ? (byte) 0 : version == 4 ? (byte) 3 : (byte) 1;
+		byte[] text = value.getBytes(ascii ? StandardCharsets.ISO_8859_1
+				: version == 4 ? StandardCharsets.UTF_8 : StandardCharsets.UTF_16);
+
+		// UTF-16 terminators are two bytes wide
+		int terminator = encoding == 1 ? 2 : 1;
+		int size = 1 + text.length + terminator;
+		ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + size);
+		frame.put(id.getBytes(StandardCharsets.ISO_8859_1));
+		frame.putInt(version == 4 ? toSynchsafe(size) : size);
+		frame.putShort((short) 0);
+		frame.put(encoding).put(text);
+		return new Frame(id, frame.array());
+	}
+
+	/**
+	 * Builds a complete tag of {@code size} bytes following the header, where
+	 * anything not used by frames is padding.
+	 *
+	 * @param frames  encoded frames
+	 * @param version ID3v2 major version
+	 * @param size    tag size excluding the header
+	 * @return header, frames and padding
+	 */
+	private static byte[] buildTag(ByteArrayOutputStream frames, int version, int size) {
+		ByteBuffer tag = ByteBuffer.allocate(HEADER_SIZE + size);
+		tag.put(new byte[] { 'I', 'D', '3', (byte) version, 0, 0 });
+		tag.putInt(toSynchsafe(size));
+		tag.put(frames.toByteArray());
+		return tag.array();
+	}
+
+	/**
+	 * Finds the frame for a tag name.
+	 *
+	 * @param key {@link Constants} name or four character frame ID
+	 * @return frame ID
+	 * @throws IllegalArgumentException if there is no frame for {@code key}
+	 */
+	private static String frameID(String key) {
+		if (ID3_FRAMES.containsKey(key)) {
+			return ID3_FRAMES.get(key);
+		}
+		if (key.length() == 4 && key.chars().allMatch(c -> (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))) {
+			return key;
+		}
+		throw new IllegalArgumentException("No ID3v2 frame for " + key);
+	}
+
+	/**
+	 * @param buffer source of the synchsafe integer
+	 * @param index  position of its first byte
+	 * @return integer stored in four bytes of seven bits each
+	 */
+	private static int synchsafe(ByteBuffer buffer, int index) {
+		int value = 0;
+		for (int i = 0; i < 4; ++i) {
+			value = (value << 7) | (buffer.get(index + i) & 0x7F);
+		}
+		return value;
+	}
+
+	/**
+	 * @param value integer below 2^28
+	 * @return {@code value} spread over four bytes of seven bits each
+	 */
+	private static int toSynchsafe(int value) {
+		return ((value & 0x0FE00000) << 3) | ((value & 0x001FC000) << 2) | ((value & 0x00003F80) << 1)
+				| (value & 0x7F);
+	}
+}
@@ -0,0 +1,531 @@
+package org.audio.metadata.writer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.audio.metadata.Constants;
+
+/**
+ * Writes items to the moov/udta/meta/ilst atom of M4A files.
+ *
+ * <p>
+ * The item list is updated in place when it fits together with the free
+ * atoms that directly follow it. Otherwise the moov atom is rebuilt with a
+ * free atom of {@code padding} bytes after the item list, and if the moov
+ * atom precedes the media data the chunk offsets in stco and co64 are moved
+ * by the change in size.
+ * </p>
+ */
+public class M4AWriter extends MetadataWriter {
+
+	/**
+	 * Prevent instantiation from outside.
+	 * Use {@link MetadataWriter#of(Path)} to create instances.
+	 */
+	protected M4AWriter() {
+	}
+
+	/**
+	 * Mapping from {@link Constants} to the M4A items read into them.
+	 */
+	private static final Map<String, String> M4A_ITEMS;
+	static {
+		Map<String, String> items = new HashMap<>();
+		items.put(Constants.ARTIST_NAME, "\u00A9ART");
+		items.put(Constants.ALBUM_ARTIST_NAME, "aART");
+		items.put(Constants.ALBUM_NAME, "\u00A9alb");
+		items.put(Constants.COMPOSER, "\u00A9wrt");
+		items.put(Constants.TITLE, "\u00A9nam");
+		items.put(Constants.TRACK_NUMBER, "trkn");
+		items.put(Constants.DISC_NUMBER, "disk");
+		items.put(Constants.COPYRIGHT, "cprt");
+		items.put(Constants.ENCODING_INFO, "\u00A9too");
+		items.put(Constants.YEAR, "\u00A9day");
+		items.put(Constants.GENRE, "\u00A9gen");
+		M4A_ITEMS = Collections.unmodifiableMap(items);
+	}
+
+	/**
+	 * Chunk headers are a four byte character code followed by four byte chunk size
+	 */
+	private static final int CHUNK_HEADER_SIZE = 8;
+
+	/**
+	 * Chunks with a size of 1 are followed by an eight byte size
+	 */
+	private static final int LARGE_HEADER_SIZE = 16;
+
+	/**
+	 * Containers on the way from moov to the chunk offset tables
+	 */
+	private static final List<String> SAMPLE_TABLE_PATH = List.of("trak", "mdia", "minf", "stbl");
+
+	/**
+	 * Location of an atom within the file
+	 *
+	 * @param type  four character code
+	 * @param start position of the atom header
+	 * @param body  position of the atom contents
+	 * @param end   position just past the atom
+	 */
+	private record Atom(String type, long start, long body, long end) {
+	}
+
+	/**
+	 * A single ilst item
+	 *
+	 * @param type four character code
+	 * @param data item header and contents
+	 */
+	private record Item(String type, byte[] data) {
+	}
+
+	/**
+	 * Writes {@code changes} into the item list
+	 *
+	 * @return whether the item list was updated in place or the file rewritten
+	 */
+	public WriteMode write(Map<String, String> changes) throws IOException {
+		Atom moov = null;
+		ByteBuffer rebuilt;
+		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			Atom mdat = null;
+			long position = 0;
+			Atom atom;
+			while ((atom = readAtom(channel, position, channel.size())) != null) {
+				if (atom.type().equals("moov") && moov == null) {
+					moov = atom;
+				} else if (atom.type().equals("mdat") && mdat == null) {
+					mdat = atom;
+				}
+				position = atom.end();
+			}
+			if (moov == null) {
+				throw new IOException("Missing moov atom");
+			}
+
+			Atom udta = findChild(channel, moov, "udta");
+			Atom meta = udta != null ? findChild(channel, udta, "meta") : null;
+			Atom ilst = meta != null ? findChild(channel, meta, "ilst") : null;
+
+			List<Item> items = new ArrayList<>();
+			if (ilst != null) {
+				readItems(channel, ilst, items);
+			}
+			applyChanges(changes, items);
+
+			ByteArrayOutputStream contents = new ByteArrayOutputStream();
+			for (Item item : items) {
+				contents.writeBytes(item.data());
+			}
+			byte[] newIlst = atom("ilst", contents.toByteArray());
+
+			// free atoms directly following the item list can be reused
+			if (ilst != null) {
+				long regionEnd = ilst.end();
+				Atom free;
+				while ((free = readAtom(channel, regionEnd, meta.end())) != null && free.type().equals("free")) {
+					regionEnd = free.end();
+				}
+
+				long remaining = regionEnd - ilst.start() - newIlst.length;
+				if (remaining == 0 || (remaining >= CHUNK_HEADER_SIZE && remaining <= 0xFFFFFFFFL)) {
+					ByteBuffer buffer = ByteBuffer.allocate((int) (regionEnd - ilst.start()));
+					buffer.put(newIlst);
+					if (remaining > 0) {
+						buffer.putInt((int) remaining).put("free".getBytes(StandardCharsets.ISO_8859_1));
+					}
+					buffer.clear();
+					writeFully(channel, buffer, ilst.start());
+					return WriteMode.IN_PLACE;
+				}
+			}
+
+			// read the whole moov atom and rebuild it around the new item list
+			if (moov.end() - moov.start() > Integer.MAX_VALUE - padding) {
+				throw new IOException("moov atom too large");
+			}
+			ByteBuffer original = ByteBuffer.allocate((int) (moov.end() - moov.start()));
+			readFully(channel, original, moov.start());
+			byte[] free = new byte[Math.max(CHUNK_HEADER_SIZE, padding)];
+			ByteBuffer.wrap(free).putInt(free.length).put("free".getBytes(StandardCharsets.ISO_8859_1));
+
+			// replace ilst and trailing free atoms, or insert the missing containers
+			List<Atom> ancestors = new ArrayList<>(List.of(moov));
+			byte[] insert;
+			long replaceFrom;
+			long replaceTo;
+			if (ilst != null) {
+				ancestors.add(udta);
+				ancestors.add(meta);
+				insert = concat(newIlst, free);
+				replaceFrom = ilst.start();
+				replaceTo = ilst.end();
+				Atom next;
+				while ((next = readAtom(channel, replaceTo, meta.end())) != null && next.type().equals("free")) {
+					replaceTo = next.end();
+				}
+			} else if (meta != null) {
+				ancestors.add(udta);
+				ancestors.add(meta);
+				insert = concat(newIlst, free);
+				replaceFrom = replaceTo = meta.end();
+			} else {
+				byte[] newMeta = atom("meta", concat(new byte[4], handler(), newIlst, free));
+				if (udta != null) {
+					ancestors.add(udta);
+					insert = newMeta;
+					replaceFrom = replaceTo = udta.end();
+				} else {
+					insert = atom("udta", newMeta);
+					replaceFrom = replaceTo = moov.end();
+				}
+			}
+
+			long delta = insert.length - (replaceTo - replaceFrom);
+			int from = (int) (replaceFrom - moov.start());
+			int to = (int) (replaceTo - moov.start());
+			rebuilt = ByteBuffer.allocate(original.limit() + (int) delta);
+			rebuilt.put(original.array(), 0, from).put(insert).put(original.array(), to, original.limit() - to);
+
+			for (Atom ancestor : ancestors) {
+				resize(rebuilt, (int) (ancestor.start() - moov.start()), delta);
+			}
+
+			// media data after the moov atom moves by the change in size
+			if (mdat != null && mdat.start() > moov.start()) {
+				shiftChunkOffsets(rebuilt, 0, rebuilt.limit(), moov.end(), delta, 0);
+			}
+
+			rebuilt.clear();
+		}
+
+		// the channel is closed before the file is replaced
+		rewrite(moov.start(), rebuilt, moov.end());
+		return WriteMode.REWRITTEN;
+	}
+
+	/**
+	 * Reads the header of the atom at {@code position} with a positioned read.
+	 *
+	 * @param channel   channel to audio file
+	 * @param position  file position of the atom header
+	 * @param parentEnd end of the enclosing atom, or the file size
+	 * @return the atom, or {@code null} if there is no valid atom at
+	 *         {@code position}
+	 * @throws IOException if channel is inaccessible
+	 */
+	private static Atom readAtom(FileChannel channel, long position, long parentEnd) throws IOException {
+		if (parentEnd - position < CHUNK_HEADER_SIZE) {
+			return null;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate((int) Math.min(LARGE_HEADER_SIZE, parentEnd - position));
+		readFully(channel, header, position);
+
+		long size = header.getInt(0) & 0xFFFFFFFFL;
+		String type = new String(header.array(), 4, 4, StandardCharsets.ISO_8859_1);
+		long body = position + CHUNK_HEADER_SIZE;
+		if (size == 1) {
+			if (header.limit() < LARGE_HEADER_SIZE) {
+				return null;
+			}
+			size = header.getLong(CHUNK_HEADER_SIZE);
+			body += Long.BYTES;
+		} else if (size == 0) {
+			size = parentEnd - position;
+		}
+
+		if (size < body - position || size > parentEnd - position) {
+			return null;
+		}
+		return new Atom(type, position, body, position + size);
+	}
+
+	/**
+	 * Finds the first child of {@code parent} with the given type.
+	 *
+	 * @param channel channel to audio file
+	 * @param parent  container atom
+	 * @param type    four character code
+	 * @return the child, or {@code null} if there is none
+	 * @throws IOException if channel is inaccessible
+	 */
+	private static Atom findChild(FileChannel channel, Atom parent, String type) throws IOException {
+		long position = parent.body();
+		if (parent.type().equals("meta") && isFullBox(channel, parent)) {
+			position += 4;
+		}
+
+		Atom atom;
+		while ((atom = readAtom(channel, position, parent.end())) != null) {
+			if (atom.type().equals(type)) {
+				return atom;
+			}
+			position = atom.end();
+		}
+		return null;
+	}
+
+	/**
+	 * Determine if a meta atom starts with version and flags.
+	 *
+	 * @param channel channel to audio file
+	 * @param meta    meta atom
+	 * @return true unless the hdlr atom immediately follows the meta header
+	 * @throws IOException if channel is inaccessible
+	 */
+	private static boolean isFullBox(FileChannel channel, Atom meta) throws IOException {
+		if (meta.end() - meta.body() < CHUNK_HEADER_SIZE) {
+			return true;
+		}
+		ByteBuffer start = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+		readFully(channel, start, meta.body());
+		return !new String(start.array(), 4, 4, StandardCharsets.ISO_8859_1).equals("hdlr");
+	}
+
+	/**
+	 * Reads the items of an ilst atom as raw atoms.
+	 *
+	 * @param channel channel to audio file
+	 * @param ilst    item list atom
+	 * @param items   list receiving the items
+	 * @throws IOException if channel is inaccessible
+	 */
+	private static void readItems(FileChannel channel, Atom ilst, List<Item> items) throws IOException {
+		long position = ilst.body();
+		Atom item;
+		while ((item = readAtom(channel, position, ilst.end())) != null) {
+			if (item.end() - item.start() > Integer.MAX_VALUE) {
+				throw new IOException("ilst item too large");
+			}
+			ByteBuffer data = ByteBuffer.allocate((int) (item.end() - item.start()));
+			readFully(channel, data, item.start());
+			items.add(new Item(item.type(), data.array()));
+			position = item.end();
+		}
+	}
+
+	/**
+	 * Replaces the items named by each change with its new value.
+	 *
+	 * @param changes new tag values, {@code null} to remove
+	 * @param items   raw items
+	 */
+	private static void applyChanges(Map<String, String> changes, List<Item> items) {
+		for (Map.Entry<String, String> change : changes.entrySet()) {
+			String key = change.getKey();
+			String value = change.getValue();
+
+			if (key.startsWith("----:")) {
+				// freeform items are replaced by name
+				String[] parts = key.split(":", 3);
+				if (parts.length != 3) {
+					throw new IllegalArgumentException("Freeform items are named ----:mean:name");
+				}
+				items.removeIf(item -> item.type().equals("----") && key.equals(freeformKey(item.data())));
+				if (value != null) {
+					byte[] mean = concat(new byte[4], parts[1].getBytes(StandardCharsets.UTF_8));
+					byte[] name = concat(new byte[4], parts[2].getBytes(StandardCharsets.UTF_8));
+					items.add(new Item("----", atom("----", concat(atom("mean", mean), atom("name", name),
+							data(1, value.getBytes(StandardCharsets.UTF_8))))));
+				}
+				continue;
+			}
+
+			String type = M4A_ITEMS.getOrDefault(key, key);
+			if (type.getBytes(StandardCharsets.ISO_8859_1).length != 4) {
+				throw new IllegalArgumentException("No M4A item for " + key);
+			}
+
+			// genres may be stored as text or as an ID3v1 index
+			items.removeIf(item -> item.type().equals(type) || (type.equals("\u00A9gen") && item.type().equals("gnre")));
+			if (value != null) {
+				byte[] data;
+				if (type.equals("trkn") || type.equals("disk")) {
+					data = data(0, numberPair(value));
+				} else {
+					data = data(1, value.getBytes(StandardCharsets.UTF_8));
+				}
+				items.add(new Item(type, atom(type, data)));
+			}
+		}
+	}
+
+	/**
+	 * @param item raw freeform item
+	 * @return ----:mean:name, or {@code null} if either atom is missing
+	 */
+	private static String freeformKey(byte[] item) {
+		String mean = null;
+		String name = null;
+		ByteBuffer buffer = ByteBuffer.wrap(item);
+		int position = CHUNK_HEADER_SIZE;
+		while (position + CHUNK_HEADER_SIZE <= item.length) {
+			int size = buffer.getInt(position);
+			if (size < CHUNK_HEADER_SIZE || size > item.length - position) {
+				break;
+			}
+			String type = new String(item, position + 4, 4, StandardCharsets.ISO_8859_1);
+			if (size >= 12 && (type.equals("mean") || type.equals("name"))) {
+				String value = new String(item, position + 12, size - 12, StandardCharsets.UTF_8);
+				if (type.equals("mean")) {
+					mean = value;
+				} else {
+					name = value;
+				}
+			}
+			position += size;
+		}
+		return mean == null || name == null ? null : "----:" + mean + ":" + name;
+	}
+
+	/**
+	 * @param value "n" or "n/total"
+	 * @return binary trkn or disk value
+	 */
+	private static byte[] numberPair(String value) {
+		String[] parts = value.trim().split("/", 2);
+		try {
+			int number = Integer.parseInt(parts[0].trim());
+			int total = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 0;
+			return ByteBuffer.allocate(8).putShort(2, (short) number).putShort(4, (short) total).array();
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Expected a number or number/total: " + value, e);
+		}
+	}
+
+	/**
+	 * @param dataType well-known data type
+	 * @param value    item value
+	 * @return data atom
+	 */
+	private static byte[] data(int dataType, byte[] value) {
+		return atom("data", ByteBuffer.allocate(8 + value.length).putInt(dataType).putInt(0).put(value).array());
+	}
+
+	/**
+	 * @return hdlr atom marking iTunes style metadata
+	 */
+	private static byte[] handler() {
+		ByteBuffer hdlr = ByteBuffer.allocate(25);
+		hdlr.position(8);
+		hdlr.put("mdirappl".getBytes(StandardCharsets.ISO_8859_1));
+		return atom("hdlr", hdlr.array());
+	}
+
+	/**
+	 * @param type four character code
+	 * @param body atom contents
+	 * @return atom with a 32-bit size
+	 */
+	private static byte[] atom(String type, byte[] body) {
+		return ByteBuffer.allocate(CHUNK_HEADER_SIZE + body.length).putInt(CHUNK_HEADER_SIZE + body.length)
+				.put(type.getBytes(StandardCharsets.ISO_8859_1)).put(body).array();
+	}
+
+	/**
+	 * @param parts arrays to join
+	 * @return all parts in order
+	 */
+	private static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			out.writeBytes(part);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Adds {@code delta} to the size of the atom whose header is at
+	 * {@code offset}.
+	 *
+	 * @param buffer moov atom
+	 * @param offset position of the atom header within {@code buffer}
+	 * @param delta  change in size
+	 * @throws IOException if the new size does not fit the size field
+	 */
+	private static void resize(ByteBuffer buffer, int offset, long delta) throws IOException {
+		long size = buffer.getInt(offset) & 0xFFFFFFFFL;
+		if (size == 1) {
+			buffer.putLong(offset + CHUNK_HEADER_SIZE, buffer.getLong(offset + CHUNK_HEADER_SIZE) + delta);
+		} else if (size != 0) {
+			if (size + delta > 0xFFFFFFFFL) {
+				throw new IOException("Atom too large for a 32-bit size");
+			}
+			buffer.putInt(offset, (int) (size + delta));
+		}
+	}
+
+	/**
+	 * Moves every chunk offset at or after {@code moovEnd} by {@code delta},
+	 * descending only through trak/mdia/minf/stbl.
+	 *
+	 * @param buffer  moov atom
+	 * @param start   first child to visit
+	 * @param end     end of the enclosing atom
+	 * @param moovEnd original file position of the end of moov
+	 * @param delta   change in moov size
+	 * @param depth   index into {@link #SAMPLE_TABLE_PATH} of the children
+	 * @throws IOException if an offset no longer fits in 32 bits
+	 */
+	private static void shiftChunkOffsets(ByteBuffer buffer, int start, int end, long moovEnd, long delta, int depth)
+			throws IOException {
+		int position = start;
+		if (depth == 0) {
+			// skip the moov header itself
+			long size = buffer.getInt(0) & 0xFFFFFFFFL;
+			position = size == 1 ? LARGE_HEADER_SIZE : CHUNK_HEADER_SIZE;
+		}
+
+		while (end - position >= CHUNK_HEADER_SIZE) {
+			long size = buffer.getInt(position) & 0xFFFFFFFFL;
+			String type = new String(buffer.array(), position + 4, 4, StandardCharsets.ISO_8859_1);
+			int body = position + CHUNK_HEADER_SIZE;
+			if (size == 1) {
+				size = buffer.getLong(body);
+				body += Long.BYTES;
+			} else if (size == 0) {
+				size = end - position;
+			}
+			if (size < body - position || size > end - position) {
+				return;
+			}
+			int atomEnd = position + (int) size;
+
+			if (depth < SAMPLE_TABLE_PATH.size() && type.equals(SAMPLE_TABLE_PATH.get(depth))) {
+				shiftChunkOffsets(buffer, body, atomEnd, moovEnd, delta, depth + 1);
+			} else if (depth == SAMPLE_TABLE_PATH.size() && (type.equals("stco") || type.equals("co64"))) {
+				// version and flags, entry count, entries
+				int width = type.equals("stco") ? 4 : 8;
+				long count = buffer.getInt(body + 4) & 0xFFFFFFFFL;
+				for (int i = 0, entry = body + 8; i < count && entry + width <= atomEnd; ++i, entry += width) {
+					long offset = width == 4 ? buffer.getInt(entry) & 0xFFFFFFFFL : buffer.getLong(entry);
+					if (offset >= moovEnd) {
+						offset += delta;
+						if (width == 4) {
+							if (offset > 0xFFFFFFFFL) {
+								throw new IOException("Chunk offset too large for stco");
+							}
+							buffer.putInt(entry, (int) offset);
+						} else {
+							buffer.putLong(entry, offset);
+						}
+					}
+				}
+			}
+
+			position = atomEnd;
+		}
+	}
+}
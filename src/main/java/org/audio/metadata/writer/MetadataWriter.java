@@ -0,0 +1,223 @@
+package org.audio.metadata.writer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Map;
+
+import org.audio.utils.FileUtils;
+
+/**
+ * Abstract class representing generic metadata writer.
+ *
+ * <p>
+ * Writers mirror the readers: tags are replaced in the space the file
+ * already reserves for them (ID3v2 padding, FLAC PADDING blocks, M4A free
+ * atoms) with a single positioned write whenever they fit. Otherwise the file
+ * is rewritten to a temporary file next to it, copying the audio with
+ * {@link FileChannel#transferTo}, reserving {@code padding} bytes for later
+ * edits, and renamed over the original.
+ * </p>
+ */
+public abstract class MetadataWriter {
+
+	/**
+	 * How a file was updated
+	 */
+	public enum WriteMode {
+		/**
+		 * Tags were overwritten within the existing file
+		 */
+		IN_PLACE,
+
+		/**
+		 * The file was rewritten and replaced
+		 */
+		REWRITTEN;
+	}
+
+	/**
+	 * Padding reserved by default whenever a file has to be rewritten
+	 */
+	public static final int DEFAULT_PADDING = 4096;
+
+	/**
+	 * Location of audio file
+	 */
+	protected Path source;
+
+	/**
+	 * Number of bytes reserved for future edits when a file is rewritten
+	 */
+	protected int padding = DEFAULT_PADDING;
+
+	/**
+	 * Applies {@code changes} to the tags of {@code source}. Keys are
+	 * {@link org.audio.metadata.Constants} or format specific tag names, and a
+	 * {@code null} value removes the tag. Tags not mentioned are preserved.
+	 *
+	 * @param changes new tag values
+	 * @return whether the file was updated in place or rewritten
+	 * @throws IOException if the file cannot be read, written or is not
+	 *                     supported
+	 */
+	public abstract WriteMode write(Map<String, String> changes) throws IOException;
+
+	/**
+	 * Sets the source for this writer
+	 *
+	 * @param source file to be modified
+	 */
+	public void setSource(Path source) {
+		this.source = source;
+	}
+
+	/**
+	 * Sets the padding reserved for future edits when a file is rewritten
+	 *
+	 * @param padding number of bytes, 0 for none
+	 */
+	public void setPadding(int padding) {
+		if (padding < 0) {
+			throw new IllegalArgumentException("Padding must not be negative.");
+		}
+		this.padding = padding;
+	}
+
+	/**
+	 * Creates a MetadataWriter of the appropriate type based on the file header.
+	 *
+	 * @param source file to write metadata to
+	 * @return instance of a MetadataWriter subclass
+	 * @throws IllegalArgumentException if audio file is not supported
+	 */
+	public static MetadataWriter of(Path source) {
+		MetadataWriter writer;
+
+		switch (FileUtils.determineFormatByHeader(source)) {
+			case MP3:
+				writer = new ID3TagWriter();
+				break;
+			case FLAC:
+				writer = new FLACWriter();
+				break;
+			case MP4:
+			case M4A:
+				writer = new M4AWriter();
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported file format");
+		}
+
+		writer.setSource(source);
+		return writer;
+	}
+
+	/**
+	 * Replaces {@code source} with a copy in which the bytes between
+	 * {@code keepBefore} and {@code resumeAt} are replaced by
+	 * {@code replacement}. The copy is written to a temporary file in the same
+	 * directory, given the permissions of the original and atomically renamed
+	 * over it. The temporary file is removed if anything fails.
+	 *
+	 * @param keepBefore  number of leading bytes copied unchanged
+	 * @param replacement bytes written in place of the replaced range
+	 * @param resumeAt    file position from which the rest is copied unchanged
+	 * @throws IOException if the copy cannot be written or renamed
+	 */
+	protected void rewrite(long keepBefore, ByteBuffer replacement, long resumeAt) throws IOException {
+		Path directory = source.toAbsolutePath().getParent();
+		Path temp = Files.createTempFile(directory, source.getFileName().toString(), ".tmp");
+
+		try {
+			try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+					FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				transferFully(in, 0, keepBefore, out);
+				while (replacement.hasRemaining()) {
+					out.write(replacement);
+				}
+				transferFully(in, resumeAt, in.size() - resumeAt, out);
+				out.force(true);
+			}
+
+			// temporary files are private to the owner, the replacement must not be
+			PosixFileAttributeView attributes = Files.getFileAttributeView(source, PosixFileAttributeView.class);
+			if (attributes != null) {
+				Files.setPosixFilePermissions(temp, attributes.readAttributes().permissions());
+			}
+
+			Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (Throwable e) {
+			try {
+				Files.deleteIfExists(temp);
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Copies a range of {@code in} to the current position of {@code out},
+	 * letting the operating system move the bytes where possible.
+	 *
+	 * @param in       source channel
+	 * @param position start of the range
+	 * @param count    number of bytes to copy
+	 * @param out      destination channel
+	 * @throws IOException if the range cannot be copied completely
+	 */
+	private static void transferFully(FileChannel in, long position, long count, FileChannel out)
+			throws IOException {
+		while (count > 0) {
+			long transferred = in.transferTo(position, count, out);
+			if (transferred <= 0) {
+				throw new EOFException("File ended during copy");
+			}
+			position += transferred;
+			count -= transferred;
+		}
+	}
+
+	/**
+	 * Fills {@code buffer} from {@code position} without moving the channel.
+	 *
+	 * @param channel  input channel
+	 * @param buffer   destination
+	 * @param position file position to start reading from
+	 * @throws IOException if the channel cannot be read or ends first
+	 */
+	protected static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		int total = 0;
+		while (buffer.hasRemaining()) {
+			int nRead = channel.read(buffer, position + total);
+			if (nRead < 0) {
+				throw new EOFException("File ended at " + (position + total));
+			}
+			total += nRead;
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Writes all of {@code buffer} at {@code position} without moving the
+	 * channel.
+	 *
+	 * @param channel  output channel
+	 * @param buffer   bytes to write
+	 * @param position file position to start writing at
+	 * @throws IOException if the channel cannot be written
+	 */
+	protected static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		channel.force(false);
+	}
+}
@@ -0,0 +1,152 @@
+package org.audio.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Fast search for byte patterns in large arrays.
+ * 
+ * <p>
+ * Candidates for the first byte of the pattern are located eight bytes at a
+ * time by loading a {@code long} and using the classic "has zero byte" bit
+ * trick, which the JIT compiles to a handful of ALU instructions per word.
+ * Only candidate positions are compared against the full pattern.
+ * </p>
+ */
+public final class ByteSearch {
+
+	/**
+	 * This class is for static helpers and need not be instantiated
+	 */
+	private ByteSearch() {
+	}
+
+	/**
+	 * View of a byte array as little endian longs, so that the lowest set bit of
+	 * a match mask corresponds to the lowest index.
+	 */
+	private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+			ByteOrder.LITTLE_ENDIAN);
+
+	/**
+	 * 0x01 repeated in every byte
+	 */
+	private static final long ONES = 0x0101010101010101L;
+
+	/**
+	 * 0x80 repeated in every byte
+	 */
+	private static final long HIGHS = 0x8080808080808080L;
+
+	/**
+	 * Returns the index of the first occurrence of {@code pattern} in
+	 * {@code data} between {@code from} (inclusive) and {@code to} (exclusive).
+	 * 
+	 * @param data    search space
+	 * @param from    first index to consider
+	 * @param to      end of the search range
+	 * @param pattern non-empty search term
+	 * @return index of the first match, or -1 if there is none
+	 */
+	public static int indexOf(byte[] data, int from, int to, byte[] pattern) {
+		int last = to - pattern.length;
+		if (from < 0 || last < from) {
+			return -1;
+		}
+
+		long broadcast = (pattern[0] & 0xFFL) * ONES;
+		int index = from;
+
+		// eight candidate positions per iteration
+		while (index + Long.BYTES <= last + 1) {
+			long word = (long) LONGS.get(data, index) ^ broadcast;
+			long matches = (word - ONES) & ~word & HIGHS;
+			while (matches != 0) {
+				int candidate = index + (Long.numberOfTrailingZeros(matches) >>> 3);
+				if (matchesAt(data, candidate, pattern)) {
+					return candidate;
+				}
+				// clear lowest match
+				matches &= matches - 1;
+			}
+			index += Long.BYTES;
+		}
+
+		// tail that does not fill a whole word
+		for (; index <= last; ++index) {
+			if (data[index] == pattern[0] && matchesAt(data, index, pattern)) {
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the last occurrence of {@code pattern} in
+	 * {@code data} between {@code from} (inclusive) and {@code to} (exclusive).
+	 * 
+	 * @param data    search space
+	 * @param from    first index to consider
+	 * @param to      end of the search range
+	 * @param pattern non-empty search term
+	 * @return index of the last match, or -1 if there is none
+	 */
+	public static int lastIndexOf(byte[] data, int from, int to, byte[] pattern) {
+		int last = to - pattern.length;
+		if (from < 0 || last < from) {
+			return -1;
+		}
+
+		long broadcast = (pattern[0] & 0xFFL) * ONES;
+		int index = last + 1;
+
+		// eight candidate positions per iteration, walking backwards
+		while (index - Long.BYTES >= from) {
+			int start = index - Long.BYTES;
+			long word = (long) LONGS.get(data, start) ^ broadcast;
+			long matches = (word - ONES) & ~word & HIGHS;
+			while (matches != 0) {
+				int highest = 63 - Long.numberOfLeadingZeros(matches);
+				int candidate = start + (highest >>> 3);
+				if (matchesAt(data, candidate, pattern)) {
+					return candidate;
+				}
+				// clear highest match
+				matches &= ~(1L << highest);
+			}
+			index = start;
+		}
+
+		// head that does not fill a whole word
+		for (--index; index >= from; --index) {
+			if (data[index] == pattern[0] && matchesAt(data, index, pattern)) {
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Determine if {@code pattern} matches {@code data} at {@code index}
+	 * 
+	 * @param data    search space
+	 * @param index   start index
+	 * @param pattern search term
+	 * @return true if {@code pattern} is found at {@code index}
+	 */
+	public static boolean matchesAt(byte[] data, int index, byte[] pattern) {
+		if (index < 0 || index + pattern.length > data.length) {
+			return false;
+		}
+
+		for (int offset = 0; offset < pattern.length; ++offset) {
+			if (data[index + offset] != pattern[offset]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -16,7 +16,7 @@ public class FileUtils {
 	 */
 	public enum Format {
 		// TODO other common formats
-		MP3, MP4, M4A, DASH, WAV, WMA, FLAC, OGG, UNKNOWN;
+		MP3, MP4, M4A, DASH, WAV, AIFF, WMA, FLAC, OGG, MKA, UNKNOWN;
 	}
 
 	/**
@@ -46,8 +46,16 @@ public class FileUtils {
 				return Format.MP4;
 			case "m4a":
 				return Format.M4A;
+			case "aif":
+			case "aiff":
+			case "aifc":
+				return Format.AIFF;
 			case "wma":
 				return Format.WMA;
+			case "mka":
+			case "mkv":
+			case "webm":
+				return Format.MKA;
 			default:
 				return Format.UNKNOWN;
 		}
@@ -71,6 +79,15 @@ public class FileUtils {
 			// that mp3
 			return Format.MP3;
 		}
+		// MP3 without ID3v2
+		else if ((header[0] & 0xFF) == 0xFF && (header[1] & 0xE0) == 0xE0 && (header[1] & 0x06) != 0) {
+			// 11 bit frame sync followed by version and a non-zero layer
+			// (layer 0 is used by AAC ADTS, which shares the frame sync)
+			// Sample:
+			// ÿû.d............
+
+			return Format.MP3;
+		}
 		// WAVE
 		else if ((header[0] & 0xFF) == 0x52 && (header[1] & 0xFF) == 0x49 && (header[2] & 0xFF) == 0x46
 				&& (header[3] & 0xFF) == 0x46) {
@@ -82,6 +99,31 @@ public class FileUtils {
 				return Format.WAV;
 			}
 		}
+		// 64 bit WAVE
+		else if ((((header[0] & 0xFF) == 0x52 && (header[1] & 0xFF) == 0x46)
+				|| ((header[0] & 0xFF) == 0x42 && (header[1] & 0xFF) == 0x57)) && (header[2] & 0xFF) == 0x36
+				&& (header[3] & 0xFF) == 0x34) {
+			// RF64 (EBU Tech 3306) or BW64 (ITU-R BS.2088)
+			// Sample:
+			// RF64ÿÿÿÿWAVEds64
+
+			if ((header[8] & 0xFF) == 0x57 && (header[9] & 0xFF) == 0x41 && (header[10] & 0xFF) == 0x56) {
+				return Format.WAV;
+			}
+		}
+		// AIFF
+		else if ((header[0] & 0xFF) == 0x46 && (header[1] & 0xFF) == 0x4F && (header[2] & 0xFF) == 0x52
+				&& (header[3] & 0xFF) == 0x4D) {
+			// FORM
+			// Sample:
+			// FORM..Ô.AIFFCOMM
+
+			if ((header[8] & 0xFF) == 0x41 && (header[9] & 0xFF) == 0x49 && (header[10] & 0xFF) == 0x46
+					&& ((header[11] & 0xFF) == 0x46 || (header[11] & 0xFF) == 0x43)) {
+				// AIFF or AIFC
+				return Format.AIFF;
+			}
+		}
 		// MP4 / M4A
 		else if ((header[4] & 0xFF) == 0x66 && (header[5] & 0xFF) == 0x74 && (header[6] & 0xFF) == 0x79
 				&& (header[7] & 0xFF) == 0x70) {
@@ -125,6 +167,10 @@ public class FileUtils {
 		} else if ((header[0] & 0xFF) == 0x4F && (header[1] & 0xFF) == 0x67 && (header[2] & 0xFF) == 0x67
 				&& (header[3] & 0xFF) == 0x53) {
 			return Format.OGG;
+		} else if ((header[0] & 0xFF) == 0x1A && (header[1] & 0xFF) == 0x45 && (header[2] & 0xFF) == 0xDF
+				&& (header[3] & 0xFF) == 0xA3) {
+			// EBML header, Matroska or WebM
+			return Format.MKA;
 		}
 
 		return Format.UNKNOWN;
@@ -1,84 +1,273 @@
 package org.audio.utils;
 
-import java.util.Arrays;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 import org.audio.metadata.CoverArt;
 
 /**
  * Common logic for extracting cover art from byte arrays.
+ * 
+ * <p>
+ * Frames with a known layout (ID3 APIC/PIC) are parsed field by field, and the
+ * image type is taken from its signature. The data is only searched for an
+ * image signature when the structure cannot be parsed or does not lead to a
+ * recognizable image. Extracted images are slices of the given array, never
+ * copies.
+ * </p>
  */
 public class ImageExtractor {
 
 	/**
-	 * Extract embedded images from byte array. Supports JPEG, JFIF, PNG, WEBP.
+	 * Extract embedded images from byte array. Supports JPEG, PNG, WEBP, GIF and
+	 * BMP.
 	 * 
-	 * @param data full metadata frame containing header, mime type, and image data
+	 * @param data image data, possibly preceded by an unknown header
 	 * @return CoverArt instance corresponding to given array
 	 */
 	public static CoverArt extractImage(byte[] data) {
-		String mimeType = "image/";
-		String subType = "";
-
-		int imageStart = 0;
-		int imageEnd = data.length;
-		for (int idx = 0; idx < data.length; ++idx) {
-			if (prefixMatches(data, idx, MIME_IMAGE_PNG)) {
-				subType = "png";
-			} else if (prefixMatches(data, idx, MIME_IMAGE_JPEG)) {
-				// skip 'jpeg', separator, picture type, separator
-				imageStart = idx + 7;
-				subType = "jpeg";
-
-				break;
-			} else if (prefixMatches(data, idx, JPEG_HEADER_PREFIX)) {
-				// sans image/jpeg the prefix FF D8 indicates generic JPEG
-				// FF D8 FF DB
-				// FF D8 FF E0 00 10 4A 46 49 46 00 01
-				// FF D8 FF EE
-
-				// FF D8 FF E1 x x 45 78 69 66 00 00
-				// JPEG with Exif data
-
-				// FF D8 FF E0
-				// standard JPEG/JFIF
-
-				// TODO: possibly handle different sub-types separately
-				imageStart = 0;
-				subType = "jpeg";
-
-				break;
-			} else if (prefixMatches(data, idx, MIME_IMAGE_WEBP)) {
-				// skip 'webp', separator, picture type, separator
-				// TODO: can probably combine any mime types that don't have additional
-				// header/footer checks necessary
-				imageStart = idx + 7;
-				subType = "webp";
-
-				break;
+		return extractImage(data, 0, data.length);
+	}
+
+	/**
+	 * Extract an embedded image from a range of {@code data}. If the range does
+	 * not start with a known image signature it is searched for one.
+	 * 
+	 * @param data   array containing the image
+	 * @param offset start of the range
+	 * @param length number of bytes in the range
+	 * @return CoverArt instance backed by {@code data}
+	 */
+	public static CoverArt extractImage(byte[] data, int offset, int length) {
+		String mimeType = sniffMimeType(data, offset, length);
+		if (mimeType != null) {
+			return slice(mimeType, data, offset, length, CoverArt.TYPE_OTHER, "");
+		}
+
+		CoverArt scanned = scan(data, offset, length, CoverArt.TYPE_OTHER, "");
+		return scanned != null ? scanned : new CoverArt(MIME_PREFIX, data, offset, length, CoverArt.TYPE_OTHER, "");
+	}
+
+	/**
+	 * Extract the image from an ID3v2 attached picture frame.
+	 * 
+	 * <p>
+	 * APIC (2.3+): encoding, zero terminated MIME type, picture type, encoded
+	 * description, image data. PIC (2.2) uses a three character image format in
+	 * place of the MIME type.
+	 * </p>
+	 * 
+	 * @param frame   frame contents following the frame header
+	 * @param version ID3v2 major version
+	 * @return CoverArt instance backed by {@code frame}
+	 */
+	public static CoverArt extractAPIC(byte[] frame, int version) {
+		if (frame.length < 4) {
+			return extractImage(frame);
+		}
+
+		int encoding = frame[0];
+		int position = 1;
+
+		String declaredType;
+		if (version == 2) {
+			declaredType = MIME_PREFIX + new String(frame, 1, 3, StandardCharsets.ISO_8859_1).toLowerCase();
+			position = 4;
+		} else {
+			int end = ByteSearch.indexOf(frame, position, frame.length, NUL);
+			if (end == -1) {
+				return extractImage(frame);
 			}
+			declaredType = new String(frame, position, end - position, StandardCharsets.ISO_8859_1);
+			position = end + 1;
+		}
+		if (position >= frame.length) {
+			return extractImage(frame);
+		}
+
+		int pictureType = frame[position++] & 0xFF;
 
-			// PNG is the only mime type that has additional checks needed (so far)
-			if (subType.equals("png") || subType.isEmpty()) {
-				if (prefixMatches(data, idx, PNG_HEADER)) {
-					imageStart = idx;
-					subType = "png";
-				}
-				if (prefixMatches(data, idx, PNG_FOOTER)) {
-					imageEnd = idx + PNG_FOOTER.length;
-					break;
-				}
+		// description is terminated according to its encoding
+		boolean wide = encoding == 1 || encoding == 2;
+		int end = wide ? findWideTerminator(frame, position) : ByteSearch.indexOf(frame, position, frame.length, NUL);
+		if (end == -1) {
+			return extractImage(frame);
+		}
+		String description = new String(frame, position, end - position, charset(encoding));
+		position = end + (wide ? 2 : 1);
+
+		int length = frame.length - position;
+		String mimeType = sniffMimeType(frame, position, length);
+		if (mimeType != null) {
+			return slice(mimeType, frame, position, length, pictureType, description);
+		}
+
+		// header was readable but the data does not start with a known signature
+		CoverArt scanned = scan(frame, position, length, pictureType, description);
+		return scanned != null ? scanned
+				: new CoverArt(normalizeMimeType(declaredType), frame, position, length, pictureType, description);
+	}
+
+	/**
+	 * Normalizes declared MIME types, some of which leave off 'image/' or use
+	 * non-standard sub-types.
+	 * 
+	 * @param declared MIME type as found in the file
+	 * @return MIME type starting with 'image/'
+	 */
+	public static String normalizeMimeType(String declared) {
+		String mimeType = declared.trim().toLowerCase();
+		if (!mimeType.startsWith(MIME_PREFIX)) {
+			mimeType = MIME_PREFIX + mimeType;
+		}
+		if (mimeType.equals("image/jpg")) {
+			mimeType = "image/jpeg";
+		}
+		return mimeType;
+	}
+
+	/**
+	 * Determine the image type from the signature at the start of the range.
+	 * 
+	 * @param data   search space
+	 * @param offset start of the range
+	 * @param length number of bytes in the range
+	 * @return MIME type, or {@code null} if the signature is not recognized
+	 */
+	public static String sniffMimeType(byte[] data, int offset, int length) {
+		if (length >= JPEG_HEADER_PREFIX.length && ByteSearch.matchesAt(data, offset, JPEG_HEADER_PREFIX)) {
+			// FF D8 FF DB
+			// FF D8 FF E0 00 10 4A 46 49 46 00 01
+			// FF D8 FF EE
+
+			// FF D8 FF E1 x x 45 78 69 66 00 00
+			// JPEG with Exif data
+
+			// FF D8 FF E0
+			// standard JPEG/JFIF
+			return "image/jpeg";
+		} else if (length >= PNG_HEADER.length && ByteSearch.matchesAt(data, offset, PNG_HEADER)) {
+			return "image/png";
+		} else if (length >= 12 && ByteSearch.matchesAt(data, offset, RIFF)
+				&& ByteSearch.matchesAt(data, offset + 8, WEBP)) {
+			return "image/webp";
+		} else if (length >= GIF.length && ByteSearch.matchesAt(data, offset, GIF)) {
+			return "image/gif";
+		} else if (length >= BMP.length && ByteSearch.matchesAt(data, offset, BMP)) {
+			return "image/bmp";
+		}
+
+		return null;
+	}
+
+	/**
+	 * Search the range for the earliest known image signature.
+	 * 
+	 * @param data        search space
+	 * @param offset      start of the range
+	 * @param length      number of bytes in the range
+	 * @param pictureType picture type for the result
+	 * @param description description for the result
+	 * @return image starting at the first signature, or {@code null} if none
+	 */
+	private static CoverArt scan(byte[] data, int offset, int length, int pictureType, String description) {
+		int end = offset + length;
+		int start = end;
+		String mimeType = null;
+
+		int jpeg = ByteSearch.indexOf(data, offset, end, JPEG_HEADER_PREFIX);
+		if (jpeg != -1) {
+			start = jpeg;
+			mimeType = "image/jpeg";
+		}
+
+		// later searches only need to cover the range before the best match so far
+		int png = ByteSearch.indexOf(data, offset, Math.min(end, start + PNG_HEADER.length), PNG_HEADER);
+		if (png != -1) {
+			start = png;
+			mimeType = "image/png";
+		}
+
+		int webp = ByteSearch.indexOf(data, offset, Math.min(end, start + 8 + WEBP.length), WEBP);
+		if (webp - 8 >= offset && ByteSearch.matchesAt(data, webp - 8, RIFF)) {
+			start = webp - 8;
+			mimeType = "image/webp";
+		}
+
+		if (mimeType == null) {
+			return null;
+		}
+		return slice(mimeType, data, start, end - start, pictureType, description);
+	}
+
+	/**
+	 * Creates a CoverArt backed by a range of {@code data}, trimming anything
+	 * following the end of a PNG image.
+	 * 
+	 * @param mimeType    MIME type of the image
+	 * @param data        array containing the image
+	 * @param offset      start of the image
+	 * @param length      number of bytes up to the end of the range
+	 * @param pictureType picture type
+	 * @param description description of the image
+	 * @return CoverArt instance backed by {@code data}
+	 */
+	private static CoverArt slice(String mimeType, byte[] data, int offset, int length, int pictureType,
+			String description) {
+		if (mimeType.equals("image/png") && length >= PNG_FOOTER.length && !ByteSearch.matchesAt(data, offset + length - PNG_FOOTER.length,
+				PNG_FOOTER)) {
+			// only search for the footer if the image is followed by something else
+			int footer = ByteSearch.indexOf(data, offset, offset + length, PNG_FOOTER);
+			if (footer != -1) {
+				length = footer + PNG_FOOTER.length - offset;
+			}
+		}
+
+		return new CoverArt(mimeType, data, offset, length, pictureType, description);
+	}
+
+	/**
+	 * Find the two byte terminator of a UTF-16 string.
+	 * 
+	 * @param data  search space
+	 * @param start start of the string
+	 * @return index of the terminator, or -1 if there is none
+	 */
+	private static int findWideTerminator(byte[] data, int start) {
+		for (int index = start; index + 1 < data.length; index += 2) {
+			if (data[index] == 0 && data[index + 1] == 0) {
+				return index;
 			}
 		}
+		return -1;
+	}
 
-		byte[] imageData = Arrays.copyOfRange(data, imageStart, imageEnd);
-		return new CoverArt(mimeType + subType, imageData);
+	/**
+	 * @param encoding ID3v2 text encoding byte
+	 * @return the corresponding character set
+	 */
+	private static Charset charset(int encoding) {
+		switch (encoding) {
+			case 1:
+				return StandardCharsets.UTF_16;
+			case 2:
+				return StandardCharsets.UTF_16BE;
+			case 3:
+				return StandardCharsets.UTF_8;
+			default:
+				return StandardCharsets.ISO_8859_1;
+		}
 	}
 
 	/**
-	 * MIME type image/png. Some formats allow leaving off 'image/', so I am only
-	 * looking for the sub-type.
+	 * All MIME types produced start with this prefix.
 	 */
-	private static final byte[] MIME_IMAGE_PNG = "png".getBytes();
+	private static final String MIME_PREFIX = "image/";
+
+	/**
+	 * Single zero byte terminating ISO-8859-1 and UTF-8 strings
+	 */
+	private static final byte[] NUL = { 0 };
 
 	/**
 	 * 8 byte header found at the start of PNG image data.
@@ -90,38 +279,28 @@ public class ImageExtractor {
 	 */
 	private static final byte[] PNG_FOOTER = { 0x49, 0x45, 0x4E, 0x44, (byte) 0xAE, 0x42, 0x60, (byte) 0x82 };
 
-	/**
-	 * MIME type for JPEG
-	 */
-	private static final byte[] MIME_IMAGE_JPEG = "jpeg".getBytes();
-
 	/**
 	 * 3 byte common prefix for various types of JPEG headers
 	 */
 	private static final byte[] JPEG_HEADER_PREFIX = { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF };
 
 	/**
-	 * MIME type for WEBP
+	 * RIFF container marker found at the start of WEBP image data
 	 */
-	private static final byte[] MIME_IMAGE_WEBP = "webp".getBytes();
+	private static final byte[] RIFF = { 0x52, 0x49, 0x46, 0x46 };
 
 	/**
-	 * Determine if {@code} query matches {@code data} at {@code index}
-	 * 
-	 * @param data  search space
-	 * @param index start index
-	 * @param query search term
-	 * @return true if {@code query} is found at {@code index}
+	 * WEBP form type following the RIFF size
 	 */
-	private static boolean prefixMatches(byte[] data, int index, byte[] query) {
-		int offset = 0;
+	private static final byte[] WEBP = { 0x57, 0x45, 0x42, 0x50 };
 
-		for (; offset < query.length; offset++) {
-			if (data[index + offset] != query[offset]) {
-				break;
-			}
-		}
+	/**
+	 * GIF87a / GIF89a common prefix
+	 */
+	private static final byte[] GIF = { 0x47, 0x49, 0x46, 0x38 };
 
-		return offset == query.length;
-	}
+	/**
+	 * Windows bitmap file header
+	 */
+	private static final byte[] BMP = { 0x42, 0x4D };
 }
@@ -0,0 +1,116 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.StreamInfo;
+import org.audio.metadata.reader.MetadataReader;
+import org.audio.metadata.reader.ReaderLimits;
+import org.audio.metadata.reader.ReaderStatistics;
+import org.audio.utils.FileUtils;
+import org.audio.utils.FileUtils.Format;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests reading AIFF and AIFF-C files.
+ */
+public class AIFFReaderTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	@AfterEach
+	void disable() {
+		ReaderStatistics.getInstance().setEnabled(false);
+		ReaderStatistics.getInstance().reset();
+	}
+
+	@Test
+	void test_aiff() throws IOException {
+		Path path = SyntheticAudio.write(directory, "test.aiff", SyntheticAudio.aiff());
+		assertEquals(Format.AIFF, FileUtils.determineFormatByHeader(path));
+
+		Metadata metadata = MetadataReader.of(path).getMetadata();
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of(SyntheticAudio.ARTIST), metadata.getTextField(Constants.ARTIST_NAME));
+		// from the ID3 chunk after the sound data
+		assertEquals(List.of(SyntheticAudio.ALBUM), metadata.getTextField(Constants.ALBUM_NAME));
+
+		StreamInfo info = metadata.getStreamInfo();
+		assertEquals(SyntheticAudio.SAMPLE_RATE, info.getSampleRate());
+		assertEquals(2, info.getChannels());
+		assertEquals(Duration.ofSeconds(10), info.getDuration());
+	}
+
+	@Test
+	void test_aifc() throws IOException {
+		// compression type and name follow the common fields
+		ByteArrayOutputStream common = new ByteArrayOutputStream();
+		common.writeBytes(SyntheticAudio.aiffCommon(SyntheticAudio.SAMPLE_RATE));
+		common.writeBytes("sowt".getBytes(StandardCharsets.US_ASCII));
+		common.writeBytes(new byte[] { 0 });
+
+		ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+		chunks.writeBytes("AIFC".getBytes(StandardCharsets.US_ASCII));
+		SyntheticAudio.iffChunk(chunks, "FVER", ByteBuffer.allocate(4).putInt(0xA2805140).array());
+		SyntheticAudio.iffChunk(chunks, "COMM", common.toByteArray());
+		// odd sized, followed by a padding byte
+		SyntheticAudio.iffChunk(chunks, "ANNO", "one".getBytes(StandardCharsets.US_ASCII));
+		SyntheticAudio.iffChunk(chunks, "ANNO", "two".getBytes(StandardCharsets.US_ASCII));
+		SyntheticAudio.iffChunk(chunks, "SSND", new byte[8 + 4096]);
+		SyntheticAudio.iffChunk(chunks, "NAME", SyntheticAudio.TITLE.getBytes(StandardCharsets.ISO_8859_1));
+
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		file.writeBytes("FORM".getBytes(StandardCharsets.US_ASCII));
+		file.writeBytes(ByteBuffer.allocate(4).putInt(chunks.size()).array());
+		file.writeBytes(chunks.toByteArray());
+		Path path = SyntheticAudio.write(directory, "test.aifc", file.toByteArray());
+
+		Metadata metadata = MetadataReader.of(path).getMetadata();
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of("one", "two"), metadata.getTextField("Comments"));
+		assertEquals(Duration.ofSeconds(1), metadata.getStreamInfo().getDuration());
+		assertEquals(4096 * 8, metadata.getStreamInfo().getBitrate());
+	}
+
+	@Test
+	void test_oversizedChunk() throws IOException {
+		Path path = SyntheticAudio.write(directory, "test.aiff", SyntheticAudio.aiff());
+		ReaderStatistics statistics = ReaderStatistics.getInstance();
+		statistics.reset();
+		statistics.setEnabled(true);
+
+		PrintStream stderr = System.err;
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(errors));
+		try {
+			// every chunk exceeds the tag size limit
+			Metadata metadata = MetadataReader.of(path, new ReaderLimits(8, 8, 64, 4)).getMetadata();
+			assertTrue(metadata.getTextFields().isEmpty());
+		} finally {
+			System.setErr(stderr);
+		}
+
+		// reported as a failed read, not printed
+		assertEquals(1, statistics.getFormat(Format.AIFF).getFailures());
+		assertEquals(0, errors.size());
+	}
+}
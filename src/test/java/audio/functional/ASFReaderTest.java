@@ -0,0 +1,131 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.CoverArt;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.StreamInfo;
+import org.audio.metadata.reader.MetadataReader;
+import org.audio.metadata.reader.ReaderLimits;
+import org.audio.metadata.reader.ReaderStatistics;
+import org.audio.utils.FileUtils.Format;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests reading the header objects of ASF files.
+ */
+public class ASFReaderTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	@AfterEach
+	void disable() {
+		ReaderStatistics.getInstance().setEnabled(false);
+		ReaderStatistics.getInstance().reset();
+	}
+
+	@Test
+	void test_wma() throws IOException {
+		Path path = SyntheticAudio.write(directory, "test.wma", SyntheticAudio.wma());
+		Metadata metadata = MetadataReader.of(path).getMetadata();
+
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of(SyntheticAudio.ARTIST), metadata.getTextField(Constants.ARTIST_NAME));
+		assertEquals(List.of(SyntheticAudio.ALBUM), metadata.getTextField(Constants.ALBUM_NAME));
+		assertEquals(List.of("3"), metadata.getTextField(Constants.TRACK_NUMBER));
+
+		List<CoverArt> images = metadata.getImages();
+		assertEquals(1, images.size());
+		assertEquals("image/jpeg", images.get(0).getMimeType());
+		assertArrayEquals(SyntheticAudio.JPEG, images.get(0).getBinaryData());
+
+		// the preroll is not part of the duration
+		StreamInfo info = metadata.getStreamInfo();
+		assertEquals(Duration.ofSeconds(10), info.getDuration());
+		assertEquals(SyntheticAudio.SAMPLE_RATE, info.getSampleRate());
+		assertEquals(2, info.getChannels());
+		assertEquals(128_000, info.getBitrate());
+	}
+
+	@Test
+	void test_oversizedHeader() throws IOException {
+		Path path = SyntheticAudio.write(directory, "test.wma", SyntheticAudio.wma());
+		ReaderStatistics statistics = ReaderStatistics.getInstance();
+		statistics.reset();
+		statistics.setEnabled(true);
+
+		// the header object exceeds the tag size limit
+		Metadata metadata = MetadataReader.of(path, new ReaderLimits(64, 64, 64, 4)).getMetadata();
+		assertTrue(metadata.getTextFields().isEmpty());
+		assertEquals(1, statistics.getFormat(Format.WMA).getFailures());
+	}
+
+	@Test
+	void test_metadataLibrary() throws IOException {
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		records.writeBytes(new byte[] { 3, 0 });
+		libraryRecord(records, "WM/Composer", 0, SyntheticAudio.utf16("Composer"));
+		libraryRecord(records, "WM/PartOfSet", 5, new byte[] { 2, 0 });
+		libraryRecord(records, "IsVBR", 2, new byte[] { 1, 0 });
+
+		ByteArrayOutputStream library = new ByteArrayOutputStream();
+		SyntheticAudio.asfObject(library, "44231C94-9498-49D1-A141-1D134E457054", records.toByteArray());
+
+		ByteBuffer extension = ByteBuffer.allocate(22 + library.size()).order(ByteOrder.LITTLE_ENDIAN);
+		extension.position(18);
+		extension.putInt(library.size()).put(library.toByteArray());
+
+		ByteArrayOutputStream objects = new ByteArrayOutputStream();
+		SyntheticAudio.asfObject(objects, "5FBF03B5-A92E-11CF-8EE3-00C00C205365", extension.array());
+
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		file.writeBytes(SyntheticAudio.asfGuid("75B22630-668E-11CF-A6D9-00AA0062CE6C"));
+		file.writeBytes(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(30 + objects.size()).array());
+		file.writeBytes(SyntheticAudio.le32(1));
+		file.writeBytes(new byte[] { 1, 2 });
+		file.writeBytes(objects.toByteArray());
+		Path path = SyntheticAudio.write(directory, "test.wma", file.toByteArray());
+
+		Metadata metadata = MetadataReader.of(path).getMetadata();
+		assertEquals(List.of("Composer"), metadata.getTextField(Constants.COMPOSER));
+		assertEquals(List.of("2"), metadata.getTextField(Constants.DISC_NUMBER));
+		assertEquals(List.of("true"), metadata.getTextField("IsVBR"));
+	}
+
+	/**
+	 * Appends a description record of the Metadata Library Object.
+	 *
+	 * @param out   destination
+	 * @param name  attribute name
+	 * @param type  attribute data type
+	 * @param value attribute value
+	 */
+	private static void libraryRecord(ByteArrayOutputStream out, String name, int type, byte[] value) {
+		byte[] encoded = SyntheticAudio.utf16(name);
+		ByteBuffer record = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+		record.putShort((short) 0).putShort((short) 0).putShort((short) encoded.length).putShort((short) type)
+				.putInt(value.length);
+		out.writeBytes(record.array());
+		out.writeBytes(encoded);
+		out.writeBytes(value);
+	}
+}
@@ -0,0 +1,55 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.audio.metadata.ArtworkStore;
+import org.audio.metadata.CoverArt;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.reader.MetadataReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests sharing identical images across files.
+ */
+public class ArtworkStoreTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	@Test
+	void test_sharedAcrossFormats() throws IOException {
+		ArtworkStore store = new ArtworkStore();
+		Path[] files = { SyntheticAudio.write(directory, "1.mp3", SyntheticAudio.mp3()),
+				SyntheticAudio.write(directory, "2.mp3", SyntheticAudio.mp3()),
+				SyntheticAudio.write(directory, "3.flac", SyntheticAudio.flac()),
+				SyntheticAudio.write(directory, "4.m4a", SyntheticAudio.m4a()) };
+
+		CoverArt first = null;
+		for (Path file : files) {
+			MetadataReader reader = MetadataReader.of(file);
+			reader.setArtworkStore(store);
+			Metadata metadata = reader.getMetadata();
+
+			CoverArt cover = metadata.getImages().get(0);
+			if (first == null) {
+				first = cover;
+			}
+			assertSame(first.getBinaryData(), cover.getBinaryData());
+		}
+
+		assertEquals(1, store.size());
+		assertEquals(1, store.getMissCount());
+		assertEquals(3, store.getHitCount());
+		assertEquals(3L * SyntheticAudio.JPEG.length, store.getBytesSaved());
+	}
+}
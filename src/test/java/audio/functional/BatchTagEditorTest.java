@@ -0,0 +1,105 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.reader.MetadataReader;
+import org.audio.metadata.writer.BatchTagEditor;
+import org.audio.metadata.writer.BatchTagEditor.Outcome;
+import org.audio.metadata.writer.BatchTagEditor.Report;
+import org.audio.metadata.writer.MetadataWriter.WriteMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests grouping and reporting of batch tag edits.
+ */
+public class BatchTagEditorTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	@Test
+	void test_batch() throws IOException, InterruptedException {
+		Path mp3 = SyntheticAudio.write(directory, "test.mp3", SyntheticAudio.mp3());
+		Path flac = SyntheticAudio.write(directory, "test.flac", SyntheticAudio.flac());
+		Path m4a = SyntheticAudio.write(directory, "test.m4a", SyntheticAudio.m4a());
+		Path wav = SyntheticAudio.write(directory, "test.wav", SyntheticAudio.wav());
+
+		Report report;
+		try (BatchTagEditor editor = new BatchTagEditor(2)) {
+			for (Path file : List.of(mp3, flac, m4a, wav)) {
+				editor.add(file, Map.of(Constants.TITLE, "First"));
+			}
+			// later edits to the same file are merged, the last value wins
+			editor.add(mp3, Map.of(Constants.TITLE, "Second", Constants.ARTIST_NAME, "Batch Artist"));
+			editor.add(flac.resolveSibling("./test.flac"), Map.of(Constants.ARTIST_NAME, "Batch Artist"));
+			editor.add(m4a, Map.of(Constants.ARTIST_NAME, "Batch Artist", Constants.COPYRIGHT, "Batch Copyright ".repeat(8)));
+			report = editor.execute();
+
+			// the queue is empty afterwards
+			assertTrue(editor.execute().getOutcomes().isEmpty());
+		}
+
+		List<Outcome> outcomes = report.getOutcomes();
+		assertEquals(4, outcomes.size());
+		assertEquals(WriteMode.IN_PLACE, outcomes.get(0).getMode());
+		assertEquals(WriteMode.IN_PLACE, outcomes.get(1).getMode());
+		// the synthetic M4A has no free atom to grow into
+		assertEquals(WriteMode.REWRITTEN, outcomes.get(2).getMode());
+		assertFalse(outcomes.get(3).isSuccess());
+		assertNull(outcomes.get(3).getMode());
+		assertEquals(2, report.count(WriteMode.IN_PLACE));
+		assertEquals(1, report.count(WriteMode.REWRITTEN));
+		assertEquals(1, report.getFailureCount());
+		assertTrue(report.getFilesPerSecond() > 0);
+
+		Metadata metadata = MetadataReader.of(mp3).getMetadata();
+		assertEquals(List.of("Second"), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of("Batch Artist"), metadata.getTextField(Constants.ARTIST_NAME));
+		for (Path file : List.of(flac, m4a)) {
+			metadata = MetadataReader.of(file).getMetadata();
+			assertEquals(List.of("First"), metadata.getTextField(Constants.TITLE));
+			assertEquals(List.of("Batch Artist"), metadata.getTextField(Constants.ARTIST_NAME));
+		}
+	}
+
+	@Test
+	void test_unexpectedFailure() throws IOException, InterruptedException {
+		Path mp3 = SyntheticAudio.write(directory, "test.mp3", SyntheticAudio.mp3());
+		Path flac = SyntheticAudio.write(directory, "test.flac", SyntheticAudio.flac());
+
+		// writers do not expect a tag without a name
+		Map<String, String> unnamed = new HashMap<>();
+		unnamed.put(null, "Value");
+
+		Report report;
+		try (BatchTagEditor editor = new BatchTagEditor(2)) {
+			editor.add(mp3, unnamed);
+			editor.add(flac, Map.of(Constants.TITLE, "First"));
+			report = editor.execute();
+		}
+
+		List<Outcome> outcomes = report.getOutcomes();
+		assertEquals(2, outcomes.size());
+		assertInstanceOf(NullPointerException.class, outcomes.get(0).getError());
+		assertEquals(WriteMode.IN_PLACE, outcomes.get(1).getMode());
+		assertEquals(List.of("First"), MetadataReader.of(flac).getMetadata().getTextField(Constants.TITLE));
+	}
+}
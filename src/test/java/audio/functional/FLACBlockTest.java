@@ -0,0 +1,187 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.CoverArt;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.MetadataVisitor;
+import org.audio.metadata.reader.FLACReader;
+import org.audio.metadata.reader.MetadataReader;
+import org.audio.metadata.reader.ReaderLimits;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests sequential and parallel decoding of FLAC metadata blocks.
+ */
+public class FLACBlockTest {
+
+	/**
+	 * number of PICTURE blocks in the generated file
+	 */
+	private static final int PICTURES = 12;
+
+	/**
+	 * number of Vorbis comments following title, artist and album
+	 */
+	private static final int COMMENTS = 20;
+
+	/**
+	 * bytes added to a PICTURE block to exceed the image size limit
+	 */
+	private static final int OVERSIZE = 4096;
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * @return path to a new file written by {@link #write(int)} without an
+	 *         oversized block
+	 */
+	private Path write() throws IOException {
+		return write(-1);
+	}
+
+	/**
+	 * Writes a FLAC with many PICTURE blocks, each with a distinct picture type,
+	 * surrounded by VORBIS_COMMENT and PADDING blocks.
+	 *
+	 * @param oversized picture type of the block grown by {@link #OVERSIZE}
+	 *                  bytes, -1 for none
+	 * @return path to the new file
+	 */
+	private Path write(int oversized) throws IOException {
+		String[] comments = new String[COMMENTS];
+		for (int i = 0; i < COMMENTS; ++i) {
+			comments[i] = "COMMENT" + i + "=" + i;
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(new byte[] { 'f', 'L', 'a', 'C' });
+		SyntheticAudio.flacBlock(out, 0, false, SyntheticAudio.streamInfo());
+		SyntheticAudio.flacBlock(out, 4, false, SyntheticAudio.vorbisComments(false, comments));
+		for (int type = 0; type < PICTURES; ++type) {
+			byte[] picture = SyntheticAudio.flacPicture();
+			picture[3] = (byte) type;
+			if (type == oversized) {
+				picture = Arrays.copyOf(picture, picture.length + OVERSIZE);
+			}
+			SyntheticAudio.flacBlock(out, 6, false, picture);
+			SyntheticAudio.flacBlock(out, 1, false, new byte[16]);
+		}
+		SyntheticAudio.flacBlock(out, 1, true, new byte[64]);
+		out.writeBytes(new byte[1024]);
+		return SyntheticAudio.write(directory, "blocks.flac", out.toByteArray());
+	}
+
+	/**
+	 * @param metadata parsed metadata
+	 * @return picture types of all images in order
+	 */
+	private static List<Integer> pictureTypes(Metadata metadata) {
+		List<Integer> types = new ArrayList<>();
+		for (CoverArt image : metadata.getImages()) {
+			types.add(image.getPictureType());
+		}
+		return types;
+	}
+
+	@Test
+	void test_parallelPreservesOrder() throws IOException {
+		Path file = write();
+
+		FLACReader sequential = (FLACReader) MetadataReader.of(file);
+		sequential.setParallelThreshold(Long.MAX_VALUE);
+		Metadata expected = sequential.getMetadata();
+
+		FLACReader parallel = (FLACReader) MetadataReader.of(file);
+		parallel.setParallelThreshold(0);
+		Metadata actual = parallel.getMetadata();
+
+		List<Integer> order = new ArrayList<>();
+		for (int type = 0; type < PICTURES; ++type) {
+			order.add(type);
+		}
+		assertEquals(order, pictureTypes(expected));
+		assertEquals(order, pictureTypes(actual));
+		assertEquals(expected.getTextFields(), actual.getTextFields());
+		assertEquals(List.of(SyntheticAudio.TITLE), actual.getTextField(Constants.TITLE));
+	}
+
+	@Test
+	void test_parallelVisitorOrder() throws IOException {
+		Path file = write();
+
+		FLACReader sequential = (FLACReader) MetadataReader.of(file);
+		sequential.setParallelThreshold(Long.MAX_VALUE);
+		List<String> expected = new ArrayList<>();
+		sequential.accept(recorder(expected));
+
+		FLACReader parallel = (FLACReader) MetadataReader.of(file);
+		parallel.setParallelThreshold(0);
+		List<String> actual = new ArrayList<>();
+		parallel.accept(recorder(actual));
+
+		// comments in file order, then the pictures
+		assertEquals(3 + COMMENTS + PICTURES, expected.size());
+		assertEquals(Constants.TITLE, expected.get(0));
+		assertEquals("COMMENT0", expected.get(3));
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	void test_oversizedBlockSkipped() throws IOException {
+		Path file = write(5);
+		ReaderLimits limits = new ReaderLimits(1 << 20, OVERSIZE, 1024, 8);
+
+		for (long threshold : new long[] { Long.MAX_VALUE, 0 }) {
+			FLACReader reader = (FLACReader) MetadataReader.of(file, limits);
+			reader.setParallelThreshold(threshold);
+			Metadata metadata = reader.getMetadata();
+
+			// only the oversized block is lost
+			List<Integer> order = new ArrayList<>();
+			for (int type = 0; type < PICTURES; ++type) {
+				if (type != 5) {
+					order.add(type);
+				}
+			}
+			assertEquals(order, pictureTypes(metadata));
+			assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		}
+	}
+
+	/**
+	 * @param events receiver of each text field's tag and each image's picture
+	 *               type, in the order they are visited
+	 * @return visitor recording into {@code events}
+	 */
+	private static MetadataVisitor recorder(List<String> events) {
+		return new MetadataVisitor() {
+			@Override
+			public void onTextField(String tag, byte[] data, int offset, int length, Charset encoding) {
+				events.add(tag);
+			}
+
+			@Override
+			public void onImage(byte[] data, int offset, int length, String mimeType, int pictureType,
+					String description) {
+				events.add("picture " + pictureType);
+			}
+		};
+	}
+}
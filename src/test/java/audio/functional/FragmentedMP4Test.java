@@ -0,0 +1,131 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.FragmentIndex;
+import org.audio.metadata.FragmentIndex.Fragment;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.reader.MetadataReader;
+import org.audio.metadata.reader.ReaderStatistics;
+import org.audio.utils.FileUtils;
+import org.audio.utils.FileUtils.Format;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests indexing the fragments of fragmented MP4 files.
+ */
+public class FragmentedMP4Test {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * size of the media data of each fragment
+	 */
+	private static final int MDAT_SIZE = 1000;
+
+	/**
+	 * size of each moof/mdat pair
+	 */
+	private static final int FRAGMENT_SIZE = 8 + 16 + 8 + MDAT_SIZE;
+
+	@AfterEach
+	void disable() {
+		ReaderStatistics.getInstance().setEnabled(false);
+		ReaderStatistics.getInstance().reset();
+	}
+
+	@Test
+	void test_segmentIndex() throws IOException {
+		byte[] data = SyntheticAudio.fragmentedM4a(1000, MDAT_SIZE, true);
+		Path path = SyntheticAudio.write(directory, "test.mp4", data);
+		assertEquals(Format.DASH, FileUtils.determineFormatByHeader(path));
+
+		ReaderStatistics statistics = ReaderStatistics.getInstance();
+		statistics.reset();
+		statistics.setEnabled(true);
+		Metadata metadata = MetadataReader.of(path).getMetadata();
+
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(1, metadata.getImages().size());
+
+		FragmentIndex index = metadata.getFragmentIndex();
+		assertNotNull(index);
+		assertEquals(1000, index.size());
+		assertEquals(SyntheticAudio.SAMPLE_RATE, index.getTimescale());
+
+		// fragments end the file
+		long first = data.length - 1000L * FRAGMENT_SIZE;
+		Fragment fragment = index.find(Duration.ofMillis(2500));
+		assertEquals(first + 2L * FRAGMENT_SIZE, fragment.offset());
+		assertEquals(FRAGMENT_SIZE, fragment.size());
+		assertEquals(Duration.ofSeconds(2), fragment.start());
+		assertEquals(Duration.ofSeconds(1), fragment.duration());
+
+		assertEquals(first, index.find(Duration.ZERO).offset());
+		assertEquals(999, index.find(Duration.ofMillis(999_999)).start().getSeconds());
+		assertNull(index.find(Duration.ofSeconds(1000)));
+
+		// the fragments are not visited
+		assertTrue(statistics.getFormat(Format.DASH).getBytesRead() < 32768);
+	}
+
+	@Test
+	void test_randomAccessIndex() throws IOException {
+		byte[] data = SyntheticAudio.fragmentedM4a(5, MDAT_SIZE, false);
+		Path path = SyntheticAudio.write(directory, "test.mp4", data);
+		Metadata metadata = MetadataReader.of(path).getMetadata();
+
+		assertEquals(List.of(SyntheticAudio.ALBUM), metadata.getTextField(Constants.ALBUM_NAME));
+
+		FragmentIndex index = metadata.getFragmentIndex();
+		assertNotNull(index);
+		assertEquals(5, index.size());
+
+		Fragment fragment = index.find(Duration.ofMillis(1500));
+		assertEquals(FRAGMENT_SIZE, fragment.size());
+		assertEquals(Duration.ofSeconds(1), fragment.start());
+		assertEquals(Duration.ofSeconds(1), fragment.duration());
+
+		// the last fragment runs up to mfra, for however long it plays
+		Fragment last = index.find(Duration.ofHours(1));
+		assertEquals(index.get(4), last);
+		assertEquals(FRAGMENT_SIZE, last.size());
+		assertNull(last.duration());
+	}
+
+	@Test
+	void test_oversizedRandomAccessIndex() throws IOException {
+		byte[] data = SyntheticAudio.fragmentedM4a(5, MDAT_SIZE, false);
+		// mfro claims an mfra larger than the file
+		Arrays.fill(data, data.length - 4, data.length, (byte) 0xFF);
+		Path path = SyntheticAudio.write(directory, "test.mp4", data);
+
+		Metadata metadata = MetadataReader.of(path).getMetadata();
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertNull(metadata.getFragmentIndex());
+	}
+
+	@Test
+	void test_unfragmented() throws IOException {
+		Path path = SyntheticAudio.write(directory, "test.m4a", SyntheticAudio.m4a());
+		assertNull(MetadataReader.of(path).getMetadata().getFragmentIndex());
+	}
+}
@@ -0,0 +1,97 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.reader.MetadataReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests ID3v2 features that are not present in the sample files.
+ */
+public class ID3VersionTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * Writes an MP3 consisting of {@code tag} followed by fake audio and parses
+	 * it.
+	 * 
+	 * @param tag complete ID3v2 tag
+	 * @return parsed metadata
+	 */
+	private Metadata read(byte[] tag) throws IOException {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		file.writeBytes(tag);
+		file.writeBytes(SyntheticAudio.mpegFrames());
+		Path path = SyntheticAudio.write(directory, "test.mp3", file.toByteArray());
+		return MetadataReader.of(path).getMetadata();
+	}
+
+	@Test
+	void test_v22() throws IOException {
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		SyntheticAudio.id3v22Frame(frames, "TT2", SyntheticAudio.latin1Text(SyntheticAudio.TITLE));
+		SyntheticAudio.id3v22Frame(frames, "TP1", SyntheticAudio.latin1Text(SyntheticAudio.ARTIST));
+
+		Metadata metadata = read(SyntheticAudio.id3Tag(2, 0, frames.toByteArray(), 32));
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of(SyntheticAudio.ARTIST), metadata.getTextField(Constants.ARTIST_NAME));
+	}
+
+	@Test
+	void test_v24CompressedAndUnsynchronised() throws IOException {
+		// compressed frame with data length indicator
+		byte[] title = SyntheticAudio.latin1Text(SyntheticAudio.TITLE);
+		Deflater deflater = new Deflater();
+		deflater.setInput(title);
+		deflater.finish();
+		byte[] compressed = new byte[256];
+		int length = deflater.deflate(compressed);
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		body.writeBytes(SyntheticAudio.synchsafe(title.length));
+		body.write(compressed, 0, length);
+
+		// unsynchronised UTF-16 frame, the 0xFF of the BOM is followed by an inserted 0x00
+		byte[] artist = { 1, (byte) 0xFF, 0x00, (byte) 0xFE, 'A', 0, 'B', 0, 0, 0 };
+
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		SyntheticAudio.id3v24Frame(frames, "TIT2", 0x09, body.toByteArray());
+		SyntheticAudio.id3v24Frame(frames, "TPE1", 0x02, artist);
+		SyntheticAudio.id3v24Frame(frames, "TALB", 0, SyntheticAudio.latin1Text(SyntheticAudio.ALBUM));
+
+		Metadata metadata = read(SyntheticAudio.id3Tag(4, 0, frames.toByteArray(), 16));
+		assertEquals(List.of(SyntheticAudio.ALBUM), metadata.getTextField(Constants.ALBUM_NAME));
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of("AB"), metadata.getTextField(Constants.ARTIST_NAME));
+	}
+
+	@Test
+	void test_junkPadding() throws IOException {
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		SyntheticAudio.id3Frame(frames, "TIT2", SyntheticAudio.latin1Text(SyntheticAudio.TITLE));
+
+		// padding should be zeroes, but some taggers leave junk behind
+		frames.writeBytes(new byte[] { 0, 'x', 'y', 'z', 0x7F, 0x7F, 0x7F, 0x7F, 1, 2 });
+
+		Metadata metadata = read(SyntheticAudio.id3Tag(3, 0, frames.toByteArray(), 0));
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertFalse(metadata.getTextFields().containsKey("\0xyz"));
+	}
+}
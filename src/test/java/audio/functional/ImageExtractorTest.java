@@ -0,0 +1,97 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.audio.metadata.CoverArt;
+import org.audio.utils.ByteSearch;
+import org.audio.utils.ImageExtractor;
+import org.junit.jupiter.api.Test;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests structured image extraction and the underlying byte search.
+ */
+public class ImageExtractorTest {
+
+	/**
+	 * Reference implementation for comparison
+	 */
+	private static int naiveIndexOf(byte[] data, int from, int to, byte[] pattern) {
+		for (int i = from; i <= to - pattern.length; ++i) {
+			if (ByteSearch.matchesAt(data, i, pattern)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Reference implementation for comparison
+	 */
+	private static int naiveLastIndexOf(byte[] data, int from, int to, byte[] pattern) {
+		for (int i = to - pattern.length; i >= from; --i) {
+			if (ByteSearch.matchesAt(data, i, pattern)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Test
+	void test_byteSearch() {
+		Random random = new Random(29);
+		for (int i = 0; i < 2000; ++i) {
+			// small alphabet so that matches and near-matches are common
+			byte[] data = new byte[random.nextInt(64)];
+			for (int j = 0; j < data.length; ++j) {
+				data[j] = (byte) (random.nextInt(3) - 1);
+			}
+			byte[] pattern = new byte[1 + random.nextInt(3)];
+			for (int j = 0; j < pattern.length; ++j) {
+				pattern[j] = (byte) (random.nextInt(3) - 1);
+			}
+			int from = data.length == 0 ? 0 : random.nextInt(data.length);
+			int to = from + random.nextInt(data.length - from + 1);
+
+			assertEquals(naiveIndexOf(data, from, to, pattern), ByteSearch.indexOf(data, from, to, pattern));
+			assertEquals(naiveLastIndexOf(data, from, to, pattern), ByteSearch.lastIndexOf(data, from, to, pattern));
+		}
+	}
+
+	@Test
+	void test_apicWithDescription() {
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		frame.write(1);
+		frame.writeBytes("image/jpg".getBytes(StandardCharsets.ISO_8859_1));
+		frame.write(0);
+		frame.write(CoverArt.TYPE_FRONT_COVER);
+		frame.writeBytes("\uFEFFcover".getBytes(StandardCharsets.UTF_16BE));
+		frame.writeBytes(new byte[2]);
+		frame.writeBytes(SyntheticAudio.JPEG);
+
+		CoverArt cover = ImageExtractor.extractAPIC(frame.toByteArray(), 3);
+		assertEquals("image/jpeg", cover.getMimeType());
+		assertEquals(CoverArt.TYPE_FRONT_COVER, cover.getPictureType());
+		assertEquals("cover", cover.getDescription());
+		assertArrayEquals(SyntheticAudio.JPEG, cover.getBinaryData());
+	}
+
+	@Test
+	void test_scanFallback() {
+		// unparseable header followed by an image
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		data.writeBytes(new byte[] { 7, 7, 7, 7, 7 });
+		data.writeBytes(SyntheticAudio.JPEG);
+
+		CoverArt cover = ImageExtractor.extractImage(data.toByteArray());
+		assertEquals("image/jpeg", cover.getMimeType());
+		assertEquals(SyntheticAudio.JPEG.length, cover.getData().remaining());
+		assertArrayEquals(SyntheticAudio.JPEG, cover.getBinaryData());
+	}
+}
@@ -0,0 +1,88 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.reader.MetadataReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests that text fields are kept encoded until requested and decoded with
+ * the character set of their format.
+ */
+public class LazyTextTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	@Test
+	void test_decodedOnAccess() {
+		byte[] data = "xTitle".getBytes(StandardCharsets.UTF_8);
+		Metadata metadata = new Metadata();
+		metadata.onTextField(Constants.TITLE, data, 1, 5, StandardCharsets.UTF_8);
+		assertTrue(metadata.hasTextField(Constants.TITLE));
+
+		// nothing has been decoded yet, so the change is visible
+		data[1] = 't';
+		assertEquals(List.of("title"), metadata.getTextField(Constants.TITLE));
+
+		// decoded once and cached
+		data[1] = 'T';
+		assertEquals(List.of("title"), metadata.getTextField(Constants.TITLE));
+	}
+
+	@Test
+	void test_largeSourceReleased() {
+		// a short value inside a large block, like a comment next to a picture
+		byte[] data = new byte[1 << 20];
+		byte[] title = "Title".getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(title, 0, data, 1000, title.length);
+		Metadata metadata = new Metadata();
+		metadata.onTextField(Constants.TITLE, data, 1000, title.length, StandardCharsets.UTF_8);
+
+		// the value was copied out, so the block is no longer referenced
+		data[1000] = 't';
+		assertEquals(List.of("Title"), metadata.getTextField(Constants.TITLE));
+	}
+
+	@Test
+	void test_encodings() throws IOException {
+		// ISO-8859-1 regardless of the platform charset
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		SyntheticAudio.id3Frame(frames, "TIT2", SyntheticAudio.latin1Text("Café"));
+		ByteArrayOutputStream mp3 = new ByteArrayOutputStream();
+		mp3.writeBytes(SyntheticAudio.id3Tag(3, 0, frames.toByteArray(), 16));
+		mp3.writeBytes(SyntheticAudio.mpegFrames());
+		Path path = SyntheticAudio.write(directory, "test.mp3", mp3.toByteArray());
+		assertEquals(List.of("Café"), MetadataReader.of(path).getMetadata().getTextField(Constants.TITLE));
+
+		// Vorbis comments are always UTF-8
+		byte[] comment = ("TITLE=Café").getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream block = new ByteArrayOutputStream();
+		block.writeBytes(SyntheticAudio.le32(0));
+		block.writeBytes(SyntheticAudio.le32(1));
+		block.writeBytes(SyntheticAudio.le32(comment.length));
+		block.writeBytes(comment);
+
+		ByteArrayOutputStream flac = new ByteArrayOutputStream();
+		flac.writeBytes(new byte[] { 'f', 'L', 'a', 'C' });
+		SyntheticAudio.flacBlock(flac, 0, false, SyntheticAudio.streamInfo());
+		SyntheticAudio.flacBlock(flac, 4, true, block.toByteArray());
+		path = SyntheticAudio.write(directory, "test.flac", flac.toByteArray());
+		assertEquals(List.of("Café"), MetadataReader.of(path).getMetadata().getTextField(Constants.TITLE));
+	}
+}
@@ -0,0 +1,200 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.audio.library.Album;
+import org.audio.library.Artist;
+import org.audio.library.Disc;
+import org.audio.library.Library;
+import org.audio.library.Track;
+import org.audio.metadata.ArtworkStore;
+import org.audio.metadata.Constants;
+import org.audio.metadata.CoverArt;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.reader.MetadataReader;
+import org.audio.metadata.writer.MetadataWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests incremental grouping of tracks into albums, discs and artists.
+ */
+public class LibraryTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * @param album  album name
+	 * @param artist album artist
+	 * @param disc   disc number, {@code null} for none
+	 * @param track  track number
+	 * @param title  track title
+	 * @return metadata holding the given fields
+	 */
+	private static Metadata track(String album, String artist, String disc, String track, String title) {
+		Metadata metadata = new Metadata();
+		metadata.addTextField(Constants.ALBUM_NAME, album);
+		metadata.addTextField(Constants.ARTIST_NAME, artist);
+		if (disc != null) {
+			metadata.addTextField(Constants.DISC_NUMBER, disc);
+		}
+		metadata.addTextField(Constants.TRACK_NUMBER, track);
+		metadata.addTextField(Constants.TITLE, title);
+		return metadata;
+	}
+
+	/**
+	 * @param tracks tracks in play order
+	 * @return their titles
+	 */
+	private static List<String> titles(List<Track> tracks) {
+		return tracks.stream().map(Track::getTitle).toList();
+	}
+
+	@Test
+	void test_grouping() {
+		Library library = new Library();
+		library.put(Path.of("b2.mp3"), track("Abbey Road", "The Beatles", "1/1", "2/17", "Something"));
+		library.put(Path.of("b1.mp3"), track("Abbey Road", "The Beatles", "1/1", "1/17", "Come Together"));
+		library.put(Path.of("w3.mp3"), track("The Wall", "Pink Floyd", "2/2", "1", "Hey You"));
+		library.put(Path.of("w1.mp3"), track("The Wall", "Pink Floyd", "1/2", "1", "In the Flesh?"));
+		library.put(Path.of("w2.mp3"), track("the wall", "PINK FLOYD", "1/2", "2", "The Thin Ice"));
+		library.put(Path.of("x.mp3"), track("Singles", "Pink Floyd", null, "", "Arnold Layne"));
+
+		assertEquals(6, library.size());
+		assertEquals(List.of("Pink Floyd", "The Beatles"),
+				library.getArtists().stream().map(Artist::getName).toList());
+		assertEquals(List.of("Singles", "The Wall"),
+				library.getArtist("pink floyd").getAlbums().stream().map(Album::getName).toList());
+
+		Album wall = library.getAlbum("Pink Floyd", "The Wall");
+		assertEquals(3, wall.getTrackCount());
+		assertEquals(2, wall.getDiscs().size());
+		assertEquals(List.of("In the Flesh?", "The Thin Ice"), titles(wall.getDiscs().get(0).getTracks()));
+		assertEquals(List.of("In the Flesh?", "The Thin Ice", "Hey You"), titles(wall.getTracks()));
+		assertEquals(List.of("Come Together", "Something"),
+				titles(library.getAlbum("The Beatles", "Abbey Road").getTracks()));
+		assertEquals(0, library.getAlbum("Pink Floyd", "Singles").getDiscs().get(0).getNumber());
+	}
+
+	@Test
+	void test_updates() {
+		Library library = new Library();
+		library.put(Path.of("a.mp3"), track("Album", "Artist", "1", "1", "One"));
+		library.put(Path.of("b.mp3"), track("Album", "Artist", "1", "2", "Two"));
+
+		// renumbering moves the track within its disc
+		library.put(Path.of("a.mp3"), track("Album", "Artist", "1", "3", "One"));
+		assertEquals(List.of("Two", "One"), titles(library.getAlbum("Artist", "Album").getTracks()));
+		assertEquals(2, library.size());
+
+		// moving a track to another album leaves the old one behind
+		library.put(Path.of("b.mp3"), track("Other", "Artist", "1", "1", "Two"));
+		assertEquals(List.of("One"), titles(library.getAlbum("Artist", "Album").getTracks()));
+		assertEquals(2, library.getArtist("Artist").getAlbums().size());
+
+		// empty albums and artists are dropped
+		assertEquals("One", library.remove(Path.of("a.mp3")).getTitle());
+		assertNull(library.getAlbum("Artist", "Album"));
+		library.remove(Path.of("./b.mp3"));
+		assertNull(library.getArtist("Artist"));
+		assertEquals(0, library.getAlbums().size());
+		assertNull(library.remove(Path.of("b.mp3")));
+	}
+
+	@Test
+	void test_mp3Compilation() throws IOException {
+		Library library = new Library();
+		String[] artists = { "Blur", "Pulp", "Suede" };
+		for (int track = 0; track < artists.length; ++track) {
+			ByteArrayOutputStream frames = new ByteArrayOutputStream();
+			SyntheticAudio.id3Frame(frames, "TALB", SyntheticAudio.latin1Text("Britpop Hits"));
+			SyntheticAudio.id3Frame(frames, "TPE1", SyntheticAudio.latin1Text(artists[track]));
+			SyntheticAudio.id3Frame(frames, "TPE2", SyntheticAudio.latin1Text("Various Artists"));
+			SyntheticAudio.id3Frame(frames, "TRCK", SyntheticAudio.latin1Text(Integer.toString(track + 1)));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			out.writeBytes(SyntheticAudio.id3Tag(3, 0, frames.toByteArray(), 0));
+			out.writeBytes(SyntheticAudio.mpegFrames());
+
+			Path file = SyntheticAudio.write(directory, track + ".mp3", out.toByteArray());
+			library.put(file, MetadataReader.of(file).getMetadata());
+		}
+
+		// TPE2 keeps the tracks of different artists on one album
+		assertEquals(List.of("Various Artists"), library.getArtists().stream().map(Artist::getName).toList());
+		assertEquals(3, library.getAlbum("Various Artists", "Britpop Hits").getTrackCount());
+	}
+
+	@Test
+	void test_concurrentReads() throws Exception {
+		Library library = new Library();
+		library.put(Path.of("fixed.mp3"), track("Album", "Artist", "1", "1", "Fixed"));
+		Album album = library.getAlbum("Artist", "Album");
+		Artist artist = library.getArtist("Artist");
+
+		ExecutorService writer = Executors.newSingleThreadExecutor();
+		try {
+			// discs, tracks and albums change while they are read
+			Future<?> changes = writer.submit(() -> {
+				for (int i = 0; i < 20000; ++i) {
+					String disc = Integer.toString(i % 4 + 1);
+					library.put(Path.of(i % 50 + ".mp3"), track("Album", "Artist", disc, Integer.toString(i), "T"));
+					library.put(Path.of("other.mp3"), track("Other " + i % 8, "Artist", "1", "1", "O"));
+					library.remove(Path.of((i + 25) % 50 + ".mp3"));
+				}
+			});
+			while (!changes.isDone()) {
+				assertFalse(album.getTracks().isEmpty());
+				album.getDiscs().forEach(Disc::getTracks);
+				album.getArtwork();
+				album.getTrackCount();
+				artist.getAlbums();
+			}
+			changes.get();
+		} finally {
+			writer.shutdownNow();
+		}
+	}
+
+	@Test
+	void test_discNumberAndArtwork() throws IOException {
+		ArtworkStore store = new ArtworkStore();
+		Library library = new Library(store);
+
+		for (int track = 1; track <= 3; ++track) {
+			Path file = SyntheticAudio.write(directory, track + ".mp3", SyntheticAudio.mp3());
+			MetadataWriter.of(file).write(Map.of(Constants.DISC_NUMBER, "2/2", Constants.TRACK_NUMBER,
+					Integer.toString(track), Constants.TITLE, "Track " + track));
+			library.put(file, MetadataReader.of(file).getMetadata());
+		}
+
+		// ID3 TPOS frames are read as disc numbers
+		Album album = library.getAlbum(SyntheticAudio.ARTIST, SyntheticAudio.ALBUM);
+		assertEquals(2, album.getDiscs().get(0).getNumber());
+		assertEquals(List.of("Track 1", "Track 2", "Track 3"), titles(album.getTracks()));
+
+		// every track references a single cover
+		CoverArt cover = album.getArtwork();
+		for (Track track : album.getTracks()) {
+			assertSame(cover, track.getArtwork());
+		}
+	}
+}
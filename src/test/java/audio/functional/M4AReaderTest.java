@@ -0,0 +1,123 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.reader.MetadataReader;
+import org.audio.metadata.reader.ReaderLimits;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests the M4A atom walker on layouts beyond the basic synthetic file.
+ */
+public class M4AReaderTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * @param items ilst contents
+	 * @return ISO style udta/meta wrapping {@code items}
+	 */
+	private static byte[] userData(byte[] items) {
+		ByteArrayOutputStream meta = new ByteArrayOutputStream();
+		meta.writeBytes(new byte[4]);
+		meta.writeBytes(SyntheticAudio.atom("hdlr", new byte[25]));
+		meta.writeBytes(SyntheticAudio.atom("ilst", items));
+		return SyntheticAudio.atom("udta", SyntheticAudio.atom("meta", meta.toByteArray()));
+	}
+
+	/**
+	 * @param parts top level atoms
+	 * @return path to the new file
+	 */
+	private Path write(byte[]... parts) throws IOException {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		file.writeBytes(SyntheticAudio.atom("ftyp", "M4A \0\0\0\0M4A isom".getBytes(StandardCharsets.ISO_8859_1)));
+		for (byte[] part : parts) {
+			file.writeBytes(part);
+		}
+		return SyntheticAudio.write(directory, "test.m4a", file.toByteArray());
+	}
+
+	@Test
+	void test_largeAndOpenEndedSizes() throws IOException {
+		ByteArrayOutputStream items = new ByteArrayOutputStream();
+		SyntheticAudio.ilstItem(items, "©nam", 1, SyntheticAudio.TITLE.getBytes(StandardCharsets.UTF_8));
+
+		// 64-bit mdat before moov, then an mdat running to the end of the file
+		ByteBuffer large = ByteBuffer.allocate(16 + 64);
+		large.putInt(1).put("mdat".getBytes(StandardCharsets.ISO_8859_1)).putLong(16 + 64);
+		ByteBuffer open = ByteBuffer.allocate(8 + 64);
+		open.putInt(0).put("mdat".getBytes(StandardCharsets.ISO_8859_1));
+
+		Path file = write(large.array(), SyntheticAudio.atom("moov", userData(items.toByteArray())), open.array());
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+	}
+
+	@Test
+	void test_trakNotRead() throws IOException {
+		ByteArrayOutputStream items = new ByteArrayOutputStream();
+		SyntheticAudio.ilstItem(items, "©ART", 1, SyntheticAudio.ARTIST.getBytes(StandardCharsets.UTF_8));
+
+		// sample tables far larger than the tag size limit
+		ByteArrayOutputStream moov = new ByteArrayOutputStream();
+		moov.writeBytes(SyntheticAudio.atom("trak", new byte[256 * 1024]));
+		moov.writeBytes(userData(items.toByteArray()));
+
+		Path file = write(SyntheticAudio.atom("moov", moov.toByteArray()));
+		Metadata metadata = MetadataReader.of(file, new ReaderLimits(4096, 4096, 64, 8)).getMetadata();
+		assertEquals(List.of(SyntheticAudio.ARTIST), metadata.getTextField(Constants.ARTIST_NAME));
+	}
+
+	@Test
+	void test_itemLayouts() throws IOException {
+		ByteArrayOutputStream items = new ByteArrayOutputStream();
+
+		// freeform item named by mean and name atoms
+		ByteArrayOutputStream freeform = new ByteArrayOutputStream();
+		freeform.writeBytes(SyntheticAudio.atom("mean", "\0\0\0\0com.apple.iTunes".getBytes(StandardCharsets.UTF_8)));
+		freeform.writeBytes(SyntheticAudio.atom("name", "\0\0\0\0MOOD".getBytes(StandardCharsets.UTF_8)));
+		freeform.writeBytes(SyntheticAudio.atom("data", "\0\0\0\1\0\0\0\0Calm".getBytes(StandardCharsets.UTF_8)));
+		items.writeBytes(SyntheticAudio.atom("----", freeform.toByteArray()));
+
+		// two covers in one item
+		ByteBuffer cover = ByteBuffer.allocate(8 + SyntheticAudio.JPEG.length);
+		cover.putInt(13).putInt(0).put(SyntheticAudio.JPEG);
+		ByteArrayOutputStream covers = new ByteArrayOutputStream();
+		covers.writeBytes(SyntheticAudio.atom("data", cover.array()));
+		covers.writeBytes(SyntheticAudio.atom("data", cover.array()));
+		items.writeBytes(SyntheticAudio.atom("covr", covers.toByteArray()));
+
+		// binary track number and genre
+		SyntheticAudio.ilstItem(items, "trkn", 0, new byte[] { 0, 0, 0, 3, 0, 12, 0, 0 });
+		SyntheticAudio.ilstItem(items, "gnre", 0, new byte[] { 0, 18 });
+
+		// QuickTime style meta directly in moov, without version and flags
+		ByteArrayOutputStream meta = new ByteArrayOutputStream();
+		meta.writeBytes(SyntheticAudio.atom("hdlr", new byte[25]));
+		meta.writeBytes(SyntheticAudio.atom("ilst", items.toByteArray()));
+
+		Path file = write(SyntheticAudio.atom("moov", SyntheticAudio.atom("meta", meta.toByteArray())));
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+		assertEquals(List.of("Calm"), metadata.getTextField("----:com.apple.iTunes:MOOD"));
+		assertEquals(2, metadata.getImages().size());
+		assertEquals(List.of("3/12"), metadata.getTextField(Constants.TRACK_NUMBER));
+		assertEquals(List.of("Rock"), metadata.getTextField(Constants.GENRE));
+	}
+}
@@ -0,0 +1,110 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.StreamInfo;
+import org.audio.metadata.reader.MetadataReader;
+import org.audio.metadata.reader.ReaderLimits;
+import org.audio.metadata.reader.ReaderStatistics;
+import org.audio.utils.FileUtils;
+import org.audio.utils.FileUtils.Format;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests reading Matroska and WebM files through their SeekHead.
+ */
+public class MatroskaReaderTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	@AfterEach
+	void disable() {
+		ReaderStatistics.getInstance().setEnabled(false);
+		ReaderStatistics.getInstance().reset();
+	}
+
+	@Test
+	void test_seekHead() throws IOException {
+		Path path = SyntheticAudio.write(directory, "test.mka", SyntheticAudio.mka(1 << 20));
+		assertEquals(Format.MKA, FileUtils.determineFormatByHeader(path));
+
+		ReaderStatistics statistics = ReaderStatistics.getInstance();
+		statistics.reset();
+		statistics.setEnabled(true);
+		Metadata metadata = MetadataReader.of(path).getMetadata();
+
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of(SyntheticAudio.ARTIST), metadata.getTextField(Constants.ARTIST_NAME));
+		// album level title
+		assertEquals(List.of(SyntheticAudio.ALBUM), metadata.getTextField(Constants.ALBUM_NAME));
+		assertEquals(List.of("synthetic"), metadata.getTextField(Constants.ENCODING_INFO));
+
+		assertEquals(1, metadata.getImages().size());
+		assertEquals("image/jpeg", metadata.getImages().get(0).getMimeType());
+		assertArrayEquals(SyntheticAudio.JPEG, metadata.getImages().get(0).getBinaryData());
+
+		StreamInfo info = metadata.getStreamInfo();
+		assertEquals(Duration.ofSeconds(10), info.getDuration());
+		assertEquals(48_000, info.getSampleRate());
+		assertEquals(2, info.getChannels());
+		assertEquals("A_OPUS", info.getCodec());
+
+		// the cluster is jumped over, not read
+		assertTrue(statistics.getFormat(Format.MKA).getBytesRead() < 8192);
+	}
+
+	@Test
+	void test_withoutSeekHead() throws IOException {
+		byte[] header = SyntheticAudio.ebml(0x1A45DFA3, SyntheticAudio.ebml(0x4282,
+				"webm".getBytes(StandardCharsets.US_ASCII)));
+		byte[] info = SyntheticAudio.ebml(0x1549A966, SyntheticAudio.ebml(0x4489,
+				ByteBuffer.allocate(4).putFloat(2500).array()));
+		byte[] tags = SyntheticAudio.ebml(0x1254C367, SyntheticAudio.ebml(0x7373, SyntheticAudio.concat(
+				SyntheticAudio.simpleTag("title", SyntheticAudio.TITLE), SyntheticAudio.simpleTag("PART_NUMBER", "4"))));
+		// live recordings leave the sizes of the segment and clusters unknown
+		byte[] cluster = { 0x1F, 0x43, (byte) 0xB6, 0x75, (byte) 0xFF, 0, 0, 0, 0 };
+
+		byte[] segment = SyntheticAudio.concat(new byte[] { 0x18, 0x53, (byte) 0x80, 0x67, (byte) 0xFF }, info,
+				tags, cluster);
+		Path path = SyntheticAudio.write(directory, "test.webm", SyntheticAudio.concat(header, segment));
+
+		Metadata metadata = MetadataReader.of(path).getMetadata();
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of("4"), metadata.getTextField(Constants.TRACK_NUMBER));
+		// no audio track
+		assertNull(metadata.getStreamInfo());
+	}
+
+	@Test
+	void test_oversizedElement() throws IOException {
+		Path path = SyntheticAudio.write(directory, "test.mka", SyntheticAudio.mka(4096));
+		ReaderStatistics statistics = ReaderStatistics.getInstance();
+		statistics.reset();
+		statistics.setEnabled(true);
+
+		// the elements holding metadata exceed the tag size limit
+		Metadata metadata = MetadataReader.of(path, new ReaderLimits(16, 16, 64, 4)).getMetadata();
+		assertTrue(metadata.getTextFields().isEmpty());
+		assertEquals(1, statistics.getFormat(Format.MKA).getFailures());
+	}
+}
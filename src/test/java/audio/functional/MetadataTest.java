@@ -130,7 +130,7 @@ public class MetadataTest {
 
 	@Test
 	void test_AIF() {
-		assertThrows(IllegalArgumentException.class, () -> test("aif"));
+		test("aif");
 	}
 
 	@Test
@@ -145,6 +145,6 @@ public class MetadataTest {
 
 	@Test
 	void test_WMA() {
-		assertThrows(IllegalArgumentException.class, () -> test("wma"));
+		test("wma");
 	}
 }
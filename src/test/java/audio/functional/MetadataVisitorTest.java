@@ -0,0 +1,164 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.MetadataVisitor;
+import org.audio.metadata.StreamInfo;
+import org.audio.metadata.reader.MetadataReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests that every reader pushes the same values to a visitor as it collects
+ * into {@link Metadata}.
+ */
+public class MetadataVisitorTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * Visitor recording every callback
+	 */
+	private static class RecordingVisitor implements MetadataVisitor {
+
+		/**
+		 * decoded text fields, without duplicate values
+		 */
+		private final Map<String, List<String>> textFields = new HashMap<>();
+
+		/**
+		 * sizes of the images received
+		 */
+		private final List<Integer> images = new ArrayList<>();
+
+		/**
+		 * stream information received, if any
+		 */
+		private StreamInfo streamInfo;
+
+		/**
+		 * number of onEnd calls
+		 */
+		private int ends;
+
+		@Override
+		public void onTextField(String tag, byte[] data, int offset, int length, Charset encoding) {
+			List<String> values = textFields.computeIfAbsent(tag, key -> new ArrayList<>());
+			String value = new String(data, offset, length, encoding);
+			if (!values.contains(value)) {
+				values.add(value);
+			}
+		}
+
+		@Override
+		public void onImage(byte[] data, int offset, int length, String mimeType, int pictureType,
+				String description) {
+			assertNotNull(mimeType);
+			images.add(length);
+		}
+
+		@Override
+		public void onStreamInfo(StreamInfo streamInfo) {
+			this.streamInfo = streamInfo;
+		}
+
+		@Override
+		public void onEnd() {
+			++ends;
+		}
+	}
+
+	/**
+	 * Reads {@code data} both ways and compares the results.
+	 *
+	 * @param name file name, determines nothing but the temporary path
+	 * @param data file contents
+	 * @throws IOException if the file cannot be written
+	 */
+	private void assertSameAsMetadata(String name, byte[] data) throws IOException {
+		Path file = SyntheticAudio.write(directory, name, data);
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+
+		RecordingVisitor visitor = new RecordingVisitor();
+		MetadataReader.of(file).accept(visitor);
+
+		assertEquals(1, visitor.ends);
+		assertEquals(metadata.getTextFields(), visitor.textFields);
+		assertEquals(metadata.getImages().size(), visitor.images.size());
+		for (int i = 0; i < visitor.images.size(); ++i) {
+			assertEquals(metadata.getImages().get(i).getLength(), visitor.images.get(i));
+		}
+		assertEquals(metadata.getStreamInfo() == null, visitor.streamInfo == null);
+		assertEquals(SyntheticAudio.TITLE, visitor.textFields.get(Constants.TITLE).get(0));
+	}
+
+	@Test
+	void test_mp3() throws IOException {
+		assertSameAsMetadata("test.mp3", SyntheticAudio.mp3());
+	}
+
+	@Test
+	void test_flac() throws IOException {
+		assertSameAsMetadata("test.flac", SyntheticAudio.flac());
+	}
+
+	@Test
+	void test_m4a() throws IOException {
+		assertSameAsMetadata("test.m4a", SyntheticAudio.m4a());
+	}
+
+	@Test
+	void test_wav() throws IOException {
+		assertSameAsMetadata("test.wav", SyntheticAudio.wav());
+	}
+
+	@Test
+	void test_aiff() throws IOException {
+		assertSameAsMetadata("test.aiff", SyntheticAudio.aiff());
+	}
+
+	@Test
+	void test_wma() throws IOException {
+		assertSameAsMetadata("test.wma", SyntheticAudio.wma());
+	}
+
+	@Test
+	void test_mka() throws IOException {
+		assertSameAsMetadata("test.mka", SyntheticAudio.mka(4096));
+	}
+
+	@Test
+	void test_ogg() throws IOException {
+		assertSameAsMetadata("test.ogg", SyntheticAudio.ogg());
+		assertSameAsMetadata("test.opus", SyntheticAudio.opus());
+		assertSameAsMetadata("flac.ogg", SyntheticAudio.oggFlac());
+	}
+
+	@Test
+	void test_replay() throws IOException {
+		Path file = SyntheticAudio.write(directory, "test.mp3", SyntheticAudio.mp3());
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+
+		Metadata copy = new Metadata();
+		metadata.accept(copy);
+		assertEquals(metadata.getTextFields(), copy.getTextFields());
+		assertEquals(metadata.getImages(), copy.getImages());
+	}
+}
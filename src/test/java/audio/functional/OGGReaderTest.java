@@ -0,0 +1,168 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.CoverArt;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.StreamInfo;
+import org.audio.metadata.reader.MetadataReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests reading Vorbis, Opus and FLAC streams from OGG files.
+ */
+public class OGGReaderTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * Asserts that the common synthetic comments were read.
+	 *
+	 * @param metadata parsed metadata
+	 */
+	private static void assertComments(Metadata metadata) {
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of(SyntheticAudio.ARTIST), metadata.getTextField(Constants.ARTIST_NAME));
+		assertEquals(List.of(SyntheticAudio.ALBUM), metadata.getTextField(Constants.ALBUM_NAME));
+	}
+
+	/**
+	 * Asserts that the stream lasts ten seconds.
+	 *
+	 * @param metadata   parsed metadata
+	 * @param sampleRate expected sample rate
+	 */
+	private static void assertDuration(Metadata metadata, int sampleRate) {
+		StreamInfo info = metadata.getStreamInfo();
+		assertNotNull(info);
+		assertEquals(Duration.ofSeconds(10), info.getDuration());
+		assertEquals(sampleRate, info.getSampleRate());
+		assertEquals(2, info.getChannels());
+		assertTrue(info.getBitrate() > 0);
+	}
+
+	@Test
+	void test_vorbis() throws IOException {
+		Path file = SyntheticAudio.write(directory, "test.ogg", SyntheticAudio.ogg());
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+
+		assertComments(metadata);
+		assertDuration(metadata, SyntheticAudio.SAMPLE_RATE);
+	}
+
+	@Test
+	void test_commentSpanningPages() throws IOException {
+		char[] filler = new char[5000];
+		Arrays.fill(filler, 'x');
+		String lyrics = new String(filler);
+
+		ByteArrayOutputStream comment = new ByteArrayOutputStream();
+		comment.write(3);
+		comment.writeBytes("vorbis".getBytes(StandardCharsets.US_ASCII));
+		comment.writeBytes(SyntheticAudio.le32(0));
+		comment.writeBytes(SyntheticAudio.le32(2));
+		for (String value : List.of("LYRICS=" + lyrics, "TITLE=" + SyntheticAudio.TITLE)) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			comment.writeBytes(SyntheticAudio.le32(bytes.length));
+			comment.writeBytes(bytes);
+		}
+		comment.write(1);
+
+		ByteArrayOutputStream ident = new ByteArrayOutputStream();
+		ident.write(1);
+		ident.writeBytes("vorbis".getBytes(StandardCharsets.US_ASCII));
+		ident.writeBytes(new byte[23]);
+
+		// four lacing values per page splits the comment across several pages
+		byte[] pages = SyntheticAudio.oggPages(0, 4, ident.toByteArray(), comment.toByteArray(), new byte[40]);
+		Path file = SyntheticAudio.write(directory, "pages.ogg", pages);
+
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of(lyrics), metadata.getTextField("LYRICS"));
+	}
+
+	@Test
+	void test_lastPageOfOtherStream() throws IOException {
+		// a page of another logical stream after the end of ours
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(SyntheticAudio.ogg());
+		byte[] other = SyntheticAudio.oggPage(0x04, 999_999_999L, 0, new byte[100]);
+		other[14] = 0x55;
+		out.writeBytes(other);
+		Path file = SyntheticAudio.write(directory, "chained.ogg", out.toByteArray());
+
+		assertDuration(MetadataReader.of(file).getMetadata(), SyntheticAudio.SAMPLE_RATE);
+	}
+
+	@Test
+	void test_opus() throws IOException {
+		Path file = SyntheticAudio.write(directory, "test.opus", SyntheticAudio.opus());
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+
+		assertComments(metadata);
+		assertDuration(metadata, 48000);
+	}
+
+	@Test
+	void test_pictureComment() throws IOException {
+		byte[] picture = Base64.getEncoder().encode(SyntheticAudio.flacPicture());
+		ByteArrayOutputStream comment = new ByteArrayOutputStream();
+		comment.writeBytes("METADATA_BLOCK_PICTURE=".getBytes(StandardCharsets.US_ASCII));
+		comment.writeBytes(picture);
+
+		ByteArrayOutputStream tags = new ByteArrayOutputStream();
+		tags.writeBytes("OpusTags".getBytes(StandardCharsets.US_ASCII));
+		tags.writeBytes(SyntheticAudio.le32(0));
+		tags.writeBytes(SyntheticAudio.le32(1));
+		tags.writeBytes(SyntheticAudio.le32(comment.size()));
+		tags.writeBytes(comment.toByteArray());
+
+		byte[] head = Arrays.copyOf("OpusHead".getBytes(StandardCharsets.US_ASCII), 19);
+		head[8] = 1;
+		head[9] = 2;
+		byte[] pages = SyntheticAudio.oggPages(0, 1, head, tags.toByteArray());
+		Path file = SyntheticAudio.write(directory, "picture.opus", pages);
+
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+		assertFalse(metadata.hasTextField("METADATA_BLOCK_PICTURE"));
+		assertEquals(1, metadata.getImages().size());
+
+		CoverArt cover = metadata.getImages().get(0);
+		assertEquals("image/jpeg", cover.getMimeType());
+		assertEquals(CoverArt.TYPE_FRONT_COVER, cover.getPictureType());
+		assertArrayEquals(SyntheticAudio.JPEG, cover.getBinaryData());
+	}
+
+	@Test
+	void test_flac() throws IOException {
+		Path file = SyntheticAudio.write(directory, "test.oga", SyntheticAudio.oggFlac());
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+
+		assertComments(metadata);
+		assertDuration(metadata, SyntheticAudio.SAMPLE_RATE);
+		assertEquals(1, metadata.getImages().size());
+		assertEquals("image/jpeg", metadata.getImages().get(0).getMimeType());
+	}
+}
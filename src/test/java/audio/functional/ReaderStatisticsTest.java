@@ -0,0 +1,144 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.audio.metadata.reader.FormatStatistics;
+import org.audio.metadata.reader.MetadataReader;
+import org.audio.metadata.reader.ReaderStatistics;
+import org.audio.utils.FileUtils.Format;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests the read counters, their JMX view and flight recorder events.
+ */
+public class ReaderStatisticsTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	@AfterEach
+	void disable() {
+		ReaderStatistics.getInstance().setEnabled(false);
+		ReaderStatistics.getInstance().reset();
+	}
+
+	@Test
+	void test_counters() throws IOException {
+		ReaderStatistics statistics = ReaderStatistics.getInstance();
+		Path flac = SyntheticAudio.write(directory, "test.flac", SyntheticAudio.flac());
+
+		// nothing is counted while disabled
+		statistics.reset();
+		MetadataReader.of(flac).getMetadata();
+		assertEquals(0, statistics.getFormat(Format.FLAC).getFiles());
+
+		statistics.setEnabled(true);
+		MetadataReader.of(flac).getMetadata();
+		MetadataReader.of(flac).getMetadata();
+
+		FormatStatistics counts = statistics.getFormat(Format.FLAC);
+		assertEquals(2, counts.getFiles());
+		assertEquals(0, counts.getFailures());
+		// STREAMINFO, VORBIS_COMMENT, PICTURE and PADDING in each file
+		assertEquals(8, counts.getStructures());
+		assertEquals(2, counts.getImages());
+		assertTrue(counts.getReadCalls() >= 8);
+		assertTrue(counts.getBytesRead() > 0 && counts.getBytesRead() <= 2 * SyntheticAudio.flac().length);
+		assertTrue(counts.getReadNanos() >= counts.getOpenNanos());
+		assertTrue(counts.getDetectNanos() > 0);
+		assertEquals(2, Arrays.stream(counts.getLatencyHistogram()).sum());
+		assertTrue(counts.latencyPercentile(50) > 0);
+		assertEquals(List.of("FLAC"), List.copyOf(statistics.getFormats().keySet()));
+	}
+
+	@Test
+	void test_corruptFile() throws IOException {
+		ReaderStatistics statistics = ReaderStatistics.getInstance();
+		statistics.reset();
+		statistics.setEnabled(true);
+
+		byte[] corrupt = SyntheticAudio.mp3();
+		// ID3v2 tag size far beyond the default limit
+		Arrays.fill(corrupt, 6, 10, (byte) 0x7F);
+		Path mp3 = SyntheticAudio.write(directory, "corrupt.mp3", corrupt);
+		MetadataReader.of(mp3).getMetadata();
+		Path valid = SyntheticAudio.write(directory, "valid.mp3", SyntheticAudio.mp3());
+		MetadataReader.of(valid).getMetadata();
+
+		// the reader does not throw, but the read is still counted as failed
+		FormatStatistics counts = statistics.getFormat(Format.MP3);
+		assertEquals(2, counts.getFiles());
+		assertEquals(1, counts.getFailures());
+	}
+
+	@Test
+	void test_mbean() throws JMException, IOException {
+		ReaderStatistics.register();
+		ReaderStatistics.register();
+
+		ObjectName name = new ObjectName(ReaderStatistics.OBJECT_NAME);
+		ManagementFactory.getPlatformMBeanServer().setAttribute(name, new Attribute("Enabled", true));
+		assertTrue(ReaderStatistics.getInstance().isEnabled());
+
+		Path mp3 = SyntheticAudio.write(directory, "test.mp3", SyntheticAudio.mp3());
+		MetadataReader.of(mp3).getMetadata();
+
+		TabularData formats = (TabularData) ManagementFactory.getPlatformMBeanServer().getAttribute(name,
+				"Formats");
+		CompositeData row = formats.get(new Object[] { "MP3" });
+		CompositeData value = (CompositeData) row.get("value");
+		assertEquals(1L, value.get("files"));
+		assertEquals(1L, value.get("images"));
+	}
+
+	@Test
+	void test_flightRecorder() throws IOException {
+		Path m4a = SyntheticAudio.write(directory, "test.m4a", SyntheticAudio.m4a());
+		Path events = directory.resolve("reads.jfr");
+
+		try (Recording recording = new Recording()) {
+			recording.enable("org.audio.MetadataRead");
+			recording.start();
+			MetadataReader.of(m4a).getMetadata();
+			recording.stop();
+			recording.dump(events);
+		}
+
+		List<RecordedEvent> reads = RecordingFile.readAllEvents(events).stream()
+				.filter(event -> event.getEventType().getName().equals("org.audio.MetadataRead")).toList();
+		assertEquals(1, reads.size());
+		RecordedEvent read = reads.get(0);
+		assertEquals(m4a.toString(), read.getString("file"));
+		assertEquals("M4A", read.getString("format"));
+		assertEquals(1, read.getLong("images"));
+		assertTrue(read.getLong("bytesRead") > 0);
+		assertFalse(read.getBoolean("failed"));
+
+		// statistics stay off while only events are recorded
+		assertEquals(0, ReaderStatistics.getInstance().getFormat(Format.M4A).getFiles());
+	}
+}
@@ -0,0 +1,109 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Map;
+
+import org.audio.library.SearchIndex;
+import org.audio.metadata.Constants;
+import org.audio.metadata.Metadata;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests tokenizing, prefix search and facet counts of the search index.
+ */
+public class SearchIndexTest {
+
+	/**
+	 * @param artist artist and album artist
+	 * @param album  album name
+	 * @param title  track title
+	 * @param genre  genre
+	 * @param year   release year
+	 * @return metadata holding the given fields
+	 */
+	private static Metadata track(String artist, String album, String title, String genre, String year) {
+		Metadata metadata = new Metadata();
+		metadata.addTextField(Constants.ARTIST_NAME, artist);
+		metadata.addTextField(Constants.ALBUM_ARTIST_NAME, artist);
+		metadata.addTextField(Constants.ALBUM_NAME, album);
+		metadata.addTextField(Constants.TITLE, title);
+		metadata.addTextField(Constants.GENRE, genre);
+		metadata.addTextField(Constants.YEAR, year);
+		return metadata;
+	}
+
+	/**
+	 * @return index of five tracks with ids 0 to 4
+	 */
+	private static SearchIndex index() {
+		SearchIndex index = new SearchIndex();
+		index.add(track("Beyoncé", "Lemonade", "Formation", "Pop", "2016"));
+		index.add(track("Beyoncé", "Lemonade", "Hold Up", "pop", "2016"));
+		index.add(track("Björk", "Homogenic", "Jóga", "Electronic", "1997"));
+		index.add(track("Bon Iver", "22, A Million", "715 - CR∑∑KS", "Folk", "2016"));
+		index.add(track("Boards of Canada", "Geogaddi", "Music Is Math", "Electronic", "2002"));
+		return index;
+	}
+
+	@Test
+	void test_search() {
+		SearchIndex index = index();
+		assertEquals(5, index.size());
+
+		// case and diacritics are folded on both sides
+		assertArrayEquals(new int[] { 0, 1 }, index.search("BEYONCE"));
+		assertArrayEquals(new int[] { 2 }, index.search("björk joga"));
+
+		// every word must match, the last one as a prefix
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, index.search("b"));
+		assertArrayEquals(new int[] { 3, 4 }, index.search("bo"));
+		assertArrayEquals(new int[] { 1 }, index.search("beyonce hol"));
+		assertArrayEquals(new int[0], index.search("beyonce joga"));
+		assertArrayEquals(new int[0], index.search(" - "));
+
+		// a single field
+		assertArrayEquals(new int[] { 2, 4 }, index.search(Constants.GENRE, "electronic"));
+		assertArrayEquals(new int[0], index.search(Constants.TITLE, "lemonade"));
+		assertThrows(IllegalArgumentException.class, () -> index.search(Constants.ISRC, "x"));
+	}
+
+	@Test
+	void test_complete() {
+		SearchIndex index = index();
+		assertEquals(List.of("beyonce", "bjork", "boards", "bon"),
+				sorted(index.complete(Constants.ARTIST_NAME, "B", 10)));
+		assertEquals(List.of("beyonce"), index.complete(Constants.ARTIST_NAME, "b", 1));
+		assertEquals(List.of(), index.complete(Constants.ARTIST_NAME, "z", 10));
+	}
+
+	@Test
+	void test_facets() {
+		SearchIndex index = index();
+		int[] all = index.search("b");
+
+		// first spelling is shown, "pop" and "Pop" count as one value
+		assertEquals(Map.of("Pop", 2, "Electronic", 2, "Folk", 1), index.facetCounts(Constants.GENRE, all));
+		Map<String, Integer> years = index.facetCounts(Constants.YEAR, all);
+		// most frequent first, ties in the order first seen
+		assertEquals(List.of("2016", "1997", "2002"), List.copyOf(years.keySet()));
+		assertEquals(3, years.get("2016"));
+		assertEquals(Map.of("Beyoncé", 1), index.facetCounts(Constants.ALBUM_ARTIST_NAME, new int[] { 1 }));
+		assertEquals(Map.of(), index.facetCounts(Constants.GENRE, new int[0]));
+
+		assertArrayEquals(new int[] { 0, 1, 3 }, index.filter(Constants.YEAR, "2016", all));
+		assertArrayEquals(new int[] { 0, 1 }, index.filter(Constants.GENRE, "POP", all));
+		assertArrayEquals(new int[0], index.filter(Constants.GENRE, "Jazz", all));
+	}
+
+	/**
+	 * @param words suggestions
+	 * @return {@code words} in alphabetical order
+	 */
+	private static List<String> sorted(List<String> words) {
+		return words.stream().sorted().toList();
+	}
+}
@@ -0,0 +1,113 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.StringInterner;
+import org.audio.metadata.reader.MetadataReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests sharing repeated text values across files.
+ */
+public class StringInternerTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	@Test
+	void test_sharedAcrossFormats() throws IOException {
+		StringInterner interner = new StringInterner();
+		Path[] files = { SyntheticAudio.write(directory, "1.mp3", SyntheticAudio.mp3()),
+				SyntheticAudio.write(directory, "2.flac", SyntheticAudio.flac()),
+				SyntheticAudio.write(directory, "3.m4a", SyntheticAudio.m4a()) };
+
+		List<Metadata> read = new ArrayList<>();
+		for (Path file : files) {
+			MetadataReader reader = MetadataReader.of(file);
+			reader.setStringInterner(interner);
+			read.add(reader.getMetadata());
+		}
+
+		String artist = read.get(0).getTextField(Constants.ARTIST_NAME).get(0);
+		String title = read.get(0).getTextField(Constants.TITLE).get(0);
+		for (Metadata metadata : read.subList(1, read.size())) {
+			assertSame(artist, metadata.getTextField(Constants.ARTIST_NAME).get(0));
+			// titles rarely repeat and are not interned by default
+			assertNotSame(title, metadata.getTextField(Constants.TITLE).get(0));
+			assertEquals(title, metadata.getTextField(Constants.TITLE).get(0));
+		}
+
+		// only the artist has been decoded, albums are interned once requested
+		assertEquals(1, interner.getMissCount());
+		assertEquals(2, interner.getHitCount());
+		assertTrue(interner.getBytesSaved() > 2 * SyntheticAudio.ARTIST.length());
+		assertSame(read.get(0).getTextField(Constants.ALBUM_NAME).get(0),
+				read.get(2).getTextField(Constants.ALBUM_NAME).get(0));
+		assertEquals(2, interner.size());
+	}
+
+	@Test
+	void test_limits() {
+		StringInterner interner = new StringInterner(Set.of(Constants.GENRE), 8);
+		String rock = interner.intern(Constants.GENRE, new String("Rock"));
+		assertSame(rock, interner.intern(Constants.GENRE, new String("Rock")));
+
+		// other tags and long values are returned as they are
+		String other = new String("Rock");
+		assertSame(other, interner.intern(Constants.TITLE, other));
+		String progressive = new String("Progressive Rock");
+		assertSame(progressive, interner.intern(Constants.GENRE, progressive));
+		assertEquals(1, interner.size());
+	}
+
+	@Test
+	void test_concurrent() throws InterruptedException, ExecutionException {
+		StringInterner interner = new StringInterner();
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<List<String>>> results = new ArrayList<>();
+			for (int t = 0; t < 8; ++t) {
+				results.add(pool.submit(() -> {
+					List<String> values = new ArrayList<>();
+					for (int i = 0; i < 1000; ++i) {
+						values.add(interner.intern(Constants.ARTIST_NAME, new String("Artist " + (i % 100))));
+					}
+					return values;
+				}));
+			}
+
+			List<String> first = results.get(0).get();
+			for (Future<List<String>> result : results) {
+				List<String> values = result.get();
+				for (int i = 0; i < values.size(); ++i) {
+					assertSame(first.get(i), values.get(i));
+				}
+			}
+			assertEquals(100, interner.getMissCount());
+			assertEquals(7900, interner.getHitCount());
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
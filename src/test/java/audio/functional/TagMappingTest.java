@@ -0,0 +1,93 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.reader.MetadataReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests the normalisation of known and unknown tag identifiers.
+ */
+public class TagMappingTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	@Test
+	void test_id3() throws IOException {
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		SyntheticAudio.id3Frame(frames, "TIT2", SyntheticAudio.latin1Text(SyntheticAudio.TITLE));
+		SyntheticAudio.id3Frame(frames, "TPOS", SyntheticAudio.latin1Text("1/2"));
+		SyntheticAudio.id3Frame(frames, "ZZZ9", SyntheticAudio.latin1Text("unknown"));
+		Metadata metadata = readMP3(SyntheticAudio.id3Tag(3, 0, frames.toByteArray(), 16));
+
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of("1/2"), metadata.getTextField(Constants.DISC_NUMBER));
+		assertEquals(List.of("unknown"), metadata.getTextField("ZZZ9"));
+
+		// three character IDs are converted, or kept as they are if unknown
+		frames.reset();
+		SyntheticAudio.id3v22Frame(frames, "TPA", SyntheticAudio.latin1Text("1/2"));
+		SyntheticAudio.id3v22Frame(frames, "ZZ9", SyntheticAudio.latin1Text("unknown"));
+		metadata = readMP3(SyntheticAudio.id3Tag(2, 0, frames.toByteArray(), 16));
+
+		assertEquals(List.of("1/2"), metadata.getTextField(Constants.DISC_NUMBER));
+		assertEquals(List.of("unknown"), metadata.getTextField("ZZ9"));
+	}
+
+	@Test
+	void test_vorbis() throws IOException {
+		String[] comments = { "title=" + SyntheticAudio.TITLE, "AlbumArtist=" + SyntheticAudio.ARTIST,
+				"DISCNUMBER=1", "Mood=calm" };
+
+		ByteArrayOutputStream block = new ByteArrayOutputStream();
+		block.writeBytes(SyntheticAudio.le32(0));
+		block.writeBytes(SyntheticAudio.le32(comments.length));
+		for (String comment : comments) {
+			byte[] bytes = comment.getBytes(StandardCharsets.UTF_8);
+			block.writeBytes(SyntheticAudio.le32(bytes.length));
+			block.writeBytes(bytes);
+		}
+
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		file.writeBytes(new byte[] { 'f', 'L', 'a', 'C' });
+		SyntheticAudio.flacBlock(file, 0, false, SyntheticAudio.streamInfo());
+		SyntheticAudio.flacBlock(file, 4, true, block.toByteArray());
+		Path path = SyntheticAudio.write(directory, "test.flac", file.toByteArray());
+		Metadata metadata = MetadataReader.of(path).getMetadata();
+
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of(SyntheticAudio.ARTIST), metadata.getTextField(Constants.ALBUM_ARTIST_NAME));
+		assertEquals(List.of("1"), metadata.getTextField(Constants.DISC_NUMBER));
+		assertEquals(List.of("calm"), metadata.getTextField("MOOD"));
+	}
+
+	/**
+	 * Writes an MP3 consisting of {@code tag} followed by fake audio and parses
+	 * it.
+	 *
+	 * @param tag complete ID3v2 tag
+	 * @return parsed metadata
+	 */
+	private Metadata readMP3(byte[] tag) throws IOException {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		file.writeBytes(tag);
+		file.writeBytes(SyntheticAudio.mpegFrames());
+		Path path = SyntheticAudio.write(directory, "test.mp3", file.toByteArray());
+		return MetadataReader.of(path).getMetadata();
+	}
+}
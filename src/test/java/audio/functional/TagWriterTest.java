@@ -0,0 +1,216 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.reader.MetadataReader;
+import org.audio.metadata.writer.MetadataWriter;
+import org.audio.metadata.writer.MetadataWriter.WriteMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests in place updates and rewrites by the tag writers.
+ */
+public class TagWriterTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * Title too long for the padding of any generated file
+	 */
+	private static final String LONG_TITLE = "Long Title ".repeat(40);
+
+	/**
+	 * @param file    file to update
+	 * @param changes new tag values
+	 * @return how the file was updated
+	 */
+	private static WriteMode write(Path file, Map<String, String> changes) throws IOException {
+		return MetadataWriter.of(file).write(changes);
+	}
+
+	/**
+	 * @param file  updated file
+	 * @param audio expected trailing bytes
+	 */
+	private static void assertAudio(Path file, byte[] audio) throws IOException {
+		byte[] data = Files.readAllBytes(file);
+		assertArrayEquals(audio, Arrays.copyOfRange(data, data.length - audio.length, data.length));
+	}
+
+	@Test
+	void test_mp3() throws IOException {
+		Path file = SyntheticAudio.write(directory, "test.mp3", SyntheticAudio.mp3());
+		long size = Files.size(file);
+
+		assertEquals(WriteMode.IN_PLACE, write(file, Map.of(Constants.TITLE, "Short")));
+		assertEquals(size, Files.size(file));
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+		assertEquals(List.of("Short"), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of(SyntheticAudio.ARTIST), metadata.getTextField(Constants.ARTIST_NAME));
+		assertEquals(1, metadata.getImages().size());
+
+		assertEquals(WriteMode.REWRITTEN, write(file, Map.of(Constants.TITLE, LONG_TITLE)));
+		assertAudio(file, SyntheticAudio.mpegFrames());
+		metadata = MetadataReader.of(file).getMetadata();
+		assertEquals(List.of(LONG_TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of(SyntheticAudio.ALBUM), metadata.getTextField(Constants.ALBUM_NAME));
+
+		// the rewrite reserved padding for the next edit
+		assertEquals(WriteMode.IN_PLACE, write(file, Map.of(Constants.TITLE, "Café")));
+		assertEquals(List.of("Café"), MetadataReader.of(file).getMetadata().getTextField(Constants.TITLE));
+	}
+
+	@Test
+	void test_mp3WithoutTag() throws IOException {
+		Path file = SyntheticAudio.write(directory, "bare.mp3", SyntheticAudio.mpegFrames());
+
+		assertEquals(WriteMode.REWRITTEN, write(file, Map.of(Constants.TITLE, SyntheticAudio.TITLE)));
+		assertAudio(file, SyntheticAudio.mpegFrames());
+		assertEquals(List.of(SyntheticAudio.TITLE),
+				MetadataReader.of(file).getMetadata().getTextField(Constants.TITLE));
+	}
+
+	@Test
+	void test_flac() throws IOException {
+		byte[] original = SyntheticAudio.flac();
+		byte[] audio = Arrays.copyOfRange(original, original.length - 1030, original.length);
+		Path file = SyntheticAudio.write(directory, "test.flac", original);
+
+		Map<String, String> changes = new HashMap<>();
+		changes.put(Constants.TITLE, "Short");
+		changes.put(Constants.ALBUM_NAME, null);
+		assertEquals(WriteMode.IN_PLACE, write(file, changes));
+		assertEquals(original.length, Files.size(file));
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+		assertEquals(List.of("Short"), metadata.getTextField(Constants.TITLE));
+		assertFalse(metadata.hasTextField(Constants.ALBUM_NAME));
+		assertEquals(1, metadata.getImages().size());
+
+		assertEquals(WriteMode.REWRITTEN, write(file, Map.of(Constants.TITLE, LONG_TITLE)));
+		assertAudio(file, audio);
+		metadata = MetadataReader.of(file).getMetadata();
+		assertEquals(List.of(LONG_TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of(SyntheticAudio.ARTIST), metadata.getTextField(Constants.ARTIST_NAME));
+		assertEquals(1, metadata.getImages().size());
+	}
+
+	@Test
+	void test_rewriteKeepsPermissions() throws IOException {
+		Path file = SyntheticAudio.write(directory, "test.flac", SyntheticAudio.flac());
+		assumeTrue(Files.getFileAttributeView(file, PosixFileAttributeView.class) != null);
+		Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r--r--");
+		Files.setPosixFilePermissions(file, permissions);
+
+		assertEquals(WriteMode.REWRITTEN, write(file, Map.of(Constants.TITLE, LONG_TITLE)));
+		assertEquals(permissions, Files.getPosixFilePermissions(file));
+		// the temporary file was renamed, not left behind
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(List.of(file), files.toList());
+		}
+	}
+
+	@Test
+	void test_m4a() throws IOException {
+		// a sample table pointing into mdat, which follows moov
+		byte[] stco = ByteBuffer.allocate(12).putInt(4, 1).array();
+		byte[] stbl = SyntheticAudio.atom("stbl", SyntheticAudio.atom("stco", stco));
+		byte[] trak = SyntheticAudio.atom("trak",
+				SyntheticAudio.atom("mdia", SyntheticAudio.atom("minf", stbl)));
+		ByteArrayOutputStream items = new ByteArrayOutputStream();
+		SyntheticAudio.ilstItem(items, "©nam", 1, SyntheticAudio.TITLE.getBytes(StandardCharsets.UTF_8));
+		ByteArrayOutputStream meta = new ByteArrayOutputStream();
+		meta.writeBytes(new byte[4]);
+		meta.writeBytes(SyntheticAudio.atom("hdlr", new byte[25]));
+		meta.writeBytes(SyntheticAudio.atom("ilst", items.toByteArray()));
+		byte[] moov = SyntheticAudio.atom("moov",
+				concat(trak, SyntheticAudio.atom("udta", SyntheticAudio.atom("meta", meta.toByteArray()))));
+
+		byte[] samples = "SAMPLES".getBytes(StandardCharsets.ISO_8859_1);
+		byte[] ftyp = SyntheticAudio.atom("ftyp", "M4A \0\0\0\0M4A isom".getBytes(StandardCharsets.ISO_8859_1));
+		int chunkOffset = ftyp.length + moov.length + 8;
+		int stcoEntry = ftyp.length + 8 + trak.length - 4;
+		ByteBuffer.wrap(moov).putInt(stcoEntry - ftyp.length, chunkOffset);
+		Path file = SyntheticAudio.write(directory, "test.m4a", concat(ftyp, moov, SyntheticAudio.atom("mdat", samples)));
+
+		Map<String, String> changes = new HashMap<>();
+		changes.put(Constants.ARTIST_NAME, SyntheticAudio.ARTIST);
+		changes.put(Constants.TRACK_NUMBER, "3/12");
+		changes.put("----:com.apple.iTunes:MOOD", "Calm");
+		assertEquals(WriteMode.REWRITTEN, write(file, changes));
+
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of(SyntheticAudio.ARTIST), metadata.getTextField(Constants.ARTIST_NAME));
+		assertEquals(List.of("3/12"), metadata.getTextField(Constants.TRACK_NUMBER));
+		assertEquals(List.of("Calm"), metadata.getTextField("----:com.apple.iTunes:MOOD"));
+
+		// the chunk offset follows the samples
+		byte[] data = Files.readAllBytes(file);
+		int offset = ByteBuffer.wrap(data).getInt(stcoEntry);
+		assertArrayEquals(samples, Arrays.copyOfRange(data, offset, offset + samples.length));
+
+		// the free atom left by the rewrite absorbs the next edit
+		long size = Files.size(file);
+		changes.clear();
+		changes.put(Constants.TITLE, "Short");
+		changes.put("----:com.apple.iTunes:MOOD", null);
+		assertEquals(WriteMode.IN_PLACE, write(file, changes));
+		assertEquals(size, Files.size(file));
+		metadata = MetadataReader.of(file).getMetadata();
+		assertEquals(List.of("Short"), metadata.getTextField(Constants.TITLE));
+		assertFalse(metadata.hasTextField("----:com.apple.iTunes:MOOD"));
+	}
+
+	@Test
+	void test_m4aWithoutItems() throws IOException {
+		byte[] ftyp = SyntheticAudio.atom("ftyp", "M4A \0\0\0\0M4A isom".getBytes(StandardCharsets.ISO_8859_1));
+		byte[] mdat = SyntheticAudio.atom("mdat", new byte[64]);
+		Path file = SyntheticAudio.write(directory, "bare.m4a",
+				concat(ftyp, SyntheticAudio.atom("moov", SyntheticAudio.atom("mvhd", new byte[100])), mdat));
+
+		assertEquals(WriteMode.REWRITTEN, write(file, Map.of(Constants.ALBUM_NAME, SyntheticAudio.ALBUM)));
+		assertAudio(file, mdat);
+		assertEquals(List.of(SyntheticAudio.ALBUM),
+				MetadataReader.of(file).getMetadata().getTextField(Constants.ALBUM_NAME));
+	}
+
+	/**
+	 * @param parts arrays to join
+	 * @return all parts in order
+	 */
+	private static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			out.writeBytes(part);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,83 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import org.audio.artwork.ThumbnailService;
+import org.audio.metadata.CoverArt;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests thumbnail generation and caching.
+ */
+public class ThumbnailServiceTest {
+
+	/**
+	 * thumbnail cache folder
+	 */
+	@TempDir
+	Path cache;
+
+	/**
+	 * @return a new CoverArt holding an 800x600 JPEG
+	 */
+	private static CoverArt album() throws IOException {
+		BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setColor(Color.ORANGE);
+		graphics.fillRect(0, 0, 400, 600);
+		graphics.dispose();
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ImageIO.write(image, "jpg", output);
+		return new CoverArt("image/jpeg", output.toByteArray());
+	}
+
+	@Test
+	void test_albumDecodedOnce() throws Exception {
+		byte[] jpeg = album().getBinaryData();
+		ThumbnailService service = new ThumbnailService(cache);
+
+		// every track carries its own copy of the same image
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<byte[]>> thumbnails = new ArrayList<>();
+		for (int track = 0; track < 12; ++track) {
+			CoverArt art = new CoverArt("image/jpeg", jpeg.clone());
+			thumbnails.add(pool.submit(() -> service.getThumbnail(art, 64)));
+		}
+		pool.shutdown();
+
+		byte[] first = thumbnails.get(0).get();
+		for (Future<byte[]> thumbnail : thumbnails) {
+			assertArrayEquals(first, thumbnail.get());
+		}
+		assertEquals(1, service.getDecodeCount());
+
+		BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(first));
+		assertEquals(64, decoded.getWidth());
+		assertEquals(48, decoded.getHeight());
+
+		// a new instance finds the thumbnail on disk
+		ThumbnailService restarted = new ThumbnailService(cache);
+		assertArrayEquals(first, restarted.getThumbnail(album(), 64));
+		assertEquals(0, restarted.getDecodeCount());
+		assertTrue(restarted.getCacheHitCount() > 0);
+	}
+}
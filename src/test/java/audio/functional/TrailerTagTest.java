@@ -0,0 +1,112 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.reader.ID3TagReader;
+import org.audio.metadata.reader.ID3TagReader.TagType;
+import org.audio.metadata.reader.MetadataReader;
+import org.audio.metadata.reader.ReaderLimits;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests ID3v1 and APEv2 tags found at the end of MP3 files.
+ */
+public class TrailerTagTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * Writes an MP3 made up of the given parts.
+	 * 
+	 * @param parts tags and audio in file order
+	 * @return path to the new file
+	 */
+	private Path write(byte[]... parts) throws IOException {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			file.writeBytes(part);
+		}
+		return SyntheticAudio.write(directory, "test.mp3", file.toByteArray());
+	}
+
+	@Test
+	void test_id3v1Only() throws IOException {
+		Path file = write(SyntheticAudio.mpegFrames(), SyntheticAudio.id3v1("Old Title", "Old Artist", 7, 17));
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+
+		assertEquals(List.of("Old Title"), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of("Old Artist"), metadata.getTextField(Constants.ARTIST_NAME));
+		assertEquals(List.of("7"), metadata.getTextField(Constants.TRACK_NUMBER));
+		assertEquals(List.of("Rock"), metadata.getTextField(Constants.GENRE));
+	}
+
+	@Test
+	void test_precedence() throws IOException {
+		Path file = write(SyntheticAudio.mp3(), SyntheticAudio.apeTag("Title", "Ape Title", "Year", "1999"),
+				SyntheticAudio.id3v1("Old Title", "Old Artist", 7, 17));
+
+		// default: ID3v2, then APEv2, then ID3v1
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of("1999"), metadata.getTextField(Constants.YEAR));
+		assertEquals(List.of("7"), metadata.getTextField(Constants.TRACK_NUMBER));
+		assertEquals(1, metadata.getImages().size());
+
+		ID3TagReader reader = (ID3TagReader) MetadataReader.of(file);
+		reader.setPrecedence(List.of(TagType.APEV2, TagType.ID3V1, TagType.ID3V2));
+		reader.setConcurrentTailRead(true);
+		metadata = reader.getMetadata();
+		assertEquals(List.of("Ape Title"), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of("Old Artist"), metadata.getTextField(Constants.ARTIST_NAME));
+		assertEquals(List.of(SyntheticAudio.ALBUM), metadata.getTextField(Constants.ALBUM_NAME));
+	}
+
+	@Test
+	void test_keysIgnoreDefaultLocale() throws IOException {
+		Path file = write(SyntheticAudio.mpegFrames(), SyntheticAudio.apeTag("title", "Ape Title"));
+		Locale locale = Locale.getDefault();
+		try {
+			// Turkish upper cases "i" to a dotted capital I
+			Locale.setDefault(Locale.forLanguageTag("tr"));
+			Metadata metadata = MetadataReader.of(file).getMetadata();
+			assertEquals(List.of("Ape Title"), metadata.getTextField(Constants.TITLE));
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	@Test
+	void test_corruptHead() throws IOException {
+		Path file = write(SyntheticAudio.mp3(), SyntheticAudio.id3v1("Old Title", "Old Artist", 7, 17));
+		// the third ID3v2 frame exceeds the structure limit
+		ReaderLimits limits = new ReaderLimits(1 << 20, 1 << 20, 2, 8);
+
+		for (boolean concurrent : new boolean[] { false, true }) {
+			ID3TagReader reader = (ID3TagReader) MetadataReader.of(file, limits);
+			reader.setConcurrentTailRead(concurrent);
+			Metadata metadata = reader.getMetadata();
+
+			// frames before the corrupt one are kept, the trailer still fills in the rest
+			assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+			assertEquals(List.of(SyntheticAudio.ARTIST), metadata.getTextField(Constants.ARTIST_NAME));
+			assertFalse(metadata.hasTextField(Constants.ALBUM_NAME));
+			assertEquals(List.of("7"), metadata.getTextField(Constants.TRACK_NUMBER));
+		}
+	}
+}
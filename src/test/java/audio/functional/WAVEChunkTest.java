@@ -0,0 +1,159 @@
+package audio.functional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.reader.MetadataReader;
+import org.audio.metadata.reader.ReaderStatistics;
+import org.audio.utils.FileUtils.Format;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Tests walking the chunks of WAVE files laid out in other ways than the
+ * canonical 44 byte header.
+ */
+public class WAVEChunkTest {
+
+	/**
+	 * scratch folder for generated files
+	 */
+	@TempDir
+	Path directory;
+
+	@AfterEach
+	void disable() {
+		ReaderStatistics.getInstance().setEnabled(false);
+		ReaderStatistics.getInstance().reset();
+	}
+
+	@Test
+	void test_chunksBeforeData() throws IOException {
+		ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+		chunks.writeBytes("WAVE".getBytes(StandardCharsets.US_ASCII));
+		// odd sized, followed by a padding byte
+		SyntheticAudio.riffChunk(chunks, "JUNK", new byte[27]);
+		SyntheticAudio.riffChunk(chunks, "bext", bext());
+		SyntheticAudio.riffChunk(chunks, "fmt ", fmt());
+		SyntheticAudio.riffChunk(chunks, "LIST", info());
+		SyntheticAudio.riffChunk(chunks, "iXML", "<BWFXML><SCENE>1</SCENE></BWFXML>".getBytes(StandardCharsets.UTF_8));
+		SyntheticAudio.riffChunk(chunks, "data", new byte[1 << 20]);
+
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		SyntheticAudio.id3Frame(frames, "TALB", SyntheticAudio.latin1Text(SyntheticAudio.ALBUM));
+		SyntheticAudio.riffChunk(chunks, "id3 ", SyntheticAudio.id3Tag(3, 0, frames.toByteArray(), 0));
+
+		ReaderStatistics statistics = ReaderStatistics.getInstance();
+		statistics.reset();
+		statistics.setEnabled(true);
+		Metadata metadata = read("RIFF", chunks.toByteArray());
+
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of(SyntheticAudio.ALBUM), metadata.getTextField(Constants.ALBUM_NAME));
+		assertEquals(List.of("Field recording"), metadata.getTextField("Comments"));
+		assertEquals(List.of("Recorder"), metadata.getTextField("Originator"));
+		assertEquals(List.of("2024-05-01"), metadata.getTextField(Constants.DATE));
+		assertEquals(List.of("12:30:00"), metadata.getTextField("Origination Time"));
+		assertEquals(List.of("88200"), metadata.getTextField("Time Reference"));
+		assertEquals(List.of("A=PCM,F=44100,W=16,M=stereo\r\n"), metadata.getTextField("Coding History"));
+		assertEquals(List.of("<BWFXML><SCENE>1</SCENE></BWFXML>"), metadata.getTextField("iXML"));
+
+		assertEquals(SyntheticAudio.SAMPLE_RATE, metadata.getStreamInfo().getSampleRate());
+		assertEquals(2, metadata.getStreamInfo().getChannels());
+		assertEquals(Duration.ofNanos((1L << 18) * 1_000_000_000L / SyntheticAudio.SAMPLE_RATE),
+				metadata.getStreamInfo().getDuration());
+
+		// the audio is skipped, not read
+		assertTrue(statistics.getFormat(Format.WAV).getBytesRead() < 8192);
+	}
+
+	@Test
+	void test_rf64() throws IOException {
+		ByteBuffer ds64 = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+		ds64.putLong(0).putLong(4096).putLong(1024).putInt(0);
+
+		ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+		chunks.writeBytes("WAVE".getBytes(StandardCharsets.US_ASCII));
+		SyntheticAudio.riffChunk(chunks, "ds64", ds64.array());
+		SyntheticAudio.riffChunk(chunks, "fmt ", fmt());
+		// the actual size is held by ds64
+		chunks.writeBytes("data".getBytes(StandardCharsets.US_ASCII));
+		chunks.writeBytes(SyntheticAudio.le32(-1));
+		chunks.writeBytes(new byte[4096]);
+		SyntheticAudio.riffChunk(chunks, "LIST", info());
+
+		Metadata metadata = read("RF64", chunks.toByteArray());
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextField(Constants.TITLE));
+		assertEquals(List.of(SyntheticAudio.ARTIST), metadata.getTextField(Constants.ARTIST_NAME));
+		assertEquals(Duration.ofNanos(1024 * 1_000_000_000L / SyntheticAudio.SAMPLE_RATE),
+				metadata.getStreamInfo().getDuration());
+	}
+
+	/**
+	 * Writes a WAVE file consisting of a header and {@code chunks} and parses
+	 * it.
+	 *
+	 * @param form   'RIFF', 'RF64' or 'BW64'
+	 * @param chunks 'WAVE' marker followed by the chunks
+	 * @return parsed metadata
+	 */
+	private Metadata read(String form, byte[] chunks) throws IOException {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		file.writeBytes(form.getBytes(StandardCharsets.US_ASCII));
+		file.writeBytes(SyntheticAudio.le32(form.equals("RIFF") ? chunks.length : -1));
+		file.writeBytes(chunks);
+		Path path = SyntheticAudio.write(directory, "test.wav", file.toByteArray());
+		return MetadataReader.of(path).getMetadata();
+	}
+
+	/**
+	 * @return 16 bit stereo PCM format
+	 */
+	private static byte[] fmt() {
+		ByteBuffer fmt = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+		fmt.putShort((short) 1).putShort((short) 2).putInt(SyntheticAudio.SAMPLE_RATE)
+				.putInt(SyntheticAudio.SAMPLE_RATE * 4).putShort((short) 4).putShort((short) 16);
+		return fmt.array();
+	}
+
+	/**
+	 * @return INFO list holding title and artist, the title odd sized
+	 */
+	private static byte[] info() {
+		ByteArrayOutputStream info = new ByteArrayOutputStream();
+		info.writeBytes("INFO".getBytes(StandardCharsets.US_ASCII));
+		SyntheticAudio.riffChunk(info, "INAM", (SyntheticAudio.TITLE + "\0").getBytes(StandardCharsets.UTF_8));
+		SyntheticAudio.riffChunk(info, "IART", (SyntheticAudio.ARTIST + "\0").getBytes(StandardCharsets.UTF_8));
+		return info.toByteArray();
+	}
+
+	/**
+	 * @return Broadcast Wave extension with an odd sized coding history
+	 */
+	private static byte[] bext() {
+		byte[] history = "A=PCM,F=44100,W=16,M=stereo\r\n".getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer bext = ByteBuffer.allocate(602 + history.length).order(ByteOrder.LITTLE_ENDIAN);
+		bext.put(0, "Field recording".getBytes(StandardCharsets.US_ASCII));
+		bext.put(256, "Recorder".getBytes(StandardCharsets.US_ASCII));
+		bext.put(320, "2024-05-01".getBytes(StandardCharsets.US_ASCII));
+		bext.put(330, "12:30:00".getBytes(StandardCharsets.US_ASCII));
+		bext.putLong(338, 88200);
+		bext.putShort(346, (short) 1);
+		bext.put(602, history);
+		return bext.array();
+	}
+}
@@ -0,0 +1,219 @@
+package audio.fuzz;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.audio.metadata.Constants;
+import org.audio.metadata.CoverArt;
+import org.audio.metadata.Metadata;
+import org.audio.metadata.reader.MetadataReader;
+import org.audio.metadata.reader.ReaderLimits;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import audio.synthetic.SyntheticAudio;
+
+/**
+ * Feeds mutated synthetic files to every reader to make sure hostile input
+ * neither throws, prints, allocates beyond {@link ReaderLimits}, nor stalls a
+ * reader.
+ */
+public class ReaderFuzzTest {
+
+	/**
+	 * Number of mutated files generated per format
+	 */
+	private static final int ITERATIONS = 300;
+
+	/**
+	 * Time allowed for any single file to parse
+	 */
+	private static final Duration TIMEOUT = Duration.ofSeconds(2);
+
+	/**
+	 * Leading bytes left intact, enough for the 16 byte ASF header GUID
+	 */
+	private static final int MAGIC_SIZE = 16;
+
+	/**
+	 * Limits small enough that a corrupt size cannot exhaust the test heap
+	 */
+	private static final ReaderLimits LIMITS = new ReaderLimits(1 << 20, 1 << 20, 1024, 8);
+
+	/**
+	 * scratch folder for mutated files
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * Standard error stream replaced while a test runs
+	 */
+	private PrintStream stderr;
+
+	/**
+	 * Everything printed to standard error while a test runs
+	 */
+	private ByteArrayOutputStream errors;
+
+	@BeforeEach
+	void captureErrors() {
+		stderr = System.err;
+		errors = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(errors, true));
+	}
+
+	@AfterEach
+	void assertNothingPrinted() {
+		System.setErr(stderr);
+		// corrupt input is reported through the statistics, not printed
+		assertEquals("", errors.toString());
+	}
+
+	/**
+	 * Returns a fresh copy of the synthetic file for {@code format}.
+	 * 
+	 * @param format file extension
+	 * @return generator for the well-formed file
+	 */
+	private static Supplier<byte[]> generator(String format) {
+		switch (format) {
+			case "mp3":
+				return SyntheticAudio::mp3;
+			case "flac":
+				return SyntheticAudio::flac;
+			case "wav":
+				return SyntheticAudio::wav;
+			case "rf64":
+				return () -> SyntheticAudio.rf64(4096);
+			case "aiff":
+				return SyntheticAudio::aiff;
+			case "wma":
+				return SyntheticAudio::wma;
+			case "mka":
+				return () -> SyntheticAudio.mka(4096);
+			case "m4a":
+				return SyntheticAudio::m4a;
+			case "dash":
+				return () -> SyntheticAudio.fragmentedM4a(8, 64, true);
+			case "mfra":
+				return () -> SyntheticAudio.fragmentedM4a(8, 64, false);
+			case "ogg":
+				return SyntheticAudio::ogg;
+			case "opus":
+				return SyntheticAudio::opus;
+			case "oga":
+				return SyntheticAudio::oggFlac;
+			default:
+				throw new IllegalArgumentException(format);
+		}
+	}
+
+	/**
+	 * Reads a file and decodes everything kept undecoded by {@link Metadata}:
+	 * text, compressed or unsynchronised frames and Base64 pictures.
+	 * 
+	 * @param reader reader of the file
+	 * @return the decoded metadata
+	 */
+	private static Metadata decode(MetadataReader reader) {
+		Metadata metadata = reader.getMetadata();
+		metadata.getTextFields();
+		for (CoverArt image : metadata.getImages()) {
+			image.getBinaryData();
+		}
+		return metadata;
+	}
+
+	/**
+	 * Sanity check that the unmodified files parse before fuzzing them.
+	 * 
+	 * @param format file extension
+	 */
+	@ParameterizedTest
+	@ValueSource(strings = { "mp3", "flac", "wav", "rf64", "aiff", "wma", "mka", "m4a", "dash", "mfra", "ogg", "opus", "oga" })
+	void test_wellFormed(String format) throws IOException {
+		Path file = SyntheticAudio.write(directory, "sample." + format, generator(format).get());
+		Metadata metadata = MetadataReader.of(file).getMetadata();
+
+		assertEquals(List.of(SyntheticAudio.TITLE), metadata.getTextFields().get(Constants.TITLE));
+		assertEquals(List.of(SyntheticAudio.ARTIST), metadata.getTextFields().get(Constants.ARTIST_NAME));
+	}
+
+	/**
+	 * Randomly overwrites bytes and truncates files, then parses them.
+	 * 
+	 * @param format file extension
+	 */
+	@ParameterizedTest
+	@ValueSource(strings = { "mp3", "flac", "wav", "rf64", "aiff", "wma", "mka", "m4a", "dash", "mfra", "ogg", "opus", "oga" })
+	void test_mutations(String format) throws IOException {
+		byte[] original = generator(format).get();
+		Random random = new Random(format.hashCode());
+
+		for (int i = 0; i < ITERATIONS; ++i) {
+			byte[] mutated = original.clone();
+
+			// leave the magic number intact so the same reader is chosen
+			int mutations = 1 + random.nextInt(8);
+			for (int m = 0; m < mutations; ++m) {
+				int index = MAGIC_SIZE + random.nextInt(mutated.length - MAGIC_SIZE);
+				mutated[index] = random.nextBoolean() ? (byte) random.nextInt() : (byte) 0xFF;
+			}
+			if (random.nextInt(4) == 0) {
+				mutated = Arrays.copyOf(mutated, MAGIC_SIZE + random.nextInt(mutated.length - MAGIC_SIZE));
+			}
+
+			Path file = SyntheticAudio.write(directory, i + "." + format, mutated);
+			MetadataReader reader = MetadataReader.of(file, LIMITS);
+			assertTimeoutPreemptively(TIMEOUT, () -> assertDoesNotThrow(() -> decode(reader)),
+					"Mutation " + i + " of " + format);
+		}
+	}
+
+	/**
+	 * ds64 sizes that overflow, point backwards or loop back to the same chunk
+	 * are not followed.
+	 * 
+	 * @param dataSize size of the data chunk given by ds64
+	 */
+	@ParameterizedTest
+	@ValueSource(longs = { Long.MAX_VALUE, Long.MIN_VALUE, -64, -8, 0xFFFFFFFFL << 8 })
+	void test_hostileDataSize(long dataSize) throws IOException {
+		Path file = SyntheticAudio.write(directory, "hostile.wav", SyntheticAudio.rf64(dataSize));
+		MetadataReader reader = MetadataReader.of(file, LIMITS);
+		Metadata metadata = assertTimeoutPreemptively(TIMEOUT, () -> assertDoesNotThrow(() -> decode(reader)));
+
+		// the rejected size leaves the data chunk running to the end of file
+		assertTrue(metadata.getTextFields().isEmpty());
+	}
+
+	/**
+	 * A tag larger than the configured limit is rejected before allocation.
+	 */
+	@Test
+	void test_tagSizeLimit() throws IOException {
+		Path file = SyntheticAudio.write(directory, "limited.mp3", SyntheticAudio.mp3());
+		ReaderLimits tiny = new ReaderLimits(16, 16, 16, 1);
+
+		Metadata metadata = MetadataReader.of(file, tiny).getMetadata();
+		assertTrue(metadata.getTextFields().isEmpty());
+		assertTrue(metadata.getImages().isEmpty());
+	}
+}
@@ -0,0 +1,971 @@
+package audio.synthetic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Generates small, well-formed audio files in memory so that tests do not
+ * depend on sample files being present. Every file carries the same tags:
+ * {@link #TITLE}, {@link #ARTIST}, {@link #ALBUM} and the {@link #JPEG} image.
+ */
+public final class SyntheticAudio {
+
+	/**
+	 * This class is for static helpers and need not be instantiated
+	 */
+	private SyntheticAudio() {
+	}
+
+	/**
+	 * Title written to every generated file
+	 */
+	public static final String TITLE = "Synthetic Title";
+
+	/**
+	 * Artist written to every generated file
+	 */
+	public static final String ARTIST = "Synthetic Artist";
+
+	/**
+	 * Album written to every generated file
+	 */
+	public static final String ALBUM = "Synthetic Album";
+
+	/**
+	 * Sample rate of every generated stream
+	 */
+	public static final int SAMPLE_RATE = 44100;
+
+	/**
+	 * Number of samples per channel in every generated stream, ten seconds
+	 */
+	public static final long TOTAL_SAMPLES = 10L * SAMPLE_RATE;
+
+	/**
+	 * Pre-skip declared by the generated Opus stream
+	 */
+	public static final int OPUS_PRE_SKIP = 312;
+
+	/**
+	 * Minimal JPEG: SOI, APP0/JFIF, a few filler bytes, EOI.
+	 */
+	public static final byte[] JPEG = { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0x00, 0x10, 0x4A, 0x46,
+			0x49, 0x46, 0x00, 0x01, 0x01, 0x00, 0x00, 0x01, 0x00, 0x01, 0x00, 0x00, 0x11, 0x22, 0x33, 0x44,
+			(byte) 0xFF, (byte) 0xD9 };
+
+	/**
+	 * Writes {@code data} to a new file in {@code directory}.
+	 * 
+	 * @param directory parent folder
+	 * @param name      file name
+	 * @param data      file contents
+	 * @return path to the new file
+	 * @throws IOException if the file cannot be written
+	 */
+	public static Path write(Path directory, String name, byte[] data) throws IOException {
+		return Files.write(directory.resolve(name), data);
+	}
+
+	/**
+	 * @return MP3 file with an ID3v2.3 tag, 64 bytes of padding and fake frames
+	 */
+	public static byte[] mp3() {
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		id3Frame(frames, "TIT2", latin1Text(TITLE));
+		id3Frame(frames, "TPE1", latin1Text(ARTIST));
+		id3Frame(frames, "TALB", latin1Text(ALBUM));
+
+		ByteArrayOutputStream apic = new ByteArrayOutputStream();
+		apic.write(0);
+		apic.writeBytes("image/jpeg".getBytes(StandardCharsets.ISO_8859_1));
+		apic.write(0);
+		apic.write(3);
+		apic.write(0);
+		apic.writeBytes(JPEG);
+		id3Frame(frames, "APIC", apic.toByteArray());
+
+		byte[] body = frames.toByteArray();
+		int tagSize = body.length + 64;
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(new byte[] { 'I', 'D', '3', 3, 0, 0 });
+		out.writeBytes(synchsafe(tagSize));
+		out.writeBytes(body);
+		out.writeBytes(new byte[64]);
+		out.writeBytes(mpegFrames());
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return FLAC file with STREAMINFO, VORBIS_COMMENT, PICTURE and PADDING
+	 */
+	public static byte[] flac() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(new byte[] { 'f', 'L', 'a', 'C' });
+		flacBlock(out, 0, false, streamInfo());
+		flacBlock(out, 4, false, vorbisComments(false));
+		flacBlock(out, 6, false, flacPicture());
+		flacBlock(out, 1, true, new byte[64]);
+		out.writeBytes(new byte[] { (byte) 0xFF, (byte) 0xF8, 0x69, 0x08, 0x00, 0x00 });
+		out.writeBytes(new byte[1024]);
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return canonical PCM WAVE file followed by a LIST/INFO chunk
+	 */
+	public static byte[] wav() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes("RIFF".getBytes(StandardCharsets.US_ASCII));
+		byte[] chunks = waveChunks(null);
+		out.writeBytes(le32(chunks.length));
+		out.writeBytes(chunks);
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param dataSize size of the data chunk given by the ds64 chunk
+	 * @return the file of {@link #wav()} as RF64, the sizes of the form and
+	 *         data chunk held by a ds64 chunk
+	 */
+	public static byte[] rf64(long dataSize) {
+		ByteBuffer ds64 = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+		ds64.putLong(0).putLong(dataSize).putLong(1024).putInt(0);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes("RF64".getBytes(StandardCharsets.US_ASCII));
+		out.writeBytes(le32(-1));
+		out.writeBytes(waveChunks(ds64.array()));
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param ds64 body of the ds64 chunk, or {@code null} for a RIFF file
+	 * @return 'WAVE' marker followed by fmt, data and LIST/INFO chunks
+	 */
+	private static byte[] waveChunks(byte[] ds64) {
+		byte[] samples = new byte[4096];
+
+		ByteArrayOutputStream info = new ByteArrayOutputStream();
+		info.writeBytes("INFO".getBytes(StandardCharsets.US_ASCII));
+		riffChunk(info, "INAM", nulTerminated(TITLE));
+		riffChunk(info, "IART", nulTerminated(ARTIST));
+		riffChunk(info, "IPRD", nulTerminated(ALBUM));
+
+		ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+		chunks.writeBytes("WAVE".getBytes(StandardCharsets.US_ASCII));
+		if (ds64 != null) {
+			riffChunk(chunks, "ds64", ds64);
+		}
+		ByteBuffer fmt = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+		fmt.putShort((short) 1).putShort((short) 2).putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * 4)
+				.putShort((short) 4).putShort((short) 16);
+		riffChunk(chunks, "fmt ", fmt.array());
+		if (ds64 != null) {
+			// the actual size is held by ds64
+			chunks.writeBytes("data".getBytes(StandardCharsets.US_ASCII));
+			chunks.writeBytes(le32(-1));
+			chunks.writeBytes(samples);
+		} else {
+			riffChunk(chunks, "data", samples);
+		}
+		riffChunk(chunks, "LIST", info.toByteArray());
+		return chunks.toByteArray();
+	}
+
+	/**
+	 * @return 16 bit stereo AIFF file with NAME and AUTH chunks before the sound
+	 *         data, followed by an ID3 chunk holding the album
+	 */
+	public static byte[] aiff() {
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		id3Frame(frames, "TALB", latin1Text(ALBUM));
+
+		ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+		chunks.writeBytes("AIFF".getBytes(StandardCharsets.US_ASCII));
+		iffChunk(chunks, "COMM", aiffCommon(SAMPLE_RATE * 10));
+		iffChunk(chunks, "NAME", TITLE.getBytes(StandardCharsets.ISO_8859_1));
+		iffChunk(chunks, "AUTH", ARTIST.getBytes(StandardCharsets.ISO_8859_1));
+		iffChunk(chunks, "SSND", new byte[8 + 4096]);
+		iffChunk(chunks, "ID3 ", id3Tag(3, 0, frames.toByteArray(), 0));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes("FORM".getBytes(StandardCharsets.US_ASCII));
+		out.writeBytes(ByteBuffer.allocate(4).putInt(chunks.size()).array());
+		out.writeBytes(chunks.toByteArray());
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param frames number of sample frames
+	 * @return AIFF common chunk for 16 bit stereo at {@link #SAMPLE_RATE}
+	 */
+	public static byte[] aiffCommon(int frames) {
+		// 80 bit extended: biased exponent followed by a mantissa with explicit integer bit
+		int exponent = 31 - Integer.numberOfLeadingZeros(SAMPLE_RATE);
+		ByteBuffer common = ByteBuffer.allocate(18);
+		common.putShort((short) 2).putInt(frames).putShort((short) 16).putShort((short) (16383 + exponent))
+				.putLong((long) SAMPLE_RATE << (63 - exponent));
+		return common.array();
+	}
+
+	/**
+	 * @return WMA file whose header holds file and audio stream properties, a
+	 *         Content Description with title and artist and an Extended Content
+	 *         Description with album, track number and picture, followed by a
+	 *         small Data Object
+	 */
+	public static byte[] wma() {
+		// ten seconds of play after a three second preroll
+		ByteBuffer file = ByteBuffer.allocate(80).order(ByteOrder.LITTLE_ENDIAN);
+		file.putLong(40, 130_000_000L).putLong(56, 3000).putInt(76, 128_000);
+
+		ByteBuffer stream = ByteBuffer.allocate(54 + 18).order(ByteOrder.LITTLE_ENDIAN);
+		stream.put(asfGuid("F8699E40-5B4D-11CF-A8FD-00805F5C442B")).position(40);
+		stream.putInt(18).putInt(0).putShort((short) 1).putInt(0);
+		stream.putShort((short) 0x161).putShort((short) 2).putInt(SAMPLE_RATE).putInt(16_000).putShort((short) 2048)
+				.putShort((short) 16).putShort((short) 0);
+
+		byte[] title = utf16(TITLE);
+		byte[] artist = utf16(ARTIST);
+		ByteBuffer content = ByteBuffer.allocate(10 + title.length + artist.length).order(ByteOrder.LITTLE_ENDIAN);
+		content.putShort((short) title.length).putShort((short) artist.length).putShort((short) 0)
+				.putShort((short) 0).putShort((short) 0).put(title).put(artist);
+
+		ByteArrayOutputStream picture = new ByteArrayOutputStream();
+		picture.write(3);
+		picture.writeBytes(le32(JPEG.length));
+		picture.writeBytes(utf16("image/jpeg"));
+		picture.writeBytes(utf16(""));
+		picture.writeBytes(JPEG);
+
+		ByteArrayOutputStream extended = new ByteArrayOutputStream();
+		extended.writeBytes(new byte[] { 3, 0 });
+		asfDescriptor(extended, "WM/AlbumTitle", 0, utf16(ALBUM));
+		asfDescriptor(extended, "WM/TrackNumber", 3, le32(3));
+		asfDescriptor(extended, "WM/Picture", 1, picture.toByteArray());
+
+		ByteArrayOutputStream objects = new ByteArrayOutputStream();
+		asfObject(objects, "8CABDCA1-A947-11CF-8EE4-00C00C205365", file.array());
+		asfObject(objects, "B7DC0791-A9B7-11CF-8EE6-00C00C205365", stream.array());
+		asfObject(objects, "75B22633-668E-11CF-A6D9-00AA0062CE6C", content.array());
+		asfObject(objects, "D2D0A440-E307-11D2-97F0-00A0C95EA850", extended.toByteArray());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(asfGuid("75B22630-668E-11CF-A6D9-00AA0062CE6C"));
+		out.writeBytes(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(30 + objects.size()).array());
+		out.writeBytes(le32(4));
+		out.writeBytes(new byte[] { 1, 2 });
+		out.writeBytes(objects.toByteArray());
+		asfObject(out, "75B22636-668E-11CF-A6D9-00AA0062CE6C", new byte[4096]);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Appends an ASF object.
+	 * 
+	 * @param out  destination
+	 * @param guid object GUID in its textual form
+	 * @param body object contents
+	 */
+	public static void asfObject(ByteArrayOutputStream out, String guid, byte[] body) {
+		out.writeBytes(asfGuid(guid));
+		out.writeBytes(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(24 + body.length).array());
+		out.writeBytes(body);
+	}
+
+	/**
+	 * Appends a content descriptor of the Extended Content Description Object.
+	 * 
+	 * @param out   destination
+	 * @param name  attribute name
+	 * @param type  attribute data type, 0 = string, 1 = bytes, 3 = DWORD
+	 * @param value attribute value
+	 */
+	public static void asfDescriptor(ByteArrayOutputStream out, String name, int type, byte[] value) {
+		byte[] encoded = utf16(name);
+		ByteBuffer header = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+		out.writeBytes(header.putShort(0, (short) encoded.length).array());
+		out.writeBytes(encoded);
+		out.writeBytes(header.putShort(0, (short) type).array());
+		out.writeBytes(header.putShort(0, (short) value.length).array());
+		out.writeBytes(value);
+	}
+
+	/**
+	 * @param text GUID in its usual textual form
+	 * @return the GUID in ASF byte order, the first three groups little endian
+	 */
+	public static byte[] asfGuid(String text) {
+		UUID uuid = UUID.fromString(text);
+		long high = uuid.getMostSignificantBits();
+		ByteBuffer guid = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+		guid.putInt((int) (high >>> 32)).putShort((short) (high >>> 16)).putShort((short) high);
+		guid.order(ByteOrder.BIG_ENDIAN).putLong(uuid.getLeastSignificantBits());
+		return guid.array();
+	}
+
+	/**
+	 * @param text value
+	 * @return UTF-16LE bytes with a trailing null character
+	 */
+	public static byte[] utf16(String text) {
+		return (text + "\0").getBytes(StandardCharsets.UTF_16LE);
+	}
+
+	/**
+	 * Builds a Matroska audio file with a SeekHead, Info and Tracks ahead of a
+	 * Cluster, followed by Tags and Attachments that are only reachable through
+	 * the SeekHead without walking over the Cluster.
+	 * 
+	 * @param clusterSize size of the fake audio
+	 * @return Opus in Matroska file lasting ten seconds, with title, artist and
+	 *         album tags and a cover.jpg attachment
+	 */
+	public static byte[] mka(int clusterSize) {
+		byte[] info = ebml(0x1549A966, concat(ebmlUint(0x2AD7B1, 1_000_000),
+				ebml(0x4489, ByteBuffer.allocate(8).putDouble(10_000).array()),
+				ebml(0x5741, "synthetic".getBytes(StandardCharsets.UTF_8))));
+		byte[] tracks = ebml(0x1654AE6B, ebml(0xAE, concat(ebmlUint(0x83, 2),
+				ebml(0x86, "A_OPUS".getBytes(StandardCharsets.US_ASCII)),
+				ebml(0xE1, concat(ebml(0xB5, ByteBuffer.allocate(4).putFloat(48_000).array()), ebmlUint(0x9F, 2))))));
+		byte[] cluster = ebml(0x1F43B675, new byte[clusterSize]);
+		byte[] tags = ebml(0x1254C367, concat(
+				ebml(0x7373, concat(ebml(0x63C0, ebmlUint(0x68CA, 50)), simpleTag("TITLE", ALBUM))),
+				ebml(0x7373, concat(ebml(0x63C0, new byte[0]), simpleTag("TITLE", TITLE), simpleTag("ARTIST", ARTIST)))));
+		byte[] attachments = ebml(0x1941A469, ebml(0x61A7, concat(
+				ebml(0x466E, "cover.jpg".getBytes(StandardCharsets.UTF_8)),
+				ebml(0x4660, "image/jpeg".getBytes(StandardCharsets.US_ASCII)), ebml(0x465C, JPEG))));
+
+		// positions are relative to the Segment body, the SeekHead has a fixed size
+		int[] ids = { 0x1549A966, 0x1654AE6B, 0x1254C367, 0x1941A469 };
+		int seekHeadSize = seekHead(ids, new long[ids.length]).length;
+		long infoPosition = seekHeadSize;
+		long tracksPosition = infoPosition + info.length;
+		long tagsPosition = tracksPosition + tracks.length + cluster.length;
+		long attachmentsPosition = tagsPosition + tags.length;
+		byte[] seekHead = seekHead(ids, new long[] { infoPosition, tracksPosition, tagsPosition, attachmentsPosition });
+
+		byte[] header = ebml(0x1A45DFA3,
+				concat(ebmlUint(0x4286, 1), ebml(0x4282, "matroska".getBytes(StandardCharsets.US_ASCII))));
+		return concat(header, ebml(0x18538067, concat(seekHead, info, tracks, cluster, tags, attachments)));
+	}
+
+	/**
+	 * @param ids       IDs of the indexed elements
+	 * @param positions positions of the indexed elements
+	 * @return SeekHead element with 8 byte positions
+	 */
+	private static byte[] seekHead(int[] ids, long[] positions) {
+		ByteArrayOutputStream seeks = new ByteArrayOutputStream();
+		for (int i = 0; i < ids.length; ++i) {
+			seeks.writeBytes(ebml(0x4DBB, concat(ebml(0x53AB, ByteBuffer.allocate(4).putInt(ids[i]).array()),
+					ebml(0x53AC, ByteBuffer.allocate(8).putLong(positions[i]).array()))));
+		}
+		return ebml(0x114D9B74, seeks.toByteArray());
+	}
+
+	/**
+	 * @param name  tag name
+	 * @param value tag value
+	 * @return Matroska SimpleTag element
+	 */
+	public static byte[] simpleTag(String name, String value) {
+		return ebml(0x67C8, concat(ebml(0x45A3, name.getBytes(StandardCharsets.UTF_8)),
+				ebml(0x4487, value.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	/**
+	 * @param id    element ID, including its length marker
+	 * @param value unsigned value
+	 * @return EBML unsigned integer element of 8 bytes
+	 */
+	public static byte[] ebmlUint(int id, long value) {
+		return ebml(id, ByteBuffer.allocate(8).putLong(value).array());
+	}
+
+	/**
+	 * @param id   element ID, including its length marker
+	 * @param body element data
+	 * @return EBML element with an 8 byte size
+	 */
+	public static byte[] ebml(int id, byte[] body) {
+		int idLength = 4 - Integer.numberOfLeadingZeros(id) / 8;
+		ByteBuffer element = ByteBuffer.allocate(idLength + 8 + body.length);
+		for (int i = idLength - 1; i >= 0; --i) {
+			element.put((byte) (id >>> (8 * i)));
+		}
+		element.putLong(0x0100_0000_0000_0000L | body.length).put(body);
+		return element.array();
+	}
+
+	/**
+	 * @param parts byte arrays
+	 * @return the arrays one after the other
+	 */
+	public static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			out.writeBytes(part);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return moov atom holding mvhd and udta/meta/ilst with title, artist,
+	 *         album and cover
+	 */
+	private static byte[] m4aMovie() {
+		ByteArrayOutputStream ilst = new ByteArrayOutputStream();
+		ilstItem(ilst, "©nam", 1, TITLE.getBytes(StandardCharsets.UTF_8));
+		ilstItem(ilst, "©ART", 1, ARTIST.getBytes(StandardCharsets.UTF_8));
+		ilstItem(ilst, "©alb", 1, ALBUM.getBytes(StandardCharsets.UTF_8));
+		ilstItem(ilst, "covr", 13, JPEG);
+
+		ByteArrayOutputStream hdlr = new ByteArrayOutputStream();
+		hdlr.writeBytes(new byte[8]);
+		hdlr.writeBytes("mdir".getBytes(StandardCharsets.ISO_8859_1));
+		hdlr.writeBytes("appl".getBytes(StandardCharsets.ISO_8859_1));
+		hdlr.writeBytes(new byte[9]);
+
+		ByteArrayOutputStream meta = new ByteArrayOutputStream();
+		meta.writeBytes(new byte[4]);
+		meta.writeBytes(atom("hdlr", hdlr.toByteArray()));
+		meta.writeBytes(atom("ilst", ilst.toByteArray()));
+
+		ByteBuffer mvhd = ByteBuffer.allocate(100);
+		mvhd.putInt(0).putInt(0).putInt(0).putInt(SAMPLE_RATE).putInt((int) TOTAL_SAMPLES).putInt(0x00010000)
+				.putShort((short) 0x0100);
+
+		ByteArrayOutputStream moov = new ByteArrayOutputStream();
+		moov.writeBytes(atom("mvhd", mvhd.array()));
+		moov.writeBytes(atom("udta", atom("meta", meta.toByteArray())));
+		return atom("moov", moov.toByteArray());
+	}
+
+	/**
+	 * @return M4A file with ftyp, moov/udta/meta/ilst and a small mdat
+	 */
+	public static byte[] m4a() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(atom("ftyp", "M4A \0\0\0\0M4A isom".getBytes(StandardCharsets.ISO_8859_1)));
+		out.writeBytes(m4aMovie());
+		out.writeBytes(atom("mdat", new byte[1024]));
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param fragments    number of moof/mdat pairs, one second each
+	 * @param mdatSize     size of the media data of each fragment
+	 * @param segmentIndex whether the fragments are listed by a sidx atom
+	 *                     ahead of them, or else by a mfra atom at the end
+	 * @return fragmented MP4 file with the moov of {@link #m4a()}
+	 */
+	public static byte[] fragmentedM4a(int fragments, int mdatSize, boolean segmentIndex) {
+		ByteArrayOutputStream fragment = new ByteArrayOutputStream();
+		fragment.writeBytes(atom("moof", atom("mfhd", new byte[8])));
+		fragment.writeBytes(atom("mdat", new byte[mdatSize]));
+		int fragmentSize = fragment.size();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(atom("ftyp", "dash\0\0\0\0iso6dash".getBytes(StandardCharsets.ISO_8859_1)));
+		out.writeBytes(m4aMovie());
+		if (segmentIndex) {
+			// version 0, reference ID 1, first fragment right after sidx
+			ByteBuffer sidx = ByteBuffer.allocate(24 + 12 * fragments);
+			sidx.putInt(0).putInt(1).putInt(SAMPLE_RATE).putInt(0).putInt(0).putShort((short) 0)
+					.putShort((short) fragments);
+			for (int i = 0; i < fragments; ++i) {
+				sidx.putInt(fragmentSize).putInt(SAMPLE_RATE).putInt(0x90000000);
+			}
+			out.writeBytes(atom("sidx", sidx.array()));
+		}
+
+		int first = out.size();
+		for (int i = 0; i < fragments; ++i) {
+			out.writeBytes(fragment.toByteArray());
+		}
+
+		if (!segmentIndex) {
+			// version 1, track 1, one byte each for traf, trun and sample numbers
+			ByteBuffer tfra = ByteBuffer.allocate(16 + 19 * fragments);
+			tfra.putInt(0x01000000).putInt(1).putInt(0).putInt(fragments);
+			for (int i = 0; i < fragments; ++i) {
+				tfra.putLong((long) i * SAMPLE_RATE).putLong(first + (long) i * fragmentSize).put(new byte[] { 1, 1, 1 });
+			}
+			byte[] tfraAtom = atom("tfra", tfra.array());
+			ByteBuffer mfro = ByteBuffer.allocate(8);
+			mfro.putInt(0).putInt(8 + tfraAtom.length + 16);
+			out.writeBytes(atom("mfra", concat(tfraAtom, atom("mfro", mfro.array()))));
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return Ogg Vorbis file with identification, comment, setup and audio pages
+	 */
+	public static byte[] ogg() {
+		ByteBuffer ident = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+		ident.put((byte) 1).put("vorbis".getBytes(StandardCharsets.US_ASCII)).putInt(0).put((byte) 2)
+				.putInt(SAMPLE_RATE).putInt(0).putInt(128000).putInt(0).put((byte) 0xB8).put((byte) 1);
+
+		ByteArrayOutputStream comment = new ByteArrayOutputStream();
+		comment.write(3);
+		comment.writeBytes("vorbis".getBytes(StandardCharsets.US_ASCII));
+		comment.writeBytes(vorbisComments(true));
+
+		ByteArrayOutputStream setup = new ByteArrayOutputStream();
+		setup.write(5);
+		setup.writeBytes("vorbis".getBytes(StandardCharsets.US_ASCII));
+		setup.writeBytes(new byte[32]);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(oggPage(0x02, 0, 0, ident.array()));
+		out.writeBytes(oggPage(0x00, 0, 1, comment.toByteArray(), setup.toByteArray()));
+		out.writeBytes(oggPage(0x00, TOTAL_SAMPLES / 2, 2, new byte[200]));
+		out.writeBytes(oggPage(0x04, TOTAL_SAMPLES, 3, new byte[200]));
+		return out.toByteArray();
+	}
+
+	/**
+	 * Builds a single Ogg page holding complete packets, with a valid CRC.
+	 * 
+	 * @param headerType page flags (continued, BOS, EOS)
+	 * @param granule    granule position of the last completed packet
+	 * @param sequence   page sequence number
+	 * @param packets    packets laced into the page
+	 * @return the encoded page
+	 */
+	public static byte[] oggPage(int headerType, long granule, int sequence, byte[]... packets) {
+		ByteArrayOutputStream lacing = new ByteArrayOutputStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		for (byte[] packet : packets) {
+			int remaining = packet.length;
+			while (remaining >= 255) {
+				lacing.write(255);
+				remaining -= 255;
+			}
+			lacing.write(remaining);
+			body.writeBytes(packet);
+		}
+
+		return rawOggPage(headerType, granule, sequence, lacing.toByteArray(), body.toByteArray());
+	}
+
+	/**
+	 * Builds Ogg pages for packets that may span several pages, starting a new
+	 * page whenever {@code maxSegments} lacing values have been used.
+	 * 
+	 * @param sequence    sequence number of the first page, 0 marks it BOS
+	 * @param maxSegments lacing values per page, at most 255
+	 * @param packets     packets in stream order
+	 * @return the encoded pages
+	 */
+	public static byte[] oggPages(int sequence, int maxSegments, byte[]... packets) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream lacing = new ByteArrayOutputStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		int headerType = sequence == 0 ? 0x02 : 0x00;
+
+		for (byte[] packet : packets) {
+			int offset = 0;
+			while (true) {
+				int length = Math.min(255, packet.length - offset);
+				lacing.write(length);
+				body.write(packet, offset, length);
+				offset += length;
+
+				boolean packetDone = length < 255;
+				if (lacing.size() == maxSegments) {
+					out.writeBytes(rawOggPage(headerType, 0, sequence++, lacing.toByteArray(), body.toByteArray()));
+					lacing.reset();
+					body.reset();
+					headerType = packetDone ? 0x00 : 0x01;
+				}
+				if (packetDone) {
+					break;
+				}
+			}
+		}
+		if (lacing.size() > 0) {
+			out.writeBytes(rawOggPage(headerType, 0, sequence, lacing.toByteArray(), body.toByteArray()));
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Builds a single Ogg page from a prepared segment table.
+	 * 
+	 * @param headerType page flags (continued, BOS, EOS)
+	 * @param granule    granule position of the last completed packet
+	 * @param sequence   page sequence number
+	 * @param lacing     segment table
+	 * @param body       page contents
+	 * @return the encoded page
+	 */
+	private static byte[] rawOggPage(int headerType, long granule, int sequence, byte[] lacing, byte[] body) {
+		ByteBuffer page = ByteBuffer.allocate(27 + lacing.length + body.length).order(ByteOrder.LITTLE_ENDIAN);
+		page.put("OggS".getBytes(StandardCharsets.US_ASCII)).put((byte) 0).put((byte) headerType).putLong(granule)
+				.putInt(0x1234).putInt(sequence).putInt(0).put((byte) lacing.length);
+		page.put(lacing).put(body);
+		page.putInt(22, oggCrc(page.array()));
+		return page.array();
+	}
+
+	/**
+	 * @return Ogg Opus stream with an OpusTags header, whose comments include
+	 *         a Base64 METADATA_BLOCK_PICTURE, and two audio pages
+	 */
+	public static byte[] opus() {
+		ByteBuffer head = ByteBuffer.allocate(19).order(ByteOrder.LITTLE_ENDIAN);
+		head.put("OpusHead".getBytes(StandardCharsets.US_ASCII)).put((byte) 1).put((byte) 2)
+				.putShort((short) OPUS_PRE_SKIP).putInt(SAMPLE_RATE).putShort((short) 0).put((byte) 0);
+
+		ByteArrayOutputStream tags = new ByteArrayOutputStream();
+		tags.writeBytes("OpusTags".getBytes(StandardCharsets.US_ASCII));
+		tags.writeBytes(vorbisComments(false,
+				"METADATA_BLOCK_PICTURE=" + Base64.getEncoder().encodeToString(flacPicture())));
+
+		// opus granule positions always count 48 kHz samples
+		long granule = 10L * 48000 + OPUS_PRE_SKIP;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(oggPage(0x02, 0, 0, head.array()));
+		out.writeBytes(oggPage(0x00, 0, 1, tags.toByteArray()));
+		out.writeBytes(oggPage(0x00, granule / 2, 2, new byte[200]));
+		out.writeBytes(oggPage(0x04, granule, 3, new byte[200]));
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return FLAC-in-Ogg stream with VORBIS_COMMENT and PICTURE header packets
+	 */
+	public static byte[] oggFlac() {
+		ByteArrayOutputStream identification = new ByteArrayOutputStream();
+		identification.writeBytes(new byte[] { 0x7F, 'F', 'L', 'A', 'C', 1, 0, 0, 2, 'f', 'L', 'a', 'C' });
+		flacBlock(identification, 0, false, streamInfo());
+
+		ByteArrayOutputStream comments = new ByteArrayOutputStream();
+		flacBlock(comments, 4, false, vorbisComments(false));
+		ByteArrayOutputStream picture = new ByteArrayOutputStream();
+		flacBlock(picture, 6, true, flacPicture());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(oggPage(0x02, 0, 0, identification.toByteArray()));
+		out.writeBytes(oggPage(0x00, 0, 1, comments.toByteArray(), picture.toByteArray()));
+		out.writeBytes(oggPage(0x04, TOTAL_SAMPLES, 2, new byte[200]));
+		return out.toByteArray();
+	}
+
+	/**
+	 * Ogg CRC-32: polynomial 0x04C11DB7, no reflection, zero initial value.
+	 * 
+	 * @param data page with its checksum field zeroed
+	 * @return checksum
+	 */
+	private static int oggCrc(byte[] data) {
+		int crc = 0;
+		for (byte b : data) {
+			crc ^= (b & 0xFF) << 24;
+			for (int i = 0; i < 8; ++i) {
+				crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+			}
+		}
+		return crc;
+	}
+
+	/**
+	 * @return 34 byte STREAMINFO block body describing a 16-bit stereo stream
+	 */
+	public static byte[] streamInfo() {
+		ByteBuffer info = ByteBuffer.allocate(34);
+		info.putShort((short) 4096).putShort((short) 4096);
+		info.put(new byte[6]);
+
+		// 20 bit rate, 3 bit channels - 1, 5 bit bits per sample - 1, 36 bit samples
+		long packed = ((long) SAMPLE_RATE << 44) | (1L << 41) | (15L << 36) | TOTAL_SAMPLES;
+		info.putLong(packed);
+		info.put(new byte[16]);
+		return info.array();
+	}
+
+	/**
+	 * @param framingBit true to append the Vorbis framing bit used by Ogg
+	 * @param extra      comments following title, artist and album
+	 * @return little endian Vorbis comment structure
+	 */
+	public static byte[] vorbisComments(boolean framingBit, String... extra) {
+		byte[] vendor = "synthetic".getBytes(StandardCharsets.UTF_8);
+		String[] comments = new String[3 + extra.length];
+		comments[0] = "TITLE=" + TITLE;
+		comments[1] = "ARTIST=" + ARTIST;
+		comments[2] = "ALBUM=" + ALBUM;
+		System.arraycopy(extra, 0, comments, 3, extra.length);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(le32(vendor.length));
+		out.writeBytes(vendor);
+		out.writeBytes(le32(comments.length));
+		for (String comment : comments) {
+			byte[] bytes = comment.getBytes(StandardCharsets.UTF_8);
+			out.writeBytes(le32(bytes.length));
+			out.writeBytes(bytes);
+		}
+		if (framingBit) {
+			out.write(1);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return big endian FLAC PICTURE block body holding {@link #JPEG}
+	 */
+	public static byte[] flacPicture() {
+		byte[] mime = "image/jpeg".getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer picture = ByteBuffer.allocate(32 + mime.length + JPEG.length);
+		picture.putInt(3).putInt(mime.length).put(mime).putInt(0);
+		picture.putInt(1).putInt(1).putInt(24).putInt(0);
+		picture.putInt(JPEG.length).put(JPEG);
+		return picture.array();
+	}
+
+	/**
+	 * Appends a FLAC metadata block.
+	 * 
+	 * @param out    destination
+	 * @param type   block type
+	 * @param last   true if this is the last metadata block
+	 * @param body   block contents
+	 */
+	public static void flacBlock(ByteArrayOutputStream out, int type, boolean last, byte[] body) {
+		out.write((last ? 0x80 : 0) | type);
+		out.write(body.length >> 16);
+		out.write(body.length >> 8);
+		out.write(body.length);
+		out.writeBytes(body);
+	}
+
+	/**
+	 * Appends an ID3v2.3 frame.
+	 * 
+	 * @param out  destination
+	 * @param id   four character frame ID
+	 * @param body frame contents
+	 */
+	public static void id3Frame(ByteArrayOutputStream out, String id, byte[] body) {
+		out.writeBytes(id.getBytes(StandardCharsets.ISO_8859_1));
+		out.writeBytes(ByteBuffer.allocate(4).putInt(body.length).array());
+		out.writeBytes(new byte[2]);
+		out.writeBytes(body);
+	}
+
+	/**
+	 * Builds a complete ID3v2 tag.
+	 * 
+	 * @param version major version, 2 to 4
+	 * @param flags   tag header flags
+	 * @param frames  encoded frames, already unsynchronised if required
+	 * @param padding number of zero bytes following the frames
+	 * @return tag header, frames and padding
+	 */
+	public static byte[] id3Tag(int version, int flags, byte[] frames, int padding) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(new byte[] { 'I', 'D', '3', (byte) version, 0, (byte) flags });
+		out.writeBytes(synchsafe(frames.length + padding));
+		out.writeBytes(frames);
+		out.writeBytes(new byte[padding]);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Builds a 128 byte ID3v1.1 tag.
+	 * 
+	 * @param title  title, at most 30 characters
+	 * @param artist artist, at most 30 characters
+	 * @param track  track number, 1 to 255
+	 * @param genre  genre index
+	 * @return the encoded tag
+	 */
+	public static byte[] id3v1(String title, String artist, int track, int genre) {
+		byte[] tag = new byte[128];
+		tag[0] = 'T';
+		tag[1] = 'A';
+		tag[2] = 'G';
+		byte[] bytes = title.getBytes(StandardCharsets.ISO_8859_1);
+		System.arraycopy(bytes, 0, tag, 3, bytes.length);
+		bytes = artist.getBytes(StandardCharsets.ISO_8859_1);
+		System.arraycopy(bytes, 0, tag, 33, bytes.length);
+		tag[126] = (byte) track;
+		tag[127] = (byte) genre;
+		return tag;
+	}
+
+	/**
+	 * Builds an APEv2 tag with footer only, holding UTF-8 text items.
+	 * 
+	 * @param items alternating keys and values
+	 * @return the encoded tag
+	 */
+	public static byte[] apeTag(String... items) {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		for (int i = 0; i < items.length; i += 2) {
+			byte[] value = items[i + 1].getBytes(StandardCharsets.UTF_8);
+			body.writeBytes(le32(value.length));
+			body.writeBytes(le32(0));
+			body.writeBytes(items[i].getBytes(StandardCharsets.US_ASCII));
+			body.write(0);
+			body.writeBytes(value);
+		}
+
+		ByteBuffer footer = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+		footer.put("APETAGEX".getBytes(StandardCharsets.US_ASCII)).putInt(2000).putInt(body.size() + 32)
+				.putInt(items.length / 2).putInt(0);
+		body.writeBytes(footer.array());
+		return body.toByteArray();
+	}
+
+	/**
+	 * Appends an ID3v2.2 frame.
+	 * 
+	 * @param out  destination
+	 * @param id   three character frame ID
+	 * @param body frame contents
+	 */
+	public static void id3v22Frame(ByteArrayOutputStream out, String id, byte[] body) {
+		out.writeBytes(id.getBytes(StandardCharsets.ISO_8859_1));
+		out.write(body.length >> 16);
+		out.write(body.length >> 8);
+		out.write(body.length);
+		out.writeBytes(body);
+	}
+
+	/**
+	 * Appends an ID3v2.4 frame.
+	 * 
+	 * @param out         destination
+	 * @param id          four character frame ID
+	 * @param formatFlags second frame flag byte
+	 * @param body        frame contents following the header
+	 */
+	public static void id3v24Frame(ByteArrayOutputStream out, String id, int formatFlags, byte[] body) {
+		out.writeBytes(id.getBytes(StandardCharsets.ISO_8859_1));
+		out.writeBytes(synchsafe(body.length));
+		out.write(0);
+		out.write(formatFlags);
+		out.writeBytes(body);
+	}
+
+	/**
+	 * @param text value
+	 * @return ID3 text frame body: ISO-8859-1 encoding byte, text, terminator
+	 */
+	public static byte[] latin1Text(String text) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(0);
+		out.writeBytes(text.getBytes(StandardCharsets.ISO_8859_1));
+		out.write(0);
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param value integer below 2^28
+	 * @return four byte ID3 synchsafe integer
+	 */
+	public static byte[] synchsafe(int value) {
+		return new byte[] { (byte) ((value >> 21) & 0x7F), (byte) ((value >> 14) & 0x7F),
+				(byte) ((value >> 7) & 0x7F), (byte) (value & 0x7F) };
+	}
+
+	/**
+	 * @return a few MPEG-1 Layer III frame headers followed by silence
+	 */
+	public static byte[] mpegFrames() {
+		byte[] frames = new byte[2048];
+		for (int i = 0; i < frames.length; i += 418) {
+			frames[i] = (byte) 0xFF;
+			frames[i + 1] = (byte) 0xFB;
+			frames[i + 2] = (byte) 0x90;
+			frames[i + 3] = 0x64;
+		}
+		return frames;
+	}
+
+	/**
+	 * Appends a RIFF chunk, padded to an even length.
+	 * 
+	 * @param out  destination
+	 * @param id   four character chunk ID
+	 * @param body chunk contents
+	 */
+	public static void riffChunk(ByteArrayOutputStream out, String id, byte[] body) {
+		out.writeBytes(id.getBytes(StandardCharsets.US_ASCII));
+		out.writeBytes(le32(body.length));
+		out.writeBytes(body);
+		if ((body.length & 1) == 1) {
+			out.write(0);
+		}
+	}
+
+	/**
+	 * Appends a big endian IFF chunk, as used by AIFF, padded to an even length.
+	 * 
+	 * @param out  destination
+	 * @param id   four character chunk ID
+	 * @param body chunk contents
+	 */
+	public static void iffChunk(ByteArrayOutputStream out, String id, byte[] body) {
+		out.writeBytes(id.getBytes(StandardCharsets.US_ASCII));
+		out.writeBytes(ByteBuffer.allocate(4).putInt(body.length).array());
+		out.writeBytes(body);
+		if ((body.length & 1) == 1) {
+			out.write(0);
+		}
+	}
+
+	/**
+	 * @param type four character atom type, ISO-8859-1
+	 * @param body atom contents
+	 * @return MP4 atom with 32-bit size
+	 */
+	public static byte[] atom(String type, byte[] body) {
+		ByteBuffer atom = ByteBuffer.allocate(8 + body.length);
+		atom.putInt(8 + body.length).put(type.getBytes(StandardCharsets.ISO_8859_1)).put(body);
+		return atom.array();
+	}
+
+	/**
+	 * Appends an ilst item holding a single data atom.
+	 * 
+	 * @param out      destination
+	 * @param type     item four character code
+	 * @param dataType well-known data type, 1 = UTF-8, 13 = JPEG
+	 * @param value    item payload
+	 */
+	public static void ilstItem(ByteArrayOutputStream out, String type, int dataType, byte[] value) {
+		ByteBuffer data = ByteBuffer.allocate(8 + value.length);
+		data.putInt(dataType).putInt(0).put(value);
+		out.writeBytes(atom(type, atom("data", data.array())));
+	}
+
+	/**
+	 * @param text value
+	 * @return ASCII bytes with a trailing NUL
+	 */
+	private static byte[] nulTerminated(String text) {
+		return (text + "\0").getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @param value integer
+	 * @return little endian encoding of {@code value}
+	 */
+	public static byte[] le32(int value) {
+		return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+	}
+}